@@ -38,6 +38,7 @@ CREATE TABLE IF NOT EXISTS flights (
     status TEXT DEFAULT 'scheduled',   -- 航班状态: scheduled/boarding/departed/arrived/cancelled/delayed
     gate TEXT,                         -- 登机口
     terminal TEXT,                     -- 航站楼
+    pattern_id TEXT,                   -- 周期计划ID（由周期计划生成的航班）
     created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
     updated_at DATETIME DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (aircraft_id) REFERENCES aircraft(aircraft_id),
@@ -69,9 +70,10 @@ CREATE TABLE IF NOT EXISTS orders (
     ticket_price DECIMAL(10,2) NOT NULL, -- 票价
     booking_time DATETIME DEFAULT CURRENT_TIMESTAMP, -- 订票时间
     payment_status TEXT DEFAULT 'pending', -- 支付状态: pending/paid/refunded
-    order_status TEXT DEFAULT 'active',    -- 订单状态: active/cancelled/completed
+    order_status TEXT DEFAULT 'active',    -- 订单状态: active/cancelled/completed/refunded/refund_review
     payment_method TEXT,               -- 支付方式
     payment_time DATETIME,             -- 支付时间
+    cabin_class TEXT,                  -- 舱位: first/business/economy
     FOREIGN KEY (flight_id) REFERENCES flights(flight_id),
     FOREIGN KEY (user_id) REFERENCES users(username)
 );
@@ -89,6 +91,126 @@ CREATE TABLE IF NOT EXISTS refunds (
     FOREIGN KEY (order_id) REFERENCES orders(order_id)
 );
 
+-- 7. 分舱位余票表
+CREATE TABLE IF NOT EXISTS flight_cabin_inventory (
+    flight_id TEXT NOT NULL,           -- 航班ID
+    cabin_class TEXT NOT NULL,         -- 舱位: first/business/economy
+    total_seats INTEGER NOT NULL,      -- 该舱座位数
+    available_seats INTEGER NOT NULL,  -- 该舱余票
+    PRIMARY KEY (flight_id, cabin_class),
+    FOREIGN KEY (flight_id) REFERENCES flights(flight_id)
+);
+
+-- 8. 改签记录表
+CREATE TABLE IF NOT EXISTS order_changes (
+    change_id TEXT PRIMARY KEY,        -- 改签单号
+    order_id TEXT NOT NULL,            -- 订单号
+    from_flight_id TEXT NOT NULL,      -- 原航班ID
+    to_flight_id TEXT NOT NULL,        -- 新航班ID
+    from_cabin TEXT NOT NULL,          -- 原舱位
+    to_cabin TEXT NOT NULL,            -- 新舱位
+    old_price DECIMAL(10,2) NOT NULL,  -- 原票价
+    new_price DECIMAL(10,2) NOT NULL,  -- 新票价
+    fare_difference DECIMAL(10,2) NOT NULL, -- 差价: 正数补差价/负数退差价
+    change_fee DECIMAL(10,2) DEFAULT 0,    -- 改签手续费
+    settlement_status TEXT DEFAULT 'pending', -- 差价结算状态: pending/settled/none
+    operator TEXT,                     -- 操作人
+    change_time DATETIME DEFAULT CURRENT_TIMESTAMP, -- 改签时间
+    FOREIGN KEY (order_id) REFERENCES orders(order_id)
+);
+
+-- 9. 批量退票作业表（航班取消后批量退票的进度和检查点）
+CREATE TABLE IF NOT EXISTS refund_jobs (
+    job_id TEXT PRIMARY KEY,           -- 作业ID
+    flight_id TEXT NOT NULL,           -- 取消的航班ID
+    reason TEXT,                       -- 退票原因
+    operator TEXT,                     -- 操作人
+    policy_time TEXT NOT NULL,         -- 退票规则的计算时刻（航班取消时间）
+    status TEXT DEFAULT 'running',     -- 作业状态: running/failed/completed
+    last_order_id TEXT DEFAULT '',     -- 检查点: 已处理到的订单号
+    total_orders INTEGER DEFAULT 0,    -- 待处理订单数
+    processed_orders INTEGER DEFAULT 0, -- 已处理订单数
+    refunded_orders INTEGER DEFAULT 0, -- 已退款订单数
+    cancelled_orders INTEGER DEFAULT 0, -- 未支付直接取消的订单数
+    rejected_orders INTEGER DEFAULT 0, -- 不符合退票规则的订单数
+    refund_amount DECIMAL(10,2) DEFAULT 0, -- 累计退款金额
+    fee_amount DECIMAL(10,2) DEFAULT 0,    -- 累计手续费
+    last_error TEXT,                   -- 最近一次失败原因
+    created_time DATETIME DEFAULT CURRENT_TIMESTAMP, -- 创建时间
+    updated_time DATETIME,             -- 最近一次推进检查点的时间
+    finished_time DATETIME,            -- 完成时间
+    FOREIGN KEY (flight_id) REFERENCES flights(flight_id)
+);
+
+-- 10. 退改规则表（按 类型/航线/舱位 分档，未指定的列表示不限）
+CREATE TABLE IF NOT EXISTS refund_rules (
+    rule_id TEXT PRIMARY KEY,          -- 规则ID
+    rule_type TEXT NOT NULL DEFAULT 'refund', -- 规则类型: refund/change
+    cabin_class TEXT,                  -- 舱位: first/business/economy，NULL表示不限
+    departure_airport TEXT,            -- 出发机场，与到达机场同时指定时按航线匹配
+    arrival_airport TEXT,              -- 到达机场
+    min_minutes_before INTEGER NOT NULL, -- 分档门槛: 起飞前至少多少分钟
+    fee_rate DECIMAL(5,4) DEFAULT 0,   -- 手续费率（占票价）
+    allowed INTEGER DEFAULT 1,         -- 该档是否允许退票/改签
+    description TEXT,                  -- 规则说明
+    status TEXT DEFAULT 'active'       -- 规则状态: active/inactive
+);
+
+-- 11. 通知发件箱表（异步发送队列，失败按退避重试，超过次数转为死信）
+CREATE TABLE IF NOT EXISTS notification_outbox (
+    notification_id TEXT PRIMARY KEY,  -- 通知ID
+    channel TEXT NOT NULL,             -- 渠道: sms/email
+    recipient TEXT NOT NULL,           -- 手机号或邮箱
+    event_type TEXT,                   -- 事件类型
+    content TEXT NOT NULL,             -- 通知内容
+    status TEXT DEFAULT 'pending',     -- 状态: pending/sending/sent/dead
+    attempts INTEGER DEFAULT 0,        -- 已尝试次数
+    next_attempt_time INTEGER NOT NULL, -- 下次发送时间（毫秒时间戳）
+    last_error TEXT,                   -- 最近一次失败原因
+    created_time DATETIME DEFAULT CURRENT_TIMESTAMP, -- 入队时间
+    sent_time DATETIME                 -- 发送成功时间
+);
+
+-- 12. 消息模板表（占位符写作 {变量名}，如 {orderId}、{flightNo}、{passengerName}）
+CREATE TABLE IF NOT EXISTS message_templates (
+    event_type TEXT PRIMARY KEY,       -- 事件类型，如 支付成功/航班延误
+    content TEXT NOT NULL,             -- 模板内容
+    status TEXT DEFAULT 'active',      -- 状态: active/inactive
+    updated_time DATETIME DEFAULT CURRENT_TIMESTAMP -- 修改时间
+);
+
+-- 13. 周期航班计划表（按星期重复的航班，后台按滚动窗口生成 flights）
+CREATE TABLE IF NOT EXISTS schedule_patterns (
+    pattern_id TEXT PRIMARY KEY,       -- 计划ID
+    flight_number TEXT NOT NULL,       -- 航班号
+    aircraft_id TEXT NOT NULL,         -- 飞机编号
+    departure_airport TEXT NOT NULL,   -- 出发机场代码
+    arrival_airport TEXT NOT NULL,     -- 到达机场代码
+    departure_time TEXT NOT NULL,      -- 起飞时刻 HH:mm
+    duration_minutes INTEGER NOT NULL, -- 飞行时长（分钟）
+    base_price DECIMAL(10,2) NOT NULL, -- 基础票价
+    days_of_week TEXT NOT NULL DEFAULT '1234567', -- 执行日: 1=周一 ... 7=周日
+    start_date DATE NOT NULL,          -- 开始日期
+    end_date DATE NOT NULL,            -- 结束日期
+    gate TEXT,                         -- 登机口
+    terminal TEXT,                     -- 航站楼
+    status TEXT DEFAULT 'active',      -- 状态: active/inactive
+    version INTEGER DEFAULT 1,         -- 版本号，每次修改加1
+    materialized_until DATE,           -- 已生成航班的最后日期
+    created_time DATETIME DEFAULT CURRENT_TIMESTAMP, -- 创建时间
+    updated_time DATETIME              -- 修改时间
+);
+
+-- 14. 支付待核对表（网关已扣款但订单未能标记为已支付，需人工核对后补记或退款）
+CREATE TABLE IF NOT EXISTS payment_reconciliations (
+    order_id TEXT PRIMARY KEY,         -- 订单ID
+    amount DECIMAL(10,2) NOT NULL,     -- 已扣款金额
+    payment_method TEXT,               -- 支付方式
+    reason TEXT,                       -- 未能写入订单的原因
+    status TEXT DEFAULT 'open',        -- 状态: open/resolved
+    created_time DATETIME DEFAULT CURRENT_TIMESTAMP -- 扣款时间
+);
+
 -- 插入基础数据
 
 -- 插入机场信息
@@ -125,14 +247,62 @@ INSERT OR REPLACE INTO flights VALUES
 
 -- 插入示例订单数据（与OrderManagementModule中的数据保持一致）
 INSERT OR REPLACE INTO orders VALUES 
-('ORD1001', 'user1', 'FL001', '张三', '110101199001011234', '12A', 1580.00, '2024-06-10 14:30:00', 'paid', 'completed', 'alipay', '2024-06-10 15:00:00'),
-('ORD1002', 'user1', 'FL002', '李四', '110101199001015678', '8F', 890.00, '2024-06-18 09:20:00', 'pending', 'active', NULL, NULL),
-('ORD1003', 'user2', 'FL003', '王五', '110101199001019999', '15C', 750.00, '2024-06-20 11:45:00', 'refunded', 'cancelled', 'wechat', '2024-06-20 12:00:00');
+('ORD1001', 'user1', 'FL001', '张三', '110101199001011234', '12A', 1580.00, '2024-06-10 14:30:00', 'paid', 'completed', 'alipay', '2024-06-10 15:00:00', 'economy'),
+('ORD1002', 'user1', 'FL002', '李四', '110101199001015678', '8F', 890.00, '2024-06-18 09:20:00', 'pending', 'active', NULL, NULL, 'economy'),
+('ORD1003', 'user2', 'FL003', '王五', '110101199001019999', '15C', 750.00, '2024-06-20 11:45:00', 'refunded', 'cancelled', 'wechat', '2024-06-20 12:00:00', 'economy');
 
 -- 创建索引以提高查询性能
 CREATE INDEX IF NOT EXISTS idx_flights_departure_time ON flights(departure_time);
 CREATE INDEX IF NOT EXISTS idx_flights_route ON flights(departure_airport, arrival_airport);
+CREATE INDEX IF NOT EXISTS idx_flights_route_time ON flights(departure_airport, arrival_airport, departure_time);
 CREATE INDEX IF NOT EXISTS idx_flights_number ON flights(flight_number);
 CREATE INDEX IF NOT EXISTS idx_orders_user ON orders(user_id);
 CREATE INDEX IF NOT EXISTS idx_orders_flight ON orders(flight_id);
+CREATE INDEX IF NOT EXISTS idx_orders_booking ON orders(booking_time, order_id);
+CREATE INDEX IF NOT EXISTS idx_orders_user_booking ON orders(user_id, booking_time, order_id);
+CREATE INDEX IF NOT EXISTS idx_orders_user_payment_booking ON orders(user_id, payment_status, booking_time, order_id);
+CREATE INDEX IF NOT EXISTS idx_orders_payment_booking ON orders(payment_status, booking_time, order_id);
+CREATE INDEX IF NOT EXISTS idx_orders_status_booking ON orders(order_status, booking_time, order_id);
+CREATE INDEX IF NOT EXISTS idx_orders_flight_booking ON orders(flight_id, booking_time, order_id);
+CREATE INDEX IF NOT EXISTS idx_orders_passenger_booking ON orders(passenger_id, booking_time, order_id);
+CREATE INDEX IF NOT EXISTS idx_orders_flight_order ON orders(flight_id, order_id);
 CREATE INDEX IF NOT EXISTS idx_seats_flight ON seats(flight_id);
+CREATE INDEX IF NOT EXISTS idx_order_changes_order ON order_changes(order_id, change_time);
+CREATE UNIQUE INDEX IF NOT EXISTS idx_refund_jobs_open_flight ON refund_jobs(flight_id) WHERE status != 'completed';
+CREATE INDEX IF NOT EXISTS idx_notification_outbox_due ON notification_outbox(status, channel, next_attempt_time);
+CREATE INDEX IF NOT EXISTS idx_flights_pattern ON flights(pattern_id, departure_time);
+CREATE INDEX IF NOT EXISTS idx_flights_number_departure ON flights(flight_number, departure_time);
+
+-- 按机型舱位配置初始化各航班的分舱位余票（与 CabinInventory.SEED_SQL 一致）
+INSERT OR IGNORE INTO flight_cabin_inventory (flight_id, cabin_class, total_seats, available_seats)
+SELECT s.flight_id, s.cabin_class, s.seats, MAX(0, s.seats - (
+    SELECT COUNT(*) FROM orders o WHERE o.flight_id = s.flight_id AND o.cabin_class = s.cabin_class
+    AND o.order_status NOT IN ('cancelled', 'refunded')))
+FROM (SELECT f.flight_id, 'first' AS cabin_class, a.first_class_seats AS seats
+      FROM flights f JOIN aircraft a ON f.aircraft_id = a.aircraft_id
+      UNION ALL SELECT f.flight_id, 'business', a.business_class_seats
+      FROM flights f JOIN aircraft a ON f.aircraft_id = a.aircraft_id
+      UNION ALL SELECT f.flight_id, 'economy', a.economy_class_seats
+      FROM flights f JOIN aircraft a ON f.aircraft_id = a.aircraft_id) s;
+
+-- 航班余票以分舱位余票之和为准（与 CabinInventory.SYNC_FLIGHTS_SQL 一致）
+UPDATE flights SET available_seats = (SELECT SUM(i.available_seats) FROM flight_cabin_inventory i
+    WHERE i.flight_id = flights.flight_id)
+WHERE EXISTS (SELECT 1 FROM flight_cabin_inventory i WHERE i.flight_id = flights.flight_id);
+
+-- 初始退改规则
+INSERT OR IGNORE INTO refund_rules (rule_id, rule_type, min_minutes_before, fee_rate, allowed, description) VALUES
+('REFUND_24H', 'refund', 1440, 0, 1, '起飞前24小时以上可全额退款'),
+('REFUND_2H', 'refund', 120, 0.2, 1, '起飞前2-24小时收取20%手续费'),
+('REFUND_CLOSED', 'refund', 0, 0, 0, '起飞前2小时内不可退票'),
+('CHANGE_FREE', 'change', 0, 0, 1, '起飞前可免费改签');
+
+-- 初始消息模板
+INSERT OR IGNORE INTO message_templates (event_type, content) VALUES
+('支付成功', '尊敬的客户，您的订单{orderId}已支付成功，金额：{amount}元。'),
+('航班延误', '尊敬的旅客{passengerName}，您预订的航班{flightNo}将延误至{time}，请合理安排行程。'),
+('改签成功', '您的航班改签已完成，新航班号：{flightNo}，起飞时间：{time}。'),
+('退票成功', '您的订单{orderId}退票已完成，退款{amount}元将在3-5个工作日内到账。'),
+('航班时刻变更', '尊敬的旅客{passengerName}，您预订的航班{flightNo}起飞时间由{oldTime}调整为{time}，座位{seat}保持不变。'),
+('航班取消', '尊敬的旅客{passengerName}，您预订的航班{flightNo}（原定{oldTime}起飞）已取消，票款将原路退回。'),
+('航班状态变更', '尊敬的旅客{passengerName}，您预订的航班{flightNo}当前状态：{status}，座位{seat}。');
@@ -0,0 +1,161 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 机型舱位配置缓存 - 按aircraft_id缓存aircraft表的座位配置
+ * 首次使用时整表加载，机型变更时调用 reload()/invalidate() 刷新，
+ * 航班查询格式化价格和余票时不再访问数据库
+ */
+public class AircraftCabinCache {
+    private static final String SELECT_ALL_SQL =
+            "SELECT aircraft_id, aircraft_type, total_seats, first_class_seats, business_class_seats, " +
+            "economy_class_seats, status FROM aircraft ORDER BY aircraft_type, aircraft_id";
+    private static final String SELECT_ONE_SQL =
+            "SELECT aircraft_id, aircraft_type, total_seats, first_class_seats, business_class_seats, " +
+            "economy_class_seats, status FROM aircraft WHERE aircraft_id = ?";
+
+    // 表中不存在的飞机也缓存（占位对象），避免无效编号每次都查库
+    private static final CabinConfiguration MISSING = new CabinConfiguration();
+
+    // reload() 整体替换，查询期间不会出现清空后尚未填充的空档
+    private static volatile Map<String, CabinConfiguration> cache = new ConcurrentHashMap<>();
+    // 按机型、编号排序的快照，供下拉框等列表使用
+    private static volatile List<CabinConfiguration> sortedSnapshot = new ArrayList<>();
+    private static volatile boolean loaded;
+
+    private AircraftCabinCache() {
+    }
+
+    /**
+     * 获取飞机的舱位配置，缓存未命中时单独加载该飞机，飞机不存在时返回null
+     */
+    public static CabinConfiguration get(String aircraftId) {
+        if (aircraftId == null) {
+            return null;
+        }
+        ensureLoaded();
+        Map<String, CabinConfiguration> current = cache;
+        CabinConfiguration config = current.get(aircraftId);
+        if (config == null) {
+            try {
+                config = loadOne(aircraftId);
+            } catch (SQLException e) {
+                // 查询失败不缓存，下次重试
+                e.printStackTrace();
+                System.err.println("获取舱位配置失败: " + e.getMessage());
+                return null;
+            }
+            current.put(aircraftId, config == null ? MISSING : config);
+        }
+        return config == MISSING ? null : config;
+    }
+
+    /**
+     * 获取所有飞机配置（按机型、编号排序）
+     */
+    public static List<CabinConfiguration> getAll() {
+        ensureLoaded();
+        return sortedSnapshot;
+    }
+
+    /**
+     * 重新加载整张aircraft表，加载失败时保留原有缓存并返回false
+     */
+    public static synchronized boolean reload() {
+        List<CabinConfiguration> configs = new ArrayList<>();
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SELECT_ALL_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                configs.add(fromResultSet(rs));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("加载机型舱位配置失败: " + e.getMessage());
+            return false;
+        }
+
+        install(configs);
+        return true;
+    }
+
+    /**
+     * 使单个飞机的配置失效，下次访问时重新加载；新增、修改或停用飞机后调用
+     */
+    public static void invalidate(String aircraftId) {
+        if (aircraftId != null) {
+            cache.remove(aircraftId);
+        }
+    }
+
+    /**
+     * 直接装入配置（压测用，不访问数据库）
+     */
+    static synchronized void preload(List<CabinConfiguration> configs) {
+        install(configs);
+    }
+
+    private static void install(List<CabinConfiguration> configs) {
+        Map<String, CabinConfiguration> next = new ConcurrentHashMap<>();
+        for (CabinConfiguration config : configs) {
+            next.put(config.aircraftId, config);
+        }
+        cache = next;
+        sortedSnapshot = configs;
+        loaded = true;
+    }
+
+    private static void ensureLoaded() {
+        if (!loaded) {
+            reload();
+        }
+    }
+
+    private static CabinConfiguration loadOne(String aircraftId) throws SQLException {
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SELECT_ONE_SQL)) {
+            stmt.setString(1, aircraftId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? fromResultSet(rs) : null;
+            }
+        }
+    }
+
+    private static CabinConfiguration fromResultSet(ResultSet rs) throws SQLException {
+        CabinConfiguration config = new CabinConfiguration();
+        config.aircraftId = rs.getString("aircraft_id");
+        config.aircraftType = rs.getString("aircraft_type");
+        config.totalSeats = rs.getInt("total_seats");
+        config.firstClassSeats = rs.getInt("first_class_seats");
+        config.businessClassSeats = rs.getInt("business_class_seats");
+        config.economyClassSeats = rs.getInt("economy_class_seats");
+        config.status = rs.getString("status");
+        return config;
+    }
+
+    /**
+     * 舱位配置类
+     */
+    public static class CabinConfiguration {
+        public String aircraftId;
+        public String aircraftType;
+        public int totalSeats;
+        public int firstClassSeats;
+        public int businessClassSeats;
+        public int economyClassSeats;
+        public String status;
+
+        /**
+         * 各舱座位数之和，即新航班的可售座位数（与分舱位余票计数一致）
+         */
+        public int cabinSeats() {
+            return firstClassSeats + businessClassSeats + economyClassSeats;
+        }
+    }
+}
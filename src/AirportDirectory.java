@@ -0,0 +1,402 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 机场目录 - airports 表一次性加载到内存，输入联想和城市名转机场代码都不再访问数据库
+ * 每个机场按 机场代码、城市、机场名称/简称、城市和机场简称的拼音全拼及首字母 生成检索键，
+ * 检索键排序后存入数组，前缀查询为二分查找；航班或机场变更后调用 invalidate()
+ * 重新加载失败时继续使用上一次成功加载的目录，并在 airplane.airports.retrySeconds 秒内不再重试
+ */
+public class AirportDirectory {
+    private static final String AIRPORTS_SQL =
+            "SELECT airport_code, airport_name, city FROM airports WHERE status = 'active' ORDER BY airport_code";
+    // 只有已取消航班的机场不算有航班
+    private static final String SERVED_SQL =
+            "SELECT departure_airport FROM flights WHERE status != 'cancelled' " +
+            "UNION SELECT arrival_airport FROM flights WHERE status != 'cancelled'";
+    private static final long RETRY_NANOS = Long.getLong("airplane.airports.retrySeconds", 30L) * 1_000_000_000L;
+
+    // 检索键类型，数值越小排序越靠前
+    private static final int MATCH_CODE = 0;
+    private static final int MATCH_CITY = 1;
+    private static final int MATCH_PINYIN = 2;
+    private static final int MATCH_NAME = 3;
+
+    // 常用城市、机场名称用字的拼音（只用于联想，不追求完整）
+    private static final String[] PINYIN = {
+        "北bei", "京jing", "上shang", "海hai", "广guang", "州zhou", "深shen", "圳zhen", "成cheng", "都du",
+        "重chong", "庆qing", "西xi", "安an", "杭hang", "南nan", "天tian", "津jin", "武wu", "汉han",
+        "长chang", "沙sha", "春chun", "郑zheng", "济ji", "青qing", "岛dao", "大da", "连lian", "沈shen",
+        "阳yang", "哈ha", "尔er", "滨bin", "昆kun", "明ming", "贵gui", "宁ning", "福fu", "厦xia",
+        "门men", "合he", "肥fei", "太tai", "原yuan", "石shi", "家jia", "庄zhuang", "兰lan", "乌wu",
+        "鲁lu", "木mu", "齐qi", "拉la", "萨sa", "呼hu", "浩hao", "特te", "银yin", "川chuan",
+        "三san", "亚ya", "口kou", "珠zhu", "桂gui", "林lin", "温wen", "无wu", "锡xi", "苏su",
+        "首shou", "虹hong", "桥qiao", "浦pu", "东dong", "白bai", "云yun", "宝bao", "府fu", "江jiang",
+        "咸xian", "萧xiao", "山shan", "禄lu", "双shuang", "流liu", "黄huang", "花hua", "新xin", "际ji",
+        "兴xing", "高gao", "崎qi", "美mei", "凤feng", "凰huang", "栖qi", "龙long", "湾wan", "河he",
+        "水shui", "胶jiao"
+    };
+    private static final Map<Character, String> PINYIN_MAP = new HashMap<>();
+
+    static {
+        for (String entry : PINYIN) {
+            PINYIN_MAP.put(entry.charAt(0), entry.substring(1));
+        }
+    }
+
+    private static volatile Directory directory;
+    // 目录需要重新加载（航班或机场已变更）
+    private static volatile boolean stale = true;
+    // 最近一次加载失败的时间，0 表示没有失败
+    private static volatile long failedAt;
+
+    private AirportDirectory() {
+    }
+
+    /**
+     * 输入联想：按机场代码、城市、机场名称或拼音前缀匹配，返回去重后的机场（代码匹配优先）
+     */
+    public static List<Airport> suggest(String prefix, int limit) {
+        Directory current = ensureLoaded();
+        if (current == null || prefix == null || prefix.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        String key = normalize(prefix);
+        Key[] keys = current.keys;
+        int from = lowerBound(keys, key);
+
+        List<Key> matches = new ArrayList<>();
+        for (int i = from; i < keys.length && keys[i].text.startsWith(key); i++) {
+            matches.add(keys[i]);
+        }
+        matches.sort((a, b) -> a.type != b.type ? Integer.compare(a.type, b.type)
+                : a.airport.code.compareTo(b.airport.code));
+
+        Set<Airport> airports = new LinkedHashSet<>();
+        for (Key match : matches) {
+            airports.add(match.airport);
+            if (airports.size() >= limit) {
+                break;
+            }
+        }
+        return new ArrayList<>(airports);
+    }
+
+    /**
+     * 有航班的机场显示名称（"城市(机场名称)"，按城市排序）；目录加载失败时返回空列表
+     */
+    public static List<String> getServedDisplayNames() {
+        Directory current = ensureLoaded();
+        return current == null ? Collections.emptyList() : current.servedDisplayNames;
+    }
+
+    /**
+     * 将显示名称、机场代码、城市名或城市拼音转换为机场代码，无法识别时原样返回
+     */
+    public static String resolve(String input) {
+        if (input == null || input.trim().isEmpty()) {
+            return input;
+        }
+        Directory current = ensureLoaded();
+        if (current == null) {
+            return input;
+        }
+        String text = input.trim();
+        Airport airport = current.byDisplayName.get(text);
+        if (airport == null) {
+            airport = current.byExactKey.get(normalize(text));
+        }
+        if (airport == null && text.contains("(") && text.contains(")")) {
+            airport = current.byExactKey.get(normalize(text.substring(0, text.indexOf("("))));
+        }
+        return airport != null ? airport.code : input;
+    }
+
+    /**
+     * 按机场代码精确查找在用机场，不存在时返回null
+     */
+    public static Airport getByCode(String code) {
+        if (code == null) {
+            return null;
+        }
+        Directory current = ensureLoaded();
+        if (current == null) {
+            return null;
+        }
+        Airport airport = current.byExactKey.get(normalize(code));
+        return airport != null && airport.code.equalsIgnoreCase(code.trim()) ? airport : null;
+    }
+
+    /**
+     * 是否已成功加载
+     */
+    public static boolean isAvailable() {
+        return ensureLoaded() != null;
+    }
+
+    /**
+     * 航班或机场变更后调用，下次访问时重新加载（加载前仍使用当前目录）
+     */
+    public static void invalidate() {
+        stale = true;
+        failedAt = 0;
+    }
+
+    /**
+     * 从数据库重新加载机场目录
+     */
+    public static synchronized boolean reload() {
+        List<Airport> airports = new ArrayList<>();
+        Set<String> served = new HashSet<>();
+        try (Connection conn = DatabaseConnectionPool.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(AIRPORTS_SQL);
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    airports.add(new Airport(rs.getString("airport_code"), rs.getString("airport_name"),
+                            rs.getString("city")));
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(SERVED_SQL);
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    served.add(rs.getString(1));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("加载机场目录失败: " + e.getMessage());
+            failedAt = System.nanoTime();
+            return false;
+        }
+        directory = build(airports, served);
+        stale = false;
+        failedAt = 0;
+        return true;
+    }
+
+    private static Directory ensureLoaded() {
+        if (stale && !inBackoff()) {
+            synchronized (AirportDirectory.class) {
+                if (stale && !inBackoff()) {
+                    reload();
+                }
+            }
+        }
+        return directory;
+    }
+
+    /**
+     * 加载失败后的重试间隔内不再访问数据库（否则每次按键都会查询一次）
+     */
+    private static boolean inBackoff() {
+        long failed = failedAt;
+        return failed != 0 && System.nanoTime() - failed < RETRY_NANOS;
+    }
+
+    /**
+     * 构建检索键数组和精确匹配表
+     */
+    static Directory build(List<Airport> airports, Set<String> served) {
+        List<Key> keys = new ArrayList<>();
+        Map<String, Airport> byDisplayName = new HashMap<>();
+        Map<String, Airport> byExactKey = new HashMap<>();
+        List<Airport> servedAirports = new ArrayList<>();
+
+        // 有航班的机场优先作为城市名的默认机场
+        List<Airport> ordered = new ArrayList<>(airports);
+        ordered.sort((a, b) -> Boolean.compare(!served.contains(a.code), !served.contains(b.code)));
+        for (Airport airport : ordered) {
+            addKey(keys, airport, airport.code, MATCH_CODE);
+            addKey(keys, airport, airport.city, MATCH_CITY);
+            addKey(keys, airport, pinyin(airport.city, false), MATCH_PINYIN);
+            addKey(keys, airport, pinyin(airport.city, true), MATCH_PINYIN);
+            addKey(keys, airport, airport.name, MATCH_NAME);
+            addKey(keys, airport, airport.shortName, MATCH_NAME);
+            addKey(keys, airport, pinyin(airport.shortName, false), MATCH_NAME);
+            addKey(keys, airport, pinyin(airport.shortName, true), MATCH_NAME);
+
+            byDisplayName.put(airport.displayName, airport);
+            byExactKey.putIfAbsent(normalize(airport.code), airport);
+            byExactKey.putIfAbsent(normalize(airport.city), airport);
+            String cityPinyin = pinyin(airport.city, false);
+            if (cityPinyin != null) {
+                byExactKey.putIfAbsent(cityPinyin, airport);
+            }
+            if (served.contains(airport.code)) {
+                servedAirports.add(airport);
+            }
+        }
+
+        Key[] sorted = keys.toArray(new Key[0]);
+        Arrays.sort(sorted, (a, b) -> a.text.compareTo(b.text));
+        servedAirports.sort((a, b) -> a.city.compareTo(b.city) != 0 ? a.city.compareTo(b.city) : a.code.compareTo(b.code));
+        List<String> displayNames = new ArrayList<>();
+        for (Airport airport : servedAirports) {
+            displayNames.add(airport.displayName);
+        }
+        return new Directory(sorted, byDisplayName, byExactKey, Collections.unmodifiableList(displayNames));
+    }
+
+    /**
+     * 直接替换目录（压测用）
+     */
+    static void preload(Directory prebuilt) {
+        directory = prebuilt;
+        stale = false;
+    }
+
+    private static void addKey(List<Key> keys, Airport airport, String text, int type) {
+        if (text != null && !text.isEmpty()) {
+            keys.add(new Key(normalize(text), airport, type));
+        }
+    }
+
+    /**
+     * 汉字转拼音（全拼或首字母），含拼音表以外的汉字时返回null
+     */
+    static String pinyin(String text, boolean initials) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            String syllable = PINYIN_MAP.get(text.charAt(i));
+            if (syllable == null) {
+                return null;
+            }
+            result.append(initials ? syllable.substring(0, 1) : syllable);
+        }
+        return result.toString();
+    }
+
+    private static String normalize(String text) {
+        return text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 第一个不小于 key 的检索键下标
+     */
+    private static int lowerBound(Key[] keys, String key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].text.compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 机场
+     */
+    public static class Airport {
+        public final String code;
+        public final String name;
+        public final String city;
+        /** 机场简称（去掉城市名和"国际机场"），如 "首都" */
+        public final String shortName;
+        /** 显示名称，如 "北京(首都)" */
+        public final String displayName;
+
+        public Airport(String code, String name, String city) {
+            this.code = code;
+            this.name = name;
+            this.city = city;
+            this.shortName = name.replace(city, "").replace("国际机场", "").replace("机场", "");
+            this.displayName = city + "(" + shortName + ")";
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    /**
+     * 目录快照（只读）
+     */
+    static class Directory {
+        final Key[] keys;
+        final Map<String, Airport> byDisplayName;
+        final Map<String, Airport> byExactKey;
+        final List<String> servedDisplayNames;
+
+        Directory(Key[] keys, Map<String, Airport> byDisplayName, Map<String, Airport> byExactKey,
+                  List<String> servedDisplayNames) {
+            this.keys = keys;
+            this.byDisplayName = byDisplayName;
+            this.byExactKey = byExactKey;
+            this.servedDisplayNames = servedDisplayNames;
+        }
+    }
+
+    /**
+     * 检索键
+     */
+    static class Key {
+        final String text;
+        final Airport airport;
+        final int type;
+
+        Key(String text, Airport airport, int type) {
+            this.text = text;
+            this.airport = airport;
+            this.type = type;
+        }
+    }
+
+    /**
+     * 联想压测：java AirportDirectory [输入前缀...]
+     */
+    public static void main(String[] args) {
+        String[][] rows = {
+            {"PEK", "北京首都国际机场", "北京"}, {"PKX", "北京大兴国际机场", "北京"},
+            {"SHA", "上海虹桥国际机场", "上海"}, {"PVG", "上海浦东国际机场", "上海"},
+            {"CAN", "广州白云国际机场", "广州"}, {"SZX", "深圳宝安国际机场", "深圳"},
+            {"CTU", "成都天府国际机场", "成都"}, {"CKG", "重庆江北国际机场", "重庆"},
+            {"XIY", "西安咸阳国际机场", "西安"}, {"HGH", "杭州萧山国际机场", "杭州"},
+            {"NKG", "南京禄口国际机场", "南京"}, {"WUH", "武汉天河国际机场", "武汉"},
+            {"CSX", "长沙黄花国际机场", "长沙"}, {"KMG", "昆明长水国际机场", "昆明"},
+            {"XMN", "厦门高崎国际机场", "厦门"}, {"TAO", "青岛胶东国际机场", "青岛"}
+        };
+        List<Airport> airports = new ArrayList<>();
+        Set<String> served = new HashSet<>();
+        for (String[] row : rows) {
+            airports.add(new Airport(row[0], row[1], row[2]));
+            served.add(row[0]);
+        }
+        preload(build(airports, served));
+
+        String[] prefixes = args.length > 0 ? args : new String[]{"p", "bj", "beijing", "上海", "sh", "浦", "c", "x"};
+        for (String prefix : prefixes) {
+            System.out.println(prefix + " -> " + suggest(prefix, 8));
+        }
+        System.out.println("上海(浦东) -> " + resolve("上海(浦东)") + "，shanghai -> " + resolve("shanghai")
+                + "，xian -> " + resolve("xian"));
+
+        int queries = 1_000_000;
+        long found = 0;
+        long start = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+            found += suggest(prefixes[q % prefixes.length], 8).size();
+        }
+        System.out.printf("%d 次联想查询，平均 %.2f 微秒/次（共 %d 条结果）%n",
+                queries, (System.nanoTime() - start) / 1e3 / queries, found);
+    }
+}
@@ -0,0 +1,529 @@
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * 登录认证服务 - 密码以 PBKDF2（加盐、可调迭代次数）存储，旧的明文密码在登录成功时透明升级
+ * 校验在有界线程池中执行，哈希计算不会占满其他线程，队列满时直接返回“繁忙”；
+ * 校验通过后发放短期会话令牌，之后的权限校验用令牌而不再计算哈希；
+ * 同一用户短时间内重复登录（上班高峰、多终端）命中校验缓存，同样跳过哈希计算
+ */
+public class AuthService {
+    private static final String SCHEME = "pbkdf2";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int ITERATIONS = Integer.getInteger("airplane.auth.pbkdf2Iterations", 120_000);
+    private static final int SALT_BYTES = 16;
+    private static final int KEY_BITS = 256;
+
+    private static final int WORKERS = Integer.getInteger("airplane.auth.workers",
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    private static final int QUEUE_CAPACITY = Integer.getInteger("airplane.auth.queueCapacity", 4096);
+    private static final long TIMEOUT_MS = Long.getLong("airplane.auth.timeoutMs", 30_000L);
+    private static final long SESSION_TTL_MS = Long.getLong("airplane.auth.sessionTtlSeconds", 1800L) * 1000;
+    private static final long VERIFIED_TTL_MS = Long.getLong("airplane.auth.verifiedCacheSeconds", 300L) * 1000;
+    private static final int MAX_SESSIONS = Integer.getInteger("airplane.auth.maxSessions", 50_000);
+
+    private static final String USER_SQL = "SELECT password, role, status FROM users WHERE username = ?";
+    // 只在密码未被修改时写回新哈希
+    private static final String UPGRADE_SQL = "UPDATE users SET password = ? WHERE username = ? AND password = ?";
+    private static final String PLAINTEXT_SQL =
+            "SELECT username, password FROM users WHERE password NOT LIKE '" + SCHEME + "$%'";
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    // 校验缓存的 HMAC 密钥，仅存在于本进程内存中
+    private static final byte[] CACHE_KEY = randomBytes(32);
+    private static final ThreadLocal<Mac> CACHE_MAC = ThreadLocal.withInitial(() -> {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(CACHE_KEY, "HmacSHA256"));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 不可用", e);
+        }
+    });
+    // 用户不存在时也计算一次哈希，响应时间不暴露用户名是否存在
+    private static final String DUMMY_HASH = hashPassword("dummy-password");
+
+    private static final ThreadPoolExecutor POOL = createPool();
+    // 会话令牌 -> 会话
+    private static final Map<String, Session> SESSIONS = new ConcurrentHashMap<>();
+    // 用户名 -> 最近一次校验通过的记录
+    private static final Map<String, Verified> VERIFIED = new ConcurrentHashMap<>();
+
+    // 认证指标
+    private static final LongAdder ATTEMPTS = new LongAdder();
+    private static final LongAdder SUCCEEDED = new LongAdder();
+    private static final LongAdder REJECTED = new LongAdder();
+    private static final LongAdder BUSY = new LongAdder();
+    private static final LongAdder FAILED = new LongAdder();
+    private static final LongAdder CACHE_HITS = new LongAdder();
+    private static final LongAdder HASHES = new LongAdder();
+    private static final LongAdder HASH_NANOS = new LongAdder();
+    private static final LongAdder UPGRADED = new LongAdder();
+
+    private AuthService() {
+    }
+
+    /**
+     * 认证结果状态
+     */
+    public enum Status { SUCCESS, REJECTED, BUSY, FAILED }
+
+    /**
+     * 校验用户名和密码（阻塞等待线程池中的校验结果）
+     */
+    public static AuthResult authenticate(String username, String password) {
+        try {
+            return authenticateAsync(username, password).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new AuthResult(Status.FAILED, null, "登录被中断");
+        } catch (TimeoutException e) {
+            BUSY.increment();
+            return new AuthResult(Status.BUSY, null, "登录人数较多，请稍后重试");
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            FAILED.increment();
+            return new AuthResult(Status.FAILED, null, "登录失败: " + e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * 提交到认证线程池校验，界面线程可在回调中处理结果
+     */
+    public static CompletableFuture<AuthResult> authenticateAsync(String username, String password) {
+        ATTEMPTS.increment();
+        try {
+            return CompletableFuture.supplyAsync(() -> verify(username, password), POOL);
+        } catch (RejectedExecutionException e) {
+            BUSY.increment();
+            return CompletableFuture.completedFuture(new AuthResult(Status.BUSY, null, "登录人数较多，请稍后重试"));
+        }
+    }
+
+    /**
+     * 校验会话令牌，有效时返回登录时的凭据
+     */
+    public static UserManagementModule.UserCredential verifySession(String token) {
+        if (token == null) {
+            return null;
+        }
+        Session session = SESSIONS.get(token);
+        if (session == null) {
+            return null;
+        }
+        if (session.expiresAt < System.currentTimeMillis()) {
+            SESSIONS.remove(token, session);
+            return null;
+        }
+        return session.credential;
+    }
+
+    /**
+     * 注销会话
+     */
+    public static void logout(String token) {
+        if (token != null) {
+            SESSIONS.remove(token);
+        }
+    }
+
+    /**
+     * 使用户的会话和校验缓存失效（修改密码、角色、状态或删除用户后调用）
+     */
+    public static void invalidateUser(String username) {
+        VERIFIED.remove(username);
+        SESSIONS.values().removeIf(session -> session.credential.getUserId().equals(username));
+    }
+
+    /**
+     * 生成密码哈希：pbkdf2$迭代次数$盐$哈希（Base64）
+     */
+    public static String hashPassword(String password) {
+        byte[] salt = randomBytes(SALT_BYTES);
+        byte[] hash = pbkdf2(password, salt, ITERATIONS);
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return SCHEME + "$" + ITERATIONS + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    /**
+     * 校验密码；stored 为未升级的明文时按明文比较
+     */
+    static boolean matches(String password, String stored) {
+        if (stored == null) {
+            return false;
+        }
+        if (!isHashed(stored)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+                    stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+        try {
+            Base64.Decoder decoder = Base64.getDecoder();
+            byte[] expected = decoder.decode(parts[3]);
+            byte[] actual = pbkdf2(password, decoder.decode(parts[2]), Integer.parseInt(parts[1]));
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException e) {
+            System.err.println("密码哈希格式错误: " + e.getMessage());
+            return false;
+        }
+    }
+
+    static boolean isHashed(String stored) {
+        return stored.startsWith(SCHEME + "$");
+    }
+
+    /**
+     * 明文或迭代次数低于当前配置的哈希需要升级
+     */
+    static boolean needsUpgrade(String stored) {
+        if (!isHashed(stored)) {
+            return true;
+        }
+        String[] parts = stored.split("\\$");
+        try {
+            return parts.length != 4 || Integer.parseInt(parts[1]) < ITERATIONS;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * 一次性把所有明文密码升级为哈希，返回升级的用户数
+     * 哈希按不超过队列容量的分块提交到认证线程池并行计算，队列被登录请求占满时改在当前线程计算
+     */
+    public static int migratePlaintextPasswords() {
+        List<String[]> rows = new ArrayList<>();
+        try (Connection conn = UserManagementModule.DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(PLAINTEXT_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                rows.add(new String[] {rs.getString("username"), rs.getString("password")});
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("读取明文密码失败: " + e.getMessage());
+            return 0;
+        }
+        int upgraded = 0;
+        for (int from = 0; from < rows.size(); from += QUEUE_CAPACITY) {
+            List<CompletableFuture<String>> futures = new ArrayList<>();
+            for (String[] row : rows.subList(from, Math.min(from + QUEUE_CAPACITY, rows.size()))) {
+                try {
+                    futures.add(CompletableFuture.supplyAsync(() -> upgrade(row[0], row[1], row[1]), POOL));
+                } catch (RejectedExecutionException e) {
+                    futures.add(CompletableFuture.completedFuture(upgrade(row[0], row[1], row[1])));
+                }
+            }
+            for (CompletableFuture<String> future : futures) {
+                if (future.join() != null) {
+                    upgraded++;
+                }
+            }
+        }
+        return upgraded;
+    }
+
+    /**
+     * 在认证线程中执行：读取用户、命中校验缓存或计算哈希、必要时升级存储的密码
+     */
+    private static AuthResult verify(String username, String password) {
+        String stored;
+        String role;
+        String status;
+        try (Connection conn = UserManagementModule.DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(USER_SQL)) {
+            stmt.setString(1, username);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    timedMatches(password, DUMMY_HASH);
+                    REJECTED.increment();
+                    return new AuthResult(Status.REJECTED, null, "账号或密码错误");
+                }
+                stored = rs.getString("password");
+                role = rs.getString("role");
+                status = rs.getString("status");
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("读取用户失败: " + e.getMessage());
+            FAILED.increment();
+            return new AuthResult(Status.FAILED, null, "登录失败，请稍后重试");
+        }
+
+        byte[] digest = cacheDigest(username, password);
+        Verified verified = VERIFIED.get(username);
+        boolean ok;
+        if (verified != null && verified.matches(stored, digest)) {
+            CACHE_HITS.increment();
+            ok = true;
+        } else {
+            ok = timedMatches(password, stored);
+        }
+        if (!ok || !"active".equals(status)) {
+            REJECTED.increment();
+            return new AuthResult(Status.REJECTED, null, "账号或密码错误，或账户未激活");
+        }
+
+        if (needsUpgrade(stored)) {
+            String upgraded = upgrade(username, stored, password);
+            if (upgraded != null) {
+                stored = upgraded;
+            }
+        }
+        VERIFIED.put(username, new Verified(stored, digest, System.currentTimeMillis() + VERIFIED_TTL_MS));
+
+        String token = issueToken();
+        UserManagementModule.UserCredential credential = new UserManagementModule.UserCredential(username, role, token);
+        SESSIONS.put(token, new Session(credential, System.currentTimeMillis() + SESSION_TTL_MS));
+        if (SESSIONS.size() > MAX_SESSIONS) {
+            long now = System.currentTimeMillis();
+            SESSIONS.values().removeIf(session -> session.expiresAt < now);
+        }
+        PrincipalService.register(credential);
+        SUCCEEDED.increment();
+        return new AuthResult(Status.SUCCESS, credential, "登录成功");
+    }
+
+    /**
+     * 把明文（或迭代次数过低的哈希）替换为新哈希并返回新哈希；密码已被修改时不覆盖，返回null
+     */
+    private static String upgrade(String username, String stored, String password) {
+        String hashed = hashPassword(password);
+        try {
+            boolean updated = DatabaseWriter.execute(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(UPGRADE_SQL)) {
+                    stmt.setString(1, hashed);
+                    stmt.setString(2, username);
+                    stmt.setString(3, stored);
+                    return stmt.executeUpdate() > 0;
+                }
+            });
+            if (!updated) {
+                return null;
+            }
+            UPGRADED.increment();
+            return hashed;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("升级密码哈希失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean timedMatches(String password, String stored) {
+        long start = System.nanoTime();
+        boolean ok = matches(password, stored);
+        if (isHashed(stored)) {
+            HASHES.increment();
+            HASH_NANOS.add(System.nanoTime() - start);
+        }
+        return ok;
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, KEY_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("不支持的密码哈希算法: " + ALGORITHM, e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static byte[] cacheDigest(String username, String password) {
+        return CACHE_MAC.get().doFinal((username + '\0' + password).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String issueToken() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(randomBytes(32));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        RANDOM.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static ThreadPoolExecutor createPool() {
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(WORKERS, WORKERS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), runnable -> {
+                    Thread thread = new Thread(runnable, "auth-worker-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 获取认证指标快照
+     */
+    public static AuthStats getStats() {
+        AuthStats stats = new AuthStats();
+        stats.attempts = ATTEMPTS.sum();
+        stats.succeeded = SUCCEEDED.sum();
+        stats.rejected = REJECTED.sum();
+        stats.busy = BUSY.sum();
+        stats.failed = FAILED.sum();
+        stats.cacheHits = CACHE_HITS.sum();
+        stats.hashes = HASHES.sum();
+        stats.upgraded = UPGRADED.sum();
+        stats.avgHashMillis = stats.hashes == 0 ? 0 : HASH_NANOS.sum() / 1_000_000.0 / stats.hashes;
+        stats.queued = POOL.getQueue().size();
+        stats.sessions = SESSIONS.size();
+        return stats;
+    }
+
+    /**
+     * 短期会话
+     */
+    private static class Session {
+        final UserManagementModule.UserCredential credential;
+        final long expiresAt;
+
+        Session(UserManagementModule.UserCredential credential, long expiresAt) {
+            this.credential = credential;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * 最近一次校验通过的记录：存储的密码未变且 HMAC 一致时视为同一密码
+     */
+    private static class Verified {
+        final String stored;
+        final byte[] digest;
+        final long expiresAt;
+
+        Verified(String stored, byte[] digest, long expiresAt) {
+            this.stored = stored;
+            this.digest = digest;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean matches(String currentStored, byte[] candidate) {
+            return expiresAt >= System.currentTimeMillis() && stored.equals(currentStored)
+                    && MessageDigest.isEqual(digest, candidate);
+        }
+    }
+
+    /**
+     * 认证结果
+     */
+    public static class AuthResult {
+        public final Status status;
+        public final UserManagementModule.UserCredential credential;
+        public final String message;
+
+        public AuthResult(Status status, UserManagementModule.UserCredential credential, String message) {
+            this.status = status;
+            this.credential = credential;
+            this.message = message;
+        }
+
+        public boolean isSuccess() {
+            return status == Status.SUCCESS;
+        }
+    }
+
+    /**
+     * 认证指标
+     */
+    public static class AuthStats {
+        public long attempts;
+        public long succeeded;
+        public long rejected;
+        public long busy;
+        public long failed;
+        public long cacheHits;
+        public long hashes;
+        public long upgraded;
+        public double avgHashMillis;
+        public int queued;
+        public int sessions;
+
+        @Override
+        public String toString() {
+            return String.format("认证[请求:%d 成功:%d 拒绝:%d 繁忙:%d 失败:%d 缓存命中:%d 哈希:%d次(平均%.1fms) " +
+                            "升级:%d 排队:%d 会话:%d]",
+                    attempts, succeeded, rejected, busy, failed, cacheHits, hashes, avgHashMillis,
+                    upgraded, queued, sessions);
+        }
+    }
+
+    /**
+     * 压测：上班高峰集中登录，比较线程池内的哈希校验和命中校验缓存的耗时（不访问数据库）
+     * java AuthService [登录数]；--migrate 把数据库中的明文密码全部升级为哈希
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && "--migrate".equals(args[0])) {
+            System.out.println("已升级明文密码: " + migratePlaintextPasswords());
+            return;
+        }
+        int logins = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        String stored = hashPassword("agent-password");
+        long start = System.nanoTime();
+        boolean ok = matches("agent-password", stored);
+        System.out.printf("PBKDF2 迭代 %d 次，单次校验 %.1f ms，结果 %s%n",
+                ITERATIONS, (System.nanoTime() - start) / 1e6, ok);
+
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        int busy = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < logins; i++) {
+            try {
+                futures.add(CompletableFuture.supplyAsync(() -> timedMatches("agent-password", stored), POOL));
+            } catch (RejectedExecutionException e) {
+                busy++;
+            }
+        }
+        int verified = 0;
+        for (CompletableFuture<Boolean> future : futures) {
+            if (future.join()) {
+                verified++;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d 次登录（%d 个认证线程，队列 %d）：通过 %d，繁忙 %d，耗时 %.2f s，%.0f 次/秒%n",
+                logins, WORKERS, QUEUE_CAPACITY, verified, busy, seconds, verified / seconds);
+
+        byte[] digest = cacheDigest("agent", "agent-password");
+        Verified cached = new Verified(stored, digest, System.currentTimeMillis() + VERIFIED_TTL_MS);
+        int hits = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < logins * 50; i++) {
+            if (cached.matches(stored, cacheDigest("agent", "agent-password"))) {
+                hits++;
+            }
+        }
+        System.out.printf("校验缓存命中 %d 次，平均 %.2f us/次%n", hits, (System.nanoTime() - start) / 1e3 / hits);
+        System.out.println(getStats());
+    }
+}
@@ -0,0 +1,248 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 订票引擎 - 扣减座位和创建订单在写线程的同一事务中完成
+ * 座位扣减使用舱位计数的条件更新（CabinInventory.reserve），并发订票时不会超售
+ */
+public class BookingEngine {
+    private static final String INSERT_ORDER_SQL =
+            "INSERT INTO orders (order_id, user_id, flight_id, passenger_name, passenger_id, " +
+            "ticket_price, booking_time, payment_status, order_status, cabin_class) " +
+            "VALUES (?, ?, ?, ?, ?, ?, datetime('now'), 'pending', 'active', ?)";
+
+    // 订票指标
+    private static final LongAdder ATTEMPTS = new LongAdder();
+    private static final LongAdder SUCCEEDED = new LongAdder();
+    private static final LongAdder SOLD_OUT = new LongAdder();
+    private static final LongAdder FAILED = new LongAdder();
+    private static final LongAdder TOTAL_NANOS = new LongAdder();
+    private static final AtomicLong MAX_NANOS = new AtomicLong();
+    private static final AtomicLong FIRST_ATTEMPT_NANOS = new AtomicLong();
+
+    private BookingEngine() {
+    }
+
+    /**
+     * 订票结果状态
+     */
+    public enum Status { SUCCESS, SOLD_OUT, FAILED }
+
+    /**
+     * 订经济舱：成功时返回订单号，座位已售完时返回 SOLD_OUT
+     */
+    public static BookingResult book(String userId, String flightId, String passengerName,
+                                     String passengerId, double ticketPrice) {
+        return book(userId, flightId, passengerName, passengerId, ticketPrice, CabinClass.ECONOMY);
+    }
+
+    /**
+     * 订票：成功时返回订单号，该舱位已售完时返回 SOLD_OUT
+     */
+    public static BookingResult book(String userId, String flightId, String passengerName,
+                                     String passengerId, double ticketPrice, CabinClass cabin) {
+        long start = System.nanoTime();
+        FIRST_ATTEMPT_NANOS.compareAndSet(0, start);
+        ATTEMPTS.increment();
+        String orderId = IdGenerator.nextId(IdGenerator.ORDER_PREFIX);
+
+        BookingResult result;
+        try {
+            boolean reserved = DatabaseWriter.executeInTransaction(conn -> {
+                if (!CabinInventory.reserve(conn, flightId, cabin)) {
+                    return false; // 舱位已售完或航班不可订
+                }
+                try (PreparedStatement insertStmt = conn.prepareStatement(INSERT_ORDER_SQL)) {
+                    insertStmt.setString(1, orderId);
+                    insertStmt.setString(2, userId);
+                    insertStmt.setString(3, flightId);
+                    insertStmt.setString(4, passengerName);
+                    insertStmt.setString(5, passengerId);
+                    insertStmt.setDouble(6, ticketPrice);
+                    insertStmt.setString(7, cabin.code);
+                    insertStmt.executeUpdate();
+                }
+                return true;
+            });
+
+            if (reserved) {
+                SUCCEEDED.increment();
+                CabinInventory.refresh(flightId);
+                FareCalendar.adjustSeats(flightId, -1);
+                FlightRouteIndex.updateSeats(flightId);
+                result = new BookingResult(Status.SUCCESS, orderId, "订票成功");
+            } else {
+                SOLD_OUT.increment();
+                result = new BookingResult(Status.SOLD_OUT, null, "该航班" + cabin.displayName + "已售罄");
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("创建订单失败: " + e.getMessage());
+            FAILED.increment();
+            result = new BookingResult(Status.FAILED, null, "订票失败: " + e.getMessage());
+        }
+
+        long elapsed = System.nanoTime() - start;
+        TOTAL_NANOS.add(elapsed);
+        MAX_NANOS.accumulateAndGet(elapsed, Math::max);
+        return result;
+    }
+
+    /**
+     * 获取订票指标快照
+     */
+    public static BookingStats getStats() {
+        BookingStats stats = new BookingStats();
+        stats.attempts = ATTEMPTS.sum();
+        stats.succeeded = SUCCEEDED.sum();
+        stats.soldOut = SOLD_OUT.sum();
+        stats.failed = FAILED.sum();
+        long finished = stats.succeeded + stats.soldOut + stats.failed;
+        stats.averageLatencyMillis = finished == 0 ? 0 : TOTAL_NANOS.sum() / 1_000_000.0 / finished;
+        stats.maxLatencyMillis = MAX_NANOS.get() / 1_000_000.0;
+        long first = FIRST_ATTEMPT_NANOS.get();
+        double seconds = first == 0 ? 0 : (System.nanoTime() - first) / 1_000_000_000.0;
+        stats.throughputPerSecond = seconds == 0 ? 0 : finished / seconds;
+        return stats;
+    }
+
+    /**
+     * 订票结果
+     */
+    public static class BookingResult {
+        public final Status status;
+        public final String orderId;
+        public final String message;
+
+        public BookingResult(Status status, String orderId, String message) {
+            this.status = status;
+            this.orderId = orderId;
+            this.message = message;
+        }
+
+        public boolean isSuccess() {
+            return status == Status.SUCCESS;
+        }
+    }
+
+    /**
+     * 订票指标
+     */
+    public static class BookingStats {
+        public long attempts;
+        public long succeeded;
+        public long soldOut;
+        public long failed;
+        public double averageLatencyMillis;
+        public double maxLatencyMillis;
+        public double throughputPerSecond;
+
+        @Override
+        public String toString() {
+            return String.format("订票[请求:%d 成功:%d 售罄:%d 失败:%d 平均耗时:%.2fms 最大耗时:%.2fms 吞吐:%.1f次/秒]",
+                    attempts, succeeded, soldOut, failed, averageLatencyMillis, maxLatencyMillis, throughputPerSecond);
+        }
+    }
+
+    private static int queryAvailableSeats(String flightId) throws SQLException {
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT available_seats FROM flights WHERE flight_id = ?")) {
+            stmt.setString(1, flightId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        }
+    }
+
+    /**
+     * 并发订票压测：java BookingEngine <航班ID> [并发人数]
+     * 在数据库的临时副本上运行，测试订单（user_id = loadtest）和座位扣减不会写入正式库，结束后删除副本
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("用法: java BookingEngine <航班ID> [并发人数，默认300]");
+            return;
+        }
+        String flightId = args[0];
+        int bookers = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+
+        // 必须在连接池初始化之前切换数据库文件，此前不能访问 DatabaseConnectionPool
+        String source = System.getProperty("airplane.db.file", "airplane_system.db");
+        Path copyDir = Files.createTempDirectory("airplane_loadtest");
+        File copy = copyDir.resolve("airplane_system.db").toFile();
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + source);
+             Statement stmt = conn.createStatement()) {
+            // VACUUM INTO 生成包含WAL中已提交数据的一致副本
+            stmt.execute("VACUUM INTO '" + copy.getAbsolutePath().replace("'", "''") + "'");
+        }
+        System.setProperty("airplane.db.file", copy.getAbsolutePath());
+        try {
+            loadTest(flightId, bookers);
+        } finally {
+            DatabaseConnectionPool.shutdown();
+            // 写线程的连接在进程退出前不关闭，删除失败的文件留到退出时删除
+            copyDir.toFile().deleteOnExit();
+            File[] files = copyDir.toFile().listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (!file.delete()) {
+                        file.deleteOnExit();
+                    }
+                }
+            }
+            copyDir.toFile().delete();
+        }
+    }
+
+    private static void loadTest(String flightId, int bookers) throws Exception {
+        int seatsBefore = queryAvailableSeats(flightId);
+        if (seatsBefore < 0) {
+            System.out.println("航班不存在: " + flightId);
+            return;
+        }
+        System.out.println("航班 " + flightId + " 压测前余票: " + seatsBefore + "，并发订票人数: " + bookers);
+
+        CountDownLatch startSignal = new CountDownLatch(1);
+        List<Future<BookingResult>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < bookers; i++) {
+                String passenger = "压测乘客" + i;
+                String passengerId = "LOADTEST" + i;
+                futures.add(executor.submit(() -> {
+                    startSignal.await();
+                    return book("loadtest", flightId, passenger, passengerId, 0);
+                }));
+            }
+            startSignal.countDown();
+        }
+
+        int succeeded = 0;
+        for (Future<BookingResult> future : futures) {
+            if (future.get().isSuccess()) {
+                succeeded++;
+            }
+        }
+        int seatsAfter = queryAvailableSeats(flightId);
+
+        System.out.println(getStats());
+        System.out.println(DatabaseWriter.getStats());
+        System.out.println("压测后余票: " + seatsAfter + "，成功订票: " + succeeded);
+        boolean consistent = seatsAfter >= 0 && seatsBefore - seatsAfter == succeeded && succeeded <= seatsBefore;
+        System.out.println(consistent ? "✓ 未超售，座位数与订单数一致" : "✗ 座位数与订单数不一致！");
+    }
+}
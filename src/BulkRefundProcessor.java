@@ -0,0 +1,614 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 航班取消批量退票 - 取消航班后按退票规则为该航班的全部有效订单退款
+ * 按订单号分块，每块在写线程的一个事务中批量更新订单、写入 refunds、归还舱位余票并推进 refund_jobs 检查点；
+ * 作业中断后从检查点继续，已处理的订单不会重复退款。退票规则（RefundRules）按航班取消时刻计算，每个舱位只计算一次
+ */
+public class BulkRefundProcessor {
+    private static final int BATCH_SIZE = Integer.getInteger("airplane.refund.batchSize", 200);
+
+    private static final String OPEN_JOB_SQL =
+            "SELECT job_id FROM refund_jobs WHERE flight_id = ? AND status != 'completed'";
+    private static final String CANCEL_FLIGHT_SQL =
+            "UPDATE flights SET status = 'cancelled' WHERE flight_id = ?";
+    private static final String COUNT_ORDERS_SQL =
+            "SELECT COUNT(*) FROM orders WHERE flight_id = ? " +
+            "AND order_status NOT IN ('cancelled', 'refunded', 'refund_review')";
+    private static final String INSERT_JOB_SQL =
+            "INSERT INTO refund_jobs (job_id, flight_id, reason, operator, policy_time, total_orders, updated_time) " +
+            "VALUES (?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP)";
+    private static final String JOB_SQL =
+            "SELECT j.*, f.departure_time, f.departure_airport, f.arrival_airport " +
+            "FROM refund_jobs j JOIN flights f ON j.flight_id = f.flight_id WHERE j.job_id = ?";
+    private static final String UNFINISHED_JOBS_SQL =
+            "SELECT job_id FROM refund_jobs WHERE status != 'completed' ORDER BY created_time";
+    // 按订单号翻页（idx_orders_flight_order），不用 OFFSET
+    private static final String CHUNK_SQL =
+            "SELECT order_id, ticket_price, cabin_class, seat_number, payment_status FROM orders " +
+            "WHERE flight_id = ? AND order_id > ? " +
+            "AND order_status NOT IN ('cancelled', 'refunded', 'refund_review') " +
+            "ORDER BY order_id LIMIT ?";
+    // 条件更新：期间已被单独退票或取消的订单不再重复处理
+    private static final String REFUND_ORDER_SQL =
+            "UPDATE orders SET payment_status = 'refunded', order_status = 'refunded' " +
+            "WHERE order_id = ? AND order_status NOT IN ('cancelled', 'refunded')";
+    private static final String CANCEL_ORDER_SQL =
+            "UPDATE orders SET order_status = 'cancelled' " +
+            "WHERE order_id = ? AND order_status NOT IN ('cancelled', 'refunded')";
+    // 不符合退票规则的订单转人工审核，不再留在已取消的航班上；已转过的不重复记录拒绝
+    private static final String REVIEW_ORDER_SQL =
+            "UPDATE orders SET order_status = 'refund_review' " +
+            "WHERE order_id = ? AND order_status NOT IN ('cancelled', 'refunded', 'refund_review')";
+    private static final String INSERT_REFUND_SQL =
+            "INSERT INTO refunds (refund_id, order_id, refund_reason, refund_amount, refund_fee, " +
+            "refund_status, processed_by) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String CHECKPOINT_SQL =
+            "UPDATE refund_jobs SET last_order_id = ?, processed_orders = processed_orders + ?, " +
+            "refunded_orders = refunded_orders + ?, cancelled_orders = cancelled_orders + ?, " +
+            "rejected_orders = rejected_orders + ?, refund_amount = refund_amount + ?, " +
+            "fee_amount = fee_amount + ?, status = 'running', last_error = NULL, " +
+            "updated_time = CURRENT_TIMESTAMP WHERE job_id = ?";
+    private static final String COMPLETE_SQL =
+            "UPDATE refund_jobs SET status = 'completed', updated_time = CURRENT_TIMESTAMP, " +
+            "finished_time = CURRENT_TIMESTAMP WHERE job_id = ?";
+    private static final String FAIL_SQL =
+            "UPDATE refund_jobs SET status = 'failed', last_error = ?, updated_time = CURRENT_TIMESTAMP " +
+            "WHERE job_id = ?";
+
+    // 批量退票指标
+    private static final LongAdder RUNS = new LongAdder();
+    private static final LongAdder COMPLETED_JOBS = new LongAdder();
+    private static final LongAdder BATCHES = new LongAdder();
+    private static final LongAdder FAILED_BATCHES = new LongAdder();
+    private static final LongAdder ORDERS = new LongAdder();
+    private static final LongAdder REFUNDED = new LongAdder();
+    private static final LongAdder BATCH_NANOS = new LongAdder();
+
+    private BulkRefundProcessor() {
+    }
+
+    /**
+     * 取消航班并为其订单批量退票；该航班已有未完成的作业时从其检查点继续
+     * @param listener 每处理完一块回调一次进度，可为null
+     * @return 作业结束（完成或失败）时的进度，航班不存在或无法建立作业时返回null
+     */
+    public static Progress cancelFlight(String flightId, String reason, String operator, Consumer<Progress> listener) {
+        String jobId = IdGenerator.nextId(IdGenerator.REFUND_JOB_PREFIX);
+        String policyTime = RefundRules.formatTime(LocalDateTime.now());
+        String openJobId;
+        try {
+            openJobId = DatabaseWriter.executeInTransaction(conn ->
+                    openJob(conn, jobId, flightId, reason, operator, policyTime));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("创建批量退票作业失败: " + e.getMessage());
+            return null;
+        }
+        if (openJobId == null) {
+            System.err.println("航班不存在: " + flightId);
+            return null;
+        }
+        NotificationDispatcher.wakeUp();
+        Job job = loadJob(openJobId);
+        if (job == null) {
+            return null;
+        }
+        // 航班已取消，不再出现在直飞查询、中转方案和低价日历中
+        if (FlightRouteIndex.isEnabled()) {
+            FlightRouteIndex.refreshRoute(job.departureAirport, job.arrivalAirport);
+        }
+        ConnectionSearch.invalidate();
+        FareCalendar.invalidate();
+        return resume(job, listener);
+    }
+
+    /**
+     * 从检查点继续执行作业，直到处理完所有订单或某一块失败（失败时作业标记为 failed，可再次续跑）
+     */
+    public static Progress resume(String jobId, Consumer<Progress> listener) {
+        Job job = loadJob(jobId);
+        return job == null ? null : resume(job, listener);
+    }
+
+    private static Progress resume(Job job, Consumer<Progress> listener) {
+        String jobId = job.progress.jobId;
+        Progress progress = job.progress;
+        if ("completed".equals(progress.status)) {
+            return progress;
+        }
+        RUNS.increment();
+        long start = System.nanoTime();
+        String cursor = progress.lastOrderId;
+        while (true) {
+            String from = cursor;
+            long batchStart = System.nanoTime();
+            Chunk chunk;
+            try {
+                chunk = DatabaseWriter.executeInTransaction(conn -> processChunk(conn, job, from));
+            } catch (SQLException e) {
+                e.printStackTrace();
+                System.err.println("批量退票失败: " + e.getMessage());
+                FAILED_BATCHES.increment();
+                markFailed(jobId, e.getMessage());
+                progress.status = "failed";
+                progress.lastError = e.getMessage();
+                break;
+            }
+            BATCH_NANOS.add(System.nanoTime() - batchStart);
+            if (chunk == null) {
+                COMPLETED_JOBS.increment();
+                progress.status = "completed";
+                break;
+            }
+            afterCommit(job.flightId, chunk);
+            BATCHES.increment();
+            ORDERS.add(chunk.processed);
+            REFUNDED.add(chunk.refunded);
+
+            cursor = chunk.lastOrderId;
+            progress.apply(chunk);
+            progress.elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            if (listener != null) {
+                listener.accept(progress);
+            }
+        }
+        progress.elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        return progress;
+    }
+
+    /**
+     * 续跑所有未完成的作业（启动时或作业失败后调用）
+     */
+    public static List<Progress> resumeUnfinished(Consumer<Progress> listener) {
+        List<String> jobIds = new ArrayList<>();
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(UNFINISHED_JOBS_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                jobIds.add(rs.getString("job_id"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("读取未完成的批量退票作业失败: " + e.getMessage());
+        }
+        List<Progress> results = new ArrayList<>();
+        for (String jobId : jobIds) {
+            Progress progress = resume(jobId, listener);
+            if (progress != null) {
+                results.add(progress);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 读取作业的持久化进度（可在其他窗口或进程中查看）
+     */
+    public static Progress getProgress(String jobId) {
+        Job job = loadJob(jobId);
+        return job == null ? null : job.progress;
+    }
+
+    /**
+     * 在写事务中取消航班并建立作业，已有未完成作业时返回其ID
+     */
+    private static String openJob(Connection conn, String jobId, String flightId, String reason, String operator,
+                                  String policyTime) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(OPEN_JOB_SQL)) {
+            stmt.setString(1, flightId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getString("job_id");
+                }
+            }
+        }
+        FlightChangeNotifier.FlightChange change = FlightChangeNotifier.loadFlight(conn, flightId);
+        if (change == null) {
+            return null;
+        }
+        // 先取消航班：之后的订票在扣减余票时就会失败，待处理订单数不再变化
+        try (PreparedStatement stmt = conn.prepareStatement(CANCEL_FLIGHT_SQL)) {
+            stmt.setString(1, flightId);
+            stmt.executeUpdate();
+        }
+        // 取消通知与航班取消一起提交，此时订单尚未退票，旅客名单完整
+        if (!"cancelled".equals(change.oldStatus)) {
+            FlightChangeNotifier.fanOut(conn, change.cancelled());
+        }
+        int total;
+        try (PreparedStatement stmt = conn.prepareStatement(COUNT_ORDERS_SQL)) {
+            stmt.setString(1, flightId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                total = rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_JOB_SQL)) {
+            stmt.setString(1, jobId);
+            stmt.setString(2, flightId);
+            stmt.setString(3, reason);
+            stmt.setString(4, operator);
+            stmt.setString(5, policyTime);
+            stmt.setInt(6, total);
+            stmt.executeUpdate();
+        }
+        return jobId;
+    }
+
+    /**
+     * 在写事务中处理检查点之后的一块订单并推进检查点；没有剩余订单时将作业标记为完成并返回null
+     */
+    private static Chunk processChunk(Connection conn, Job job, String from) throws SQLException {
+        List<OrderRow> rows = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(CHUNK_SQL)) {
+            stmt.setString(1, job.flightId);
+            stmt.setString(2, from);
+            stmt.setInt(3, BATCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(new OrderRow(rs));
+                }
+            }
+        }
+        if (rows.isEmpty()) {
+            try (PreparedStatement stmt = conn.prepareStatement(COMPLETE_SQL)) {
+                stmt.setString(1, job.progress.jobId);
+                stmt.executeUpdate();
+            }
+            return null;
+        }
+
+        // 已支付的按退票规则退款，未支付的直接取消，不符合规则的转人工审核并记录拒绝原因
+        List<OrderRow> refunds = new ArrayList<>();
+        List<OrderRow> cancels = new ArrayList<>();
+        List<OrderRow> rejects = new ArrayList<>();
+        for (OrderRow row : rows) {
+            if (!"paid".equals(row.paymentStatus)) {
+                cancels.add(row);
+                continue;
+            }
+            RefundRules.Decision policy = job.policy(row.cabin);
+            if (policy.allowed) {
+                row.refundAmount = policy.refundAmount(row.ticketPrice);
+                row.refundFee = policy.fee(row.ticketPrice);
+                refunds.add(row);
+            } else {
+                row.rejectReason = policy.message;
+                rejects.add(row);
+            }
+        }
+
+        Chunk chunk = new Chunk(rows.get(rows.size() - 1).orderId, rows.size());
+        Map<CabinClass, Integer> seatsByCabin = new EnumMap<>(CabinClass.class);
+        int[] refundCounts = updateOrders(conn, REFUND_ORDER_SQL, refunds);
+        int[] cancelCounts = updateOrders(conn, CANCEL_ORDER_SQL, cancels);
+        int[] reviewCounts = updateOrders(conn, REVIEW_ORDER_SQL, rejects);
+
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_REFUND_SQL)) {
+            for (int i = 0; i < refunds.size(); i++) {
+                if (refundCounts[i] > 0) {
+                    OrderRow row = refunds.get(i);
+                    addRefund(stmt, row, job.reason, row.refundAmount, row.refundFee, "completed", job.operator);
+                    chunk.refunded++;
+                    chunk.refundAmount += row.refundAmount;
+                    chunk.feeAmount += row.refundFee;
+                    chunk.release(row, seatsByCabin);
+                }
+            }
+            for (int i = 0; i < rejects.size(); i++) {
+                if (reviewCounts[i] > 0) {
+                    OrderRow row = rejects.get(i);
+                    addRefund(stmt, row, job.reason + "（" + row.rejectReason + "）", 0, 0, "rejected", job.operator);
+                    chunk.rejected++;
+                }
+            }
+            if (chunk.refunded + chunk.rejected > 0) {
+                stmt.executeBatch();
+            }
+        }
+        for (int i = 0; i < cancels.size(); i++) {
+            if (cancelCounts[i] > 0) {
+                chunk.cancelled++;
+                chunk.release(cancels.get(i), seatsByCabin);
+            }
+        }
+
+        for (Map.Entry<CabinClass, Integer> entry : seatsByCabin.entrySet()) {
+            CabinInventory.release(conn, job.flightId, entry.getKey(), entry.getValue());
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(CHECKPOINT_SQL)) {
+            stmt.setString(1, chunk.lastOrderId);
+            stmt.setInt(2, chunk.processed);
+            stmt.setInt(3, chunk.refunded);
+            stmt.setInt(4, chunk.cancelled);
+            stmt.setInt(5, chunk.rejected);
+            stmt.setDouble(6, chunk.refundAmount);
+            stmt.setDouble(7, chunk.feeAmount);
+            stmt.setString(8, job.progress.jobId);
+            stmt.executeUpdate();
+        }
+        return chunk;
+    }
+
+    /**
+     * 批量执行订单条件更新，返回每个订单的更新行数
+     */
+    private static int[] updateOrders(Connection conn, String sql, List<OrderRow> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return new int[0];
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (OrderRow row : rows) {
+                stmt.setString(1, row.orderId);
+                stmt.addBatch();
+            }
+            return stmt.executeBatch();
+        }
+    }
+
+    private static void addRefund(PreparedStatement stmt, OrderRow row, String reason, double amount, double fee,
+                                  String status, String operator) throws SQLException {
+        stmt.setString(1, IdGenerator.nextId(IdGenerator.REFUND_PREFIX));
+        stmt.setString(2, row.orderId);
+        stmt.setString(3, reason);
+        stmt.setDouble(4, amount);
+        stmt.setDouble(5, fee);
+        stmt.setString(6, status);
+        stmt.setString(7, operator);
+        stmt.addBatch();
+    }
+
+    /**
+     * 事务提交后同步内存中的余票和座位图
+     */
+    private static void afterCommit(String flightId, Chunk chunk) {
+        if (chunk.refunded + chunk.cancelled == 0) {
+            return;
+        }
+        CabinInventory.refresh(flightId);
+        for (String seatNumber : chunk.seats) {
+            SeatInventory.releaseSeat(flightId, seatNumber);
+        }
+    }
+
+    private static void markFailed(String jobId, String error) {
+        try {
+            DatabaseWriter.execute(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(FAIL_SQL)) {
+                    stmt.setString(1, error);
+                    stmt.setString(2, jobId);
+                    return stmt.executeUpdate();
+                }
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("记录批量退票作业失败状态失败: " + e.getMessage());
+        }
+    }
+
+    private static Job loadJob(String jobId) {
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(JOB_SQL)) {
+            stmt.setString(1, jobId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? new Job(rs) : null;
+            }
+        } catch (SQLException | DateTimeParseException e) {
+            e.printStackTrace();
+            System.err.println("读取批量退票作业失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 获取批量退票指标快照
+     */
+    public static BulkRefundStats getStats() {
+        BulkRefundStats stats = new BulkRefundStats();
+        stats.runs = RUNS.sum();
+        stats.completedJobs = COMPLETED_JOBS.sum();
+        stats.batches = BATCHES.sum();
+        stats.failedBatches = FAILED_BATCHES.sum();
+        stats.orders = ORDERS.sum();
+        stats.refunded = REFUNDED.sum();
+        long nanos = BATCH_NANOS.sum();
+        long batches = stats.batches + stats.failedBatches;
+        stats.avgBatchMillis = batches == 0 ? 0 : nanos / 1_000_000.0 / batches;
+        stats.ordersPerSecond = nanos == 0 ? 0 : stats.orders * 1_000_000_000.0 / nanos;
+        return stats;
+    }
+
+    /**
+     * 作业参数（从 refund_jobs 读取）
+     */
+    private static class Job {
+        final String flightId;
+        final String reason;
+        final String operator;
+        final String departureAirport;
+        final String arrivalAirport;
+        // 航班取消时距起飞的分钟数，同一航班同一舱位的订单退票结论相同
+        final long minutesBefore;
+        final Map<CabinClass, RefundRules.Decision> policies = new EnumMap<>(CabinClass.class);
+        final Progress progress;
+
+        Job(ResultSet rs) throws SQLException {
+            flightId = rs.getString("flight_id");
+            reason = rs.getString("reason");
+            operator = rs.getString("operator");
+            departureAirport = rs.getString("departure_airport");
+            arrivalAirport = rs.getString("arrival_airport");
+            minutesBefore = RefundRules.minutesBetween(RefundRules.parseTime(rs.getString("policy_time")),
+                    RefundRules.parseTime(rs.getString("departure_time")));
+            progress = new Progress(rs);
+        }
+
+        RefundRules.Decision policy(CabinClass cabin) {
+            return policies.computeIfAbsent(cabin, c -> RefundRules.schedule(RefundRules.RuleType.REFUND, c,
+                    departureAirport, arrivalAirport).evaluate(minutesBefore));
+        }
+    }
+
+    /**
+     * 待处理的订单
+     */
+    private static class OrderRow {
+        final String orderId;
+        final double ticketPrice;
+        final CabinClass cabin;
+        final String seatNumber;
+        final String paymentStatus;
+        double refundAmount;
+        double refundFee;
+        String rejectReason;
+
+        OrderRow(ResultSet rs) throws SQLException {
+            orderId = rs.getString("order_id");
+            ticketPrice = rs.getDouble("ticket_price");
+            CabinClass parsed = CabinClass.fromCode(rs.getString("cabin_class"));
+            cabin = parsed != null ? parsed : CabinClass.ECONOMY;
+            seatNumber = rs.getString("seat_number");
+            paymentStatus = rs.getString("payment_status");
+        }
+    }
+
+    /**
+     * 一块订单的处理结果
+     */
+    private static class Chunk {
+        final String lastOrderId;
+        final int processed;
+        final List<String> seats = new ArrayList<>();
+        int refunded;
+        int cancelled;
+        int rejected;
+        double refundAmount;
+        double feeAmount;
+
+        Chunk(String lastOrderId, int processed) {
+            this.lastOrderId = lastOrderId;
+            this.processed = processed;
+        }
+
+        void release(OrderRow row, Map<CabinClass, Integer> seatsByCabin) {
+            seatsByCabin.merge(row.cabin, 1, Integer::sum);
+            if (row.seatNumber != null) {
+                seats.add(row.seatNumber);
+            }
+        }
+    }
+
+    /**
+     * 作业进度：累计数来自 refund_jobs，耗时和吞吐量为本次运行
+     */
+    public static class Progress {
+        public final String jobId;
+        public final String flightId;
+        public final int totalOrders;
+        public String status;
+        public String lastOrderId;
+        public int processedOrders;
+        public int refundedOrders;
+        public int cancelledOrders;
+        public int rejectedOrders;
+        public double refundAmount;
+        public double feeAmount;
+        public String lastError;
+        public int batches;
+        public int ordersThisRun;
+        public long elapsedMillis;
+
+        Progress(ResultSet rs) throws SQLException {
+            jobId = rs.getString("job_id");
+            flightId = rs.getString("flight_id");
+            totalOrders = rs.getInt("total_orders");
+            status = rs.getString("status");
+            lastOrderId = rs.getString("last_order_id");
+            processedOrders = rs.getInt("processed_orders");
+            refundedOrders = rs.getInt("refunded_orders");
+            cancelledOrders = rs.getInt("cancelled_orders");
+            rejectedOrders = rs.getInt("rejected_orders");
+            refundAmount = rs.getDouble("refund_amount");
+            feeAmount = rs.getDouble("fee_amount");
+            lastError = rs.getString("last_error");
+        }
+
+        void apply(Chunk chunk) {
+            lastOrderId = chunk.lastOrderId;
+            processedOrders += chunk.processed;
+            refundedOrders += chunk.refunded;
+            cancelledOrders += chunk.cancelled;
+            rejectedOrders += chunk.rejected;
+            refundAmount += chunk.refundAmount;
+            feeAmount += chunk.feeAmount;
+            batches++;
+            ordersThisRun += chunk.processed;
+        }
+
+        public double ordersPerSecond() {
+            return elapsedMillis == 0 ? 0 : ordersThisRun * 1000.0 / elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("退票作业 %s [航班:%s 状态:%s 进度:%d/%d 退款:%d 取消:%d 不可退:%d " +
+                            "退款金额:¥%.2f 手续费:¥%.2f 本次:%d块 %.0f单/秒]",
+                    jobId, flightId, status, processedOrders, totalOrders, refundedOrders, cancelledOrders,
+                    rejectedOrders, refundAmount, feeAmount, batches, ordersPerSecond());
+        }
+    }
+
+    /**
+     * 批量退票指标
+     */
+    public static class BulkRefundStats {
+        public long runs;
+        public long completedJobs;
+        public long batches;
+        public long failedBatches;
+        public long orders;
+        public long refunded;
+        public double avgBatchMillis;
+        public double ordersPerSecond;
+
+        @Override
+        public String toString() {
+            return String.format("批量退票[运行:%d 完成:%d 块:%d 失败块:%d 订单:%d 退款:%d 平均每块:%.2fms 吞吐:%.0f单/秒]",
+                    runs, completedJobs, batches, failedBatches, orders, refunded, avgBatchMillis, ordersPerSecond);
+        }
+    }
+
+    /**
+     * 命令行：java BulkRefundProcessor 航班ID [原因] [操作人]，或 --resume 续跑所有未完成的作业
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("用法: java BulkRefundProcessor <航班ID> [原因] [操作人] | --resume");
+            return;
+        }
+        Consumer<Progress> printer = System.out::println;
+        if ("--resume".equals(args[0])) {
+            List<Progress> results = resumeUnfinished(printer);
+            System.out.println("续跑作业数: " + results.size());
+        } else {
+            String reason = args.length > 1 ? args[1] : "航班取消";
+            String operator = args.length > 2 ? args[2] : "admin";
+            Progress progress = cancelFlight(args[0], reason, operator, printer);
+            System.out.println(progress != null ? progress : "作业未能启动");
+        }
+        System.out.println(getStats());
+        System.out.println(DatabaseWriter.getStats());
+    }
+}
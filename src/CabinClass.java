@@ -0,0 +1,80 @@
+/**
+ * 舱位等级
+ */
+public enum CabinClass {
+    FIRST("first", "头等舱", "F", "FIRST_CLASS", 6),
+    BUSINESS("business", "商务舱", "B", "BUSINESS_CLASS", 8),
+    ECONOMY("economy", "经济舱", "E", "ECONOMY_CLASS", 8);
+
+    /** 数据库中的舱位代码 */
+    public final String code;
+    /** 界面显示名称 */
+    public final String displayName;
+    /** 座位号前缀，如 F1A、B3C、E6A */
+    public final String seatPrefix;
+    /** 座位图中的舱位标题标记 */
+    public final String headerToken;
+    /** 每排座位数 */
+    public final int seatsAbreast;
+
+    CabinClass(String code, String displayName, String seatPrefix, String headerToken, int seatsAbreast) {
+        this.code = code;
+        this.displayName = displayName;
+        this.seatPrefix = seatPrefix;
+        this.headerToken = headerToken;
+        this.seatsAbreast = seatsAbreast;
+    }
+
+    /**
+     * 舱位配置中该舱的座位数
+     */
+    public int seatCount(AircraftCabinCache.CabinConfiguration config) {
+        switch (this) {
+            case FIRST:
+                return config.firstClassSeats;
+            case BUSINESS:
+                return config.businessClassSeats;
+            default:
+                return config.economyClassSeats;
+        }
+    }
+
+    /**
+     * 根据显示名称（头等舱/商务舱/经济舱）获取舱位，未知时返回经济舱
+     */
+    public static CabinClass fromDisplayName(String displayName) {
+        for (CabinClass cabin : values()) {
+            if (cabin.displayName.equals(displayName)) {
+                return cabin;
+            }
+        }
+        return ECONOMY;
+    }
+
+    /**
+     * 根据数据库舱位代码（first/business/economy）获取舱位，未知时返回null
+     */
+    public static CabinClass fromCode(String code) {
+        for (CabinClass cabin : values()) {
+            if (cabin.code.equals(code)) {
+                return cabin;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 根据座位号前缀获取舱位，无法识别时返回null
+     */
+    public static CabinClass fromSeatNumber(String seatNumber) {
+        if (seatNumber == null || seatNumber.isEmpty()) {
+            return null;
+        }
+        for (CabinClass cabin : values()) {
+            if (seatNumber.startsWith(cabin.seatPrefix)) {
+                return cabin;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,340 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 分舱位余票 - 每个航班每个舱位一行 flight_cabin_inventory 计数
+ * 订票、退票、改签在写线程的事务中用条件更新增减计数（同时维护 flights.available_seats），
+ * 事务提交后调用 refresh() 更新内存副本；查询余票直接读内存副本，不统计 orders 表。
+ * 有计数的航班 flights.available_seats 始终等于各舱余票之和：初始化计数后按计数重算，新航班按各舱座位数之和写入
+ */
+public class CabinInventory {
+    /**
+     * 按机型舱位配置初始化计数（已有计数的航班不受影响），初始余票 = 舱位座位数 - 该舱有效订单数
+     */
+    static final String SEED_SQL =
+            "INSERT OR IGNORE INTO flight_cabin_inventory (flight_id, cabin_class, total_seats, available_seats) " +
+            "SELECT s.flight_id, s.cabin_class, s.seats, MAX(0, s.seats - (" +
+            "SELECT COUNT(*) FROM orders o WHERE o.flight_id = s.flight_id AND o.cabin_class = s.cabin_class " +
+            "AND o.order_status NOT IN ('cancelled', 'refunded'))) " +
+            "FROM (SELECT f.flight_id, 'first' AS cabin_class, a.first_class_seats AS seats " +
+            "FROM flights f JOIN aircraft a ON f.aircraft_id = a.aircraft_id " +
+            "UNION ALL SELECT f.flight_id, 'business', a.business_class_seats " +
+            "FROM flights f JOIN aircraft a ON f.aircraft_id = a.aircraft_id " +
+            "UNION ALL SELECT f.flight_id, 'economy', a.economy_class_seats " +
+            "FROM flights f JOIN aircraft a ON f.aircraft_id = a.aircraft_id) s";
+    private static final String SEED_FLIGHT_SQL = SEED_SQL + " WHERE s.flight_id = ?";
+    /**
+     * 按分舱位计数重算航班余票（机型座位数与航班原有余票可能不一致，以计数为准）
+     */
+    static final String SYNC_FLIGHTS_SQL =
+            "UPDATE flights SET available_seats = (SELECT SUM(i.available_seats) FROM flight_cabin_inventory i " +
+            "WHERE i.flight_id = flights.flight_id) " +
+            "WHERE EXISTS (SELECT 1 FROM flight_cabin_inventory i WHERE i.flight_id = flights.flight_id)";
+    private static final String SYNC_FLIGHT_SQL = SYNC_FLIGHTS_SQL + " AND flight_id = ?";
+
+    private static final String SELECT_ALL_SQL =
+            "SELECT flight_id, cabin_class, total_seats, available_seats FROM flight_cabin_inventory";
+    private static final String SELECT_FLIGHT_SQL = SELECT_ALL_SQL + " WHERE flight_id = ?";
+
+    // 航班可订且该舱有余票时扣减
+    private static final String RESERVE_SQL =
+            "UPDATE flight_cabin_inventory SET available_seats = available_seats - 1 " +
+            "WHERE flight_id = ? AND cabin_class = ? AND available_seats > 0 " +
+            "AND EXISTS (SELECT 1 FROM flights WHERE flight_id = ? AND status IN ('scheduled', 'delayed') AND available_seats > 0)";
+    private static final String RELEASE_SQL =
+            "UPDATE flight_cabin_inventory SET available_seats = available_seats + 1 " +
+            "WHERE flight_id = ? AND cabin_class = ? AND available_seats < total_seats";
+    private static final String SELECT_CABIN_SQL = SELECT_FLIGHT_SQL + " AND cabin_class = ?";
+    private static final String RELEASE_MANY_SQL =
+            "UPDATE flight_cabin_inventory SET available_seats = available_seats + ? " +
+            "WHERE flight_id = ? AND cabin_class = ?";
+    private static final String FLIGHT_INCREMENT_MANY_SQL =
+            "UPDATE flights SET available_seats = available_seats + ? WHERE flight_id = ?";
+    private static final String ORDER_SEAT_SQL =
+            "SELECT flight_id, cabin_class, seat_number FROM orders WHERE order_id = ?";
+    private static final String INSERT_SQL =
+            "INSERT OR IGNORE INTO flight_cabin_inventory (flight_id, cabin_class, total_seats, available_seats) " +
+            "VALUES (?, ?, ?, ?)";
+    private static final String FLIGHT_DECREMENT_SQL =
+            "UPDATE flights SET available_seats = available_seats - 1 WHERE flight_id = ?";
+    private static final String FLIGHT_INCREMENT_SQL =
+            "UPDATE flights SET available_seats = available_seats + 1 WHERE flight_id = ?";
+
+    // 航班ID -> 各舱余票（内存副本）
+    private static final Map<String, Availability> CACHE = new ConcurrentHashMap<>();
+    // 全量加载后，缓存中没有的航班即视为没有计数，不再逐个查询数据库
+    private static volatile boolean loaded;
+
+    private CabinInventory() {
+    }
+
+    /**
+     * 获取航班各舱余票，航班没有计数时返回null
+     */
+    public static Availability get(String flightId) {
+        if (flightId == null) {
+            return null;
+        }
+        Availability availability = CACHE.get(flightId);
+        if (availability == null && !loaded) {
+            availability = refresh(flightId);
+        }
+        return availability;
+    }
+
+    /**
+     * 获取航班某舱位的余票，没有计数时返回-1
+     */
+    public static int seatsLeft(String flightId, CabinClass cabin) {
+        Availability availability = get(flightId);
+        return availability == null ? -1 : availability.available(cabin);
+    }
+
+    /**
+     * 在写事务中扣减一个座位，舱位已售完或航班不可订时返回false
+     */
+    static boolean reserve(Connection conn, String flightId, CabinClass cabin) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(RESERVE_SQL)) {
+            stmt.setString(1, flightId);
+            stmt.setString(2, cabin.code);
+            stmt.setString(3, flightId);
+            if (stmt.executeUpdate() == 0) {
+                return false;
+            }
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(FLIGHT_DECREMENT_SQL)) {
+            stmt.setString(1, flightId);
+            stmt.executeUpdate();
+        }
+        return true;
+    }
+
+    /**
+     * 在写事务中归还一个座位（退票、改签后原航班），计数已满时不再增加
+     */
+    static boolean release(Connection conn, String flightId, CabinClass cabin) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(RELEASE_SQL)) {
+            stmt.setString(1, flightId);
+            stmt.setString(2, cabin.code);
+            if (stmt.executeUpdate() == 0) {
+                return false;
+            }
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(FLIGHT_INCREMENT_SQL)) {
+            stmt.setString(1, flightId);
+            stmt.executeUpdate();
+        }
+        return true;
+    }
+
+    /**
+     * 在写事务中一次归还同一舱位的多个座位（批量退票），不超过舱位座位数，返回实际归还数
+     */
+    static int release(Connection conn, String flightId, CabinClass cabin, int count) throws SQLException {
+        if (count <= 0) {
+            return 0;
+        }
+        int released;
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_CABIN_SQL)) {
+            stmt.setString(1, flightId);
+            stmt.setString(2, cabin.code);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return 0;
+                }
+                released = Math.min(count, rs.getInt("total_seats") - rs.getInt("available_seats"));
+            }
+        }
+        if (released <= 0) {
+            return 0;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(RELEASE_MANY_SQL)) {
+            stmt.setInt(1, released);
+            stmt.setString(2, flightId);
+            stmt.setString(3, cabin.code);
+            stmt.executeUpdate();
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(FLIGHT_INCREMENT_MANY_SQL)) {
+            stmt.setInt(1, released);
+            stmt.setString(2, flightId);
+            stmt.executeUpdate();
+        }
+        return released;
+    }
+
+    /**
+     * 在写事务中归还订单占用的座位，返回订单的航班、舱位和座位号；订单不存在时返回null
+     */
+    static OrderSeat releaseOrder(Connection conn, String orderId) throws SQLException {
+        OrderSeat seat;
+        try (PreparedStatement stmt = conn.prepareStatement(ORDER_SEAT_SQL)) {
+            stmt.setString(1, orderId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                CabinClass cabin = CabinClass.fromCode(rs.getString("cabin_class"));
+                seat = new OrderSeat(rs.getString("flight_id"), cabin != null ? cabin : CabinClass.ECONOMY,
+                        rs.getString("seat_number"));
+            }
+        }
+        release(conn, seat.flightId, seat.cabin);
+        return seat;
+    }
+
+    /**
+     * 在写事务中为新航班建立计数，并使航班余票与计数一致
+     */
+    static void initialize(Connection conn, String flightId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SEED_FLIGHT_SQL)) {
+            stmt.setString(1, flightId);
+            stmt.executeUpdate();
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(SYNC_FLIGHT_SQL)) {
+            stmt.setString(1, flightId);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * 在写事务中为一批新航班建立计数（航班ID -> 机型配置）；新航班没有订单，余票即舱位座位数，不再逐个航班执行初始化查询
+     * 调用方写入 flights.available_seats 时应使用 CabinConfiguration.cabinSeats()
+     */
+    static void initializeAll(Connection conn, Map<String, AircraftCabinCache.CabinConfiguration> flights)
+            throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+            for (Map.Entry<String, AircraftCabinCache.CabinConfiguration> entry : flights.entrySet()) {
+                AircraftCabinCache.CabinConfiguration config = entry.getValue();
+                for (CabinClass cabin : CabinClass.values()) {
+                    int seats = cabin.seatCount(config);
+                    stmt.setString(1, entry.getKey());
+                    stmt.setString(2, cabin.code);
+                    stmt.setInt(3, seats);
+                    stmt.setInt(4, seats);
+                    stmt.addBatch();
+                }
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * 从数据库重新读取单个航班的计数（写事务提交后调用）
+     */
+    public static Availability refresh(String flightId) {
+        Availability availability = null;
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SELECT_FLIGHT_SQL)) {
+            stmt.setString(1, flightId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (availability == null) {
+                        availability = new Availability(flightId);
+                    }
+                    availability.set(rs);
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("读取舱位余票失败: " + e.getMessage());
+            return CACHE.get(flightId);
+        }
+        if (availability != null) {
+            CACHE.put(flightId, availability);
+        } else {
+            CACHE.remove(flightId);
+        }
+        return availability;
+    }
+
+    /**
+     * 全量加载所有航班的计数
+     */
+    public static synchronized boolean reload() {
+        Map<String, Availability> all = new ConcurrentHashMap<>();
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SELECT_ALL_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                all.computeIfAbsent(rs.getString("flight_id"), Availability::new).set(rs);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("加载舱位余票失败: " + e.getMessage());
+            return false;
+        }
+        CACHE.clear();
+        CACHE.putAll(all);
+        loaded = true;
+        return true;
+    }
+
+    /**
+     * 直接装入计数（压测用，不访问数据库）
+     */
+    static synchronized void preload(Map<String, Availability> all) {
+        CACHE.clear();
+        CACHE.putAll(all);
+        loaded = true;
+    }
+
+    /**
+     * 订单占用的座位
+     */
+    public static class OrderSeat {
+        public final String flightId;
+        public final CabinClass cabin;
+        public final String seatNumber;
+
+        public OrderSeat(String flightId, CabinClass cabin, String seatNumber) {
+            this.flightId = flightId;
+            this.cabin = cabin;
+            this.seatNumber = seatNumber;
+        }
+    }
+
+    /**
+     * 航班各舱位的余票和座位数（按 CabinClass 顺序）
+     */
+    public static class Availability {
+        public final String flightId;
+        private final int[] available = new int[CabinClass.values().length];
+        private final int[] total = new int[CabinClass.values().length];
+
+        public Availability(String flightId) {
+            this.flightId = flightId;
+        }
+
+        public int available(CabinClass cabin) {
+            return available[cabin.ordinal()];
+        }
+
+        public int total(CabinClass cabin) {
+            return total[cabin.ordinal()];
+        }
+
+        public int totalAvailable() {
+            int sum = 0;
+            for (int seats : available) {
+                sum += seats;
+            }
+            return sum;
+        }
+
+        void set(CabinClass cabin, int availableSeats, int totalSeats) {
+            available[cabin.ordinal()] = availableSeats;
+            total[cabin.ordinal()] = totalSeats;
+        }
+
+        private void set(ResultSet rs) throws SQLException {
+            CabinClass cabin = CabinClass.fromCode(rs.getString("cabin_class"));
+            if (cabin != null) {
+                set(cabin, rs.getInt("available_seats"), rs.getInt("total_seats"));
+            }
+        }
+    }
+}
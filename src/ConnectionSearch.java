@@ -0,0 +1,472 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 中转航班查询 - 在内存航线图上查找直飞、1次和2次中转的行程
+ * 机场为节点、航班为边，每个机场的出港航班按起飞时间排序，中转时用二分查找定位
+ * 满足最短中转时间的后续航班；结果按总耗时或总票价取前K个，搜索过程中按当前第K名剪枝
+ * 航班新增/变更后调用 invalidate()，下次查询时重新加载；余票不取航线图中的快照，
+ * 而是查询时读 CabinInventory 的内存计数（订票、退票、改签提交后即刷新），已售完的航班不会出现在结果中
+ */
+public class ConnectionSearch {
+    private static final int MIN_CONNECTION_MINUTES = Integer.getInteger("airplane.search.minConnectionMinutes", 60);
+    private static final int MAX_LAYOVER_MINUTES = Integer.getInteger("airplane.search.maxLayoverMinutes", 720);
+    private static final int MAX_STOPS = 2;
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final String SELECT_SQL =
+            "SELECT f.*, a.aircraft_type, a.total_seats " +
+            "FROM flights f " +
+            "JOIN aircraft a ON f.aircraft_id = a.aircraft_id " +
+            "WHERE f.status IN ('scheduled', 'delayed') " +
+            "ORDER BY f.departure_time";
+
+    private static volatile Graph graph;
+
+    private ConnectionSearch() {
+    }
+
+    /**
+     * 排序方式
+     */
+    public enum Sort { DURATION, PRICE }
+
+    /**
+     * 查询某日出发的行程（含直飞），按总耗时排序
+     */
+    public static List<Itinerary> search(String departureAirport, String arrivalAirport, String date, int limit) {
+        return search(departureAirport, arrivalAirport, date, MAX_STOPS, limit, Sort.DURATION);
+    }
+
+    /**
+     * 查询某日出发的中转行程（不含直飞，直飞方案由航班查询单独列出），按总耗时排序
+     */
+    public static List<Itinerary> searchConnections(String departureAirport, String arrivalAirport, String date,
+                                                    int limit) {
+        return search(departureAirport, arrivalAirport, date, 1, MAX_STOPS, limit, Sort.DURATION);
+    }
+
+    /**
+     * 查询某日出发的行程
+     * @param maxStops 最多中转次数（0~2）
+     * @param limit 返回的行程数
+     */
+    public static List<Itinerary> search(String departureAirport, String arrivalAirport, String date,
+                                         int maxStops, int limit, Sort sort) {
+        return search(departureAirport, arrivalAirport, date, 0, maxStops, limit, sort);
+    }
+
+    /**
+     * @param minStops 最少中转次数，中转次数更少的行程不计入前K名
+     */
+    private static List<Itinerary> search(String departureAirport, String arrivalAirport, String date,
+                                          int minStops, int maxStops, int limit, Sort sort) {
+        long dayStart;
+        try {
+            dayStart = LocalDate.parse(date).atStartOfDay().toEpochSecond(ZoneOffset.UTC) / 60;
+        } catch (DateTimeParseException e) {
+            System.err.println("日期格式错误: " + date);
+            return Collections.emptyList();
+        }
+        Graph current = ensureLoaded();
+        if (current == null || limit <= 0 || departureAirport.equals(arrivalAirport)) {
+            return Collections.emptyList();
+        }
+
+        Comparator<Itinerary> order = sort == Sort.PRICE ? BY_PRICE : BY_DURATION;
+        Search search = new Search(current, arrivalAirport, minStops, Math.min(maxStops, MAX_STOPS), limit, order,
+                sort);
+        Leg[] path = new Leg[MAX_STOPS + 1];
+        Departures origin = current.departures.get(departureAirport);
+        if (origin != null) {
+            for (int i = origin.firstAtOrAfter(dayStart); i < origin.legs.length; i++) {
+                Leg first = origin.legs[i];
+                if (first.departure >= dayStart + 24 * 60) {
+                    break;
+                }
+                if (hasSeats(first.flight)) {
+                    path[0] = first;
+                    search.extend(path, 1, first.departure, first.flight.basePrice);
+                }
+            }
+        }
+
+        List<Itinerary> results = new ArrayList<>(search.best);
+        results.sort(order);
+        return results;
+    }
+
+    /**
+     * 当前是否有余票：优先用分舱位余票计数，没有计数的航班用构建航线图时的余票
+     */
+    static boolean hasSeats(FlightQueryModule.FlightInfo flight) {
+        CabinInventory.Availability availability = CabinInventory.get(flight.flightId);
+        return availability != null ? availability.totalAvailable() > 0 : flight.availableSeats > 0;
+    }
+
+    /**
+     * 航班数据变更后调用，下次查询时重新构建航线图
+     */
+    public static void invalidate() {
+        graph = null;
+    }
+
+    /**
+     * 从数据库重新构建航线图
+     */
+    public static synchronized boolean reload() {
+        // 余票计数一次性加载，查询时不再逐个航班访问数据库
+        CabinInventory.reload();
+        List<FlightQueryModule.FlightInfo> flights = new ArrayList<>();
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SELECT_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                flights.add(FlightQueryModule.DatabaseManager.mapFlight(rs));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("构建航线图失败: " + e.getMessage());
+            return false;
+        }
+        graph = build(flights);
+        return true;
+    }
+
+    private static Graph ensureLoaded() {
+        Graph current = graph;
+        if (current == null) {
+            synchronized (ConnectionSearch.class) {
+                if (graph == null) {
+                    reload();
+                }
+                current = graph;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 由航班列表构建航线图（时间无法解析或到达早于起飞的航班被忽略）
+     */
+    static Graph build(List<FlightQueryModule.FlightInfo> flights) {
+        Map<String, List<Leg>> byAirport = new HashMap<>();
+        for (FlightQueryModule.FlightInfo flight : flights) {
+            long departure = toEpochMinutes(flight.departureTime);
+            long arrival = toEpochMinutes(flight.arrivalTime);
+            if (departure < 0 || arrival < departure) {
+                continue;
+            }
+            byAirport.computeIfAbsent(flight.departureAirport, _ -> new ArrayList<>())
+                    .add(new Leg(flight, departure, arrival));
+        }
+
+        Map<String, Departures> departures = new HashMap<>();
+        for (Map.Entry<String, List<Leg>> entry : byAirport.entrySet()) {
+            Leg[] legs = entry.getValue().toArray(new Leg[0]);
+            Arrays.sort(legs, Comparator.comparingLong(leg -> leg.departure));
+            departures.put(entry.getKey(), new Departures(legs));
+        }
+        return new Graph(departures);
+    }
+
+    /**
+     * 直接替换航线图（压测用）
+     */
+    static void preload(Graph prebuilt) {
+        graph = prebuilt;
+    }
+
+    private static long toEpochMinutes(String time) {
+        if (time == null) {
+            return -1;
+        }
+        try {
+            return LocalDateTime.parse(time, TIME_FORMAT).toEpochSecond(ZoneOffset.UTC) / 60;
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private static final Comparator<Itinerary> BY_DURATION = Comparator
+            .comparingLong((Itinerary itinerary) -> itinerary.totalMinutes)
+            .thenComparingDouble(itinerary -> itinerary.totalPrice)
+            .thenComparingInt(itinerary -> itinerary.legs.size());
+    private static final Comparator<Itinerary> BY_PRICE = Comparator
+            .comparingDouble((Itinerary itinerary) -> itinerary.totalPrice)
+            .thenComparingLong(itinerary -> itinerary.totalMinutes)
+            .thenComparingInt(itinerary -> itinerary.legs.size());
+
+    /**
+     * 一次查询的状态：深度优先扩展行程，best 保留当前最优的K个（堆顶为第K名）
+     */
+    private static class Search {
+        final Graph graph;
+        final String destination;
+        final int minStops;
+        final int maxStops;
+        final int limit;
+        final Sort sort;
+        final PriorityQueue<Itinerary> best;
+
+        Search(Graph graph, String destination, int minStops, int maxStops, int limit, Comparator<Itinerary> order,
+               Sort sort) {
+            this.graph = graph;
+            this.destination = destination;
+            this.minStops = minStops;
+            this.maxStops = maxStops;
+            this.limit = limit;
+            this.sort = sort;
+            this.best = new PriorityQueue<>(limit + 1, order.reversed());
+        }
+
+        void extend(Leg[] path, int depth, long start, double price) {
+            Leg last = path[depth - 1];
+            // 耗时和票价只增不减，已经不可能进入前K名的分支直接放弃
+            if (isPruned(last.arrival - start, price)) {
+                return;
+            }
+            if (last.flight.arrivalAirport.equals(destination)) {
+                if (depth - 1 >= minStops) {
+                    offer(new Itinerary(Arrays.asList(Arrays.copyOf(path, depth)), start, price));
+                }
+                return;
+            }
+            if (depth > maxStops) {
+                return;
+            }
+
+            Departures next = graph.departures.get(last.flight.arrivalAirport);
+            if (next == null) {
+                return;
+            }
+            long earliest = last.arrival + MIN_CONNECTION_MINUTES;
+            long latest = last.arrival + MAX_LAYOVER_MINUTES;
+            for (int i = next.firstAtOrAfter(earliest); i < next.legs.length; i++) {
+                Leg leg = next.legs[i];
+                if (leg.departure > latest) {
+                    break;
+                }
+                if (!hasSeats(leg.flight) || visits(path, depth, leg.flight.arrivalAirport)) {
+                    continue;
+                }
+                path[depth] = leg;
+                extend(path, depth + 1, start, price + leg.flight.basePrice);
+            }
+        }
+
+        boolean isPruned(long minutes, double price) {
+            if (best.size() < limit) {
+                return false;
+            }
+            Itinerary worst = best.peek();
+            return sort == Sort.PRICE ? price > worst.totalPrice : minutes > worst.totalMinutes;
+        }
+
+        void offer(Itinerary itinerary) {
+            best.add(itinerary);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+
+        /**
+         * 行程不重复经过同一机场
+         */
+        static boolean visits(Leg[] path, int depth, String airport) {
+            if (path[0].flight.departureAirport.equals(airport)) {
+                return true;
+            }
+            for (int i = 0; i < depth; i++) {
+                if (path[i].flight.arrivalAirport.equals(airport)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 航线图：机场代码 -> 出港航班（只读）
+     */
+    static class Graph {
+        final Map<String, Departures> departures;
+
+        Graph(Map<String, Departures> departures) {
+            this.departures = departures;
+        }
+    }
+
+    /**
+     * 某机场的出港航班，按起飞时间排序
+     */
+    static class Departures {
+        final Leg[] legs;
+        final long[] departureTimes;
+
+        Departures(Leg[] legs) {
+            this.legs = legs;
+            this.departureTimes = new long[legs.length];
+            for (int i = 0; i < legs.length; i++) {
+                departureTimes[i] = legs[i].departure;
+            }
+        }
+
+        /**
+         * 第一个起飞时间不早于 time 的航班下标
+         */
+        int firstAtOrAfter(long time) {
+            int low = 0;
+            int high = departureTimes.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (departureTimes[mid] < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * 航段：航班及其起飞/到达时间（分钟）
+     */
+    static class Leg {
+        final FlightQueryModule.FlightInfo flight;
+        final long departure;
+        final long arrival;
+
+        Leg(FlightQueryModule.FlightInfo flight, long departure, long arrival) {
+            this.flight = flight;
+            this.departure = departure;
+            this.arrival = arrival;
+        }
+    }
+
+    /**
+     * 行程：一个或多个航段
+     */
+    public static class Itinerary {
+        public final List<FlightQueryModule.FlightInfo> legs;
+        public final long totalMinutes;
+        public final double totalPrice;
+
+        Itinerary(List<Leg> path, long start, double totalPrice) {
+            List<FlightQueryModule.FlightInfo> flights = new ArrayList<>(path.size());
+            for (Leg leg : path) {
+                flights.add(leg.flight);
+            }
+            this.legs = Collections.unmodifiableList(flights);
+            this.totalMinutes = path.get(path.size() - 1).arrival - start;
+            this.totalPrice = totalPrice;
+        }
+
+        public int stops() {
+            return legs.size() - 1;
+        }
+
+        /**
+         * 经停机场，如 "CAN"、"CAN/CTU"
+         */
+        public String via() {
+            StringBuilder via = new StringBuilder();
+            for (int i = 0; i < legs.size() - 1; i++) {
+                if (via.length() > 0) {
+                    via.append("/");
+                }
+                via.append(legs.get(i).arrivalAirport);
+            }
+            return via.toString();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append(stops() == 0 ? "直飞" : stops() + "次中转(经" + via() + ")")
+                    .append(String.format(" 总耗时%d小时%02d分 总价¥%.0f", totalMinutes / 60, totalMinutes % 60, totalPrice));
+            for (FlightQueryModule.FlightInfo flight : legs) {
+                text.append("\n  ").append(flight.flightNumber).append(" ")
+                        .append(flight.departureAirport).append(" ").append(flight.departureTime.substring(11, 16))
+                        .append(" → ")
+                        .append(flight.arrivalAirport).append(" ").append(flight.arrivalTime.substring(11, 16));
+            }
+            return text.toString();
+        }
+    }
+
+    /**
+     * 查询压测：随机生成航班网络，统计中转查询耗时
+     * java ConnectionSearch [机场数] [每机场每日航班数] [天数]
+     */
+    public static void main(String[] args) {
+        int airports = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        int perDay = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+        int days = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LocalDate firstDay = LocalDate.of(2025, 7, 1);
+        List<FlightQueryModule.FlightInfo> flights = new ArrayList<>();
+        for (int day = 0; day < days; day++) {
+            LocalDateTime midnight = firstDay.plusDays(day).atStartOfDay();
+            for (int a = 0; a < airports; a++) {
+                for (int n = 0; n < perDay; n++) {
+                    int b = random.nextInt(airports - 1);
+                    LocalDateTime departure = midnight.plusMinutes(360 + random.nextInt(16 * 60));
+                    FlightQueryModule.FlightInfo flight = new FlightQueryModule.FlightInfo();
+                    flight.flightId = "FL" + flights.size();
+                    flight.flightNumber = "DM" + flights.size();
+                    flight.departureAirport = "A" + a;
+                    flight.arrivalAirport = "A" + (b >= a ? b + 1 : b);
+                    flight.departureTime = departure.format(TIME_FORMAT);
+                    flight.arrivalTime = departure.plusMinutes(60 + random.nextInt(240)).format(TIME_FORMAT);
+                    flight.basePrice = 300 + random.nextInt(1500);
+                    flight.availableSeats = 1 + random.nextInt(150);
+                    flights.add(flight);
+                }
+            }
+        }
+
+        long buildStart = System.nanoTime();
+        // 压测航班没有分舱位计数，按航线图中的余票判断
+        CabinInventory.preload(new HashMap<>());
+        preload(build(flights));
+        System.out.printf("%d 个航班，构建航线图耗时 %.1f 毫秒%n", flights.size(), (System.nanoTime() - buildStart) / 1e6);
+
+        int queries = 2000;
+        long found = 0;
+        long start = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+            int from = random.nextInt(airports);
+            int to = random.nextInt(airports - 1);
+            String date = firstDay.plusDays(random.nextInt(days)).toString();
+            found += search("A" + from, "A" + (to >= from ? to + 1 : to), date, MAX_STOPS, 10,
+                    q % 2 == 0 ? Sort.DURATION : Sort.PRICE).size();
+        }
+        double millis = (System.nanoTime() - start) / 1e6;
+        System.out.printf("%d 次查询，平均 %.3f 毫秒/次，平均返回 %.1f 个行程%n", queries, millis / queries, (double) found / queries);
+
+        List<Itinerary> sample = search("A0", "A1", firstDay.toString(), 3);
+        for (Itinerary itinerary : sample) {
+            System.out.println(itinerary);
+        }
+    }
+}
@@ -0,0 +1,518 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 数据库连接池 - 所有模块共享的SQLite连接层
+ * 有界连接池 + 每个连接的预编译语句缓存 + 连接池指标
+ * 池中连接均为只读连接，所有写操作通过 DatabaseWriter 的单写线程执行
+ */
+public class DatabaseConnectionPool {
+    // 数据库文件（压测等工具可指向临时副本）
+    private static final String DB_URL =
+            "jdbc:sqlite:" + System.getProperty("airplane.db.file", "airplane_system.db");
+
+    // 连接池大小和借用超时（可通过系统属性调整）
+    private static final int MAX_POOL_SIZE = Integer.getInteger("airplane.db.poolSize", 8);
+    private static final long BORROW_TIMEOUT_MS = Long.getLong("airplane.db.borrowTimeoutMs", 5000L);
+    // 每个物理连接缓存的预编译语句数量
+    private static final int STATEMENT_CACHE_SIZE = 64;
+
+    /**
+     * 存储模式：WAL（默认，读写互不阻塞）或传统回滚日志
+     */
+    public enum StorageMode { WAL, ROLLBACK }
+
+    private static final StorageMode STORAGE_MODE =
+            "rollback".equalsIgnoreCase(System.getProperty("airplane.db.mode")) ? StorageMode.ROLLBACK : StorageMode.WAL;
+    private static final int BUSY_TIMEOUT_MS = Integer.getInteger("airplane.db.busyTimeoutMs", 5000);
+    private static final long MMAP_SIZE = Long.getLong("airplane.db.mmapSize", 256L * 1024 * 1024);
+    private static volatile boolean storageInitialized;
+
+    private static final BlockingQueue<PooledConnection> IDLE = new LinkedBlockingQueue<>();
+    private static final Semaphore PERMITS = new Semaphore(MAX_POOL_SIZE, true);
+
+    // 连接池指标
+    private static final AtomicInteger ACTIVE = new AtomicInteger();
+    private static final LongAdder BORROW_COUNT = new LongAdder();
+    private static final LongAdder WAIT_COUNT = new LongAdder();
+    private static final LongAdder TIMEOUT_COUNT = new LongAdder();
+    private static final LongAdder CREATED_COUNT = new LongAdder();
+    private static final LongAdder TOTAL_BORROW_NANOS = new LongAdder();
+    private static final AtomicLong MAX_BORROW_NANOS = new AtomicLong();
+    private static final LongAdder STATEMENT_HITS = new LongAdder();
+    private static final LongAdder STATEMENT_MISSES = new LongAdder();
+
+    static {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            System.err.println("SQLite JDBC Driver not found.");
+            e.printStackTrace();
+        }
+    }
+
+    private DatabaseConnectionPool() {
+    }
+
+    /**
+     * 从连接池借用连接，调用close()即归还连接池
+     */
+    public static Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        initializeStorage();
+
+        if (!PERMITS.tryAcquire()) {
+            // 连接池已满，需要等待其他线程归还
+            WAIT_COUNT.increment();
+            boolean acquired;
+            try {
+                acquired = PERMITS.tryAcquire(BORROW_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("等待数据库连接时被中断", e);
+            }
+            if (!acquired) {
+                TIMEOUT_COUNT.increment();
+                throw new SQLException("获取数据库连接超时（" + BORROW_TIMEOUT_MS + "ms）");
+            }
+        }
+
+        PooledConnection pooled;
+        try {
+            pooled = takeIdleOrCreate();
+        } catch (SQLException e) {
+            PERMITS.release();
+            throw e;
+        }
+
+        ACTIVE.incrementAndGet();
+        long elapsed = System.nanoTime() - start;
+        BORROW_COUNT.increment();
+        TOTAL_BORROW_NANOS.add(elapsed);
+        MAX_BORROW_NANOS.accumulateAndGet(elapsed, Math::max);
+
+        return pooled.borrow();
+    }
+
+    /**
+     * 取出空闲连接，没有可用连接时新建物理连接
+     */
+    private static PooledConnection takeIdleOrCreate() throws SQLException {
+        PooledConnection pooled;
+        while ((pooled = IDLE.poll()) != null) {
+            if (pooled.isUsable()) {
+                return pooled;
+            }
+            pooled.closePhysical();
+        }
+        Connection physical = openPhysical(true);
+        CREATED_COUNT.increment();
+        return new PooledConnection(physical, false);
+    }
+
+    /**
+     * 首次使用时设置日志模式（journal_mode会持久化到数据库文件）并执行结构升级
+     */
+    private static void initializeStorage() throws SQLException {
+        if (storageInitialized) {
+            return;
+        }
+        synchronized (DatabaseConnectionPool.class) {
+            if (storageInitialized) {
+                return;
+            }
+            try (Connection conn = DriverManager.getConnection(DB_URL);
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MS);
+                stmt.execute("PRAGMA journal_mode = " + (STORAGE_MODE == StorageMode.WAL ? "WAL" : "DELETE"));
+                DatabaseSchema.migrate(conn);
+            }
+            storageInitialized = true;
+        }
+    }
+
+    /**
+     * 打开物理连接并设置连接级PRAGMA
+     */
+    private static Connection openPhysical(boolean readOnly) throws SQLException {
+        Connection conn = DriverManager.getConnection(DB_URL);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MS);
+            stmt.execute("PRAGMA mmap_size = " + MMAP_SIZE);
+            if (readOnly) {
+                // 读连接禁止写入，避免绕过单写线程
+                stmt.execute("PRAGMA query_only = ON");
+            } else {
+                // WAL模式下NORMAL同步级别已能保证一致性
+                stmt.execute("PRAGMA synchronous = " + (STORAGE_MODE == StorageMode.WAL ? "NORMAL" : "FULL"));
+            }
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        return conn;
+    }
+
+    /**
+     * 打开不属于连接池的专用写连接（供 DatabaseWriter 使用），close()不生效
+     */
+    static Connection openWriteConnection() throws SQLException {
+        initializeStorage();
+        return new PooledConnection(openPhysical(false), true).borrow();
+    }
+
+    /**
+     * 当前存储模式
+     */
+    public static StorageMode getStorageMode() {
+        return STORAGE_MODE;
+    }
+
+    /**
+     * 连接归还：回滚未提交的事务并放回空闲队列
+     */
+    private static void release(PooledConnection pooled) {
+        try {
+            if (pooled.isUsable()) {
+                pooled.reset();
+                IDLE.offer(pooled);
+            } else {
+                pooled.closePhysical();
+            }
+        } catch (SQLException e) {
+            System.err.println("归还数据库连接失败: " + e.getMessage());
+            pooled.closePhysical();
+        } finally {
+            ACTIVE.decrementAndGet();
+            PERMITS.release();
+        }
+    }
+
+    /**
+     * 关闭所有空闲连接（程序退出时调用）
+     */
+    public static void shutdown() {
+        PooledConnection pooled;
+        while ((pooled = IDLE.poll()) != null) {
+            pooled.closePhysical();
+        }
+    }
+
+    /**
+     * 获取连接池指标快照
+     */
+    public static PoolStats getStats() {
+        PoolStats stats = new PoolStats();
+        stats.maxPoolSize = MAX_POOL_SIZE;
+        stats.activeConnections = ACTIVE.get();
+        stats.idleConnections = IDLE.size();
+        stats.borrowCount = BORROW_COUNT.sum();
+        stats.waitCount = WAIT_COUNT.sum();
+        stats.timeoutCount = TIMEOUT_COUNT.sum();
+        stats.createdConnections = CREATED_COUNT.sum();
+        stats.averageBorrowMicros = stats.borrowCount == 0 ? 0 :
+                TOTAL_BORROW_NANOS.sum() / 1000.0 / stats.borrowCount;
+        stats.maxBorrowMicros = MAX_BORROW_NANOS.get() / 1000.0;
+        stats.statementCacheHits = STATEMENT_HITS.sum();
+        stats.statementCacheMisses = STATEMENT_MISSES.sum();
+        return stats;
+    }
+
+    /**
+     * 连接池指标
+     */
+    public static class PoolStats {
+        public int maxPoolSize;
+        public int activeConnections;
+        public int idleConnections;
+        public long borrowCount;
+        public long waitCount;
+        public long timeoutCount;
+        public long createdConnections;
+        public double averageBorrowMicros;
+        public double maxBorrowMicros;
+        public long statementCacheHits;
+        public long statementCacheMisses;
+
+        @Override
+        public String toString() {
+            return String.format("连接池[活动:%d 空闲:%d 上限:%d 借用:%d 等待:%d 超时:%d 新建:%d " +
+                            "平均借用:%.1fμs 最大借用:%.1fμs 语句缓存命中:%d 未命中:%d]",
+                    activeConnections, idleConnections, maxPoolSize, borrowCount, waitCount,
+                    timeoutCount, createdConnections, averageBorrowMicros, maxBorrowMicros,
+                    statementCacheHits, statementCacheMisses);
+        }
+    }
+
+    /**
+     * 池化的物理连接，持有该连接的预编译语句缓存
+     */
+    private static class PooledConnection {
+        private final Connection physical;
+        private final boolean dedicated;
+        private final Map<String, CachedStatement> statementCache;
+
+        PooledConnection(Connection physical, boolean dedicated) {
+            this.physical = physical;
+            this.dedicated = dedicated;
+            // LRU缓存，超出容量时关闭最久未使用的语句
+            this.statementCache = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                    if (size() > STATEMENT_CACHE_SIZE) {
+                        eldest.getValue().closePhysical();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        Connection borrow() {
+            return (Connection) Proxy.newProxyInstance(
+                    DatabaseConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new ConnectionHandler(this));
+        }
+
+        PreparedStatement prepare(String sql, Connection owner) throws SQLException {
+            CachedStatement cached = statementCache.get(sql);
+            if (cached == null || cached.statement.isClosed()) {
+                STATEMENT_MISSES.increment();
+                cached = new CachedStatement(sql, physical.prepareStatement(sql));
+                statementCache.put(sql, cached);
+            } else {
+                STATEMENT_HITS.increment();
+            }
+            return cached.lease(owner);
+        }
+
+        boolean isUsable() {
+            try {
+                return !physical.isClosed();
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        void reset() throws SQLException {
+            for (CachedStatement cached : statementCache.values()) {
+                cached.release();
+                cached.closeFallbacks();
+            }
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+        }
+
+        void closePhysical() {
+            for (CachedStatement cached : statementCache.values()) {
+                cached.closePhysical();
+            }
+            statementCache.clear();
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                System.err.println("关闭数据库连接失败: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 借出连接的代理：close()归还连接池，prepareStatement(String)走语句缓存
+     */
+    private static class ConnectionHandler implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean closed;
+
+        ConnectionHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    if (pooled.dedicated) {
+                        // 专用写连接的生命周期由 DatabaseWriter 管理，忽略close()
+                        return null;
+                    }
+                    if (!closed) {
+                        closed = true;
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection@" + Integer.toHexString(System.identityHashCode(proxy));
+                case "unwrap":
+                    return pooled.physical.unwrap((Class<?>) args[0]);
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("连接已归还连接池");
+            }
+            if ("prepareStatement".equals(name) && args != null && args.length == 1) {
+                return pooled.prepare((String) args[0], (Connection) proxy);
+            }
+            try {
+                return method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * 缓存的预编译语句：逻辑关闭时只清理参数和结果集，物理语句保留复用
+     */
+    private static class CachedStatement {
+        private final String sql;
+        private final PreparedStatement statement;
+        private StatementLease currentLease;
+        // 同一SQL重入时借出的独立语句，调用方未关闭的在连接归还时关闭
+        private final List<PreparedStatement> fallbacks = new ArrayList<>();
+
+        CachedStatement(String sql, PreparedStatement statement) {
+            this.sql = sql;
+            this.statement = statement;
+        }
+
+        PreparedStatement lease(Connection owner) throws SQLException {
+            if (currentLease != null) {
+                // 同一连接上同时使用相同SQL，退回到不缓存的独立语句
+                pruneFallbacks();
+                PreparedStatement fallback = statement.getConnection().prepareStatement(sql);
+                fallbacks.add(fallback);
+                return fallback;
+            }
+            currentLease = new StatementLease(this, owner);
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    DatabaseConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    currentLease);
+        }
+
+        void release() throws SQLException {
+            StatementLease lease = currentLease;
+            if (lease == null) {
+                return;
+            }
+            currentLease = null;
+            lease.closed = true;
+            // 未关闭的结果集会一直占用SQLite读锁，这里统一关闭
+            if (lease.lastResultSet != null && !lease.lastResultSet.isClosed()) {
+                lease.lastResultSet.close();
+            }
+            if (!statement.isClosed()) {
+                statement.clearParameters();
+            }
+        }
+
+        void closeFallbacks() throws SQLException {
+            for (PreparedStatement fallback : fallbacks) {
+                if (!fallback.isClosed()) {
+                    fallback.close();
+                }
+            }
+            fallbacks.clear();
+        }
+
+        /**
+         * 去掉调用方已关闭的独立语句（专用写连接不归还连接池，不能只靠 reset 清理）
+         */
+        private void pruneFallbacks() throws SQLException {
+            Iterator<PreparedStatement> it = fallbacks.iterator();
+            while (it.hasNext()) {
+                if (it.next().isClosed()) {
+                    it.remove();
+                }
+            }
+        }
+
+        void closePhysical() {
+            try {
+                closeFallbacks();
+                statement.close();
+            } catch (SQLException e) {
+                System.err.println("关闭预编译语句失败: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 一次语句借用的代理，close()后该代理不可再用
+     */
+    private static class StatementLease implements InvocationHandler {
+        private final CachedStatement cached;
+        private final Connection owner;
+        private ResultSet lastResultSet;
+        private boolean closed;
+
+        StatementLease(CachedStatement cached, Connection owner) {
+            this.cached = cached;
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        cached.release();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || cached.statement.isClosed();
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("预编译语句已关闭");
+            }
+            try {
+                Object result = method.invoke(cached.statement, args);
+                if (result instanceof ResultSet) {
+                    lastResultSet = (ResultSet) result;
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 数据库结构升级 - 在首次连接时执行，所有语句均可重复执行
+ * 数据库记录已执行到的版本（PRAGMA user_version），同一版本只执行一次；修改 COLUMNS 或 MIGRATIONS 时 VERSION 加一
+ * 新增的索引、表需同步到 create_flight_tables.sql
+ */
+public class DatabaseSchema {
+    static final int VERSION = 1;
+
+    // 新增列：{表名, 列名, 列定义}，列不存在时 ALTER TABLE 添加（先于 MIGRATIONS 执行；
+    // 表尚不存在时跳过，由 MIGRATIONS 中的建表语句直接带上该列）
+    private static final String[][] COLUMNS = {
+        {"orders", "cabin_class", "TEXT"},
+        {"order_changes", "change_fee", "DECIMAL(10,2) DEFAULT 0"},
+        {"flights", "pattern_id", "TEXT"}
+    };
+
+    private static final String[] MIGRATIONS = {
+        // 航线+起飞时间复合索引：按航线精确匹配并按起飞时间范围查询
+        "CREATE INDEX IF NOT EXISTS idx_flights_route_time ON flights(departure_airport, arrival_airport, departure_time)",
+        // 订单键集分页：按 (booking_time, order_id) 倒序翻页
+        "CREATE INDEX IF NOT EXISTS idx_orders_booking ON orders(booking_time, order_id)",
+        "CREATE INDEX IF NOT EXISTS idx_orders_user_booking ON orders(user_id, booking_time, order_id)",
+        // 订单组合查询（OrderSearch）：各过滤条件 + 下单时间排序
+        "CREATE INDEX IF NOT EXISTS idx_orders_user_payment_booking ON orders(user_id, payment_status, booking_time, order_id)",
+        "CREATE INDEX IF NOT EXISTS idx_orders_payment_booking ON orders(payment_status, booking_time, order_id)",
+        "CREATE INDEX IF NOT EXISTS idx_orders_status_booking ON orders(order_status, booking_time, order_id)",
+        "CREATE INDEX IF NOT EXISTS idx_orders_flight_booking ON orders(flight_id, booking_time, order_id)",
+        "CREATE INDEX IF NOT EXISTS idx_orders_passenger_booking ON orders(passenger_id, booking_time, order_id)",
+        // 分舱位余票：历史订单按座位号前缀补全舱位，再按机型配置初始化各航班计数
+        "CREATE TABLE IF NOT EXISTS flight_cabin_inventory (" +
+            "flight_id TEXT NOT NULL, cabin_class TEXT NOT NULL, " +
+            "total_seats INTEGER NOT NULL, available_seats INTEGER NOT NULL, " +
+            "PRIMARY KEY (flight_id, cabin_class), " +
+            "FOREIGN KEY (flight_id) REFERENCES flights(flight_id))",
+        "UPDATE orders SET cabin_class = CASE WHEN seat_number LIKE 'F%' THEN 'first' " +
+            "WHEN seat_number LIKE 'B%' THEN 'business' ELSE 'economy' END WHERE cabin_class IS NULL",
+        CabinInventory.SEED_SQL,
+        CabinInventory.SYNC_FLIGHTS_SQL,
+        // 改签记录（RescheduleEngine）
+        "CREATE TABLE IF NOT EXISTS order_changes (" +
+            "change_id TEXT PRIMARY KEY, order_id TEXT NOT NULL, " +
+            "from_flight_id TEXT NOT NULL, to_flight_id TEXT NOT NULL, " +
+            "from_cabin TEXT NOT NULL, to_cabin TEXT NOT NULL, " +
+            "old_price DECIMAL(10,2) NOT NULL, new_price DECIMAL(10,2) NOT NULL, " +
+            "fare_difference DECIMAL(10,2) NOT NULL, change_fee DECIMAL(10,2) DEFAULT 0, " +
+            "settlement_status TEXT DEFAULT 'pending', " +
+            "operator TEXT, change_time DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+            "FOREIGN KEY (order_id) REFERENCES orders(order_id))",
+        "CREATE INDEX IF NOT EXISTS idx_order_changes_order ON order_changes(order_id, change_time)",
+        // 航班取消批量退票作业及检查点（BulkRefundProcessor）
+        "CREATE TABLE IF NOT EXISTS refund_jobs (" +
+            "job_id TEXT PRIMARY KEY, flight_id TEXT NOT NULL, reason TEXT, operator TEXT, " +
+            "policy_time TEXT NOT NULL, status TEXT DEFAULT 'running', last_order_id TEXT DEFAULT '', " +
+            "total_orders INTEGER DEFAULT 0, processed_orders INTEGER DEFAULT 0, " +
+            "refunded_orders INTEGER DEFAULT 0, cancelled_orders INTEGER DEFAULT 0, " +
+            "rejected_orders INTEGER DEFAULT 0, refund_amount DECIMAL(10,2) DEFAULT 0, " +
+            "fee_amount DECIMAL(10,2) DEFAULT 0, last_error TEXT, " +
+            "created_time DATETIME DEFAULT CURRENT_TIMESTAMP, updated_time DATETIME, finished_time DATETIME, " +
+            "FOREIGN KEY (flight_id) REFERENCES flights(flight_id))",
+        // 同一航班同时只有一个未完成的作业
+        "CREATE UNIQUE INDEX IF NOT EXISTS idx_refund_jobs_open_flight ON refund_jobs(flight_id) " +
+            "WHERE status != 'completed'",
+        "CREATE INDEX IF NOT EXISTS idx_orders_flight_order ON orders(flight_id, order_id)",
+        // 退票/改签手续费分档（RefundRules），初始数据与原先写死的规则一致
+        "CREATE TABLE IF NOT EXISTS refund_rules (" +
+            "rule_id TEXT PRIMARY KEY, rule_type TEXT NOT NULL DEFAULT 'refund', cabin_class TEXT, " +
+            "departure_airport TEXT, arrival_airport TEXT, min_minutes_before INTEGER NOT NULL, " +
+            "fee_rate DECIMAL(5,4) DEFAULT 0, allowed INTEGER DEFAULT 1, description TEXT, " +
+            "status TEXT DEFAULT 'active')",
+        "INSERT OR IGNORE INTO refund_rules (rule_id, rule_type, min_minutes_before, fee_rate, allowed, description) " +
+            "VALUES ('REFUND_24H', 'refund', 1440, 0, 1, '起飞前24小时以上可全额退款'), " +
+            "('REFUND_2H', 'refund', 120, 0.2, 1, '起飞前2-24小时收取20%手续费'), " +
+            "('REFUND_CLOSED', 'refund', 0, 0, 0, '起飞前2小时内不可退票'), " +
+            "('CHANGE_FREE', 'change', 0, 0, 1, '起飞前可免费改签')",
+        // 通知发件箱（NotificationDispatcher），next_attempt_time 为毫秒时间戳
+        "CREATE TABLE IF NOT EXISTS notification_outbox (" +
+            "notification_id TEXT PRIMARY KEY, channel TEXT NOT NULL, recipient TEXT NOT NULL, " +
+            "event_type TEXT, content TEXT NOT NULL, status TEXT DEFAULT 'pending', attempts INTEGER DEFAULT 0, " +
+            "next_attempt_time INTEGER NOT NULL, last_error TEXT, " +
+            "created_time DATETIME DEFAULT CURRENT_TIMESTAMP, sent_time DATETIME)",
+        "CREATE INDEX IF NOT EXISTS idx_notification_outbox_due " +
+            "ON notification_outbox(status, channel, next_attempt_time)",
+        // 通知消息模板（MessageTemplates），初始数据与原先写死的模板一致
+        "CREATE TABLE IF NOT EXISTS message_templates (" +
+            "event_type TEXT PRIMARY KEY, content TEXT NOT NULL, status TEXT DEFAULT 'active', " +
+            "updated_time DATETIME DEFAULT CURRENT_TIMESTAMP)",
+        "INSERT OR IGNORE INTO message_templates (event_type, content) VALUES " +
+            "('支付成功', '尊敬的客户，您的订单{orderId}已支付成功，金额：{amount}元。'), " +
+            "('航班延误', '尊敬的旅客{passengerName}，您预订的航班{flightNo}将延误至{time}，请合理安排行程。'), " +
+            "('改签成功', '您的航班改签已完成，新航班号：{flightNo}，起飞时间：{time}。'), " +
+            "('退票成功', '您的订单{orderId}退票已完成，退款{amount}元将在3-5个工作日内到账。'), " +
+            "('航班时刻变更', '尊敬的旅客{passengerName}，您预订的航班{flightNo}起飞时间由{oldTime}调整为{time}，座位{seat}保持不变。'), " +
+            "('航班取消', '尊敬的旅客{passengerName}，您预订的航班{flightNo}（原定{oldTime}起飞）已取消，票款将原路退回。'), " +
+            "('航班状态变更', '尊敬的旅客{passengerName}，您预订的航班{flightNo}当前状态：{status}，座位{seat}。')",
+        // 周期航班计划（ScheduleGenerator），materialized_until 为已生成航班的最后日期
+        "CREATE TABLE IF NOT EXISTS schedule_patterns (" +
+            "pattern_id TEXT PRIMARY KEY, flight_number TEXT NOT NULL, aircraft_id TEXT NOT NULL, " +
+            "departure_airport TEXT NOT NULL, arrival_airport TEXT NOT NULL, departure_time TEXT NOT NULL, " +
+            "duration_minutes INTEGER NOT NULL, base_price DECIMAL(10,2) NOT NULL, " +
+            "days_of_week TEXT NOT NULL DEFAULT '1234567', start_date DATE NOT NULL, end_date DATE NOT NULL, " +
+            "gate TEXT, terminal TEXT, status TEXT DEFAULT 'active', version INTEGER DEFAULT 1, " +
+            "materialized_until DATE, created_time DATETIME DEFAULT CURRENT_TIMESTAMP, updated_time DATETIME)",
+        "CREATE INDEX IF NOT EXISTS idx_flights_pattern ON flights(pattern_id, departure_time)",
+        "CREATE INDEX IF NOT EXISTS idx_flights_number_departure ON flights(flight_number, departure_time)",
+        // 支付待核对（PaymentPipeline）：已扣款但订单未能标记为已支付
+        "CREATE TABLE IF NOT EXISTS payment_reconciliations (" +
+            "order_id TEXT PRIMARY KEY, amount DECIMAL(10,2) NOT NULL, payment_method TEXT, reason TEXT, " +
+            "status TEXT DEFAULT 'open', created_time DATETIME DEFAULT CURRENT_TIMESTAMP)"
+    };
+
+    private DatabaseSchema() {
+    }
+
+    /**
+     * 数据库版本低于 VERSION 时在给定连接上执行所有结构升级（含数据补全），并在同一事务中记录版本
+     */
+    static void migrate(Connection conn) throws SQLException {
+        if (currentVersion(conn) >= VERSION) {
+            return;
+        }
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            for (String[] column : COLUMNS) {
+                if (hasTable(conn, column[0]) && !hasColumn(conn, column[0], column[1])) {
+                    stmt.execute("ALTER TABLE " + column[0] + " ADD COLUMN " + column[1] + " " + column[2]);
+                }
+            }
+            for (String sql : MIGRATIONS) {
+                stmt.execute(sql);
+            }
+            stmt.execute("PRAGMA user_version = " + VERSION);
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static int currentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static boolean hasTable(Connection conn, String table) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?")) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static boolean hasColumn(Connection conn, String table, String column) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -68,5 +68,44 @@ public class DatabaseTest {
             System.err.println("✗ 数据库操作失败: " + e.getMessage());
             e.printStackTrace();
         }
+        
+        // 测试6: 订单组合查询走索引
+        testOrderSearchPlans();
+    }
+    
+    /**
+     * 检查各种订单查询条件的查询计划，orders表不能出现不走索引的全表扫描
+     */
+    private static void testOrderSearchPlans() {
+        java.util.Map<String, OrderSearch.Criteria> cases = new java.util.LinkedHashMap<>();
+        cases.put("全部订单", OrderSearch.criteria());
+        cases.put("用户", OrderSearch.criteria().user("user1"));
+        cases.put("用户+支付状态", OrderSearch.criteria().user("user1").paymentStatus("paid"));
+        cases.put("支付状态", OrderSearch.criteria().paymentStatus("pending"));
+        cases.put("订单状态", OrderSearch.criteria().orderStatus("active"));
+        cases.put("航班", OrderSearch.criteria().flight("FL001"));
+        cases.put("乘客证件号", OrderSearch.criteria().passengerId("110101199001011234"));
+        cases.put("下单时间范围", OrderSearch.criteria().bookedBetween("2025-01-01", "2025-02-01"));
+        
+        boolean allIndexed = true;
+        for (java.util.Map.Entry<String, OrderSearch.Criteria> entry : cases.entrySet()) {
+            try {
+                java.util.List<String> plan = OrderSearch.explain(entry.getValue());
+                boolean indexed = true;
+                for (String step : plan) {
+                    // SQLite 3.36+: "SCAN o USING INDEX ..." / "SEARCH o USING INDEX ..."；旧版本为 "SCAN TABLE orders AS o"
+                    boolean ordersStep = step.matches("(SCAN|SEARCH) (TABLE orders AS )?o\\b.*");
+                    if (ordersStep && !step.contains("USING")) {
+                        indexed = false;
+                    }
+                }
+                allIndexed &= indexed;
+                System.out.println((indexed ? "✓ " : "✗ ") + entry.getKey() + ": " + String.join(" | ", plan));
+            } catch (SQLException e) {
+                allIndexed = false;
+                System.err.println("✗ " + entry.getKey() + " 查询计划获取失败: " + e.getMessage());
+            }
+        }
+        System.out.println(allIndexed ? "✓ 所有订单查询均使用索引" : "✗ 存在未使用索引的订单查询");
     }
 }
@@ -0,0 +1,255 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 数据库单写线程 - 所有写操作排队到同一个专用写连接上顺序执行
+ * SQLite同一时刻只允许一个写事务，集中到一个线程后不再出现 SQLITE_BUSY，
+ * 读操作则在 DatabaseConnectionPool 的只读连接上并行执行
+ */
+public class DatabaseWriter {
+    private static final int QUEUE_CAPACITY = Integer.getInteger("airplane.db.writeQueueCapacity", 1024);
+    private static final long OFFER_TIMEOUT_MS = Long.getLong("airplane.db.writeOfferTimeoutMs", 5000L);
+
+    private static final BlockingQueue<WriteTask<?>> QUEUE = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final Thread WRITER_THREAD;
+
+    // 写队列指标
+    private static final LongAdder SUBMITTED = new LongAdder();
+    private static final LongAdder COMPLETED = new LongAdder();
+    private static final LongAdder FAILED = new LongAdder();
+    private static final LongAdder REJECTED = new LongAdder();
+    private static final LongAdder TOTAL_WAIT_NANOS = new LongAdder();
+    private static final LongAdder TOTAL_EXEC_NANOS = new LongAdder();
+    private static final AtomicLong MAX_EXEC_NANOS = new AtomicLong();
+
+    static {
+        WRITER_THREAD = new Thread(DatabaseWriter::runLoop, "db-writer");
+        WRITER_THREAD.setDaemon(true);
+        WRITER_THREAD.start();
+    }
+
+    private DatabaseWriter() {
+    }
+
+    /**
+     * 写操作：在专用写连接上执行，不要关闭传入的连接
+     */
+    @FunctionalInterface
+    public interface WriteOperation<T> {
+        T apply(Connection conn) throws SQLException;
+    }
+
+    /**
+     * 异步提交写操作（自动提交模式）
+     */
+    public static <T> CompletableFuture<T> submit(WriteOperation<T> operation) {
+        return enqueue(new WriteTask<>(operation, false));
+    }
+
+    /**
+     * 异步提交写操作，整个操作在一个事务内执行，异常时回滚
+     */
+    public static <T> CompletableFuture<T> submitInTransaction(WriteOperation<T> operation) {
+        return enqueue(new WriteTask<>(operation, true));
+    }
+
+    /**
+     * 同步执行写操作（自动提交模式）
+     */
+    public static <T> T execute(WriteOperation<T> operation) throws SQLException {
+        return await(new WriteTask<>(operation, false));
+    }
+
+    /**
+     * 同步执行事务写操作
+     */
+    public static <T> T executeInTransaction(WriteOperation<T> operation) throws SQLException {
+        return await(new WriteTask<>(operation, true));
+    }
+
+    /**
+     * 当前线程是否为写线程
+     */
+    public static boolean isWriterThread() {
+        return Thread.currentThread() == WRITER_THREAD;
+    }
+
+    private static <T> T await(WriteTask<T> task) throws SQLException {
+        if (isWriterThread()) {
+            // 写操作内部再次发起写操作时直接在当前连接上执行，避免自己等待自己
+            return invoke(task, WriterHolder.connection());
+        }
+        try {
+            return enqueue(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("等待写操作完成时被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            throw new SQLException("写操作执行失败: " + cause.getMessage(), cause);
+        }
+    }
+
+    private static <T> CompletableFuture<T> enqueue(WriteTask<T> task) {
+        if (isWriterThread()) {
+            try {
+                task.future.complete(invoke(task, WriterHolder.connection()));
+            } catch (SQLException | RuntimeException e) {
+                task.future.completeExceptionally(e);
+            }
+            return task.future;
+        }
+        SUBMITTED.increment();
+        try {
+            if (!QUEUE.offer(task, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                REJECTED.increment();
+                task.future.completeExceptionally(new SQLException("写队列已满（容量" + QUEUE_CAPACITY + "）"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.future.completeExceptionally(new SQLException("提交写操作时被中断", e));
+        }
+        return task.future;
+    }
+
+    /**
+     * 写线程主循环
+     */
+    private static void runLoop() {
+        while (true) {
+            WriteTask<?> task;
+            try {
+                task = QUEUE.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            run(task);
+        }
+    }
+
+    private static <T> void run(WriteTask<T> task) {
+        long start = System.nanoTime();
+        TOTAL_WAIT_NANOS.add(start - task.enqueuedAt);
+        Connection conn;
+        try {
+            conn = WriterHolder.connection();
+        } catch (SQLException e) {
+            FAILED.increment();
+            task.future.completeExceptionally(e);
+            return;
+        }
+
+        try {
+            T result = invoke(task, conn);
+            COMPLETED.increment();
+            task.future.complete(result);
+        } catch (SQLException | RuntimeException e) {
+            FAILED.increment();
+            task.future.completeExceptionally(e);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            TOTAL_EXEC_NANOS.add(elapsed);
+            MAX_EXEC_NANOS.accumulateAndGet(elapsed, Math::max);
+        }
+    }
+
+    /**
+     * 在写连接上执行任务；已处于外层事务中时直接并入外层事务
+     */
+    private static <T> T invoke(WriteTask<T> task, Connection conn) throws SQLException {
+        if (!task.transactional || !conn.getAutoCommit()) {
+            return task.operation.apply(conn);
+        }
+        conn.setAutoCommit(false);
+        try {
+            T result = task.operation.apply(conn);
+            conn.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * 获取写队列指标快照
+     */
+    public static WriterStats getStats() {
+        WriterStats stats = new WriterStats();
+        stats.queueDepth = QUEUE.size();
+        stats.queueCapacity = QUEUE_CAPACITY;
+        stats.submitted = SUBMITTED.sum();
+        stats.completed = COMPLETED.sum();
+        stats.failed = FAILED.sum();
+        stats.rejected = REJECTED.sum();
+        long finished = stats.completed + stats.failed;
+        stats.averageWaitMicros = finished == 0 ? 0 : TOTAL_WAIT_NANOS.sum() / 1000.0 / finished;
+        stats.averageExecMicros = finished == 0 ? 0 : TOTAL_EXEC_NANOS.sum() / 1000.0 / finished;
+        stats.maxExecMicros = MAX_EXEC_NANOS.get() / 1000.0;
+        return stats;
+    }
+
+    /**
+     * 写队列指标
+     */
+    public static class WriterStats {
+        public int queueDepth;
+        public int queueCapacity;
+        public long submitted;
+        public long completed;
+        public long failed;
+        public long rejected;
+        public double averageWaitMicros;
+        public double averageExecMicros;
+        public double maxExecMicros;
+
+        @Override
+        public String toString() {
+            return String.format("写队列[排队:%d/%d 提交:%d 完成:%d 失败:%d 拒绝:%d " +
+                            "平均等待:%.1fμs 平均执行:%.1fμs 最大执行:%.1fμs]",
+                    queueDepth, queueCapacity, submitted, completed, failed, rejected,
+                    averageWaitMicros, averageExecMicros, maxExecMicros);
+        }
+    }
+
+    /**
+     * 专用写连接，只在写线程上创建和使用
+     */
+    private static class WriterHolder {
+        private static Connection connection;
+
+        static Connection connection() throws SQLException {
+            if (connection == null || connection.isClosed()) {
+                connection = DatabaseConnectionPool.openWriteConnection();
+            }
+            return connection;
+        }
+    }
+
+    /**
+     * 排队中的写任务
+     */
+    private static class WriteTask<T> {
+        final WriteOperation<T> operation;
+        final boolean transactional;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final long enqueuedAt = System.nanoTime();
+
+        WriteTask(WriteOperation<T> operation, boolean transactional) {
+            this.operation = operation;
+            this.transactional = transactional;
+        }
+    }
+}
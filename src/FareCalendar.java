@@ -0,0 +1,370 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 低价日历 - 每条航线、每个舱位、每天的最低价和余票
+ * 全量构建时按航线拆分为 ForkJoin 任务并行计算；订票扣减座位后只重新计算该航班所在的那一天，
+ * 查询日历的每个格子都是数组下标访问，不再逐日调用 searchFlights
+ */
+public class FareCalendar {
+    private static final String SELECT_SQL =
+            "SELECT f.*, a.aircraft_type, a.total_seats " +
+            "FROM flights f " +
+            "JOIN aircraft a ON f.aircraft_id = a.aircraft_id " +
+            "WHERE f.status IN ('scheduled', 'delayed') " +
+            "ORDER BY f.departure_airport, f.arrival_airport, f.departure_time";
+
+    // 每个任务最多处理的航线数，超过时继续拆分
+    private static final int ROUTES_PER_TASK = 16;
+
+    private static final CabinClass[] CABINS = CabinClass.values();
+
+    // 航线键 "PEK-SHA" -> 航线日历
+    private static volatile Map<String, RouteCalendar> routes;
+    // 航班ID -> 所在的日期格子（订票后增量更新用）
+    private static volatile Map<String, Day> flightDays = new ConcurrentHashMap<>();
+
+    private FareCalendar() {
+    }
+
+    /**
+     * 获取以 centerDate 为中心前后 days 天的日历（共 2*days+1 格），日期不合法时返回空列表
+     * @param cabinClass 舱位显示名称（经济舱/商务舱/头等舱）
+     */
+    public static List<FareCell> getCalendar(String departureAirport, String arrivalAirport,
+                                             String centerDate, int days, String cabinClass) {
+        List<FareCell> cells = new ArrayList<>();
+        LocalDate center;
+        try {
+            center = LocalDate.parse(centerDate);
+        } catch (DateTimeParseException e) {
+            System.err.println("日期格式错误: " + centerDate);
+            return cells;
+        }
+        int cabin = CabinClass.fromDisplayName(cabinClass).ordinal();
+        RouteCalendar calendar = ensureLoaded().get(routeKey(departureAirport, arrivalAirport));
+
+        for (LocalDate date = center.minusDays(days); !date.isAfter(center.plusDays(days)); date = date.plusDays(1)) {
+            Day day = calendar == null ? null : calendar.dayOf(date);
+            FareCell cell = day == null ? null : day.cells[cabin];
+            cells.add(cell != null ? cell : new FareCell(date.toString(), 0, 0, 0));
+        }
+        return cells;
+    }
+
+    /**
+     * 航班余票变化后调用（delta 为变化量，订票为 -1），只重新计算该航班所在日期的格子
+     */
+    public static void adjustSeats(String flightId, int delta) {
+        Day day = flightDays.get(flightId);
+        if (day == null) {
+            return; // 日历尚未加载或航班不在日历中
+        }
+        synchronized (day) {
+            for (FlightQueryModule.FlightInfo flight : day.flights) {
+                if (flight.flightId.equals(flightId)) {
+                    flight.availableSeats = Math.max(0, flight.availableSeats + delta);
+                    break;
+                }
+            }
+            day.recompute();
+        }
+    }
+
+    /**
+     * 航班新增或变更后调用，下次查询时重新构建
+     */
+    public static void invalidate() {
+        routes = null;
+    }
+
+    /**
+     * 从数据库重新构建全部航线的日历
+     */
+    public static synchronized boolean reload() {
+        // 各舱余票一次性加载，构建时不再逐个航班查询
+        CabinInventory.reload();
+        Map<String, List<FlightQueryModule.FlightInfo>> byRoute = new HashMap<>();
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SELECT_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                FlightQueryModule.FlightInfo flight = FlightQueryModule.DatabaseManager.mapFlight(rs);
+                byRoute.computeIfAbsent(routeKey(flight.departureAirport, flight.arrivalAirport),
+                        _ -> new ArrayList<>()).add(flight);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("构建低价日历失败: " + e.getMessage());
+            return false;
+        }
+        build(byRoute);
+        return true;
+    }
+
+    /**
+     * 按航线并行构建日历
+     */
+    static void build(Map<String, List<FlightQueryModule.FlightInfo>> byRoute) {
+        List<String> keys = new ArrayList<>(byRoute.keySet());
+        Map<String, RouteCalendar> built = new ConcurrentHashMap<>();
+        Map<String, Day> index = new ConcurrentHashMap<>();
+        ForkJoinPool.commonPool().invoke(new BuildTask(keys, 0, keys.size(), byRoute, built, index));
+        flightDays = index;
+        routes = built;
+    }
+
+    private static Map<String, RouteCalendar> ensureLoaded() {
+        Map<String, RouteCalendar> current = routes;
+        if (current == null) {
+            synchronized (FareCalendar.class) {
+                if (routes == null && !reload()) {
+                    return new HashMap<>();
+                }
+                current = routes;
+            }
+        }
+        return current;
+    }
+
+    private static String routeKey(String departureAirport, String arrivalAirport) {
+        return departureAirport + "-" + arrivalAirport;
+    }
+
+    /**
+     * 构建任务：航线数较多时对半拆分，否则逐条航线计算
+     */
+    private static class BuildTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        // 任务只在本进程的 ForkJoinPool 中执行，不会被序列化
+        private final transient List<String> keys;
+        private final int from;
+        private final int to;
+        private final transient Map<String, List<FlightQueryModule.FlightInfo>> byRoute;
+        private final transient Map<String, RouteCalendar> built;
+        private final transient Map<String, Day> index;
+
+        BuildTask(List<String> keys, int from, int to, Map<String, List<FlightQueryModule.FlightInfo>> byRoute,
+                  Map<String, RouteCalendar> built, Map<String, Day> index) {
+            this.keys = keys;
+            this.from = from;
+            this.to = to;
+            this.byRoute = byRoute;
+            this.built = built;
+            this.index = index;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > ROUTES_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new BuildTask(keys, from, mid, byRoute, built, index),
+                        new BuildTask(keys, mid, to, byRoute, built, index));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                String key = keys.get(i);
+                RouteCalendar calendar = RouteCalendar.of(byRoute.get(key), index);
+                if (calendar != null) {
+                    built.put(key, calendar);
+                }
+            }
+        }
+    }
+
+    /**
+     * 一条航线的日历：从 firstDay 开始按天连续存放
+     */
+    private static class RouteCalendar {
+        final LocalDate firstDay;
+        final Day[] days;
+
+        RouteCalendar(LocalDate firstDay, Day[] days) {
+            this.firstDay = firstDay;
+            this.days = days;
+        }
+
+        /**
+         * 由航线上的航班构建日历，起飞日期无法解析的航班被忽略
+         */
+        static RouteCalendar of(List<FlightQueryModule.FlightInfo> flights, Map<String, Day> index) {
+            Map<LocalDate, List<FlightQueryModule.FlightInfo>> byDate = new HashMap<>();
+            LocalDate first = null;
+            LocalDate last = null;
+            for (FlightQueryModule.FlightInfo flight : flights) {
+                LocalDate date;
+                try {
+                    date = LocalDate.parse(flight.departureTime.substring(0, 10));
+                } catch (RuntimeException e) {
+                    continue;
+                }
+                byDate.computeIfAbsent(date, _ -> new ArrayList<>()).add(flight);
+                first = first == null || date.isBefore(first) ? date : first;
+                last = last == null || date.isAfter(last) ? date : last;
+            }
+            if (first == null) {
+                return null;
+            }
+
+            Day[] days = new Day[(int) ChronoUnit.DAYS.between(first, last) + 1];
+            for (Map.Entry<LocalDate, List<FlightQueryModule.FlightInfo>> entry : byDate.entrySet()) {
+                Day day = new Day(entry.getKey().toString(), entry.getValue());
+                day.recompute();
+                days[(int) ChronoUnit.DAYS.between(first, entry.getKey())] = day;
+                for (FlightQueryModule.FlightInfo flight : entry.getValue()) {
+                    index.put(flight.flightId, day);
+                }
+            }
+            return new RouteCalendar(first, days);
+        }
+
+        Day dayOf(LocalDate date) {
+            long offset = ChronoUnit.DAYS.between(firstDay, date);
+            return offset < 0 || offset >= days.length ? null : days[(int) offset];
+        }
+    }
+
+    /**
+     * 某航线某一天：当日航班和按舱位计算好的格子
+     */
+    private static class Day {
+        final String date;
+        final List<FlightQueryModule.FlightInfo> flights;
+        volatile FareCell[] cells;
+
+        Day(String date, List<FlightQueryModule.FlightInfo> flights) {
+            this.date = date;
+            this.flights = flights;
+        }
+
+        /**
+         * 重新计算各舱位的最低价（只统计有余票的航班）和余票合计
+         */
+        void recompute() {
+            FareCell[] computed = new FareCell[CABINS.length];
+            for (CabinClass cabin : CABINS) {
+                double lowest = 0;
+                int seats = 0;
+                int flightCount = 0;
+                for (FlightQueryModule.FlightInfo flight : flights) {
+                    int cabinSeats = FlightQueryModule.DatabaseManager.getAvailableSeatsByCabin(flight, cabin.displayName);
+                    double price = FlightQueryModule.DatabaseManager.calculateCabinPrice(flight, cabin.displayName);
+                    if (cabinSeats <= 0 || price <= 0) {
+                        continue;
+                    }
+                    seats += cabinSeats;
+                    flightCount++;
+                    lowest = lowest == 0 ? price : Math.min(lowest, price);
+                }
+                computed[cabin.ordinal()] = new FareCell(date, lowest, seats, flightCount);
+            }
+            cells = computed;
+        }
+    }
+
+    /**
+     * 日历格子：当天有余票航班的最低价、余票合计和航班数；无航班时最低价为0
+     */
+    public static class FareCell {
+        public final String date;
+        public final double lowestPrice;
+        public final int seatsLeft;
+        public final int flightCount;
+
+        public FareCell(String date, double lowestPrice, int seatsLeft, int flightCount) {
+            this.date = date;
+            this.lowestPrice = lowestPrice;
+            this.seatsLeft = seatsLeft;
+            this.flightCount = flightCount;
+        }
+
+        @Override
+        public String toString() {
+            return flightCount == 0
+                    ? String.format("%s  无航班", date.substring(5))
+                    : String.format("%s  ¥%.0f起 (余票%d)", date.substring(5), lowestPrice, seatsLeft);
+        }
+    }
+
+    /**
+     * 构建压测：随机生成航线和航班，统计并行构建耗时和日历查询耗时
+     * java FareCalendar [航线数] [每航线每日航班数] [天数]
+     */
+    public static void main(String[] args) {
+        int routeCount = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int perDay = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+        int dayCount = args.length > 2 ? Integer.parseInt(args[2]) : 90;
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LocalDate firstDay = LocalDate.of(2025, 7, 1);
+        Map<String, List<FlightQueryModule.FlightInfo>> byRoute = new HashMap<>();
+        int flightCount = 0;
+        for (int r = 0; r < routeCount; r++) {
+            List<FlightQueryModule.FlightInfo> flights = new ArrayList<>();
+            for (int d = 0; d < dayCount; d++) {
+                for (int n = 0; n < perDay; n++) {
+                    FlightQueryModule.FlightInfo flight = new FlightQueryModule.FlightInfo();
+                    flight.flightId = "FL" + flightCount++;
+                    flight.aircraftId = "DEMO";
+                    flight.departureAirport = "A" + r;
+                    flight.arrivalAirport = "B" + r;
+                    flight.departureTime = firstDay.plusDays(d) + " 08:00:00";
+                    flight.basePrice = 300 + random.nextInt(1500);
+                    flight.availableSeats = random.nextInt(180);
+                    flights.add(flight);
+                }
+            }
+            byRoute.put(routeKey("A" + r, "B" + r), flights);
+        }
+        AircraftCabinCache.CabinConfiguration config = new AircraftCabinCache.CabinConfiguration();
+        config.aircraftId = "DEMO";
+        config.totalSeats = 180;
+        config.firstClassSeats = 12;
+        config.businessClassSeats = 24;
+        config.economyClassSeats = 144;
+        config.status = "active";
+        List<AircraftCabinCache.CabinConfiguration> configs = new ArrayList<>();
+        configs.add(config);
+        AircraftCabinCache.preload(configs);
+        CabinInventory.preload(new HashMap<>()); // 无舱位计数，按座位比例估算
+
+        long start = System.nanoTime();
+        build(byRoute);
+        System.out.printf("%d 条航线、%d 个航班，并行构建耗时 %.1f 毫秒（%d 个工作线程）%n",
+                routeCount, flightCount, (System.nanoTime() - start) / 1e6, ForkJoinPool.getCommonPoolParallelism());
+
+        int queries = 100000;
+        long cells = 0;
+        start = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+            int r = random.nextInt(routeCount);
+            String center = firstDay.plusDays(random.nextInt(dayCount)).toString();
+            cells += getCalendar("A" + r, "B" + r, center, 3, "经济舱").size();
+        }
+        System.out.printf("%d 次 ±3 天日历查询，平均 %.2f 微秒/次（%d 个格子）%n",
+                queries, (System.nanoTime() - start) / 1e3 / queries, cells);
+
+        String center = firstDay.plusDays(1).toString();
+        FareCell before = getCalendar("A0", "B0", center, 0, "经济舱").get(0);
+        for (int i = 0; i < perDay; i++) {
+            adjustSeats("FL" + (perDay + i), -1);
+        }
+        FareCell after = getCalendar("A0", "B0", center, 0, "经济舱").get(0);
+        System.out.println("订票前: " + before);
+        System.out.println("订票后: " + after);
+    }
+}
@@ -0,0 +1,317 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 航班变动通知 - 航班状态或起飞时间变化时，在同一写事务中用游标逐行读取该航班的有效订单，
+ * 为每位旅客生成个性化通知并分批写入通知发件箱（NotificationDispatcher）；
+ * 内存中最多保留一批通知，航班变更与通知要么一起提交要么一起回滚
+ */
+public class FlightChangeNotifier {
+    private static final int BATCH_SIZE = Integer.getInteger("airplane.notify.fanoutBatchSize", 200);
+
+    private static final String FLIGHT_SQL =
+            "SELECT flight_id, flight_number, departure_airport, arrival_airport, departure_time, arrival_time, " +
+            "status FROM flights WHERE flight_id = ?";
+    private static final String UPDATE_SQL =
+            "UPDATE flights SET status = ?, departure_time = ?, arrival_time = ? WHERE flight_id = ?";
+    // 按 (flight_id, order_id) 索引顺序读取，联系电话取下单用户的手机号
+    private static final String PASSENGERS_SQL =
+            "SELECT o.order_id, o.passenger_name, o.seat_number, u.phone FROM orders o " +
+            "JOIN users u ON o.user_id = u.username " +
+            "WHERE o.flight_id = ? AND o.order_status NOT IN ('cancelled', 'refunded') ORDER BY o.order_id";
+
+    private static final Map<String, String> STATUS_NAMES = new HashMap<>();
+    static {
+        STATUS_NAMES.put("scheduled", "正常");
+        STATUS_NAMES.put("delayed", "延误");
+        STATUS_NAMES.put("boarding", "登机中");
+        STATUS_NAMES.put("departed", "已起飞");
+        STATUS_NAMES.put("arrived", "已到达");
+        STATUS_NAMES.put("cancelled", "已取消");
+    }
+
+    private static final LongAdder CHANGES = new LongAdder();
+    private static final LongAdder NOTIFIED = new LongAdder();
+    private static final LongAdder SKIPPED = new LongAdder();
+    private static final LongAdder FAN_OUT_NANOS = new LongAdder();
+
+    private FlightChangeNotifier() {
+    }
+
+    public enum Status {
+        SUCCESS,
+        UNCHANGED,
+        FLIGHT_NOT_FOUND,
+        INVALID_TIME,
+        FAILED
+    }
+
+    /**
+     * 更新航班状态和时刻并通知所有受影响旅客；newStatus/newDepartureTime 为null表示不变，
+     * newArrivalTime 为null时到达时间随起飞时间平移
+     */
+    public static ChangeResult updateFlight(String flightId, String newStatus, String newDepartureTime,
+                                            String newArrivalTime) {
+        long start = System.nanoTime();
+        ChangeResult result;
+        try {
+            result = DatabaseWriter.executeInTransaction(conn -> {
+                FlightChange change = loadFlight(conn, flightId);
+                if (change == null) {
+                    return new ChangeResult(Status.FLIGHT_NOT_FOUND, "航班不存在: " + flightId, null, 0);
+                }
+                try {
+                    change.apply(newStatus, newDepartureTime, newArrivalTime);
+                } catch (DateTimeParseException e) {
+                    return new ChangeResult(Status.INVALID_TIME, "时间格式应为 yyyy-MM-dd HH:mm:ss", change, 0);
+                }
+                if (!change.isChanged()) {
+                    return new ChangeResult(Status.UNCHANGED, "航班状态和时刻没有变化", change, 0);
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(UPDATE_SQL)) {
+                    stmt.setString(1, change.newStatus);
+                    stmt.setString(2, change.newDepartureTime);
+                    stmt.setString(3, change.newArrivalTime);
+                    stmt.setString(4, flightId);
+                    stmt.executeUpdate();
+                }
+                int notified = fanOut(conn, change);
+                return new ChangeResult(Status.SUCCESS, change.eventType() + "，已通知 " + notified + " 位旅客",
+                        change, notified);
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("航班变更失败: " + e.getMessage());
+            return new ChangeResult(Status.FAILED, "航班变更失败: " + e.getMessage(), null, 0);
+        }
+        if (result.isSuccess()) {
+            CHANGES.increment();
+            FAN_OUT_NANOS.add(System.nanoTime() - start);
+            NotificationDispatcher.wakeUp();
+            // 航班时刻或状态变化影响查询缓存
+            ConnectionSearch.invalidate();
+            FareCalendar.invalidate();
+            if (FlightRouteIndex.isEnabled()) {
+                FlightRouteIndex.refreshRoute(result.change.departureAirport, result.change.arrivalAirport);
+            }
+        }
+        result.elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        return result;
+    }
+
+    /**
+     * 航班是否仍可订票和改签：正常和延误的航班可以，登机后或取消的航班不可以
+     * 与订票、查询的 SQL 条件 status IN ('scheduled', 'delayed') 保持一致
+     */
+    public static boolean isBookable(String status) {
+        return "scheduled".equals(status) || "delayed".equals(status);
+    }
+
+    /**
+     * 在调用方的写事务中读取航班当前状态，航班不存在时返回null
+     */
+    static FlightChange loadFlight(Connection conn, String flightId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(FLIGHT_SQL)) {
+            stmt.setString(1, flightId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? new FlightChange(rs) : null;
+            }
+        }
+    }
+
+    /**
+     * 在调用方的写事务中为航班的每位有效订单旅客写入一条通知，每满一批写入一次，返回通知条数；
+     * 调用方提交事务后应调用 NotificationDispatcher.wakeUp()
+     */
+    static int fanOut(Connection conn, FlightChange change) throws SQLException {
+        MessageTemplates.Template template = MessageTemplates.get(change.eventType());
+        if (template == null) {
+            System.err.println("缺少消息模板: " + change.eventType());
+            return 0;
+        }
+        // 航班级变量只设置一次，逐个旅客只更新姓名和座位，消息在复用的缓冲区中生成
+        MessageTemplates.Context context = new MessageTemplates.Context()
+                .flightNo(change.flightNumber)
+                .time(shortTime(change.newDepartureTime))
+                .oldTime(shortTime(change.oldDepartureTime))
+                .status(STATUS_NAMES.getOrDefault(change.newStatus, change.newStatus));
+        StringBuilder out = new StringBuilder(256);
+        List<NotificationDispatcher.Notification> batch = new ArrayList<>(Math.min(BATCH_SIZE, 256));
+        int notified = 0;
+        try (PreparedStatement stmt = conn.prepareStatement(PASSENGERS_SQL)) {
+            stmt.setFetchSize(BATCH_SIZE);
+            stmt.setString(1, change.flightId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String phone = rs.getString("phone");
+                    if (phone == null || phone.isEmpty()) {
+                        SKIPPED.increment();
+                        continue;
+                    }
+                    context.passenger(rs.getString("passenger_name"), rs.getString("seat_number"));
+                    out.setLength(0);
+                    String message = template.render(out, context).toString();
+                    batch.add(new NotificationDispatcher.Notification(phone, change.eventType(), message));
+                    if (batch.size() >= BATCH_SIZE) {
+                        notified += NotificationDispatcher.enqueueAll(conn, batch);
+                        batch.clear();
+                    }
+                }
+            }
+        }
+        notified += NotificationDispatcher.enqueueAll(conn, batch);
+        NOTIFIED.add(notified);
+        return notified;
+    }
+
+    /**
+     * 通知里显示到分钟
+     */
+    private static String shortTime(String time) {
+        return time != null && time.length() >= 16 ? time.substring(0, 16) : String.valueOf(time);
+    }
+
+    public static ChangeStats getStats() {
+        ChangeStats stats = new ChangeStats();
+        stats.changes = CHANGES.sum();
+        stats.notified = NOTIFIED.sum();
+        stats.skipped = SKIPPED.sum();
+        stats.avgChangeMillis = stats.changes == 0 ? 0 : FAN_OUT_NANOS.sum() / 1_000_000.0 / stats.changes;
+        return stats;
+    }
+
+    /**
+     * 航班变更前后的状态和时刻
+     */
+    public static class FlightChange {
+        public final String flightId;
+        public final String flightNumber;
+        public final String departureAirport;
+        public final String arrivalAirport;
+        public final String oldStatus;
+        public final String oldDepartureTime;
+        public final String oldArrivalTime;
+        public String newStatus;
+        public String newDepartureTime;
+        public String newArrivalTime;
+
+        private FlightChange(ResultSet rs) throws SQLException {
+            flightId = rs.getString("flight_id");
+            flightNumber = rs.getString("flight_number");
+            departureAirport = rs.getString("departure_airport");
+            arrivalAirport = rs.getString("arrival_airport");
+            oldStatus = rs.getString("status");
+            oldDepartureTime = rs.getString("departure_time");
+            oldArrivalTime = rs.getString("arrival_time");
+            newStatus = oldStatus;
+            newDepartureTime = oldDepartureTime;
+            newArrivalTime = oldArrivalTime;
+        }
+
+        /**
+         * 标记为取消（BulkRefundProcessor 在同一事务中更新航班状态）
+         */
+        FlightChange cancelled() {
+            newStatus = "cancelled";
+            return this;
+        }
+
+        private void apply(String status, String departureTime, String arrivalTime) {
+            if (status != null && !status.isEmpty()) {
+                newStatus = status;
+            }
+            if (departureTime != null && !departureTime.isEmpty()) {
+                LocalDateTime departure = RefundRules.parseTime(departureTime);
+                newDepartureTime = RefundRules.formatTime(departure);
+                if (arrivalTime == null || arrivalTime.isEmpty()) {
+                    // 到达时间随起飞时间平移
+                    long shift = RefundRules.minutesBetween(RefundRules.parseTime(oldDepartureTime), departure);
+                    newArrivalTime = RefundRules.formatTime(RefundRules.parseTime(oldArrivalTime).plusMinutes(shift));
+                }
+            }
+            if (arrivalTime != null && !arrivalTime.isEmpty()) {
+                newArrivalTime = RefundRules.formatTime(RefundRules.parseTime(arrivalTime));
+            }
+        }
+
+        public boolean isChanged() {
+            return !newStatus.equals(oldStatus) || !newDepartureTime.equals(oldDepartureTime)
+                    || !newArrivalTime.equals(oldArrivalTime);
+        }
+
+        /**
+         * 按变化类型选择通知模板：取消、推迟起飞、其他时刻调整、仅状态变化
+         */
+        public String eventType() {
+            if ("cancelled".equals(newStatus)) {
+                return "航班取消";
+            }
+            if (!newDepartureTime.equals(oldDepartureTime)) {
+                return newDepartureTime.compareTo(oldDepartureTime) > 0 ? "航班延误" : "航班时刻变更";
+            }
+            return "航班状态变更";
+        }
+    }
+
+    public static class ChangeResult {
+        public final Status status;
+        public final String message;
+        public final FlightChange change;
+        public final int notified;
+        public long elapsedMillis;
+
+        public ChangeResult(Status status, String message, FlightChange change, int notified) {
+            this.status = status;
+            this.message = message;
+            this.change = change;
+            this.notified = notified;
+        }
+
+        public boolean isSuccess() {
+            return status == Status.SUCCESS;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s (%dms)", status, message, elapsedMillis);
+        }
+    }
+
+    public static class ChangeStats {
+        public long changes;
+        public long notified;
+        public long skipped;
+        public double avgChangeMillis;
+
+        @Override
+        public String toString() {
+            return String.format("航班变动[次数:%d 通知:%d 无联系方式:%d 平均耗时:%.1fms]",
+                    changes, notified, skipped, avgChangeMillis);
+        }
+    }
+
+    /**
+     * 用法: java FlightChangeNotifier <航班ID> <状态|-> [新起飞时间 yyyy-MM-dd HH:mm:ss]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("用法: FlightChangeNotifier <航班ID> <状态|-> [新起飞时间]");
+            return;
+        }
+        String status = "-".equals(args[1]) ? null : args[1];
+        String departure = args.length > 2 ? args[2] : null;
+        System.out.println(updateFlight(args[0], status, departure, null));
+        System.out.println(getStats());
+        Thread.sleep(2000);
+        System.out.println(NotificationDispatcher.getStats());
+    }
+}
@@ -2,17 +2,19 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.sql.*;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class FlightManagementModule extends JFrame {
 
-    // 数据库连接常量
-    private static final String DB_URL = "jdbc:sqlite:airplane_system.db";
-    
     private JTextField flightNumberField;
     private JComboBox<String> departureAirportCombo;
     private JComboBox<String> arrivalAirportCombo;
@@ -24,7 +26,14 @@ public class FlightManagementModule extends JFrame {
     private JTextField terminalField;
     private JButton submitBtn;
     private JButton queryBtn;
+    private JButton changeBtn;
+    private JButton importBtn;
+    private JButton patternBtn;
     private JTextArea resultArea;
+    // 已载入待修改的周期计划
+    private transient ScheduleGenerator.Pattern loadedPattern;
+    // selectFlight 最近选中航班的当前状态
+    private String selectedStatus;
 
     // 机型与座位数映射
     private static final Map<String, Integer> AIRCRAFT_SEATS = new HashMap<>();
@@ -253,6 +262,35 @@ public class FlightManagementModule extends JFrame {
         queryBtn.setFocusPainted(false);
         buttonPanel.add(queryBtn);
 
+        changeBtn = new JButton("航班变动");
+        changeBtn.setFont(contentFont);
+        changeBtn.setPreferredSize(new Dimension(120, 35));
+        changeBtn.setBackground(new Color(255, 152, 0));
+        changeBtn.setForeground(Color.WHITE);
+        changeBtn.setFocusPainted(false);
+        changeBtn.setToolTipText("按航班号选择具体日期的航班，更新其状态或起飞/到达时间，并通知所有已订票旅客；"
+                + "选择 cancelled 取消航班并为所有订单批量退票");
+        buttonPanel.add(changeBtn);
+
+        importBtn = new JButton("批量导入");
+        importBtn.setFont(contentFont);
+        importBtn.setPreferredSize(new Dimension(120, 35));
+        importBtn.setBackground(new Color(96, 125, 139));
+        importBtn.setForeground(Color.WHITE);
+        importBtn.setFocusPainted(false);
+        importBtn.setToolTipText("从CSV导入航班计划，列: flight_number,aircraft_id,departure_airport,arrival_airport,"
+                + "departure_time,arrival_time,base_price[,gate,terminal]");
+        buttonPanel.add(importBtn);
+
+        patternBtn = new JButton("周期计划");
+        patternBtn.setFont(contentFont);
+        patternBtn.setPreferredSize(new Dimension(120, 35));
+        patternBtn.setBackground(new Color(121, 85, 72));
+        patternBtn.setForeground(Color.WHITE);
+        patternBtn.setFocusPainted(false);
+        patternBtn.setToolTipText("新建或修改周期计划：以起飞时间为首个航班日期和时刻、到达时间推算飞行时长，按执行日重复生成航班");
+        buttonPanel.add(patternBtn);
+
         gbc.gridx = 0;
         gbc.gridy = 9;
         gbc.gridwidth = 2;
@@ -281,6 +319,12 @@ public class FlightManagementModule extends JFrame {
         // 事件处理
         submitBtn.addActionListener(this::submitFlightInfo);
         queryBtn.addActionListener(this::queryFlightInfo);
+        changeBtn.addActionListener(this::changeFlight);
+        importBtn.addActionListener(this::importSchedule);
+        patternBtn.addActionListener(this::schedulePattern);
+
+        // 管理端运行期间由后台任务推进周期航班的生成窗口
+        ScheduleGenerator.startHorizonJob();
 
         setLocationRelativeTo(null);
         setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
@@ -349,7 +393,7 @@ public class FlightManagementModule extends JFrame {
                                  "航站楼: " + (terminal.isEmpty() ? "未指定" : terminal));
                 clearFields();
             } else {
-                resultArea.setText("错误：保存航班信息失败，请检查数据库连接或航班号是否重复！");
+                resultArea.setText("错误：保存航班信息失败，请检查数据库连接或该航班号当天是否已有航班！");
             }
 
         } catch (DateTimeParseException ex) {
@@ -365,44 +409,55 @@ public class FlightManagementModule extends JFrame {
     private boolean saveFlightToDatabase(String flightNumber, String departureAirport, 
                                        String arrivalAirport, String departureTime, 
                                        String arrivalTime, String aircraftId, double basePrice, String gate, String terminal) {
-        try (Connection conn = DriverManager.getConnection(DB_URL)) {
-            // 首先检查航班号是否已存在
-            String checkSql = "SELECT COUNT(*) FROM flights WHERE flight_number = ?";
-            try (PreparedStatement checkStmt = conn.prepareStatement(checkSql)) {
-                checkStmt.setString(1, flightNumber);
-                ResultSet rs = checkStmt.executeQuery();
-                if (rs.next() && rs.getInt(1) > 0) {
-                    return false; // 航班号已存在
-                }
-            }
+        // 根据飞机获取可用座位数
+        int availableSeats = getAircraftSeats(aircraftId);
 
+        try {
+            // 重复检查和插入在写线程的同一事务中完成
             // 生成航班ID
-            String flightId = "FL" + System.currentTimeMillis();
-            
-            // 根据飞机获取可用座位数
-            int availableSeats = getAircraftSeats(aircraftId);
-            
-            // 插入航班信息
-            String insertSql = "INSERT INTO flights (flight_id, flight_number, aircraft_id, " +
-                             "departure_airport, arrival_airport, departure_time, arrival_time, " +
-                             "base_price, available_seats, status, gate, terminal) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, 'scheduled', ?, ?)";
-            
-            try (PreparedStatement stmt = conn.prepareStatement(insertSql)) {
-                stmt.setString(1, flightId);
-                stmt.setString(2, flightNumber);
-                stmt.setString(3, aircraftId);
-                stmt.setString(4, departureAirport);
-                stmt.setString(5, arrivalAirport);
-                stmt.setString(6, departureTime + ":00"); // 添加秒数
-                stmt.setString(7, arrivalTime + ":00");
-                stmt.setDouble(8, basePrice);
-                stmt.setInt(9, availableSeats);
-                stmt.setString(10, gate.isEmpty() ? null : gate);
-                stmt.setString(11, terminal.isEmpty() ? null : terminal);
-                
-                int result = stmt.executeUpdate();
-                return result > 0;
+            String flightId = IdGenerator.nextId(IdGenerator.FLIGHT_PREFIX);
+            boolean saved = DatabaseWriter.executeInTransaction(conn -> {
+                // 首先检查同一航班号当天是否已有航班（与批量导入共用判重规则）
+                if (FlightScheduleImporter.isDuplicate(conn, flightNumber, departureTime)) {
+                    return false; // 航班号当天已存在
+                }
+
+                // 插入航班信息
+                String insertSql = "INSERT INTO flights (flight_id, flight_number, aircraft_id, " +
+                                 "departure_airport, arrival_airport, departure_time, arrival_time, " +
+                                 "base_price, available_seats, status, gate, terminal) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, 'scheduled', ?, ?)";
+
+                try (PreparedStatement stmt = conn.prepareStatement(insertSql)) {
+                    stmt.setString(1, flightId);
+                    stmt.setString(2, flightNumber);
+                    stmt.setString(3, aircraftId);
+                    stmt.setString(4, departureAirport);
+                    stmt.setString(5, arrivalAirport);
+                    stmt.setString(6, departureTime + ":00"); // 添加秒数
+                    stmt.setString(7, arrivalTime + ":00");
+                    stmt.setDouble(8, basePrice);
+                    stmt.setInt(9, availableSeats);
+                    stmt.setString(10, gate.isEmpty() ? null : gate);
+                    stmt.setString(11, terminal.isEmpty() ? null : terminal);
+
+                    if (stmt.executeUpdate() == 0) {
+                        return false;
+                    }
+                }
+                // 按机型舱位配置建立分舱位余票计数
+                CabinInventory.initialize(conn, flightId);
+                return true;
+            });
+            if (saved && FlightRouteIndex.isEnabled()) {
+                FlightRouteIndex.refreshRoute(departureAirport, arrivalAirport);
+            }
+            if (saved) {
+                CabinInventory.refresh(flightId);
+                ConnectionSearch.invalidate();
+                FareCalendar.invalidate();
+                AirportDirectory.invalidate();
             }
+            return saved;
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
@@ -411,7 +466,7 @@ public class FlightManagementModule extends JFrame {
 
     // 从数据库加载机场信息
     private void loadAirportsFromDatabase(JComboBox<String> comboBox) {
-        try (Connection conn = DriverManager.getConnection(DB_URL)) {
+        try (Connection conn = DatabaseConnectionPool.getConnection()) {
             String sql = "SELECT airport_code, airport_name FROM airports WHERE status = 'active' ORDER BY airport_code";
             try (PreparedStatement stmt = conn.prepareStatement(sql)) {
                 ResultSet rs = stmt.executeQuery();
@@ -429,21 +484,15 @@ public class FlightManagementModule extends JFrame {
         }
     }
 
-    // 从数据库加载飞机信息
+    // 从数据库加载飞机信息，同时刷新机型舱位配置缓存
     private void loadAircraftFromDatabase(JComboBox<String> comboBox) {
-        try (Connection conn = DriverManager.getConnection(DB_URL)) {
-            String sql = "SELECT aircraft_id, aircraft_type, total_seats FROM aircraft WHERE status = 'active' ORDER BY aircraft_type, aircraft_id";
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                ResultSet rs = stmt.executeQuery();
-                while (rs.next()) {
-                    String aircraft = rs.getString("aircraft_id") + " - " + 
-                                    rs.getString("aircraft_type") + " (" + 
-                                    rs.getInt("total_seats") + "座)";
-                    comboBox.addItem(aircraft);
+        if (AircraftCabinCache.reload()) {
+            for (AircraftCabinCache.CabinConfiguration config : AircraftCabinCache.getAll()) {
+                if ("active".equals(config.status)) {
+                    comboBox.addItem(config.aircraftId + " - " + config.aircraftType + " (" + config.totalSeats + "座)");
                 }
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+        } else {
             // 如果数据库加载失败，添加一些默认选项
             comboBox.addItem("B-001A - A320 (180座)");
             comboBox.addItem("B-002A - A330 (290座)");
@@ -452,17 +501,9 @@ public class FlightManagementModule extends JFrame {
     }
 
     private int getAircraftSeats(String aircraftId) {
-        try (Connection conn = DriverManager.getConnection(DB_URL)) {
-            String sql = "SELECT total_seats FROM aircraft WHERE aircraft_id = ?";
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, aircraftId);
-                ResultSet rs = stmt.executeQuery();
-                if (rs.next()) {
-                    return rs.getInt("total_seats");
-                }
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+        AircraftCabinCache.CabinConfiguration config = AircraftCabinCache.get(aircraftId);
+        if (config != null) {
+            return config.cabinSeats();
         }
         return 180; // 默认座位数
     }
@@ -479,30 +520,83 @@ public class FlightManagementModule extends JFrame {
         aircraftCombo.setSelectedIndex(0);
     }
 
+    // 同一航班号对应多个日期的航班，由用户选择具体哪一天的航班，返回其航班ID
+    private String selectFlight(String flightNumber, String title) {
+        List<String> flightIds = new ArrayList<>();
+        List<String> options = new ArrayList<>();
+        List<String> flightStatuses = new ArrayList<>();
+        int preferred = -1;
+        String now = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        String sql = "SELECT flight_id, departure_time, departure_airport, arrival_airport, status FROM flights " +
+                     "WHERE flight_number = ? ORDER BY departure_time";
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, flightNumber);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String departureTime = rs.getString("departure_time");
+                    if (preferred < 0 && departureTime != null && departureTime.compareTo(now) >= 0) {
+                        preferred = flightIds.size(); // 默认选中最近一个未起飞的航班
+                    }
+                    flightIds.add(rs.getString("flight_id"));
+                    flightStatuses.add(rs.getString("status"));
+                    options.add(departureTime + "  " + rs.getString("departure_airport") + " → "
+                            + rs.getString("arrival_airport") + "  " + rs.getString("status")
+                            + "  (" + rs.getString("flight_id") + ")");
+                }
+            }
+        } catch (SQLException ex) {
+            resultArea.setText("查询失败：" + ex.getMessage());
+            return null;
+        }
+        if (flightIds.isEmpty()) {
+            resultArea.setText("未找到航班号为 " + flightNumber + " 的航班信息！");
+            return null;
+        }
+        int index = 0;
+        if (flightIds.size() > 1) {
+            String[] choices = options.toArray(new String[0]);
+            String choice = (String) JOptionPane.showInputDialog(this,
+                    "航班号 " + flightNumber + " 有多个日期的航班，请选择:", title, JOptionPane.QUESTION_MESSAGE, null,
+                    choices, choices[preferred < 0 ? choices.length - 1 : preferred]);
+            if (choice == null) {
+                return null;
+            }
+            index = options.indexOf(choice);
+        }
+        selectedStatus = flightStatuses.get(index);
+        return flightIds.get(index);
+    }
+
     private void queryFlightInfo(ActionEvent e) {
         String flightNumber = flightNumberField.getText().trim();
         if (flightNumber.isEmpty()) {
             resultArea.setText("请输入要查询的航班号！");
             return;
         }
+        String flightId = selectFlight(flightNumber, "查询航班");
+        if (flightId == null) {
+            return;
+        }
 
-        try (Connection conn = DriverManager.getConnection(DB_URL)) {
+        try (Connection conn = DatabaseConnectionPool.getConnection()) {
             String sql = "SELECT f.*, a.airport_name as dep_name, b.airport_name as arr_name, " +
                         "ac.aircraft_type, ac.total_seats " +
                         "FROM flights f " +
                         "LEFT JOIN airports a ON f.departure_airport = a.airport_code " +
                         "LEFT JOIN airports b ON f.arrival_airport = b.airport_code " +
                         "LEFT JOIN aircraft ac ON f.aircraft_id = ac.aircraft_id " +
-                        "WHERE f.flight_number = ?";
+                        "WHERE f.flight_id = ?";
             
             try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, flightNumber);
+                stmt.setString(1, flightId);
                 ResultSet rs = stmt.executeQuery();
                 
                 if (rs.next()) {
                     StringBuilder result = new StringBuilder();
                     result.append("=== 航班查询结果 ===\n");
                     result.append("航班号: ").append(rs.getString("flight_number")).append("\n");
+                    result.append("航班ID: ").append(rs.getString("flight_id")).append("\n");
                     result.append("出发机场: ").append(rs.getString("departure_airport"))
                           .append(" (").append(rs.getString("dep_name")).append(")\n");
                     result.append("到达机场: ").append(rs.getString("arrival_airport"))
@@ -525,6 +619,281 @@ public class FlightManagementModule extends JFrame {
         }
     }
 
+    // 航班状态或时刻变动：起飞/到达时间留空表示不变（到达时间留空时随起飞时间平移）
+    private void changeFlight(ActionEvent e) {
+        String flightNumber = flightNumberField.getText().trim();
+        if (flightNumber.isEmpty()) {
+            resultArea.setText("请输入要变动的航班号！");
+            return;
+        }
+        String flightId = selectFlight(flightNumber, "航班变动");
+        if (flightId == null) {
+            return;
+        }
+
+        String[] statuses = {"scheduled", "delayed", "boarding", "departed", "arrived", "cancelled"};
+        // 默认选中当前状态，只改时刻时不会顺带改变状态（延误航班仍可订票）
+        String status = (String) JOptionPane.showInputDialog(this, "选择航班状态:", "航班变动",
+                JOptionPane.QUESTION_MESSAGE, null, statuses, selectedStatus);
+        if (status == null) {
+            return;
+        }
+        if ("cancelled".equals(status)) {
+            // 取消航班需要批量退票，由 BulkRefundProcessor 处理
+            cancelFlight(flightId);
+            return;
+        }
+        String departureTime = departureTimeField.getText().trim();
+        String arrivalTime = arrivalTimeField.getText().trim();
+
+        FlightChangeNotifier.ChangeResult result = FlightChangeNotifier.updateFlight(flightId, status,
+                departureTime.isEmpty() ? null : departureTime + ":00",
+                arrivalTime.isEmpty() ? null : arrivalTime + ":00");
+        StringBuilder text = new StringBuilder();
+        text.append("=== 航班变动 ===\n");
+        text.append(result.message).append("\n");
+        if (result.isSuccess()) {
+            text.append("航班状态: ").append(result.change.oldStatus).append(" -> ")
+                .append(result.change.newStatus).append("\n");
+            text.append("起飞时间: ").append(result.change.oldDepartureTime).append(" -> ")
+                .append(result.change.newDepartureTime).append("\n");
+            text.append("到达时间: ").append(result.change.oldArrivalTime).append(" -> ")
+                .append(result.change.newArrivalTime).append("\n");
+            text.append("耗时: ").append(result.elapsedMillis).append(" ms\n");
+        }
+        resultArea.setText(text.toString());
+    }
+
+    // 取消航班并为所有订单批量退票，在后台线程执行，每处理完一块刷新一次进度
+    private void cancelFlight(String flightId) {
+        String reason = JOptionPane.showInputDialog(this, "取消航班 " + flightId + "，已订票旅客将全额退款。\n取消原因:",
+                "取消航班", JOptionPane.WARNING_MESSAGE);
+        if (reason == null) {
+            return;
+        }
+        if (reason.trim().isEmpty()) {
+            reason = "航班取消";
+        }
+        String cancelReason = reason.trim();
+        changeBtn.setEnabled(false);
+        resultArea.setText("正在取消航班 " + flightId + " 并批量退票...\n");
+        CompletableFuture.supplyAsync(() -> BulkRefundProcessor.cancelFlight(flightId, cancelReason, "admin",
+                progress -> {
+                    String line = "已处理 " + progress.processedOrders + "/" + progress.totalOrders + " 单\n";
+                    SwingUtilities.invokeLater(() -> resultArea.append(line));
+                })).thenAccept(progress -> SwingUtilities.invokeLater(() -> {
+            changeBtn.setEnabled(true);
+            StringBuilder text = new StringBuilder();
+            text.append("=== 取消航班 ===\n");
+            if (progress == null) {
+                text.append("取消航班失败，请检查航班是否存在\n");
+            } else {
+                text.append("completed".equals(progress.status) ? "航班已取消，订单处理完成" :
+                        "批量退票未完成，再次取消该航班可从断点继续: " + progress.lastError).append("\n");
+                text.append("订单: ").append(progress.processedOrders).append("/").append(progress.totalOrders)
+                    .append("  退款 ").append(progress.refundedOrders).append("  取消 ")
+                    .append(progress.cancelledOrders).append("  不可退 ").append(progress.rejectedOrders).append("\n");
+                text.append(String.format("退款金额: ¥%.2f%n", progress.refundAmount));
+                text.append("耗时: ").append(progress.elapsedMillis).append(" ms\n");
+            }
+            resultArea.setText(text.toString());
+        }));
+    }
+
+    // 从CSV批量导入航班计划，在后台线程执行，每提交一块刷新一次进度
+    private void importSchedule(ActionEvent e) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("选择航班计划CSV文件");
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        String path = chooser.getSelectedFile().getAbsolutePath();
+        importBtn.setEnabled(false);
+        resultArea.setText("正在导入 " + path + " ...\n");
+        CompletableFuture.supplyAsync(() -> FlightScheduleImporter.importFile(path, progress -> {
+            String line = "已导入 " + progress.imported + " 条，不合格 " + progress.rejected + " 条\n";
+            SwingUtilities.invokeLater(() -> resultArea.append(line));
+        })).thenAccept(result -> SwingUtilities.invokeLater(() -> {
+            importBtn.setEnabled(true);
+            StringBuilder text = new StringBuilder();
+            text.append("=== 航班计划导入").append(result.isSuccess() ? "完成" : "未完成").append(" ===\n");
+            text.append(result.message).append("\n");
+            text.append("读取行数: ").append(result.totalRows).append("\n");
+            text.append("耗时: ").append(result.elapsedMillis).append(" ms\n");
+            if (result.rejected > 0) {
+                text.append("不合格行明细: ").append(result.rejectsFile).append("\n");
+                for (String reject : result.sampleRejects) {
+                    text.append("  ").append(reject).append("\n");
+                }
+            }
+            resultArea.setText(text.toString());
+        }));
+    }
+
+    // 周期计划：新建、载入已有计划到表单、保存对已载入计划的修改
+    private void schedulePattern(ActionEvent e) {
+        String[] actions = {"新建计划", "载入计划", "修改计划"};
+        int action = JOptionPane.showOptionDialog(this, "选择周期计划操作:", "周期计划", JOptionPane.DEFAULT_OPTION,
+                JOptionPane.QUESTION_MESSAGE, null, actions, actions[0]);
+        if (action == 0) {
+            createSchedulePattern();
+        } else if (action == 1) {
+            loadSchedulePattern();
+        } else if (action == 2) {
+            updateSchedulePattern();
+        }
+    }
+
+    // 按表单创建周期计划
+    private void createSchedulePattern() {
+        ScheduleGenerator.Pattern pattern = readPatternForm("1234567", null);
+        if (pattern == null) {
+            return;
+        }
+
+        patternBtn.setEnabled(false);
+        resultArea.setText("正在生成周期航班...\n");
+        CompletableFuture.supplyAsync(() -> ScheduleGenerator.createPattern(pattern))
+            .thenAccept(result -> SwingUtilities.invokeLater(() -> {
+                patternBtn.setEnabled(true);
+                StringBuilder text = new StringBuilder();
+                text.append("=== 周期计划 ===\n");
+                text.append(result.message).append("\n");
+                if (result.isSuccess()) {
+                    text.append("计划: ").append(pattern).append("\n");
+                    text.append("已生成航班: ").append(result.inserted).append(" 个");
+                    if (result.skipped > 0) {
+                        text.append("（已存在跳过 ").append(result.skipped).append(" 个）");
+                    }
+                    text.append("\n之后的日期由后台任务按滚动窗口陆续生成\n");
+                    text.append("耗时: ").append(result.elapsedMillis).append(" ms\n");
+                }
+                resultArea.setText(text.toString());
+            }));
+    }
+
+    // 按计划ID读取周期计划并填入表单，修改后用“修改计划”保存
+    private void loadSchedulePattern() {
+        String patternId = JOptionPane.showInputDialog(this, "周期计划ID:");
+        if (patternId == null || patternId.trim().isEmpty()) {
+            return;
+        }
+        ScheduleGenerator.Pattern pattern = ScheduleGenerator.getPattern(patternId.trim());
+        if (pattern == null) {
+            resultArea.setText("未找到周期计划 " + patternId.trim() + "！");
+            return;
+        }
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+        LocalDateTime firstDeparture = pattern.departureOn(pattern.startDate);
+        flightNumberField.setText(pattern.flightNumber);
+        selectByCode(departureAirportCombo, pattern.departureAirport);
+        selectByCode(arrivalAirportCombo, pattern.arrivalAirport);
+        selectByCode(aircraftCombo, pattern.aircraftId);
+        departureTimeField.setText(firstDeparture.format(formatter));
+        arrivalTimeField.setText(firstDeparture.plusMinutes(pattern.durationMinutes).format(formatter));
+        basePriceField.setText(String.valueOf(pattern.basePrice));
+        gateField.setText(pattern.gate == null ? "" : pattern.gate);
+        terminalField.setText(pattern.terminal == null ? "" : pattern.terminal);
+        loadedPattern = pattern;
+        resultArea.setText("已载入周期计划:\n" + pattern + "\n修改表单后点击“周期计划”并选择“修改计划”保存\n");
+    }
+
+    // 保存对已载入计划的修改：只调整窗口内受影响日期的航班
+    private void updateSchedulePattern() {
+        ScheduleGenerator.Pattern loaded = loadedPattern;
+        if (loaded == null) {
+            resultArea.setText("请先点击“周期计划”并选择“载入计划”！");
+            return;
+        }
+        ScheduleGenerator.Pattern pattern = readPatternForm(loaded.daysOfWeek, loaded.endDate.toString());
+        if (pattern == null) {
+            return;
+        }
+        pattern.patternId = loaded.patternId;
+        pattern.version = loaded.version;
+
+        patternBtn.setEnabled(false);
+        resultArea.setText("正在修改周期计划...\n");
+        CompletableFuture.supplyAsync(() -> ScheduleGenerator.updatePattern(pattern))
+            .thenAccept(result -> SwingUtilities.invokeLater(() -> {
+                patternBtn.setEnabled(true);
+                StringBuilder text = new StringBuilder();
+                text.append("=== 修改周期计划 ===\n");
+                text.append(result.message).append("\n");
+                if (result.isSuccess()) {
+                    loadedPattern = null;
+                    text.append("计划: ").append(pattern).append("\n");
+                    text.append("新增航班: ").append(result.inserted).append(" 个，更新: ").append(result.updated)
+                        .append(" 个，删除: ").append(result.removed).append(" 个\n");
+                    text.append("已有订单转为取消退票: ").append(result.cancelled).append(" 个\n");
+                    text.append("保留（已起飞或人工调整过）: ").append(result.kept).append(" 个\n");
+                    text.append("耗时: ").append(result.elapsedMillis).append(" ms\n");
+                }
+                resultArea.setText(text.toString());
+            }));
+    }
+
+    private void selectByCode(JComboBox<String> comboBox, String code) {
+        for (int i = 0; i < comboBox.getItemCount(); i++) {
+            String item = comboBox.getItemAt(i);
+            if (item.equals(code) || item.startsWith(code + " - ")) {
+                comboBox.setSelectedIndex(i);
+                return;
+            }
+        }
+    }
+
+    // 读取周期计划表单：起飞时间给出首个日期和每日时刻，起止时间差为飞行时长，执行日和结束日期另行输入
+    private ScheduleGenerator.Pattern readPatternForm(String defaultDays, String defaultEndDate) {
+        String flightNumber = flightNumberField.getText().trim();
+        String departureAirport = (String) departureAirportCombo.getSelectedItem();
+        String arrivalAirport = (String) arrivalAirportCombo.getSelectedItem();
+        String selectedAircraft = (String) aircraftCombo.getSelectedItem();
+        String departureTime = departureTimeField.getText().trim();
+        String arrivalTime = arrivalTimeField.getText().trim();
+        String basePriceStr = basePriceField.getText().trim();
+        if (flightNumber.isEmpty() || departureAirport == null || arrivalAirport == null || selectedAircraft == null ||
+            departureTime.isEmpty() || arrivalTime.isEmpty() || basePriceStr.isEmpty()) {
+            resultArea.setText("错误：航班号、机场、时间和票价字段都必须填写！");
+            return null;
+        }
+        String days = JOptionPane.showInputDialog(this, "执行日（1=周一 ... 7=周日，如 123456；daily 表示每天，x7 表示周日除外）:",
+                defaultDays);
+        if (days == null) {
+            return null;
+        }
+        String endDate = JOptionPane.showInputDialog(this, "计划结束日期 (yyyy-MM-dd):", defaultEndDate);
+        if (endDate == null) {
+            return null;
+        }
+
+        ScheduleGenerator.Pattern pattern = new ScheduleGenerator.Pattern();
+        try {
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+            LocalDateTime depTime = LocalDateTime.parse(departureTime, formatter);
+            LocalDateTime arrTime = LocalDateTime.parse(arrivalTime, formatter);
+            pattern.flightNumber = flightNumber;
+            pattern.aircraftId = selectedAircraft.split(" - ")[0];
+            pattern.departureAirport = departureAirport.split(" - ")[0];
+            pattern.arrivalAirport = arrivalAirport.split(" - ")[0];
+            pattern.departureTime = depTime.toLocalTime();
+            pattern.durationMinutes = (int) Duration.between(depTime, arrTime).toMinutes();
+            pattern.basePrice = Double.parseDouble(basePriceStr);
+            pattern.daysOfWeek = ScheduleGenerator.Pattern.parseDays(days);
+            pattern.startDate = depTime.toLocalDate();
+            pattern.endDate = LocalDate.parse(endDate.trim());
+            pattern.gate = gateField.getText().trim().isEmpty() ? null : gateField.getText().trim();
+            pattern.terminal = terminalField.getText().trim().isEmpty() ? null : terminalField.getText().trim();
+        } catch (DateTimeParseException ex) {
+            resultArea.setText("错误：时间格式不正确，请使用 yyyy-MM-dd HH:mm 格式！");
+            return null;
+        } catch (NumberFormatException ex) {
+            resultArea.setText("错误：票价格式不正确，请输入有效数字！");
+            return null;
+        }
+        return pattern;
+    }
+
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> new FlightManagementModule().setVisible(true));
     }
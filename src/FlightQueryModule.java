@@ -2,7 +2,6 @@ import javax.swing.*;
 import java.awt.*;
 import java.text.SimpleDateFormat;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -10,14 +9,12 @@ import java.sql.SQLException;
 public class FlightQueryModule {    /**
      * 数据库管理器 - 处理航班查询数据库操作
      */    public static class DatabaseManager {
-        private static final String DB_URL = "jdbc:sqlite:airplane_system.db";
         
         static {
             try {
                 Class.forName("org.sqlite.JDBC");
                 // 输出当前工作目录和数据库文件路径
                 System.out.println("当前工作目录: " + System.getProperty("user.dir"));
-                System.out.println("数据库URL: " + DB_URL);
                 
                 // 检查数据库文件是否存在
                 java.io.File dbFile = new java.io.File("airplane_system.db");
@@ -33,49 +30,51 @@ public class FlightQueryModule {    /**
          * 获取数据库连接
          */
         public static Connection getConnection() throws SQLException {
-            return DriverManager.getConnection(DB_URL);
+            return DatabaseConnectionPool.getConnection();
         }
         
         /**
          * 查询航班信息
+         * 出发地/目的地为机场代码（由 cityToAirportCode 转换），按航线精确匹配并按起飞时间
+         * 半开区间 [date 00:00:00, date+1 00:00:00) 查询，可走 idx_flights_route_time 索引
          */
         public static java.util.List<FlightInfo> searchFlights(String departureAirport, String arrivalAirport, String date) {
             java.util.List<FlightInfo> flights = new java.util.ArrayList<>();
             
+            String nextDate;
+            try {
+                nextDate = java.time.LocalDate.parse(date).plusDays(1).toString();
+            } catch (java.time.format.DateTimeParseException e) {
+                System.err.println("日期格式错误: " + date);
+                return flights;
+            }
+            
+            // 启用内存航线索引时直接从内存返回
+            if (FlightRouteIndex.isEnabled()) {
+                flights.addAll(FlightRouteIndex.search(departureAirport, arrivalAirport, date));
+                return flights;
+            }
+            
             String sql = "SELECT f.*, a.aircraft_type, a.total_seats " +
                         "FROM flights f " +
                         "JOIN aircraft a ON f.aircraft_id = a.aircraft_id " +
-                        "WHERE f.departure_airport LIKE ? " +
-                        "AND f.arrival_airport LIKE ? " +
-                        "AND DATE(f.departure_time) = ? " +
-                        "AND f.status = 'scheduled' " +
+                        "WHERE f.departure_airport = ? " +
+                        "AND f.arrival_airport = ? " +
+                        "AND f.departure_time >= ? " +
+                        "AND f.departure_time < ? " +
+                        "AND f.status IN ('scheduled', 'delayed') " +
                         "ORDER BY f.departure_time";
             
             try (Connection conn = getConnection();
                  PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, "%" + departureAirport + "%");
-                stmt.setString(2, "%" + arrivalAirport + "%");
-                stmt.setString(3, date);
+                stmt.setString(1, departureAirport);
+                stmt.setString(2, arrivalAirport);
+                stmt.setString(3, date + " 00:00:00");
+                stmt.setString(4, nextDate + " 00:00:00");
                 
                 try (ResultSet rs = stmt.executeQuery()) {
                     while (rs.next()) {
-                        FlightInfo flight = new FlightInfo();
-                        flight.flightId = rs.getString("flight_id");
-                        flight.flightNumber = rs.getString("flight_number");
-                        flight.aircraftId = rs.getString("aircraft_id");
-                        flight.departureAirport = rs.getString("departure_airport");
-                        flight.arrivalAirport = rs.getString("arrival_airport");
-                        flight.departureTime = rs.getString("departure_time");
-                        flight.arrivalTime = rs.getString("arrival_time");
-                        flight.basePrice = rs.getDouble("base_price");
-                        flight.availableSeats = rs.getInt("available_seats");
-                        flight.status = rs.getString("status");
-                        flight.gate = rs.getString("gate");
-                        flight.terminal = rs.getString("terminal");
-                        flight.aircraftType = rs.getString("aircraft_type");
-                        flight.totalSeats = rs.getInt("total_seats");
-                        
-                        flights.add(flight);
+                        flights.add(mapFlight(rs));
                     }
                 }
             } catch (SQLException e) {
@@ -84,40 +83,37 @@ public class FlightQueryModule {    /**
             }
             
             return flights;
+        }
+        
+        /**
+         * 将查询结果行（flights f JOIN aircraft a）转换为航班信息
+         */
+        static FlightInfo mapFlight(ResultSet rs) throws SQLException {
+            FlightInfo flight = new FlightInfo();
+            flight.flightId = rs.getString("flight_id");
+            flight.flightNumber = rs.getString("flight_number");
+            flight.aircraftId = rs.getString("aircraft_id");
+            flight.departureAirport = rs.getString("departure_airport");
+            flight.arrivalAirport = rs.getString("arrival_airport");
+            flight.departureTime = rs.getString("departure_time");
+            flight.arrivalTime = rs.getString("arrival_time");
+            flight.basePrice = rs.getDouble("base_price");
+            flight.availableSeats = rs.getInt("available_seats");
+            flight.status = rs.getString("status");
+            flight.gate = rs.getString("gate");
+            flight.terminal = rs.getString("terminal");
+            flight.aircraftType = rs.getString("aircraft_type");
+            flight.totalSeats = rs.getInt("total_seats");
+            return flight;
         }        /**
-         * 获取所有可用的机场列表（从airports表和flights表获取）
+         * 获取所有可用的机场列表（有航班的机场，来自内存机场目录）
          */
         public static java.util.List<String> getAvailableAirports() {
-            java.util.List<String> airports = new java.util.ArrayList<>();
-            
-            // 从airports表获取有航班的机场，显示为"城市(机场名称)"格式
-            String sql = "SELECT DISTINCT a.city, a.airport_name, a.airport_code " +
-                        "FROM airports a " +
-                        "WHERE a.airport_code IN (" +
-                        "    SELECT DISTINCT departure_airport FROM flights " +
-                        "    UNION " +
-                        "    SELECT DISTINCT arrival_airport FROM flights" +
-                        ") " +
-                        "AND a.status = 'active' " +
-                        "ORDER BY a.city";
+            // 显示为"城市(机场名称)"格式，例如："北京(首都)"
+            java.util.List<String> airports = new java.util.ArrayList<>(AirportDirectory.getServedDisplayNames());
             
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql);
-                 ResultSet rs = stmt.executeQuery()) {
-                
-                while (rs.next()) {
-                    String city = rs.getString("city");
-                    String airportName = rs.getString("airport_name");
-                    if (city != null && !city.trim().isEmpty()) {
-                        // 格式："城市(机场名称)" 例如："北京(首都国际机场)"
-                        String displayName = city + "(" + airportName.replace(city, "").replace("国际机场", "").replace("机场", "") + ")";
-                        airports.add(displayName);
-                    }
-                }
-            } catch (SQLException e) {
-                e.printStackTrace();
-                System.err.println("获取机场列表失败: " + e.getMessage());
-                // 如果数据库查询失败，提供默认机场列表
+            if (!AirportDirectory.isAvailable()) {
+                // 如果机场目录加载失败，提供默认机场列表
                 airports.add("北京(首都国际)");
                 airports.add("上海(虹桥国际)");
                 airports.add("上海(浦东国际)");
@@ -133,13 +129,18 @@ public class FlightQueryModule {    /**
             return airports;
         }
           /**
-         * 将城市名称或显示名称转换为机场代码
+         * 将城市名称或显示名称转换为机场代码（也支持机场代码和城市拼音）
          */
         public static String cityToAirportCode(String input) {
             if (input == null || input.trim().isEmpty()) {
                 return input;
             }
             
+            // 从内存机场目录查询，"上海(浦东)"这样的显示名称会精确对应到该机场
+            if (AirportDirectory.isAvailable()) {
+                return AirportDirectory.resolve(input);
+            }
+            
             String cityName = input.trim();
             
             // 如果输入是"城市(机场名称)"格式，提取城市名称
@@ -147,28 +148,11 @@ public class FlightQueryModule {    /**
                 cityName = cityName.substring(0, cityName.indexOf("(")).trim();
             }
             
-            // 从数据库查询机场代码
-            String sql = "SELECT airport_code FROM airports WHERE city = ? AND status = 'active' LIMIT 1";
-            
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, cityName);
-                
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        return rs.getString("airport_code");
-                    }
-                }
-            } catch (SQLException e) {
-                e.printStackTrace();
-                System.err.println("查询机场代码失败: " + e.getMessage());
-            }
-            
-            // 如果数据库查询失败，使用备用映射
+            // 如果机场目录加载失败，使用备用映射
             java.util.Map<String, String> cityMapping = new java.util.HashMap<>();
             cityMapping.put("北京", "PEK");
             
-            return cityMapping.getOrDefault(cityName, input);        }        /**
+            return cityMapping.getOrDefault(cityName, input);        }                /**
          * 获取数据库中有航班的日期列表（未来30天内）
          */
         public static java.util.List<String> getAvailableDates() {
@@ -179,7 +163,7 @@ public class FlightQueryModule {    /**
                         "FROM flights " +
                         "WHERE DATE(departure_time) >= DATE('now') " +
                         "AND DATE(departure_time) <= DATE('now', '+30 days') " +
-                        "AND status = 'scheduled' " +
+                        "AND status IN ('scheduled', 'delayed') " +
                         "ORDER BY flight_date";
             
             try (Connection conn = getConnection();
@@ -243,11 +227,11 @@ public class FlightQueryModule {    /**
         /**
          * 根据舱位等级和航班配置计算价格
          */
-        private static double calculateCabinPrice(FlightInfo flight, String cabinClass) {
+        static double calculateCabinPrice(FlightInfo flight, String cabinClass) {
             double basePrice = flight.basePrice;
             
             // 根据航班获取座位配置
-            CabinConfiguration config = getFlightCabinConfiguration(flight.aircraftId);
+            AircraftCabinCache.CabinConfiguration config = AircraftCabinCache.get(flight.aircraftId);
             
             if (config == null) {
                 // 如果无法获取配置，使用默认价格倍数
@@ -284,15 +268,21 @@ public class FlightQueryModule {    /**
         /**
          * 根据舱位获取可用座位数
          */
-        private static int getAvailableSeatsByCabin(FlightInfo flight, String cabinClass) {
-            CabinConfiguration config = getFlightCabinConfiguration(flight.aircraftId);
+        static int getAvailableSeatsByCabin(FlightInfo flight, String cabinClass) {
+            // 优先使用分舱位余票计数
+            CabinInventory.Availability availability = CabinInventory.get(flight.flightId);
+            if (availability != null) {
+                return availability.available(CabinClass.fromDisplayName(cabinClass));
+            }
+            
+            AircraftCabinCache.CabinConfiguration config = AircraftCabinCache.get(flight.aircraftId);
             
             if (config == null) {
                 // 如果无法获取配置，返回总可用座位数
                 return flight.availableSeats;
             }
             
-            // 简化处理：假设每个舱位的可用座位数按比例分配
+            // 没有计数的航班：按舱位座位比例估算
             double totalRatio = config.firstClassSeats + config.businessClassSeats + config.economyClassSeats;
             
             if ("头等舱".equals(cabinClass)) {
@@ -313,44 +303,6 @@ public class FlightQueryModule {    /**
             }
         }
         
-        /**
-         * 获取航班的舱位配置
-         */
-        private static CabinConfiguration getFlightCabinConfiguration(String aircraftId) {
-            String sql = "SELECT total_seats, first_class_seats, business_class_seats, economy_class_seats " +
-                        "FROM aircraft WHERE aircraft_id = ?";
-            
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, aircraftId);
-                
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        CabinConfiguration config = new CabinConfiguration();
-                        config.totalSeats = rs.getInt("total_seats");
-                        config.firstClassSeats = rs.getInt("first_class_seats");
-                        config.businessClassSeats = rs.getInt("business_class_seats");
-                        config.economyClassSeats = rs.getInt("economy_class_seats");
-                        return config;
-                    }
-                }
-            } catch (SQLException e) {
-                e.printStackTrace();
-                System.err.println("获取舱位配置失败: " + e.getMessage());
-            }
-            
-            return null;
-        }
-        
-        /**
-         * 舱位配置类
-         */
-        private static class CabinConfiguration {
-            int totalSeats;
-            int firstClassSeats;
-            int businessClassSeats;
-            int economyClassSeats;
-        }
     }
     
     /**
@@ -374,6 +326,9 @@ public class FlightQueryModule {    /**
     }
     
     public static void main(String[] args) {
+        // 预加载机型舱位配置，格式化查询结果时不再访问数据库
+        AircraftCabinCache.reload();
+
         // 创建主窗口
         JFrame frame = new JFrame("航班查询窗口");
         frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
@@ -437,6 +392,9 @@ public class FlightQueryModule {    /**
         destinationCombo.setEditable(true); // 允许用户输入
         destinationCombo.setPreferredSize(new Dimension(200, 25));
         destinationCombo.setToolTipText("请选择或输入目的地城市");
+        // 输入城市、机场代码或拼音时联想匹配的机场
+        installAutocomplete(departureCombo, airportArray);
+        installAutocomplete(destinationCombo, airportArray);
         gbc.gridx = 1;
         gbc.gridy = 2;
         mainPanel.add(destinationCombo, gbc);        // 日期（明确显示格式）
@@ -547,17 +505,25 @@ public class FlightQueryModule {    /**
             
             // 从数据库查询航班
             java.util.List<FlightInfo> flights = DatabaseManager.searchFlights(departure, destination, date);
+            // 中转方案（直飞方案已在上面列出）
+            java.util.List<ConnectionSearch.Itinerary> connections =
+                    ConnectionSearch.searchConnections(departure, destination, date, 5);
             
-            if (flights.isEmpty()) {
+            if (flights.isEmpty() && connections.isEmpty()) {
                 resultArea.setText("未找到符合条件的航班。\n\n搜索条件：\n" +
                     "出发地：" + departure + "\n" +
                     "目的地：" + destination + "\n" +
                     "日期：" + date + "\n" +
                     "舱位：" + cabin + "\n\n" +
+                    fareCalendarText(departure, destination, date, cabin) +
                     "建议：\n1. 检查城市名称是否正确\n2. 尝试其他日期\n3. 联系客服获取更多航班信息");
             } else {
                 StringBuilder result = new StringBuilder();
-                result.append("查询结果 (").append(flights.size()).append("个航班)：\n\n");
+                if (!flights.isEmpty()) {
+                    result.append("查询结果 (").append(flights.size()).append("个航班)：\n\n");
+                } else {
+                    result.append("没有直飞航班，找到以下中转方案：\n\n");
+                }
                 
                 for (FlightInfo flight : flights) {
                     String flightDisplay = DatabaseManager.formatFlightDisplay(flight, cabin);
@@ -579,6 +545,14 @@ public class FlightQueryModule {    /**
                     result.append("\n");
                 }
                 
+                if (!connections.isEmpty()) {
+                    result.append("中转方案 (").append(connections.size()).append("个)：\n\n");
+                    for (ConnectionSearch.Itinerary itinerary : connections) {
+                        result.append(itinerary).append("\n\n");
+                    }
+                }
+                
+                appendFareCalendar(result, departure, destination, date, cabin);
                 result.append("提示：选择航班后可进入预订流程");
                 resultArea.setText(result.toString());
             }
@@ -611,6 +585,64 @@ public class FlightQueryModule {    /**
         frame.setVisible(true);
     }
 
+    /**
+     * 可编辑下拉框的输入联想：每次按键后用 AirportDirectory 的匹配结果替换下拉项，输入为空时恢复全部机场
+     */
+    private static void installAutocomplete(JComboBox<String> combo, String[] allAirports) {
+        JTextField editor = (JTextField) combo.getEditor().getEditorComponent();
+        editor.addKeyListener(new java.awt.event.KeyAdapter() {
+            @Override
+            public void keyReleased(java.awt.event.KeyEvent e) {
+                int key = e.getKeyCode();
+                if (key == java.awt.event.KeyEvent.VK_UP || key == java.awt.event.KeyEvent.VK_DOWN
+                        || key == java.awt.event.KeyEvent.VK_ENTER || key == java.awt.event.KeyEvent.VK_ESCAPE) {
+                    return;
+                }
+                String text = editor.getText();
+                java.util.List<String> items = new java.util.ArrayList<>();
+                if (text.trim().isEmpty()) {
+                    items.addAll(java.util.Arrays.asList(allAirports));
+                } else {
+                    for (AirportDirectory.Airport airport : AirportDirectory.suggest(text, 10)) {
+                        items.add(airport.displayName);
+                    }
+                }
+                combo.setModel(new DefaultComboBoxModel<>(items.toArray(new String[0])));
+                combo.setSelectedItem(null);
+                editor.setText(text);
+                if (!items.isEmpty() && combo.isShowing()) {
+                    combo.showPopup();
+                }
+            }
+        });
+    }
+
+    /**
+     * 前后3天的低价日历（该航线所有日期都无航班时返回空字符串）
+     */
+    private static String fareCalendarText(String departure, String destination, String date, String cabin) {
+        StringBuilder text = new StringBuilder();
+        appendFareCalendar(text, departure, destination, date, cabin);
+        return text.toString();
+    }
+
+    private static void appendFareCalendar(StringBuilder result, String departure, String destination,
+                                           String date, String cabin) {
+        java.util.List<FareCalendar.FareCell> cells = FareCalendar.getCalendar(departure, destination, date, 3, cabin);
+        boolean hasFlights = false;
+        for (FareCalendar.FareCell cell : cells) {
+            hasFlights |= cell.flightCount > 0;
+        }
+        if (!hasFlights) {
+            return;
+        }
+        result.append("前后3天").append(cabin).append("低价日历：\n");
+        for (FareCalendar.FareCell cell : cells) {
+            result.append(cell.date.equals(date) ? "▶ " : "  ").append(cell).append("\n");
+        }
+        result.append("\n");
+    }
+
     private static boolean isValidDate(String dateStr) {
         try {
             if(!dateStr.matches("\\d{4}-\\d{2}-\\d{2}")) {
@@ -0,0 +1,211 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 航线内存索引 - 航线 -> 日期 -> 按起飞时间排序的航班列表
+ * 通过 -Dairplane.search.routeIndex=true 启用，启用后航班查询不再访问SQLite；
+ * 航班新增/变更后调用 refreshRoute() 重新加载对应航线，订票、退票、改签后调用 updateSeats() 更新该航班余票
+ */
+public class FlightRouteIndex {
+    private static final boolean ENABLED = Boolean.getBoolean("airplane.search.routeIndex");
+
+    private static final String SELECT_SQL =
+            "SELECT f.*, a.aircraft_type, a.total_seats " +
+            "FROM flights f " +
+            "JOIN aircraft a ON f.aircraft_id = a.aircraft_id " +
+            "WHERE f.status IN ('scheduled', 'delayed') " +
+            "ORDER BY f.departure_airport, f.arrival_airport, f.departure_time";
+    private static final String SELECT_ROUTE_SQL =
+            "SELECT f.*, a.aircraft_type, a.total_seats " +
+            "FROM flights f " +
+            "JOIN aircraft a ON f.aircraft_id = a.aircraft_id " +
+            "WHERE f.departure_airport = ? AND f.arrival_airport = ? " +
+            "AND f.status IN ('scheduled', 'delayed') " +
+            "ORDER BY f.departure_time";
+
+    // 航线键 "PEK-SHA" -> (日期 "yyyy-MM-dd" -> 当日航班)
+    private static volatile Map<String, Map<String, List<FlightQueryModule.FlightInfo>>> routes =
+            new ConcurrentHashMap<>();
+    // 航班ID -> 索引中的航班（更新余票时定位航线和日期）
+    private static volatile Map<String, FlightQueryModule.FlightInfo> flightsById = new ConcurrentHashMap<>();
+    private static volatile boolean loaded;
+
+    private FlightRouteIndex() {
+    }
+
+    /**
+     * 是否启用内存索引
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * 查询某航线某日的航班（按起飞时间排序，只读列表）
+     */
+    public static List<FlightQueryModule.FlightInfo> search(String departureAirport, String arrivalAirport, String date) {
+        ensureLoaded();
+        Map<String, List<FlightQueryModule.FlightInfo>> byDate = routes.get(routeKey(departureAirport, arrivalAirport));
+        if (byDate == null) {
+            return Collections.emptyList();
+        }
+        List<FlightQueryModule.FlightInfo> flights = byDate.get(date);
+        return flights == null ? Collections.emptyList() : flights;
+    }
+
+    /**
+     * 全量重建索引
+     */
+    public static synchronized boolean reload() {
+        Map<String, Map<String, List<FlightQueryModule.FlightInfo>>> rebuilt = new ConcurrentHashMap<>();
+        Map<String, FlightQueryModule.FlightInfo> ids = new ConcurrentHashMap<>();
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SELECT_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            Map<String, List<FlightQueryModule.FlightInfo>> byDate = null;
+            String currentRoute = null;
+            while (rs.next()) {
+                FlightQueryModule.FlightInfo flight = FlightQueryModule.DatabaseManager.mapFlight(rs);
+                String route = routeKey(flight.departureAirport, flight.arrivalAirport);
+                if (!route.equals(currentRoute)) {
+                    if (byDate != null) {
+                        rebuilt.put(currentRoute, freeze(byDate));
+                    }
+                    currentRoute = route;
+                    byDate = new HashMap<>();
+                }
+                byDate.computeIfAbsent(dateOf(flight), _ -> new ArrayList<>()).add(flight);
+                ids.put(flight.flightId, flight);
+            }
+            if (byDate != null) {
+                rebuilt.put(currentRoute, freeze(byDate));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("构建航线索引失败: " + e.getMessage());
+            return false;
+        }
+        routes = rebuilt;
+        flightsById = ids;
+        loaded = true;
+        return true;
+    }
+
+    /**
+     * 重新加载单条航线（航班新增或变更后调用），与 reload() 互斥，避免旧数据覆盖新的全量结果
+     */
+    public static synchronized boolean refreshRoute(String departureAirport, String arrivalAirport) {
+        if (!loaded) {
+            return true; // 尚未加载，首次查询时会全量加载
+        }
+        Map<String, List<FlightQueryModule.FlightInfo>> byDate = new HashMap<>();
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SELECT_ROUTE_SQL)) {
+            stmt.setString(1, departureAirport);
+            stmt.setString(2, arrivalAirport);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    FlightQueryModule.FlightInfo flight = FlightQueryModule.DatabaseManager.mapFlight(rs);
+                    byDate.computeIfAbsent(dateOf(flight), _ -> new ArrayList<>()).add(flight);
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("刷新航线索引失败: " + e.getMessage());
+            return false;
+        }
+        String route = routeKey(departureAirport, arrivalAirport);
+        Map<String, List<FlightQueryModule.FlightInfo>> previous = byDate.isEmpty()
+                ? routes.remove(route) : routes.put(route, freeze(byDate));
+        if (previous != null) {
+            for (List<FlightQueryModule.FlightInfo> flights : previous.values()) {
+                for (FlightQueryModule.FlightInfo flight : flights) {
+                    flightsById.remove(flight.flightId);
+                }
+            }
+        }
+        for (List<FlightQueryModule.FlightInfo> flights : byDate.values()) {
+            for (FlightQueryModule.FlightInfo flight : flights) {
+                flightsById.put(flight.flightId, flight);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 航班余票变化后调用（CabinInventory.refresh() 之后），只替换该航班所在日期的列表
+     */
+    public static synchronized void updateSeats(String flightId) {
+        if (!ENABLED || !loaded) {
+            return;
+        }
+        FlightQueryModule.FlightInfo flight = flightsById.get(flightId);
+        CabinInventory.Availability availability = CabinInventory.get(flightId);
+        if (flight == null || availability == null || flight.availableSeats == availability.totalAvailable()) {
+            return;
+        }
+        String route = routeKey(flight.departureAirport, flight.arrivalAirport);
+        Map<String, List<FlightQueryModule.FlightInfo>> byDate = routes.get(route);
+        List<FlightQueryModule.FlightInfo> day = byDate == null ? null : byDate.get(dateOf(flight));
+        if (day == null) {
+            return;
+        }
+        // 查询线程可能正在读取原列表和原对象，复制后整体替换
+        FlightQueryModule.FlightInfo updated = copy(flight);
+        updated.availableSeats = availability.totalAvailable();
+        List<FlightQueryModule.FlightInfo> replaced = new ArrayList<>(day);
+        replaced.set(replaced.indexOf(flight), updated);
+        Map<String, List<FlightQueryModule.FlightInfo>> copied = new HashMap<>(byDate);
+        copied.put(dateOf(flight), Collections.unmodifiableList(replaced));
+        routes.put(route, copied);
+        flightsById.put(flightId, updated);
+    }
+
+    private static FlightQueryModule.FlightInfo copy(FlightQueryModule.FlightInfo flight) {
+        FlightQueryModule.FlightInfo copy = new FlightQueryModule.FlightInfo();
+        copy.flightId = flight.flightId;
+        copy.flightNumber = flight.flightNumber;
+        copy.aircraftId = flight.aircraftId;
+        copy.departureAirport = flight.departureAirport;
+        copy.arrivalAirport = flight.arrivalAirport;
+        copy.departureTime = flight.departureTime;
+        copy.arrivalTime = flight.arrivalTime;
+        copy.basePrice = flight.basePrice;
+        copy.availableSeats = flight.availableSeats;
+        copy.status = flight.status;
+        copy.gate = flight.gate;
+        copy.terminal = flight.terminal;
+        copy.aircraftType = flight.aircraftType;
+        copy.totalSeats = flight.totalSeats;
+        return copy;
+    }
+
+    private static void ensureLoaded() {
+        if (!loaded) {
+            reload();
+        }
+    }
+
+    private static Map<String, List<FlightQueryModule.FlightInfo>> freeze(Map<String, List<FlightQueryModule.FlightInfo>> byDate) {
+        for (Map.Entry<String, List<FlightQueryModule.FlightInfo>> entry : byDate.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        return byDate;
+    }
+
+    private static String routeKey(String departureAirport, String arrivalAirport) {
+        return departureAirport + "-" + arrivalAirport;
+    }
+
+    private static String dateOf(FlightQueryModule.FlightInfo flight) {
+        return flight.departureTime.substring(0, 10);
+    }
+}
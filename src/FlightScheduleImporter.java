@@ -0,0 +1,516 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 航班计划批量导入 - 逐行读取 CSV（首行为列名），用内存中的机场目录和机型配置校验，
+ * 每 airplane.import.chunkSize 行在写线程的一个事务中批量插入 flights 和分舱位余票计数；
+ * 不合格的行写入 原文件名.rejects.csv（行号、原因、原文），不影响其他行。
+ * 同一航班号同一起飞日期视为重复（与手工添加航班的规则相同），因此中途失败后可直接重新导入同一文件
+ */
+public class FlightScheduleImporter {
+    private static final int CHUNK_SIZE = Integer.getInteger("airplane.import.chunkSize", 5000);
+    // 结果中保留的不合格行样例数（全部不合格行都写入 rejects 文件）
+    private static final int SAMPLE_REJECTS = 20;
+
+    private static final String[] REQUIRED_COLUMNS = {
+        "flight_number", "aircraft_id", "departure_airport", "arrival_airport",
+        "departure_time", "arrival_time", "base_price"
+    };
+    private static final DateTimeFormatter MINUTE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    private static final String EXISTING_SQL = "SELECT flight_number, departure_time FROM flights";
+    private static final String DUPLICATE_SQL =
+            "SELECT COUNT(*) FROM flights WHERE flight_number = ? AND departure_time BETWEEN ? AND ?";
+    private static final String INSERT_SQL =
+            "INSERT INTO flights (flight_id, flight_number, aircraft_id, departure_airport, arrival_airport, " +
+            "departure_time, arrival_time, base_price, available_seats, status, gate, terminal) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, 'scheduled', ?, ?)";
+
+    private static final LongAdder IMPORTED = new LongAdder();
+    private static final LongAdder REJECTED = new LongAdder();
+    private static final LongAdder CHUNKS = new LongAdder();
+    private static final LongAdder CHUNK_NANOS = new LongAdder();
+
+    private FlightScheduleImporter() {
+    }
+
+    public enum Status {
+        SUCCESS,
+        INVALID_FILE,
+        FAILED
+    }
+
+    /**
+     * 导入 CSV 文件；listener 在每块提交后收到进度（可为null）
+     */
+    public static ImportResult importFile(String csvPath, Consumer<ImportResult> listener) {
+        Path path = Paths.get(csvPath);
+        Path rejectsPath = Paths.get(csvPath + ".rejects.csv");
+        ImportResult result = new ImportResult(rejectsPath.toString());
+        long start = System.nanoTime();
+
+        Validator validator = Validator.create();
+        if (validator == null) {
+            result.status = Status.FAILED;
+            result.message = "读取已有航班失败";
+            return result;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+             BufferedWriter rejects = Files.newBufferedWriter(rejectsPath, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null) {
+                result.status = Status.INVALID_FILE;
+                result.message = "文件为空";
+                return result;
+            }
+            if (!header.isEmpty() && header.charAt(0) == '\uFEFF') {
+                header = header.substring(1);
+            }
+            Map<String, Integer> columns = columnIndex(parseLine(header));
+            for (String column : REQUIRED_COLUMNS) {
+                if (!columns.containsKey(column)) {
+                    result.status = Status.INVALID_FILE;
+                    result.message = "缺少列: " + column;
+                    return result;
+                }
+            }
+            rejects.write("line,reason,content");
+            rejects.newLine();
+
+            List<Row> chunk = new ArrayList<>(CHUNK_SIZE);
+            String line;
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                result.totalRows++;
+                Row row = new Row(lineNumber);
+                String reason = validator.validate(parseLine(line), columns, row);
+                if (reason != null) {
+                    reject(result, rejects, lineNumber, reason, line);
+                    continue;
+                }
+                chunk.add(row);
+                if (chunk.size() >= CHUNK_SIZE) {
+                    if (!flush(chunk, result, listener, start)) {
+                        return finish(result, start);
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                flush(chunk, result, listener, start);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            result.status = Status.INVALID_FILE;
+            result.message = "读取文件失败: " + e.getMessage();
+        }
+        return finish(result, start);
+    }
+
+    /**
+     * 在写线程的一个事务中插入一块航班，失败时整块回滚并停止导入（已提交的块保留）
+     */
+    private static boolean flush(List<Row> chunk, ImportResult result, Consumer<ImportResult> listener, long start) {
+        long chunkStart = System.nanoTime();
+        try {
+            DatabaseWriter.executeInTransaction(conn -> {
+                Map<String, AircraftCabinCache.CabinConfiguration> inventory = new LinkedHashMap<>();
+                try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+                    for (Row row : chunk) {
+                        stmt.setString(1, row.flightId);
+                        stmt.setString(2, row.flightNumber);
+                        stmt.setString(3, row.aircraft.aircraftId);
+                        stmt.setString(4, row.departureAirport);
+                        stmt.setString(5, row.arrivalAirport);
+                        stmt.setString(6, row.departureTime);
+                        stmt.setString(7, row.arrivalTime);
+                        stmt.setDouble(8, row.basePrice);
+                        stmt.setInt(9, row.aircraft.cabinSeats());
+                        stmt.setString(10, row.gate);
+                        stmt.setString(11, row.terminal);
+                        stmt.addBatch();
+                        inventory.put(row.flightId, row.aircraft);
+                    }
+                    stmt.executeBatch();
+                }
+                CabinInventory.initializeAll(conn, inventory);
+                return null;
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("导入航班失败: " + e.getMessage());
+            result.status = Status.FAILED;
+            result.message = "第 " + chunk.get(0).lineNumber + " 行起的一块导入失败: " + e.getMessage()
+                    + "（之前的块已提交，修正后可重新导入同一文件）";
+            chunk.clear();
+            return false;
+        }
+        CHUNK_NANOS.add(System.nanoTime() - chunkStart);
+        CHUNKS.increment();
+        IMPORTED.add(chunk.size());
+        result.imported += chunk.size();
+        result.chunks++;
+        result.lastCommittedLine = chunk.get(chunk.size() - 1).lineNumber;
+        for (Row row : chunk) {
+            result.routes.add(row.departureAirport + "-" + row.arrivalAirport);
+        }
+        chunk.clear();
+        if (listener != null) {
+            result.elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            listener.accept(result);
+        }
+        return true;
+    }
+
+    private static void reject(ImportResult result, BufferedWriter rejects, int lineNumber, String reason, String line)
+            throws IOException {
+        result.rejected++;
+        REJECTED.increment();
+        if (result.sampleRejects.size() < SAMPLE_REJECTS) {
+            result.sampleRejects.add("第" + lineNumber + "行: " + reason);
+        }
+        rejects.write(lineNumber + "," + quote(reason) + "," + quote(line));
+        rejects.newLine();
+    }
+
+    /**
+     * 导入结束后刷新依赖航班表的缓存
+     */
+    private static ImportResult finish(ImportResult result, long start) {
+        if (result.imported > 0) {
+            CabinInventory.reload();
+            ConnectionSearch.invalidate();
+            FareCalendar.invalidate();
+            AirportDirectory.invalidate();
+            if (FlightRouteIndex.isEnabled()) {
+                for (String route : result.routes) {
+                    int dash = route.indexOf('-');
+                    FlightRouteIndex.refreshRoute(route.substring(0, dash), route.substring(dash + 1));
+                }
+            }
+        }
+        if (result.message == null) {
+            result.message = String.format("导入 %d 条，不合格 %d 条", result.imported, result.rejected);
+        }
+        result.elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        return result;
+    }
+
+    private static Map<String, Integer> columnIndex(List<String> header) {
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        return columns;
+    }
+
+    /**
+     * 解析一行 CSV：逗号分隔，字段可用双引号包围，引号内的 "" 表示一个引号
+     */
+    static List<String> parseLine(String line) {
+        List<String> fields = new ArrayList<>(12);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+    private static String quote(String text) {
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * 起飞/到达时间，接受 yyyy-MM-dd HH:mm 和 yyyy-MM-dd HH:mm:ss
+     */
+    static LocalDateTime parseTime(String text) {
+        return text.length() == 16 ? LocalDateTime.parse(text, MINUTE_FORMAT) : RefundRules.parseTime(text);
+    }
+
+    public static ImportStats getStats() {
+        ImportStats stats = new ImportStats();
+        stats.imported = IMPORTED.sum();
+        stats.rejected = REJECTED.sum();
+        stats.chunks = CHUNKS.sum();
+        stats.avgChunkMillis = stats.chunks == 0 ? 0 : CHUNK_NANOS.sum() / 1_000_000.0 / stats.chunks;
+        return stats;
+    }
+
+    /**
+     * 航班重复规则的判重键：同一航班号每天执行一班，按航班号 + 起飞日期判重
+     * @param departureTime yyyy-MM-dd HH:mm:ss
+     */
+    static String duplicateKey(String flightNumber, String departureTime) {
+        return flightNumber + '|' + departureTime.substring(0, 10);
+    }
+
+    /**
+     * 在调用方的写事务中按同一规则检查该航班号起飞当天是否已有航班（手工添加航班时使用）
+     */
+    static boolean isDuplicate(Connection conn, String flightNumber, String departureTime) throws SQLException {
+        String departureDate = departureTime.substring(0, 10);
+        try (PreparedStatement stmt = conn.prepareStatement(DUPLICATE_SQL)) {
+            stmt.setString(1, flightNumber);
+            stmt.setString(2, departureDate + " 00:00:00");
+            stmt.setString(3, departureDate + " 23:59:59");
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) > 0;
+            }
+        }
+    }
+
+    /**
+     * 行校验：机场和机型查内存快照，重复检查查导入开始时读取的已有航班（见 duplicateKey）
+     */
+    static class Validator {
+        private final Map<String, AircraftCabinCache.CabinConfiguration> aircraft = new HashMap<>();
+        private final Map<String, Boolean> airports = new HashMap<>();
+        private final Set<String> existing;
+
+        Validator(Set<String> existing) {
+            this.existing = existing;
+            for (AircraftCabinCache.CabinConfiguration config : AircraftCabinCache.getAll()) {
+                aircraft.put(config.aircraftId, config);
+            }
+        }
+
+        static Validator create() {
+            Set<String> existing = new HashSet<>();
+            try (Connection conn = DatabaseConnectionPool.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(EXISTING_SQL);
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    existing.add(duplicateKey(rs.getString(1), rs.getString(2)));
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+                System.err.println("读取已有航班失败: " + e.getMessage());
+                return null;
+            }
+            return new Validator(existing);
+        }
+
+        /**
+         * 校验一行并填入 row，合格时返回null，否则返回原因
+         */
+        String validate(List<String> fields, Map<String, Integer> columns, Row row) {
+            row.flightNumber = field(fields, columns, "flight_number").toUpperCase(Locale.ROOT);
+            String aircraftId = field(fields, columns, "aircraft_id");
+            row.departureAirport = field(fields, columns, "departure_airport").toUpperCase(Locale.ROOT);
+            row.arrivalAirport = field(fields, columns, "arrival_airport").toUpperCase(Locale.ROOT);
+            String departure = field(fields, columns, "departure_time");
+            String arrival = field(fields, columns, "arrival_time");
+            String price = field(fields, columns, "base_price");
+            if (row.flightNumber.isEmpty() || aircraftId.isEmpty() || row.departureAirport.isEmpty()
+                    || row.arrivalAirport.isEmpty() || departure.isEmpty() || arrival.isEmpty() || price.isEmpty()) {
+                return "必填字段为空";
+            }
+            if (!isAirport(row.departureAirport)) {
+                return "出发机场不存在: " + row.departureAirport;
+            }
+            if (!isAirport(row.arrivalAirport)) {
+                return "到达机场不存在: " + row.arrivalAirport;
+            }
+            if (row.departureAirport.equals(row.arrivalAirport)) {
+                return "出发和到达机场相同";
+            }
+            row.aircraft = aircraft.get(aircraftId);
+            if (row.aircraft == null) {
+                return "飞机不存在: " + aircraftId;
+            }
+            if (!"active".equals(row.aircraft.status)) {
+                return "飞机不可用: " + aircraftId;
+            }
+            LocalDateTime departureTime;
+            LocalDateTime arrivalTime;
+            try {
+                departureTime = parseTime(departure);
+                arrivalTime = parseTime(arrival);
+            } catch (DateTimeParseException e) {
+                return "时间格式应为 yyyy-MM-dd HH:mm";
+            }
+            if (!arrivalTime.isAfter(departureTime)) {
+                return "到达时间必须晚于起飞时间";
+            }
+            try {
+                row.basePrice = Double.parseDouble(price);
+            } catch (NumberFormatException e) {
+                return "票价格式错误: " + price;
+            }
+            if (row.basePrice <= 0) {
+                return "票价必须大于0";
+            }
+            row.departureTime = RefundRules.formatTime(departureTime);
+            row.arrivalTime = RefundRules.formatTime(arrivalTime);
+            // 已有航班或本文件前面的行
+            if (!existing.add(duplicateKey(row.flightNumber, row.departureTime))) {
+                return "航班重复: " + row.flightNumber + " 在 " + row.departureTime.substring(0, 10) + " 已有航班";
+            }
+            String gate = field(fields, columns, "gate");
+            String terminal = field(fields, columns, "terminal");
+            row.gate = gate.isEmpty() ? null : gate;
+            row.terminal = terminal.isEmpty() ? null : terminal;
+            row.flightId = IdGenerator.nextId(IdGenerator.FLIGHT_PREFIX);
+            return null;
+        }
+
+        private boolean isAirport(String code) {
+            return airports.computeIfAbsent(code, c -> AirportDirectory.getByCode(c) != null);
+        }
+
+        private static String field(List<String> fields, Map<String, Integer> columns, String column) {
+            Integer index = columns.get(column);
+            return index != null && index < fields.size() ? fields.get(index) : "";
+        }
+    }
+
+    /**
+     * 校验通过的一行
+     */
+    static class Row {
+        final int lineNumber;
+        String flightId;
+        String flightNumber;
+        AircraftCabinCache.CabinConfiguration aircraft;
+        String departureAirport;
+        String arrivalAirport;
+        String departureTime;
+        String arrivalTime;
+        double basePrice;
+        String gate;
+        String terminal;
+
+        Row(int lineNumber) {
+            this.lineNumber = lineNumber;
+        }
+    }
+
+    public static class ImportResult {
+        public Status status = Status.SUCCESS;
+        public String message;
+        public int totalRows;
+        public int imported;
+        public int rejected;
+        public int chunks;
+        public int lastCommittedLine;
+        public long elapsedMillis;
+        public final String rejectsFile;
+        public final List<String> sampleRejects = new ArrayList<>();
+        final Set<String> routes = new HashSet<>();
+
+        ImportResult(String rejectsFile) {
+            this.rejectsFile = rejectsFile;
+        }
+
+        public boolean isSuccess() {
+            return status == Status.SUCCESS;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s [读取:%d 导入:%d 不合格:%d 块:%d 已提交至第%d行 耗时:%dms]",
+                    status, message, totalRows, imported, rejected, chunks, lastCommittedLine, elapsedMillis);
+        }
+    }
+
+    public static class ImportStats {
+        public long imported;
+        public long rejected;
+        public long chunks;
+        public double avgChunkMillis;
+
+        @Override
+        public String toString() {
+            return String.format("航班导入[导入:%d 不合格:%d 块:%d 平均每块:%.1fms]",
+                    imported, rejected, chunks, avgChunkMillis);
+        }
+    }
+
+    /**
+     * 用法: java FlightScheduleImporter <csv文件>
+     *       java FlightScheduleImporter --generate <csv文件> <行数> <飞机ID...>  生成测试用航班计划
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 4 && "--generate".equals(args[0])) {
+            int rows = Integer.parseInt(args[2]);
+            String[] airports = {"PEK", "PVG", "SHA", "CAN", "SZX", "CTU"};
+            LocalDateTime base = LocalDateTime.now().plusDays(30).withHour(6).withMinute(0).withSecond(0).withNano(0);
+            try (BufferedWriter out = Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+                out.write(String.join(",", REQUIRED_COLUMNS) + ",gate,terminal");
+                out.newLine();
+                for (int i = 0; i < rows; i++) {
+                    String dep = airports[i % airports.length];
+                    String arr = airports[(i / airports.length + 1 + i) % airports.length];
+                    if (dep.equals(arr)) {
+                        arr = airports[(i + 1) % airports.length];
+                    }
+                    LocalDateTime departure = base.plusDays(i / 2000).plusMinutes((i % 2000) / 10 * 5L);
+                    out.write(String.format("GX%04d,%s,%s,%s,%s,%s,%d,G%d,T%d", 1000 + i % 2000,
+                            args[3 + i % (args.length - 3)], dep, arr, departure.format(MINUTE_FORMAT),
+                            departure.plusMinutes(150).format(MINUTE_FORMAT), 500 + i % 1500, i % 40 + 1, i % 3 + 1));
+                    out.newLine();
+                }
+            }
+            System.out.println("已生成 " + rows + " 行: " + args[1]);
+            return;
+        }
+        if (args.length < 1) {
+            System.out.println("用法: FlightScheduleImporter <csv文件> | --generate <csv文件> <行数> <飞机ID...>");
+            return;
+        }
+        ImportResult result = importFile(args[0], progress -> System.out.println(progress));
+        System.out.println(result);
+        for (String reject : result.sampleRejects) {
+            System.out.println("  " + reject);
+        }
+        System.out.println(getStats());
+        System.out.println(DatabaseWriter.getStats());
+    }
+}
@@ -0,0 +1,116 @@
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分布式ID生成器（Snowflake结构）- 订单、航班、退票、通知的主键统一由此生成
+ * 64位ID = 41位毫秒时间戳（自2024-01-01起）| 10位节点号 | 12位序号
+ * 无锁（CAS），同一节点内严格递增，不访问数据库；
+ * 节点号通过 -Dairplane.node.id=0~1023 指定，多实例部署时每个实例必须不同
+ */
+public class IdGenerator {
+    public static final String ORDER_PREFIX = "ORD";
+    public static final String FLIGHT_PREFIX = "FL";
+    public static final String REFUND_PREFIX = "RF";
+    public static final String NOTIFICATION_PREFIX = "NT";
+    public static final String CHANGE_PREFIX = "CH";
+    public static final String REFUND_JOB_PREFIX = "RJ";
+    public static final String PATTERN_PREFIX = "SP";
+
+    private static final long EPOCH = 1704038400000L; // 2024-01-01 00:00:00 +08:00
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final long NODE_ID = resolveNodeId();
+
+    // 上一次分配的 (时间戳 << 12 | 序号)
+    private static final AtomicLong LAST = new AtomicLong();
+
+    private IdGenerator() {
+    }
+
+    /**
+     * 生成下一个数值ID
+     */
+    public static long nextId() {
+        while (true) {
+            long last = LAST.get();
+            long now = System.currentTimeMillis() - EPOCH;
+            // 进入新的毫秒时序号归零；同一毫秒内（或时钟回拨）在上一个值基础上加1，
+            // 序号用尽时进位到下一毫秒，保证单调递增且不需要自旋等待时钟
+            long next = now > (last >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : last + 1;
+            if (LAST.compareAndSet(last, next)) {
+                long timestamp = next >>> SEQUENCE_BITS;
+                long sequence = next & SEQUENCE_MASK;
+                return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | (NODE_ID << SEQUENCE_BITS) | sequence;
+            }
+        }
+    }
+
+    /**
+     * 生成带业务前缀的ID，如 ORD123456789012345678
+     */
+    public static String nextId(String prefix) {
+        return prefix + nextId();
+    }
+
+    /**
+     * 当前节点号
+     */
+    public static long getNodeId() {
+        return NODE_ID;
+    }
+
+    private static long resolveNodeId() {
+        long nodeId = Long.getLong("airplane.node.id", 0L);
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalStateException("airplane.node.id 必须在 0~" + MAX_NODE_ID + " 之间: " + nodeId);
+        }
+        return nodeId;
+    }
+
+    /**
+     * 多线程生成ID压测并检查唯一性：java IdGenerator [线程数] [每线程数量]
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int perThread = args.length > 1 ? Integer.parseInt(args[1]) : 500_000;
+
+        Set<Long> ids = ConcurrentHashMap.newKeySet(threads * perThread);
+        CountDownLatch done = new CountDownLatch(threads);
+        long[][] generated = new long[threads][perThread];
+
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            long[] out = generated[t];
+            new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    out[i] = nextId();
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        boolean monotonic = true;
+        for (long[] out : generated) {
+            for (int i = 0; i < out.length; i++) {
+                ids.add(out[i]);
+                if (i > 0 && out[i] <= out[i - 1]) {
+                    monotonic = false;
+                }
+            }
+        }
+
+        long total = (long) threads * perThread;
+        System.out.printf("节点 %d: %d 个线程共生成 %d 个ID，耗时 %.3f 秒，%.0f 个/秒%n",
+                NODE_ID, threads, total, seconds, total / seconds);
+        System.out.println(ids.size() == total ? "✓ 无重复ID" : "✗ 发现重复ID: " + (total - ids.size()));
+        System.out.println(monotonic ? "✓ 各线程内ID单调递增" : "✗ ID未单调递增");
+        System.out.println("示例: " + nextId(ORDER_PREFIX) + " / " + nextId(FLIGHT_PREFIX));
+    }
+}
@@ -3,14 +3,13 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
 public class LoginWindow {
     // 显示主菜单的方法
-    private static void showMainMenu(JFrame loginFrame, String username, String role) {
+    private static void showMainMenu(JFrame loginFrame, String username, String role, String token) {
         // 清空登录窗口内容
         loginFrame.getContentPane().removeAll();
         loginFrame.setTitle("系统主菜单 - " + username + " (" + role + ")");
@@ -47,6 +46,9 @@ public class LoginWindow {
             // 管理员功能
             JButton userMgmtBtn = createMenuButton("用户管理", buttonFont, buttonSize, new Color(76, 175, 80));
             userMgmtBtn.addActionListener(_ -> {
+                if (!checkSession(loginFrame, token, role)) {
+                    return;
+                }
                 loginFrame.setVisible(false); // 隐藏主菜单窗口
                 UserManagementModule userModule = new UserManagementModule();
                 userModule.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
@@ -63,6 +65,9 @@ public class LoginWindow {
 
             JButton flightMgmtBtn = createMenuButton("航班管理", buttonFont, buttonSize, new Color(33, 150, 243));
             flightMgmtBtn.addActionListener(_ -> {
+                if (!checkSession(loginFrame, token, role)) {
+                    return;
+                }
                 loginFrame.setVisible(false); // 隐藏主菜单窗口
                 FlightManagementModule flightModule = new FlightManagementModule();
                 flightModule.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
@@ -156,6 +161,9 @@ public class LoginWindow {
             // 客服功能
             JButton orderMgmtBtn = createMenuButton("订单管理", buttonFont, buttonSize, new Color(76, 175, 80));
             orderMgmtBtn.addActionListener(_ -> {
+                if (!checkSession(loginFrame, token, role)) {
+                    return;
+                }
                 loginFrame.setVisible(false); // 隐藏主菜单窗口
                 OrderManagementModule orderModule = new OrderManagementModule(username);
                 orderModule.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
@@ -171,6 +179,9 @@ public class LoginWindow {
             gbc.gridy = row++;
             buttonPanel.add(orderMgmtBtn, gbc);            JButton refundBtn = createMenuButton("退票服务", buttonFont, buttonSize, new Color(244, 67, 54));
             refundBtn.addActionListener(_ -> {
+                if (!checkSession(loginFrame, token, role)) {
+                    return;
+                }
                 // 为了演示，这里使用示例订单ID
                 String demoOrderId = JOptionPane.showInputDialog(loginFrame, 
                     "请输入订单号进行退票:", "退票服务", JOptionPane.QUESTION_MESSAGE);
@@ -191,6 +202,9 @@ public class LoginWindow {
             gbc.gridy = row++;
             buttonPanel.add(refundBtn, gbc);            JButton rescheduleBtn = createMenuButton("改签服务", buttonFont, buttonSize, new Color(255, 193, 7));
             rescheduleBtn.addActionListener(_ -> {
+                if (!checkSession(loginFrame, token, role)) {
+                    return;
+                }
                 // 为了演示，这里使用示例订单ID
                 String demoOrderId = JOptionPane.showInputDialog(loginFrame, 
                     "请输入订单号进行改签:", "改签服务", JOptionPane.QUESTION_MESSAGE);
@@ -225,6 +239,7 @@ public class LoginWindow {
         logoutBtn.setFocusPainted(false);        logoutBtn.addActionListener(_ -> {
             int choice = JOptionPane.showConfirmDialog(loginFrame, "确定要退出登录吗？", "确认", JOptionPane.YES_NO_OPTION);
             if (choice == JOptionPane.YES_OPTION) {
+                AuthService.logout(token);
                 loginFrame.dispose();
                 main(null); // 重新显示登录窗口
             }
@@ -243,6 +258,18 @@ public class LoginWindow {
         loginFrame.repaint();
     }
 
+    // 管理员和客服功能打开前校验会话令牌，会话过期、被注销或角色已变更时回到登录窗口
+    private static boolean checkSession(JFrame loginFrame, String token, String role) {
+        UserManagementModule.UserCredential credential = AuthService.verifySession(token);
+        if (credential != null && role.equals(credential.getRole())) {
+            return true;
+        }
+        JOptionPane.showMessageDialog(loginFrame, "登录已过期，请重新登录", "提示", JOptionPane.WARNING_MESSAGE);
+        loginFrame.dispose();
+        main(null); // 重新显示登录窗口
+        return false;
+    }
+
     // 创建菜单按钮的辅助方法
     private static JButton createMenuButton(String text, Font font, Dimension size, Color bgColor) {
         JButton button = new JButton(text);
@@ -268,6 +295,14 @@ public class LoginWindow {
     }
 
     public static void main(String[] args) {
+        // 启动通知发送线程，上次运行遗留的待发送和待重试通知不必等到下一次业务写入才发出
+        NotificationDispatcher.start();
+
+        // 续跑上次运行中断的批量退票作业，完成前不显示登录窗口，避免旅客对已取消航班的订单继续操作
+        for (BulkRefundProcessor.Progress progress : BulkRefundProcessor.resumeUnfinished(null)) {
+            System.err.println("已续跑" + progress);
+        }
+
         // 创建主窗口（尺寸增大到400x300）
         JFrame frame = new JFrame("登录窗口");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -341,14 +376,20 @@ public class LoginWindow {
                 String username = userField.getText();
                 String password = new String(passField.getPassword());
 
-                UserManagementModule userManagement = new UserManagementModule();
-                UserManagementModule.UserCredential credential = userManagement.authenticateUser(username, password);
-                if (credential != null) {
-                    // 登录成功，显示主菜单
-                    showMainMenu(frame, username, credential.getRole());
-                } else {
-                    JOptionPane.showMessageDialog(frame, "账号或密码错误，或账户未激活！", "登录失败", JOptionPane.ERROR_MESSAGE);
-                }
+                // 密码校验在认证线程池中进行，不阻塞界面
+                loginButton.setEnabled(false);
+                AuthService.authenticateAsync(username, password).thenAccept(result ->
+                        SwingUtilities.invokeLater(() -> {
+                            loginButton.setEnabled(true);
+                            if (result.isSuccess()) {
+                                // 登录成功，显示主菜单
+                                showMainMenu(frame, username, result.credential.getRole(), result.credential.getSessionToken());
+                            } else if (result.status == AuthService.Status.BUSY) {
+                                JOptionPane.showMessageDialog(frame, result.message, "登录失败", JOptionPane.WARNING_MESSAGE);
+                            } else {
+                                JOptionPane.showMessageDialog(frame, "账号或密码错误，或账户未激活！", "登录失败", JOptionPane.ERROR_MESSAGE);
+                            }
+                        }));
             }
         });
 
@@ -377,8 +418,6 @@ public class LoginWindow {
  * 订票服务类 - 提供真正的数据库订票功能
  */
 class BookingService {
-    private static final String DB_URL = "jdbc:sqlite:airplane_system.db";
-    
     /**
      * 打开订票模块
      */
@@ -463,21 +502,42 @@ class BookingService {
                 return;
             }
             
-            // 创建订单
-            String orderId = createOrder(username, selectedFlight, passengerName, idCard);
-            if (orderId != null) {
-                JOptionPane.showMessageDialog(bookingDialog, 
-                    "订票成功！\n" +
-                    "订单号: " + orderId + "\n" +
-                    "航班: " + selectedFlight.getDisplayString() + "\n" +
-                    "乘客: " + passengerName + "\n" +
-                    "金额: ¥" + String.format("%.2f", selectedFlight.price) + "\n" +
-                    "请前往'我的订单'完成支付", 
-                    "订票成功", JOptionPane.INFORMATION_MESSAGE);
-                bookingDialog.dispose();
-            } else {
-                JOptionPane.showMessageDialog(bookingDialog, "订票失败，请重试！", "错误", JOptionPane.ERROR_MESSAGE);
-            }
+            // 扣减座位并创建订单（同一事务），在后台线程等待写线程，订票期间禁用按钮防止重复提交
+            bookButton.setEnabled(false);
+            new SwingWorker<BookingEngine.BookingResult, Void>() {
+                @Override
+                protected BookingEngine.BookingResult doInBackground() {
+                    return BookingEngine.book(username, selectedFlight.flightId, passengerName, idCard,
+                            selectedFlight.price);
+                }
+
+                @Override
+                protected void done() {
+                    BookingEngine.BookingResult result;
+                    try {
+                        result = get();
+                    } catch (Exception ex) {
+                        ex.printStackTrace();
+                        result = new BookingEngine.BookingResult(BookingEngine.Status.FAILED, null, ex.getMessage());
+                    }
+                    bookButton.setEnabled(true);
+                    if (result.isSuccess()) {
+                        JOptionPane.showMessageDialog(bookingDialog, 
+                            "订票成功！\n" +
+                            "订单号: " + result.orderId + "\n" +
+                            "航班: " + selectedFlight.getDisplayString() + "\n" +
+                            "乘客: " + passengerName + "\n" +
+                            "金额: ¥" + String.format("%.2f", selectedFlight.price) + "\n" +
+                            "请前往'我的订单'完成支付", 
+                            "订票成功", JOptionPane.INFORMATION_MESSAGE);
+                        bookingDialog.dispose();
+                    } else if (result.status == BookingEngine.Status.SOLD_OUT) {
+                        JOptionPane.showMessageDialog(bookingDialog, "该航班已售罄，请选择其他航班！", "提示", JOptionPane.WARNING_MESSAGE);
+                    } else {
+                        JOptionPane.showMessageDialog(bookingDialog, "订票失败，请重试！", "错误", JOptionPane.ERROR_MESSAGE);
+                    }
+                }
+            }.execute();
         });
         
         cancelButton.addActionListener(_ -> bookingDialog.dispose());
@@ -495,7 +555,7 @@ class BookingService {
      * 从数据库加载可用航班
      */
     private static void loadAvailableFlights(JComboBox<FlightInfo> comboBox) {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = DatabaseConnectionPool.getConnection();
              PreparedStatement stmt = conn.prepareStatement(
                  "SELECT f.flight_id, f.flight_number, f.base_price, f.available_seats, " +
                  "f.departure_time, f.arrival_time, " +
@@ -503,7 +563,7 @@ class BookingService {
                  "FROM flights f " +
                  "JOIN airports dep ON f.departure_airport = dep.airport_code " +
                  "JOIN airports arr ON f.arrival_airport = arr.airport_code " +
-                 "WHERE f.status = 'scheduled' AND f.available_seats > 0 " +
+                 "WHERE f.status IN ('scheduled', 'delayed') AND f.available_seats > 0 " +
                  "AND f.departure_time > datetime('now') " +
                  "ORDER BY f.departure_time")) {
             
@@ -533,61 +593,6 @@ class BookingService {
         }
     }
     
-    /**
-     * 创建订单并保存到数据库
-     */
-    private static String createOrder(String userId, FlightInfo flight, String passengerName, String passengerId) {
-        String orderId = "ORD" + System.currentTimeMillis();
-        
-        String sql = "INSERT INTO orders (order_id, user_id, flight_id, passenger_name, passenger_id, " +
-                    "ticket_price, booking_time, payment_status, order_status) " +
-                    "VALUES (?, ?, ?, ?, ?, ?, datetime('now'), 'pending', 'active')";
-        
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setString(1, orderId);
-            stmt.setString(2, userId);
-            stmt.setString(3, flight.flightId);
-            stmt.setString(4, passengerName);
-            stmt.setString(5, passengerId);
-            stmt.setDouble(6, flight.price);
-            
-            int rowsAffected = stmt.executeUpdate();
-            
-            if (rowsAffected > 0) {
-                // 更新航班可用座位数
-                updateFlightSeats(flight.flightId, -1);
-                System.out.println("订单创建成功: " + orderId);
-                return orderId;
-            }
-            
-        } catch (SQLException e) {
-            e.printStackTrace();
-            System.err.println("创建订单失败: " + e.getMessage());
-        }
-        
-        return null;
-    }
-    
-    /**
-     * 更新航班座位数
-     */
-    private static void updateFlightSeats(String flightId, int seatChange) {
-        String sql = "UPDATE flights SET available_seats = available_seats + ? WHERE flight_id = ?";
-        
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setInt(1, seatChange);
-            stmt.setString(2, flightId);
-            stmt.executeUpdate();
-            
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-    }
-    
     /**
      * 航班信息类
      */
@@ -0,0 +1,364 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 通知消息模板 - 模板表 message_templates 按事件类型保存模板文本，占位符写作 {变量名}
+ * 加载时每个模板只解析一次，拆成文字片段和占位符片段；发送时按片段顺序把 Context 中的字段追加到复用的 StringBuilder，
+ * 不再逐个 String.replace。模板快照超过 airplane.notify.templatesMaxAgeSeconds 后自动重新加载，修改模板表后也可调用 reload()
+ */
+public class MessageTemplates {
+    private static final long MAX_AGE_NANOS =
+            Long.getLong("airplane.notify.templatesMaxAgeSeconds", 60L) * 1_000_000_000L;
+
+    private static final String SELECT_SQL =
+            "SELECT event_type, content FROM message_templates WHERE status = 'active' ORDER BY event_type";
+
+    /**
+     * 内置模板（模板表不可用时使用），与建表脚本中的初始数据一致
+     */
+    private static final Map<String, String> DEFAULT_TEXTS = new LinkedHashMap<>();
+    static {
+        DEFAULT_TEXTS.put("支付成功", "尊敬的客户，您的订单{orderId}已支付成功，金额：{amount}元。");
+        DEFAULT_TEXTS.put("航班延误", "尊敬的旅客{passengerName}，您预订的航班{flightNo}将延误至{time}，请合理安排行程。");
+        DEFAULT_TEXTS.put("改签成功", "您的航班改签已完成，新航班号：{flightNo}，起飞时间：{time}。");
+        DEFAULT_TEXTS.put("退票成功", "您的订单{orderId}退票已完成，退款{amount}元将在3-5个工作日内到账。");
+        DEFAULT_TEXTS.put("航班时刻变更", "尊敬的旅客{passengerName}，您预订的航班{flightNo}起飞时间由{oldTime}调整为{time}，座位{seat}保持不变。");
+        DEFAULT_TEXTS.put("航班取消", "尊敬的旅客{passengerName}，您预订的航班{flightNo}（原定{oldTime}起飞）已取消，票款将原路退回。");
+        DEFAULT_TEXTS.put("航班状态变更", "尊敬的旅客{passengerName}，您预订的航班{flightNo}当前状态：{status}，座位{seat}。");
+    }
+
+    private static final Snapshot DEFAULTS = compile(DEFAULT_TEXTS);
+
+    // 每个线程复用一个缓冲区
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private static volatile Snapshot snapshot;
+
+    private MessageTemplates() {
+    }
+
+    /**
+     * 模板变量
+     */
+    public enum Field {
+        ORDER_ID("orderId"),
+        FLIGHT_NO("flightNo"),
+        PASSENGER_NAME("passengerName"),
+        SEAT("seat"),
+        AMOUNT("amount"),
+        TIME("time"),
+        OLD_TIME("oldTime"),
+        STATUS("status");
+
+        public final String name;
+
+        Field(String name) {
+            this.name = name;
+        }
+
+        static Field fromName(String name) {
+            for (Field field : values()) {
+                if (field.name.equals(name)) {
+                    return field;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 取得事件类型对应的模板，没有时返回null
+     */
+    public static Template get(String eventType) {
+        return ensureLoaded().templates.get(eventType);
+    }
+
+    /**
+     * 当前所有事件类型
+     */
+    public static List<String> eventTypes() {
+        return new ArrayList<>(ensureLoaded().templates.keySet());
+    }
+
+    /**
+     * 使当前模板失效，下次使用时重新加载
+     */
+    public static void invalidate() {
+        snapshot = null;
+    }
+
+    /**
+     * 从模板表重新解析模板，失败时保留原模板（没有原模板时使用内置模板）
+     */
+    public static synchronized boolean reload() {
+        Map<String, String> texts = new LinkedHashMap<>();
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SELECT_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                texts.put(rs.getString("event_type"), rs.getString("content"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("加载消息模板失败: " + e.getMessage());
+            if (snapshot == null) {
+                snapshot = DEFAULTS.withLoadTime(System.nanoTime());
+            }
+            return false;
+        }
+        snapshot = texts.isEmpty() ? DEFAULTS.withLoadTime(System.nanoTime()) : compile(texts);
+        return true;
+    }
+
+    /**
+     * 直接装入模板（压测用，不访问数据库）
+     */
+    static synchronized void preload(Map<String, String> texts) {
+        snapshot = compile(texts);
+    }
+
+    private static Snapshot ensureLoaded() {
+        Snapshot current = snapshot;
+        if (current == null || System.nanoTime() - current.loadedAt > MAX_AGE_NANOS) {
+            synchronized (MessageTemplates.class) {
+                current = snapshot;
+                if (current == null || System.nanoTime() - current.loadedAt > MAX_AGE_NANOS) {
+                    reload();
+                    current = snapshot;
+                }
+            }
+        }
+        return current;
+    }
+
+    static Snapshot compile(Map<String, String> texts) {
+        Map<String, Template> templates = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : texts.entrySet()) {
+            templates.put(entry.getKey(), Template.parse(entry.getKey(), entry.getValue()));
+        }
+        return new Snapshot(Collections.unmodifiableMap(templates), System.nanoTime());
+    }
+
+    /**
+     * 解析后的全部模板
+     */
+    static class Snapshot {
+        final Map<String, Template> templates;
+        final long loadedAt;
+
+        Snapshot(Map<String, Template> templates, long loadedAt) {
+            this.templates = templates;
+            this.loadedAt = loadedAt;
+        }
+
+        Snapshot withLoadTime(long loadedAt) {
+            return new Snapshot(templates, loadedAt);
+        }
+    }
+
+    /**
+     * 解析后的模板：literals[i] 之后接 fields[i]，最后接 literals[fields.length]；未知变量按原文保留
+     */
+    public static class Template {
+        public final String eventType;
+        public final String text;
+        private final String[] literals;
+        private final Field[] fields;
+
+        private Template(String eventType, String text, String[] literals, Field[] fields) {
+            this.eventType = eventType;
+            this.text = text;
+            this.literals = literals;
+            this.fields = fields;
+        }
+
+        static Template parse(String eventType, String text) {
+            List<String> literals = new ArrayList<>();
+            List<Field> fields = new ArrayList<>();
+            StringBuilder literal = new StringBuilder();
+            int pos = 0;
+            while (pos < text.length()) {
+                int open = text.indexOf('{', pos);
+                int close = open < 0 ? -1 : text.indexOf('}', open + 1);
+                if (close < 0) {
+                    literal.append(text, pos, text.length());
+                    break;
+                }
+                literal.append(text, pos, open);
+                Field field = Field.fromName(text.substring(open + 1, close));
+                if (field == null) {
+                    literal.append(text, open, close + 1);
+                } else {
+                    literals.add(literal.toString());
+                    fields.add(field);
+                    literal.setLength(0);
+                }
+                pos = close + 1;
+            }
+            literals.add(literal.toString());
+            return new Template(eventType, text, literals.toArray(new String[0]), fields.toArray(new Field[0]));
+        }
+
+        /**
+         * 追加到给定缓冲区（批量发送时由调用方复用缓冲区）
+         */
+        public StringBuilder render(StringBuilder out, Context context) {
+            for (int i = 0; i < fields.length; i++) {
+                out.append(literals[i]);
+                context.append(out, fields[i]);
+            }
+            return out.append(literals[fields.length]);
+        }
+
+        /**
+         * 生成消息文本，使用线程内复用的缓冲区
+         */
+        public String render(Context context) {
+            StringBuilder out = BUFFER.get();
+            out.setLength(0);
+            return render(out, context).toString();
+        }
+    }
+
+    /**
+     * 模板变量取值；未设置的变量输出为空。批量发送时复用同一个对象，逐条只更新旅客相关字段
+     */
+    public static class Context {
+        public String orderId;
+        public String flightNo;
+        public String passengerName;
+        public String seat;
+        public String time;
+        public String oldTime;
+        public String status;
+        // 金额（元），小于0表示未设置
+        public double amount = -1;
+
+        public Context orderId(String orderId) {
+            this.orderId = orderId;
+            return this;
+        }
+
+        public Context flightNo(String flightNo) {
+            this.flightNo = flightNo;
+            return this;
+        }
+
+        public Context passenger(String passengerName, String seat) {
+            this.passengerName = passengerName;
+            this.seat = seat;
+            return this;
+        }
+
+        public Context amount(double amount) {
+            this.amount = amount;
+            return this;
+        }
+
+        public Context time(String time) {
+            this.time = time;
+            return this;
+        }
+
+        public Context oldTime(String oldTime) {
+            this.oldTime = oldTime;
+            return this;
+        }
+
+        public Context status(String status) {
+            this.status = status;
+            return this;
+        }
+
+        void append(StringBuilder out, Field field) {
+            switch (field) {
+                case ORDER_ID: appendText(out, orderId); break;
+                case FLIGHT_NO: appendText(out, flightNo); break;
+                case PASSENGER_NAME: appendText(out, passengerName); break;
+                case SEAT: appendText(out, seat); break;
+                case TIME: appendText(out, time); break;
+                case OLD_TIME: appendText(out, oldTime); break;
+                case STATUS: appendText(out, status); break;
+                case AMOUNT: appendAmount(out, amount); break;
+                default: break;
+            }
+        }
+
+        private static void appendText(StringBuilder out, String value) {
+            if (value != null) {
+                out.append(value);
+            }
+        }
+
+        /**
+         * 按两位小数输出金额，不经过 String.format
+         */
+        static void appendAmount(StringBuilder out, double amount) {
+            if (amount < 0) {
+                return;
+            }
+            long cents = Math.round(amount * 100);
+            out.append(cents / 100).append('.');
+            long fraction = cents % 100;
+            if (fraction < 10) {
+                out.append('0');
+            }
+            out.append(fraction);
+        }
+    }
+
+    /**
+     * 压测：用内置模板生成大量个性化消息，对比逐个 String.replace
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        preload(DEFAULT_TEXTS);
+        Template template = get("航班时刻变更");
+        Context context = new Context().flightNo("MU5112").time("2025-06-16 14:30").oldTime("2025-06-16 10:30");
+        System.out.println(template.render(context.passenger("张三", "12A")));
+        System.out.println(get("支付成功").render(new Context().orderId("ORD20230615001").amount(1280)));
+
+        // 旅客姓名和座位预先生成，只比较生成消息本身的开销
+        String[] names = new String[1000];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "旅客" + i;
+        }
+        String[] seats = new String[60];
+        for (int i = 0; i < seats.length; i++) {
+            seats[i] = (i + 1) + "C";
+        }
+        String text = DEFAULT_TEXTS.get("航班时刻变更");
+        StringBuilder out = new StringBuilder(256);
+        long checksum = 0;
+        for (int round = 1; round <= 2; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                out.setLength(0);
+                context.passenger(names[i % names.length], seats[i % seats.length]);
+                checksum += template.render(out, context).length();
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.printf("第%d轮 预解析模板: %d 条, 平均 %.1f ns/条%n", round, count, (double) nanos / count);
+
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                String message = text.replace("{passengerName}", names[i % names.length])
+                        .replace("{flightNo}", "MU5112")
+                        .replace("{oldTime}", "2025-06-16 10:30")
+                        .replace("{time}", "2025-06-16 14:30")
+                        .replace("{seat}", seats[i % seats.length]);
+                checksum += message.length();
+            }
+            nanos = System.nanoTime() - start;
+            System.out.printf("第%d轮 逐个 replace: %d 条, 平均 %.1f ns/条%n", round, count, (double) nanos / count);
+        }
+        System.out.println("校验和 " + checksum);
+    }
+}
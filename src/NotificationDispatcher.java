@@ -0,0 +1,643 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 通知发送队列 - 通知先写入 notification_outbox（可与业务写入同一事务），再由后台线程异步发送
+ * 轮询线程按渠道取出到期的通知成批交给发送线程池，每个渠道独立限速；
+ * 发送失败按指数退避（带抖动）重试，超过最大次数转入死信（status = 'dead'），可人工重新入队；
+ * 发送中的通知在进程重启后重新置为待发送，因此同一通知可能被重复发送，发送方需能容忍
+ */
+public class NotificationDispatcher {
+    private static final int BATCH_SIZE = Integer.getInteger("airplane.notify.batchSize", 50);
+    private static final int WORKERS = Integer.getInteger("airplane.notify.workers", 4);
+    // 每个渠道同时在途的批次数
+    private static final int INFLIGHT_BATCHES = Integer.getInteger("airplane.notify.inflightBatches", 2);
+    private static final int MAX_ATTEMPTS = Integer.getInteger("airplane.notify.maxAttempts", 5);
+    private static final long BACKOFF_MS = Long.getLong("airplane.notify.backoffMs", 1000L);
+    private static final long MAX_BACKOFF_MS = Long.getLong("airplane.notify.maxBackoffMs", 300_000L);
+    private static final long POLL_INTERVAL_MS = Long.getLong("airplane.notify.pollIntervalMs", 500L);
+
+    private static final String INSERT_SQL =
+            "INSERT INTO notification_outbox (notification_id, channel, recipient, event_type, content, " +
+            "status, attempts, next_attempt_time) VALUES (?, ?, ?, ?, ?, 'pending', 0, ?)";
+    private static final String DUE_SQL =
+            "SELECT notification_id, channel, recipient, event_type, content, attempts FROM notification_outbox " +
+            "WHERE status = 'pending' AND channel = ? AND next_attempt_time <= ? " +
+            "ORDER BY next_attempt_time LIMIT ?";
+    private static final String CLAIM_SQL =
+            "UPDATE notification_outbox SET status = 'sending' WHERE notification_id = ? AND status = 'pending'";
+    private static final String SENT_SQL =
+            "UPDATE notification_outbox SET status = 'sent', attempts = attempts + 1, last_error = NULL, " +
+            "sent_time = CURRENT_TIMESTAMP WHERE notification_id = ?";
+    private static final String RETRY_SQL =
+            "UPDATE notification_outbox SET status = ?, attempts = attempts + 1, last_error = ?, " +
+            "next_attempt_time = ? WHERE notification_id = ?";
+    private static final String RECOVER_SQL =
+            "UPDATE notification_outbox SET status = 'pending' WHERE status = 'sending'";
+    private static final String REQUEUE_SQL =
+            "UPDATE notification_outbox SET status = 'pending', attempts = 0, last_error = NULL, " +
+            "next_attempt_time = ? WHERE notification_id = ? AND status = 'dead'";
+    private static final String DEAD_SQL =
+            "SELECT notification_id, channel, recipient, event_type, content, attempts, last_error " +
+            "FROM notification_outbox WHERE status = 'dead' ORDER BY next_attempt_time DESC LIMIT ?";
+    private static final String DEPTH_SQL =
+            "SELECT channel, status, COUNT(*) FROM notification_outbox " +
+            "WHERE status IN ('pending', 'sending', 'dead') GROUP BY channel, status";
+
+    private static final Map<Channel, Sender> SENDERS = new EnumMap<>(Channel.class);
+    private static final Map<Channel, RateLimiter> LIMITERS = new EnumMap<>(Channel.class);
+    private static final Map<Channel, Semaphore> INFLIGHT = new EnumMap<>(Channel.class);
+    private static final Object SIGNAL = new Object();
+
+    private static volatile boolean started;
+    private static volatile boolean signalled;
+    private static ExecutorService workers;
+    private static Thread poller;
+
+    // 发送指标
+    private static final long STARTED_AT = System.nanoTime();
+    private static final LongAdder ENQUEUED = new LongAdder();
+    private static final LongAdder SENT = new LongAdder();
+    private static final LongAdder FAILED_ATTEMPTS = new LongAdder();
+    private static final LongAdder DEAD = new LongAdder();
+    private static final LongAdder BATCHES = new LongAdder();
+    private static final LongAdder BATCH_NANOS = new LongAdder();
+    private static final LongAdder RATE_LIMITED_NANOS = new LongAdder();
+
+    static {
+        for (Channel channel : Channel.values()) {
+            SENDERS.put(channel, new SimulatedSender(channel));
+            LIMITERS.put(channel, new RateLimiter(channel.ratePerSecond()));
+            INFLIGHT.put(channel, new Semaphore(INFLIGHT_BATCHES));
+        }
+    }
+
+    private NotificationDispatcher() {
+    }
+
+    /**
+     * 通知渠道，限速通过 airplane.notify.渠道.ratePerSecond 配置
+     */
+    public enum Channel {
+        SMS("sms", 50),
+        EMAIL("email", 20);
+
+        public final String code;
+        private final int defaultRate;
+
+        Channel(String code, int defaultRate) {
+            this.code = code;
+            this.defaultRate = defaultRate;
+        }
+
+        double ratePerSecond() {
+            return Math.max(1, Integer.getInteger("airplane.notify." + code + ".ratePerSecond", defaultRate));
+        }
+
+        static Channel fromCode(String code) {
+            for (Channel channel : values()) {
+                if (channel.code.equals(code)) {
+                    return channel;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 按联系方式判断渠道：包含 @ 的按邮件发送，其余按短信发送
+         */
+        public static Channel forRecipient(String recipient) {
+            return recipient != null && recipient.contains("@") ? EMAIL : SMS;
+        }
+    }
+
+    /**
+     * 渠道发送接口：一次发送一批，返回与 batch 顺序一致的结果（null 表示成功，否则为失败原因）
+     */
+    public interface Sender {
+        String[] send(List<Notification> batch);
+    }
+
+    /**
+     * 替换某个渠道的发送实现（接入真实短信/邮件网关时使用）
+     */
+    public static synchronized void registerSender(Channel channel, Sender sender) {
+        SENDERS.put(channel, sender);
+    }
+
+    /**
+     * 写入发件箱并唤醒发送线程，返回通知编号
+     */
+    public static String enqueue(String recipient, String eventType, String content) throws SQLException {
+        String notificationId = DatabaseWriter.execute(conn -> enqueue(conn, recipient, eventType, content));
+        wakeUp();
+        return notificationId;
+    }
+
+    /**
+     * 在调用方的写事务中写入发件箱（与业务数据一起提交），提交后调用 wakeUp()
+     */
+    static String enqueue(Connection conn, String recipient, String eventType, String content) throws SQLException {
+        String notificationId = IdGenerator.nextId(IdGenerator.NOTIFICATION_PREFIX);
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+            stmt.setString(1, notificationId);
+            stmt.setString(2, Channel.forRecipient(recipient).code);
+            stmt.setString(3, recipient);
+            stmt.setString(4, eventType);
+            stmt.setString(5, content);
+            stmt.setLong(6, System.currentTimeMillis());
+            stmt.executeUpdate();
+        }
+        ENQUEUED.increment();
+        return notificationId;
+    }
+
+    /**
+     * 在调用方的写事务中批量写入发件箱，返回写入条数
+     */
+    static int enqueueAll(Connection conn, List<Notification> notifications) throws SQLException {
+        if (notifications.isEmpty()) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+            for (Notification notification : notifications) {
+                stmt.setString(1, notification.notificationId);
+                stmt.setString(2, notification.channel.code);
+                stmt.setString(3, notification.recipient);
+                stmt.setString(4, notification.eventType);
+                stmt.setString(5, notification.content);
+                stmt.setLong(6, now);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+        ENQUEUED.add(notifications.size());
+        return notifications.size();
+    }
+
+    /**
+     * 通知轮询线程有新的待发送通知（按需启动后台线程）
+     */
+    public static void wakeUp() {
+        start();
+        signal();
+    }
+
+    /**
+     * 只唤醒轮询线程，不启动后台线程（发送线程在批次结束时调用，停止后不会把队列重新拉起）
+     */
+    private static void signal() {
+        synchronized (SIGNAL) {
+            signalled = true;
+            SIGNAL.notifyAll();
+        }
+    }
+
+    /**
+     * 启动轮询线程和发送线程池；上次退出时仍在发送中的通知重新置为待发送
+     */
+    public static synchronized void start() {
+        if (started) {
+            return;
+        }
+        try {
+            DatabaseWriter.execute(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(RECOVER_SQL)) {
+                    return stmt.executeUpdate();
+                }
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("恢复发送中的通知失败: " + e.getMessage());
+        }
+        AtomicInteger counter = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(WORKERS, runnable -> {
+            Thread thread = new Thread(runnable, "notify-sender-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller = new Thread(NotificationDispatcher::pollLoop, "notify-poller");
+        poller.setDaemon(true);
+        poller.start();
+        started = true;
+    }
+
+    /**
+     * 停止轮询，等待在途批次发送完毕（等待时不持有锁）
+     */
+    public static void shutdown(long timeoutMillis) throws InterruptedException {
+        Thread stoppedPoller;
+        ExecutorService stoppedWorkers;
+        synchronized (NotificationDispatcher.class) {
+            if (!started) {
+                return;
+            }
+            started = false;
+            stoppedPoller = poller;
+            stoppedWorkers = workers;
+        }
+        stoppedPoller.interrupt();
+        stoppedPoller.join(timeoutMillis);
+        stoppedWorkers.shutdown();
+        stoppedWorkers.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 把死信重新放回队列
+     */
+    public static boolean requeueDead(String notificationId) {
+        try {
+            boolean requeued = DatabaseWriter.execute(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(REQUEUE_SQL)) {
+                    stmt.setLong(1, System.currentTimeMillis());
+                    stmt.setString(2, notificationId);
+                    return stmt.executeUpdate() > 0;
+                }
+            });
+            if (requeued) {
+                wakeUp();
+            }
+            return requeued;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("重新入队失败: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 最近的死信
+     */
+    public static List<Notification> getDeadLetters(int limit) {
+        List<Notification> dead = new ArrayList<>();
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(DEAD_SQL)) {
+            stmt.setInt(1, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Notification notification = new Notification(rs);
+                    notification.lastError = rs.getString("last_error");
+                    dead.add(notification);
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("读取死信失败: " + e.getMessage());
+        }
+        return dead;
+    }
+
+    /**
+     * 轮询线程：各渠道有空闲的在途名额时认领一批到期通知交给发送线程池，否则等待唤醒或轮询间隔
+     */
+    private static void pollLoop() {
+        while (started && !Thread.currentThread().isInterrupted()) {
+            boolean dispatched = false;
+            for (Channel channel : Channel.values()) {
+                Semaphore slots = INFLIGHT.get(channel);
+                if (!slots.tryAcquire()) {
+                    continue;
+                }
+                List<Notification> batch = claim(channel);
+                if (batch.isEmpty()) {
+                    slots.release();
+                    continue;
+                }
+                dispatched = true;
+                try {
+                    workers.execute(() -> {
+                        try {
+                            deliver(channel, batch);
+                        } finally {
+                            slots.release();
+                            signal();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    // 线程池已关闭：批次保持“发送中”，下次启动时恢复
+                    slots.release();
+                    return;
+                }
+            }
+            if (!dispatched) {
+                synchronized (SIGNAL) {
+                    try {
+                        if (!signalled) {
+                            SIGNAL.wait(POLL_INTERVAL_MS);
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    signalled = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * 在写线程事务中取出一批到期通知并标记为发送中
+     */
+    private static List<Notification> claim(Channel channel) {
+        try {
+            return DatabaseWriter.executeInTransaction(conn -> {
+                List<Notification> batch = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(DUE_SQL)) {
+                    stmt.setString(1, channel.code);
+                    stmt.setLong(2, System.currentTimeMillis());
+                    stmt.setInt(3, BATCH_SIZE);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            batch.add(new Notification(rs));
+                        }
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    try (PreparedStatement stmt = conn.prepareStatement(CLAIM_SQL)) {
+                        for (Notification notification : batch) {
+                            stmt.setString(1, notification.notificationId);
+                            stmt.addBatch();
+                        }
+                        stmt.executeBatch();
+                    }
+                }
+                return batch;
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("读取待发送通知失败: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * 在发送线程中：按渠道限速后整批发送，再在一个写事务中记录每条通知的结果
+     */
+    private static void deliver(Channel channel, List<Notification> batch) {
+        long waited = LIMITERS.get(channel).acquire(batch.size());
+        RATE_LIMITED_NANOS.add(waited);
+
+        long start = System.nanoTime();
+        String[] errors;
+        try {
+            errors = SENDERS.get(channel).send(batch);
+        } catch (RuntimeException e) {
+            errors = new String[batch.size()];
+            Arrays.fill(errors, "发送异常: " + e.getMessage());
+        }
+        BATCH_NANOS.add(System.nanoTime() - start);
+        BATCHES.increment();
+
+        String[] results = errors;
+        long now = System.currentTimeMillis();
+        try {
+            DatabaseWriter.executeInTransaction(conn -> {
+                try (PreparedStatement sent = conn.prepareStatement(SENT_SQL);
+                     PreparedStatement retry = conn.prepareStatement(RETRY_SQL)) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        Notification notification = batch.get(i);
+                        String error = results != null && i < results.length ? results[i] : "发送方未返回结果";
+                        if (error == null) {
+                            sent.setString(1, notification.notificationId);
+                            sent.addBatch();
+                            continue;
+                        }
+                        int attempts = notification.attempts + 1;
+                        boolean dead = attempts >= MAX_ATTEMPTS;
+                        retry.setString(1, dead ? "dead" : "pending");
+                        retry.setString(2, error);
+                        retry.setLong(3, dead ? now : now + backoff(attempts));
+                        retry.setString(4, notification.notificationId);
+                        retry.addBatch();
+                    }
+                    sent.executeBatch();
+                    retry.executeBatch();
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            // 结果未能记录：通知保持“发送中”，下次启动时重新发送
+            e.printStackTrace();
+            System.err.println("记录通知发送结果失败: " + e.getMessage());
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            String error = results != null && i < results.length ? results[i] : "发送方未返回结果";
+            if (error == null) {
+                SENT.increment();
+            } else {
+                FAILED_ATTEMPTS.increment();
+                if (batch.get(i).attempts + 1 >= MAX_ATTEMPTS) {
+                    DEAD.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * 第 attempts 次失败后的等待时间：BACKOFF_MS × 2^(attempts-1)，上限 MAX_BACKOFF_MS，加 ±20% 抖动
+     */
+    static long backoff(int attempts) {
+        long delay = BACKOFF_MS << Math.min(20, attempts - 1);
+        delay = Math.min(delay, MAX_BACKOFF_MS);
+        double jitter = 0.8 + ThreadLocalRandom.current().nextDouble() * 0.4;
+        return (long) (delay * jitter);
+    }
+
+    /**
+     * 获取发送指标快照，队列深度按渠道从发件箱统计
+     */
+    public static DispatcherStats getStats() {
+        DispatcherStats stats = new DispatcherStats();
+        stats.enqueued = ENQUEUED.sum();
+        stats.sent = SENT.sum();
+        stats.failedAttempts = FAILED_ATTEMPTS.sum();
+        stats.dead = DEAD.sum();
+        stats.batches = BATCHES.sum();
+        stats.avgBatchMillis = stats.batches == 0 ? 0 : BATCH_NANOS.sum() / 1_000_000.0 / stats.batches;
+        stats.rateLimitedMillis = RATE_LIMITED_NANOS.sum() / 1_000_000;
+        double seconds = (System.nanoTime() - STARTED_AT) / 1e9;
+        stats.sentPerSecond = seconds <= 0 ? 0 : stats.sent / seconds;
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(DEPTH_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                Channel channel = Channel.fromCode(rs.getString(1));
+                if (channel == null) {
+                    continue;
+                }
+                int[] depth = stats.depth.computeIfAbsent(channel, c -> new int[3]);
+                switch (rs.getString(2)) {
+                    case "pending": depth[0] = rs.getInt(3); break;
+                    case "sending": depth[1] = rs.getInt(3); break;
+                    default: depth[2] = rs.getInt(3); break;
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("统计通知队列失败: " + e.getMessage());
+        }
+        return stats;
+    }
+
+    /**
+     * 发件箱中的一条通知
+     */
+    public static class Notification {
+        public final String notificationId;
+        public final Channel channel;
+        public final String recipient;
+        public final String eventType;
+        public final String content;
+        public final int attempts;
+        public String lastError;
+
+        public Notification(String recipient, String eventType, String content) {
+            this.notificationId = IdGenerator.nextId(IdGenerator.NOTIFICATION_PREFIX);
+            this.channel = Channel.forRecipient(recipient);
+            this.recipient = recipient;
+            this.eventType = eventType;
+            this.content = content;
+            this.attempts = 0;
+        }
+
+        Notification(ResultSet rs) throws SQLException {
+            notificationId = rs.getString("notification_id");
+            Channel parsed = Channel.fromCode(rs.getString("channel"));
+            channel = parsed != null ? parsed : Channel.SMS;
+            recipient = rs.getString("recipient");
+            eventType = rs.getString("event_type");
+            content = rs.getString("content");
+            attempts = rs.getInt("attempts");
+        }
+    }
+
+    /**
+     * 本地模拟发送：按 airplane.notify.simulatedFailureRate（默认20%）随机失败，每批模拟一次网关往返
+     */
+    public static class SimulatedSender implements Sender {
+        private static final double FAILURE_RATE =
+                Double.parseDouble(System.getProperty("airplane.notify.simulatedFailureRate", "0.2"));
+        private static final long LATENCY_MS = Long.getLong("airplane.notify.simulatedLatencyMs", 20L);
+
+        private final Channel channel;
+
+        public SimulatedSender(Channel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public String[] send(List<Notification> batch) {
+            try {
+                Thread.sleep(LATENCY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            String[] errors = new String[batch.size()];
+            for (int i = 0; i < batch.size(); i++) {
+                if (ThreadLocalRandom.current().nextDouble() < FAILURE_RATE) {
+                    errors[i] = "模拟" + channel.code + "网关发送失败";
+                }
+            }
+            return errors;
+        }
+    }
+
+    /**
+     * 令牌桶限速：按请求的数量预约令牌，不足时睡眠到令牌补足
+     */
+    static class RateLimiter {
+        private final double permitsPerNano;
+        // 空闲时最多积累1秒的令牌
+        private final long burstNanos = TimeUnit.SECONDS.toNanos(1);
+        // 已发放令牌用到的时刻，超前于当前时间的部分需要等待
+        private long nextFreeNanos = System.nanoTime();
+
+        RateLimiter(double permitsPerSecond) {
+            this.permitsPerNano = permitsPerSecond / 1e9;
+        }
+
+        /**
+         * 获取 permits 个令牌，返回等待的纳秒数
+         */
+        long acquire(int permits) {
+            long wait;
+            synchronized (this) {
+                long now = System.nanoTime();
+                nextFreeNanos = Math.max(nextFreeNanos, now - burstNanos) + (long) (permits / permitsPerNano);
+                wait = Math.max(0, nextFreeNanos - now);
+            }
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return wait;
+        }
+    }
+
+    /**
+     * 发送指标
+     */
+    public static class DispatcherStats {
+        public long enqueued;
+        public long sent;
+        public long failedAttempts;
+        public long dead;
+        public long batches;
+        public double avgBatchMillis;
+        public long rateLimitedMillis;
+        public double sentPerSecond;
+        /** 渠道 -> {待发送, 发送中, 死信} */
+        public final Map<Channel, int[]> depth = new EnumMap<>(Channel.class);
+
+        @Override
+        public String toString() {
+            StringBuilder queues = new StringBuilder();
+            for (Map.Entry<Channel, int[]> entry : depth.entrySet()) {
+                int[] d = entry.getValue();
+                queues.append(String.format(" %s(待发:%d 发送中:%d 死信:%d)", entry.getKey().code, d[0], d[1], d[2]));
+            }
+            return String.format("通知[入队:%d 已发:%d 失败重试:%d 死信:%d 批次:%d 平均每批:%.1fms 限速等待:%dms %.1f条/秒]%s",
+                    enqueued, sent, failedAttempts, dead, batches, avgBatchMillis, rateLimitedMillis,
+                    sentPerSecond, queues);
+        }
+    }
+
+    /**
+     * 压测：java NotificationDispatcher [通知数]，批量写入发件箱后等待全部发送或转入死信
+     */
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        List<Notification> notifications = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String recipient = i % 3 == 0 ? "passenger" + i + "@example.com" : String.format("138%08d", i);
+            notifications.add(new Notification(recipient, "航班延误", "压测通知 " + i));
+        }
+        DatabaseWriter.executeInTransaction(conn -> enqueueAll(conn, notifications));
+        long start = System.nanoTime();
+        wakeUp();
+        while (SENT.sum() + DEAD.sum() < count) {
+            Thread.sleep(1000);
+            System.out.println(getStats());
+        }
+        System.out.printf("%d 条通知处理完毕，耗时 %.1f s%n", count, (System.nanoTime() - start) / 1e9);
+        shutdown(5000);
+    }
+}
@@ -1,8 +1,7 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
-import java.util.HashMap;
-import java.util.Map;
+import java.sql.SQLException;
 
 public class NotificationModule extends JFrame {
 
@@ -11,15 +10,6 @@ public class NotificationModule extends JFrame {
     private JButton sendBtn;
     private JTextArea resultArea;
 
-    // 消息模板库
-    private static final Map<String, String> MESSAGE_TEMPLATES = new HashMap<>();
-    static {
-        MESSAGE_TEMPLATES.put("支付成功", "尊敬的客户，您的订单{orderId}已支付成功，金额：{amount}元。");
-        MESSAGE_TEMPLATES.put("航班延误", "尊敬的旅客，您预订的航班{flightNo}将延误至{time}，请合理安排行程。");
-        MESSAGE_TEMPLATES.put("改签成功", "您的航班改签已完成，新航班号：{flightNo}，起飞时间：{time}。");
-        MESSAGE_TEMPLATES.put("退票成功", "您的订单{orderId}退票已完成，退款{amount}元将在3-5个工作日内到账。");
-    }
-
     public NotificationModule() {
         setTitle("系统通知模块");
         setSize(600, 400);
@@ -50,9 +40,8 @@ public class NotificationModule extends JFrame {
         gbc.gridy = 0;
         mainPanel.add(eventLabel, gbc);
 
-        eventTypeCombo = new JComboBox<>(new String[]{
-                "支付成功", "航班延误", "改签成功", "退票成功"
-        });
+        // 事件类型取自消息模板表，新增模板后无需修改界面
+        eventTypeCombo = new JComboBox<>(MessageTemplates.eventTypes().toArray(new String[0]));
         eventTypeCombo.setFont(largerFont);
         gbc.gridx = 1;
         gbc.gridy = 0;
@@ -113,56 +102,53 @@ public class NotificationModule extends JFrame {
             return;
         }
 
-        // 匹配消息模板
-        String template = MESSAGE_TEMPLATES.get(eventType);
+        // 匹配消息模板（message_templates 表，预解析）
+        MessageTemplates.Template template = MessageTemplates.get(eventType);
         if (template == null) {
             JOptionPane.showMessageDialog(this, "未找到匹配的消息模板", "错误", JOptionPane.ERROR_MESSAGE);
             return;
         }
 
-        // 生成通知内容（模拟填充变量）
-        String message = fillTemplate(template, eventType);
+        // 生成通知内容（手工发送使用示例数据）
+        String message = template.render(sampleContext(eventType));
 
-        // 模拟调用通知接口
-        boolean sendResult = simulateSendNotification(contact, message);
-
-        // 记录发送状态
-        if (sendResult) {
-            resultArea.append("通知发送成功:\n");
-            resultArea.append("联系方式: " + contact + "\n");
-            resultArea.append("通知内容: " + message + "\n\n");
-        } else {
-            resultArea.append("通知发送失败，请重试!\n\n");
+        // 写入发送队列，由 NotificationDispatcher 异步发送（失败自动重试）
+        String notificationId;
+        try {
+            notificationId = NotificationDispatcher.enqueue(contact, eventType, message);
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            resultArea.append("通知入队失败: " + ex.getMessage() + "\n\n");
+            return;
         }
+
+        resultArea.append("通知已加入发送队列:\n");
+        resultArea.append("通知编号: " + notificationId + "\n");
+        resultArea.append("发送渠道: " + NotificationDispatcher.Channel.forRecipient(contact).code + "\n");
+        resultArea.append("联系方式: " + contact + "\n");
+        resultArea.append("通知内容: " + message + "\n");
+        resultArea.append(NotificationDispatcher.getStats() + "\n\n");
     }
 
-    private String fillTemplate(String template, String eventType) {
-        // 模拟填充模板变量 - 实际应根据业务数据填充
+    private MessageTemplates.Context sampleContext(String eventType) {
+        // 示例数据 - 实际应根据业务数据填充
         switch (eventType) {
             case "支付成功":
-                return template.replace("{orderId}", "ORD20230615001")
-                        .replace("{amount}", "1280.00");
+                return new MessageTemplates.Context().orderId("ORD20230615001").amount(1280.00);
             case "航班延误":
-                return template.replace("{flightNo}", "MU5112")
-                        .replace("{time}", "2023-06-16 14:30");
+                return new MessageTemplates.Context().flightNo("MU5112").time("2023-06-16 14:30");
             case "改签成功":
-                return template.replace("{flightNo}", "MU5113")
-                        .replace("{time}", "2023-06-16 08:00");
+                return new MessageTemplates.Context().flightNo("MU5113").time("2023-06-16 08:00");
             case "退票成功":
-                return template.replace("{orderId}", "ORD20230615002")
-                        .replace("{amount}", "960.00");
+                return new MessageTemplates.Context().orderId("ORD20230615002").amount(960.00);
             default:
-                return template;
+                // 航班变动等其他事件：填充全部变量
+                return new MessageTemplates.Context().orderId("ORD20230615003").flightNo("MU5112")
+                        .passenger("张三", "12A").amount(1280.00).time("2023-06-16 14:30")
+                        .oldTime("2023-06-16 10:30").status("delayed");
         }
     }
 
-    private boolean simulateSendNotification(String contact, String message) {
-        // 模拟发送通知 - 80%成功率
-        System.out.println("模拟发送通知到: " + contact);
-        System.out.println("内容: " + message);
-        return Math.random() > 0.2;
-    }
-
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> new NotificationModule().setVisible(true));
     }
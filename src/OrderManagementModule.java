@@ -3,7 +3,6 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import javax.swing.table.DefaultTableModel;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -11,15 +10,21 @@ import java.text.SimpleDateFormat;
 
 public class OrderManagementModule extends JFrame {
 
+    private static final int PAGE_SIZE = 100;
+
     private String currentUser; // 当前登录用户
     private JTable orderTable;
     private JComboBox<String> statusFilter;
+    private JTextField passengerIdField;
+    // 分页加载状态
+    private transient OrderCursor nextCursor;
+    private boolean hasMoreOrders;
+    private boolean loadingPage;
 
     /**
      * 数据库管理器 - 处理订单数据库操作
      */
     public static class DatabaseManager {
-        private static final String DB_URL = "jdbc:sqlite:airplane_system.db";
         
         static {
             try {
@@ -34,93 +39,74 @@ public class OrderManagementModule extends JFrame {
          * 获取数据库连接
          */
         public static Connection getConnection() throws SQLException {
-            return DriverManager.getConnection(DB_URL);
+            return DatabaseConnectionPool.getConnection();
         }
         
         /**
          * 获取用户的订单列表（包含航班信息）
          */
         public static java.util.List<OrderInfo> getUserOrders(String userId, String statusFilter) {
-            java.util.List<OrderInfo> orders = new java.util.ArrayList<>();
+            return OrderSearch.findAll(buildCriteria(userId, statusFilter, null));
+        }
+        
+        /**
+         * 分页获取订单列表（键集分页，按下单时间倒序）
+         * @param after 上一页最后一条订单的游标，第一页传null
+         * @param pageSize 每页条数
+         */
+        public static OrderPage getOrderPage(String userId, String statusFilter, OrderCursor after, int pageSize) {
+            return getOrderPage(userId, statusFilter, null, after, pageSize);
+        }
+        
+        /**
+         * 分页获取订单列表，可按乘客证件号过滤
+         */
+        public static OrderPage getOrderPage(String userId, String statusFilter, String passengerId,
+                                             OrderCursor after, int pageSize) {
+            return OrderSearch.search(buildCriteria(userId, statusFilter, passengerId), after, pageSize);
+        }
+        
+        /**
+         * 根据当前用户角色和界面过滤条件构造查询条件
+         */
+        private static OrderSearch.Criteria buildCriteria(String userId, String statusFilter, String passengerId) {
+            OrderSearch.Criteria criteria = OrderSearch.criteria().passengerId(passengerId);
             
-            // 修改SQL查询以允许客服和管理员查看所有订单
-            String sql;
-            boolean isNormalUser = isNormalUser(userId);
-            if (isNormalUser) {
-                sql = "SELECT o.order_id, o.user_id, o.flight_id, o.passenger_name, " +
-                      "o.passenger_id, o.seat_number, o.ticket_price, o.booking_time, " +
-                      "o.payment_status, o.order_status, o.payment_method, o.payment_time, " +
-                      "f.flight_number, f.departure_airport, f.arrival_airport, " +
-                      "f.departure_time, f.arrival_time " +
-                      "FROM orders o " +
-                      "JOIN flights f ON o.flight_id = f.flight_id " +
-                      "WHERE o.user_id = ?";
-            } else {
-                sql = "SELECT o.order_id, o.user_id, o.flight_id, o.passenger_name, " +
-                      "o.passenger_id, o.seat_number, o.ticket_price, o.booking_time, " +
-                      "o.payment_status, o.order_status, o.payment_method, o.payment_time, " +
-                      "f.flight_number, f.departure_airport, f.arrival_airport, " +
-                      "f.departure_time, f.arrival_time " +
-                      "FROM orders o " +
-                      "JOIN flights f ON o.flight_id = f.flight_id";
+            // 普通用户只能查看自己的订单，客服和管理员查看所有订单
+            if (PrincipalService.isNormalUser(userId)) {
+                criteria.user(userId);
             }
             
             if (statusFilter != null && !"全部".equals(statusFilter)) {
                 // 状态映射：UI显示 -> 数据库值
-                String dbStatus = mapUIStatusToDBStatus(statusFilter);
-                if (dbStatus != null) {
-                    sql += " AND o.payment_status = ?";
-                }
+                criteria.paymentStatus(mapUIStatusToDBStatus(statusFilter));
             }
-            
-            sql += " ORDER BY o.booking_time DESC";
-            
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-                // 如果是普通用户，绑定 userId 参数
-                int paramIndex = 1;
-                if (isNormalUser) {
-                    stmt.setString(paramIndex++, userId);
-                }
-
-                // 如果有状态过滤器，绑定状态参数
-                if (statusFilter != null && !"全部".equals(statusFilter)) {
-                    String dbStatus = mapUIStatusToDBStatus(statusFilter);
-                    if (dbStatus != null) {
-                        stmt.setString(paramIndex, dbStatus);
-                    }
-                }
-
-                try (ResultSet rs = stmt.executeQuery()) {
-                    while (rs.next()) {
-                        OrderInfo order = new OrderInfo();
-                        order.orderId = rs.getString("order_id");
-                        order.userId = rs.getString("user_id");
-                        order.flightId = rs.getString("flight_id");
-                        order.passengerName = rs.getString("passenger_name");
-                        order.passengerId = rs.getString("passenger_id");
-                        order.seatNumber = rs.getString("seat_number");
-                        order.ticketPrice = rs.getDouble("ticket_price");
-                        order.bookingTime = rs.getString("booking_time");
-                        order.paymentStatus = rs.getString("payment_status");
-                        order.orderStatus = rs.getString("order_status");
-                        order.paymentMethod = rs.getString("payment_method");
-                        order.paymentTime = rs.getString("payment_time");
-                        order.flightNumber = rs.getString("flight_number");
-                        order.departureAirport = rs.getString("departure_airport");
-                        order.arrivalAirport = rs.getString("arrival_airport");
-                        order.departureTime = rs.getString("departure_time");
-                        order.arrivalTime = rs.getString("arrival_time");
-
-                        orders.add(order);
-                    }
-                }
-            } catch (SQLException e) {
-                e.printStackTrace();
-                System.err.println("获取订单数据失败: " + e.getMessage());
-            }
-            
-            return orders;
+            return criteria;
+        }
+        
+        /**
+         * 将查询结果行转换为订单信息
+         */
+        static OrderInfo mapOrder(ResultSet rs) throws SQLException {
+            OrderInfo order = new OrderInfo();
+            order.orderId = rs.getString("order_id");
+            order.userId = rs.getString("user_id");
+            order.flightId = rs.getString("flight_id");
+            order.passengerName = rs.getString("passenger_name");
+            order.passengerId = rs.getString("passenger_id");
+            order.seatNumber = rs.getString("seat_number");
+            order.ticketPrice = rs.getDouble("ticket_price");
+            order.bookingTime = rs.getString("booking_time");
+            order.paymentStatus = rs.getString("payment_status");
+            order.orderStatus = rs.getString("order_status");
+            order.paymentMethod = rs.getString("payment_method");
+            order.paymentTime = rs.getString("payment_time");
+            order.flightNumber = rs.getString("flight_number");
+            order.departureAirport = rs.getString("departure_airport");
+            order.arrivalAirport = rs.getString("arrival_airport");
+            order.departureTime = rs.getString("departure_time");
+            order.arrivalTime = rs.getString("arrival_time");
+            return order;
         }
         
         /**
@@ -152,12 +138,15 @@ public class OrderManagementModule extends JFrame {
          */
         public static boolean updateOrderPaymentStatus(String orderId, String paymentStatus, String paymentMethod) {
             String sql = "UPDATE orders SET payment_status = ?, payment_method = ?, payment_time = CURRENT_TIMESTAMP WHERE order_id = ?";
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, paymentStatus);
-                stmt.setString(2, paymentMethod);
-                stmt.setString(3, orderId);
-                return stmt.executeUpdate() > 0;
+            try {
+                return DatabaseWriter.execute(conn -> {
+                    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        stmt.setString(1, paymentStatus);
+                        stmt.setString(2, paymentMethod);
+                        stmt.setString(3, orderId);
+                        return stmt.executeUpdate() > 0;
+                    }
+                });
             } catch (SQLException e) {
                 e.printStackTrace();
                 return false;
@@ -169,39 +158,44 @@ public class OrderManagementModule extends JFrame {
          */
         public static boolean updateOrderStatus(String orderId, String orderStatus, String paymentStatus) {
             String sql = "UPDATE orders SET order_status = ?, payment_status = ? WHERE order_id = ?";
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, orderStatus);
-                stmt.setString(2, paymentStatus);
-                stmt.setString(3, orderId);
-                return stmt.executeUpdate() > 0;
+            try {
+                return DatabaseWriter.execute(conn -> {
+                    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        stmt.setString(1, orderStatus);
+                        stmt.setString(2, paymentStatus);
+                        stmt.setString(3, orderId);
+                        return stmt.executeUpdate() > 0;
+                    }
+                });
             } catch (SQLException e) {
                 e.printStackTrace();
                 return false;
             }
         }
+    }
+    
+    /**
+     * 分页游标 - 上一页最后一条订单的 (booking_time, order_id)
+     */
+    public static class OrderCursor {
+        public final String bookingTime;
+        public final String orderId;
         
-        /**
-         * 判断用户是否为普通用户
-         */
-        private static boolean isNormalUser(String userId) {
-            String sql = "SELECT role FROM users WHERE username = ?";
-            try (Connection conn = DatabaseManager.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, userId);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        String role = rs.getString("role");
-                        return "用户".equals(role);
-                    }
-                }
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
-            return true; // 默认当作普通用户处理
+        public OrderCursor(String bookingTime, String orderId) {
+            this.bookingTime = bookingTime;
+            this.orderId = orderId;
         }
     }
     
+    /**
+     * 一页订单
+     */
+    public static class OrderPage {
+        public java.util.List<OrderInfo> orders = new java.util.ArrayList<>();
+        public OrderCursor nextCursor;
+        public boolean hasMore;
+    }
+    
     /**
      * 订单信息类
      */
@@ -259,8 +253,17 @@ public class OrderManagementModule extends JFrame {
         JButton refundBtn = new JButton("退票管理");
         refundBtn.setFont(largerFont);
         refundBtn.setBackground(new Color(244, 67, 54));
-        refundBtn.setForeground(Color.WHITE);        filterPanel.add(filterLabel);
+        refundBtn.setForeground(Color.WHITE);        JLabel passengerIdLabel = new JLabel("乘客证件号:");
+        passengerIdLabel.setFont(largerFont);
+
+        passengerIdField = new JTextField(12);
+        passengerIdField.setFont(largerFont);
+        passengerIdField.addActionListener(this::loadOrders);
+
+        filterPanel.add(filterLabel);
         filterPanel.add(statusFilter);
+        filterPanel.add(passengerIdLabel);
+        filterPanel.add(passengerIdField);
         filterPanel.add(refreshBtn);
         filterPanel.add(paymentBtn);
         filterPanel.add(refundBtn);
@@ -283,6 +286,14 @@ public class OrderManagementModule extends JFrame {
         orderTable.getTableHeader().setFont(largerFont);
 
         JScrollPane tableScroll = new JScrollPane(orderTable);
+        // 滚动到接近底部时加载下一页
+        tableScroll.getVerticalScrollBar().addAdjustmentListener(event -> {
+            JScrollBar bar = (JScrollBar) event.getAdjustable();
+            if (!event.getValueIsAdjusting() && hasMoreOrders
+                    && bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - orderTable.getRowHeight() * 5) {
+                loadNextPage();
+            }
+        });
 
         // 组装界面
         add(filterPanel, BorderLayout.NORTH);
@@ -298,58 +309,13 @@ public class OrderManagementModule extends JFrame {
         setLocationRelativeTo(null);
         setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
     }    private void loadOrders(ActionEvent e) {
-        String selectedStatus = (String) statusFilter.getSelectedItem();
         DefaultTableModel model = (DefaultTableModel) orderTable.getModel();
         model.setRowCount(0);
+        nextCursor = null;
+        hasMoreOrders = true;
 
-        // 从数据库获取订单数据
-        java.util.List<OrderInfo> orders = DatabaseManager.getUserOrders(currentUser, selectedStatus);
-        
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-        SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm");
-        
-        for (OrderInfo order : orders) {
-            try {
-                // 解析日期时间
-                java.util.Date departureDateTime = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(order.departureTime);
-                java.util.Date arrivalDateTime = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(order.arrivalTime);
-                
-                String departureDate = dateFormat.format(departureDateTime);
-                String departureTime = timeFormat.format(departureDateTime);
-                String arrivalTime = timeFormat.format(arrivalDateTime);
-                
-                // 映射数据库状态到UI显示状态
-                String displayStatus = DatabaseManager.mapDBStatusToUIStatus(order.paymentStatus);
-                
-                Object[] row = {
-                    order.orderId,
-                    order.flightNumber,
-                    order.departureAirport,
-                    order.arrivalAirport,
-                    departureDate,
-                    departureTime,
-                    arrivalTime,
-                    displayStatus,
-                    order.ticketPrice
-                };
-                
-                model.addRow(row);
-            } catch (java.text.ParseException ex) {
-                // 如果日期解析失败，使用原始数据
-                Object[] row = {
-                    order.orderId,
-                    order.flightNumber,
-                    order.departureAirport,
-                    order.arrivalAirport,
-                    order.departureTime.substring(0, 10), // 取日期部分
-                    order.departureTime.substring(11, 16), // 取时间部分
-                    order.arrivalTime.substring(11, 16),
-                    DatabaseManager.mapDBStatusToUIStatus(order.paymentStatus),
-                    order.ticketPrice
-                };
-                model.addRow(row);
-            }
-        }
+        // 只加载第一页，其余页面滚动时再加载
+        loadNextPage();
 
         if (model.getRowCount() == 0) {
             JOptionPane.showMessageDialog(this, 
@@ -357,7 +323,77 @@ public class OrderManagementModule extends JFrame {
                 "提示", 
                 JOptionPane.INFORMATION_MESSAGE);
         }
-    }    private void openPaymentModule(ActionEvent e) {        // 获取选中的订单
+    }
+
+    /**
+     * 从数据库加载下一页订单并追加到表格
+     */
+    private void loadNextPage() {
+        if (loadingPage || !hasMoreOrders) {
+            return;
+        }
+        loadingPage = true;
+        try {
+            String selectedStatus = (String) statusFilter.getSelectedItem();
+            String passengerId = passengerIdField.getText().trim();
+            OrderPage page = DatabaseManager.getOrderPage(currentUser, selectedStatus, passengerId, nextCursor, PAGE_SIZE);
+            nextCursor = page.nextCursor;
+            hasMoreOrders = page.hasMore;
+
+            DefaultTableModel model = (DefaultTableModel) orderTable.getModel();
+            for (OrderInfo order : page.orders) {
+                addOrderRow(model, order);
+            }
+        } finally {
+            loadingPage = false;
+        }
+    }
+
+    private void addOrderRow(DefaultTableModel model, OrderInfo order) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm");
+        
+        try {
+            // 解析日期时间
+            java.util.Date departureDateTime = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(order.departureTime);
+            java.util.Date arrivalDateTime = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(order.arrivalTime);
+            
+            String departureDate = dateFormat.format(departureDateTime);
+            String departureTime = timeFormat.format(departureDateTime);
+            String arrivalTime = timeFormat.format(arrivalDateTime);
+            
+            // 映射数据库状态到UI显示状态
+            String displayStatus = DatabaseManager.mapDBStatusToUIStatus(order.paymentStatus);
+            
+            Object[] row = {
+                order.orderId,
+                order.flightNumber,
+                order.departureAirport,
+                order.arrivalAirport,
+                departureDate,
+                departureTime,
+                arrivalTime,
+                displayStatus,
+                order.ticketPrice
+            };
+            
+            model.addRow(row);
+        } catch (java.text.ParseException ex) {
+            // 如果日期解析失败，使用原始数据
+            Object[] row = {
+                order.orderId,
+                order.flightNumber,
+                order.departureAirport,
+                order.arrivalAirport,
+                order.departureTime.substring(0, 10), // 取日期部分
+                order.departureTime.substring(11, 16), // 取时间部分
+                order.arrivalTime.substring(11, 16),
+                DatabaseManager.mapDBStatusToUIStatus(order.paymentStatus),
+                order.ticketPrice
+            };
+            model.addRow(row);
+        }
+    }        private void openPaymentModule(ActionEvent e) {        // 获取选中的订单
         int selectedRow = orderTable.getSelectedRow();
         if (selectedRow >= 0) {
             String orderId = (String) orderTable.getValueAt(selectedRow, 0);
@@ -0,0 +1,198 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 订单搜索 - 按用户、支付状态、订单状态、航班、下单时间范围、乘客证件号组合查询
+ * 结果按 (booking_time, order_id) 倒序并支持键集分页，每种条件都有对应的复合索引
+ */
+public class OrderSearch {
+    private static final String ORDER_SELECT_SQL =
+            "SELECT o.order_id, o.user_id, o.flight_id, o.passenger_name, " +
+            "o.passenger_id, o.seat_number, o.ticket_price, o.booking_time, " +
+            "o.payment_status, o.order_status, o.payment_method, o.payment_time, " +
+            "f.flight_number, f.departure_airport, f.arrival_airport, " +
+            "f.departure_time, f.arrival_time " +
+            "FROM orders o " +
+            "JOIN flights f ON o.flight_id = f.flight_id";
+
+    private OrderSearch() {
+    }
+
+    /**
+     * 创建空的查询条件（不限制任何字段）
+     */
+    public static Criteria criteria() {
+        return new Criteria();
+    }
+
+    /**
+     * 查询条件，未设置的字段不参与过滤
+     */
+    public static class Criteria {
+        String userId;
+        String paymentStatus;
+        String orderStatus;
+        String flightId;
+        String bookedFrom;
+        String bookedTo;
+        String passengerId;
+
+        public Criteria user(String userId) {
+            this.userId = userId;
+            return this;
+        }
+
+        public Criteria paymentStatus(String paymentStatus) {
+            this.paymentStatus = paymentStatus;
+            return this;
+        }
+
+        public Criteria orderStatus(String orderStatus) {
+            this.orderStatus = orderStatus;
+            return this;
+        }
+
+        public Criteria flight(String flightId) {
+            this.flightId = flightId;
+            return this;
+        }
+
+        /**
+         * 下单时间范围 [from, to)，格式 yyyy-MM-dd 或 yyyy-MM-dd HH:mm:ss，任一端可为null
+         */
+        public Criteria bookedBetween(String from, String to) {
+            this.bookedFrom = from;
+            this.bookedTo = to;
+            return this;
+        }
+
+        public Criteria passengerId(String passengerId) {
+            this.passengerId = passengerId;
+            return this;
+        }
+    }
+
+    /**
+     * 分页查询
+     * @param after 上一页最后一条订单的游标，第一页传null
+     */
+    public static OrderManagementModule.OrderPage search(Criteria criteria, OrderManagementModule.OrderCursor after,
+                                                         int pageSize) {
+        OrderManagementModule.OrderPage page = new OrderManagementModule.OrderPage();
+        List<String> params = new ArrayList<>();
+        String sql = buildSql(criteria, after, params) + " LIMIT ?";
+
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int paramIndex = bind(stmt, params);
+            // 多取一条用于判断是否还有下一页
+            stmt.setInt(paramIndex, pageSize + 1);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (page.orders.size() == pageSize) {
+                        page.hasMore = true;
+                        break;
+                    }
+                    page.orders.add(OrderManagementModule.DatabaseManager.mapOrder(rs));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("查询订单失败: " + e.getMessage());
+        }
+
+        if (!page.orders.isEmpty()) {
+            OrderManagementModule.OrderInfo last = page.orders.get(page.orders.size() - 1);
+            page.nextCursor = new OrderManagementModule.OrderCursor(last.bookingTime, last.orderId);
+        }
+        return page;
+    }
+
+    /**
+     * 查询全部符合条件的订单（不分页，仅用于结果集较小的场景）
+     */
+    public static List<OrderManagementModule.OrderInfo> findAll(Criteria criteria) {
+        List<OrderManagementModule.OrderInfo> orders = new ArrayList<>();
+        List<String> params = new ArrayList<>();
+        String sql = buildSql(criteria, null, params);
+
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bind(stmt, params);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    orders.add(OrderManagementModule.DatabaseManager.mapOrder(rs));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("查询订单失败: " + e.getMessage());
+        }
+        return orders;
+    }
+
+    /**
+     * 获取查询计划（EXPLAIN QUERY PLAN 的 detail 列），用于确认查询走索引
+     */
+    public static List<String> explain(Criteria criteria) throws SQLException {
+        List<String> plan = new ArrayList<>();
+        List<String> params = new ArrayList<>();
+        String sql = "EXPLAIN QUERY PLAN " +
+                buildSql(criteria, new OrderManagementModule.OrderCursor("9999-12-31 23:59:59", "~"), params) +
+                " LIMIT ?";
+
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int paramIndex = bind(stmt, params);
+            stmt.setInt(paramIndex, 101);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    plan.add(rs.getString("detail"));
+                }
+            }
+        }
+        return plan;
+    }
+
+    private static String buildSql(Criteria criteria, OrderManagementModule.OrderCursor after, List<String> params) {
+        List<String> conditions = new ArrayList<>();
+        addCondition(conditions, params, "o.user_id = ?", criteria.userId);
+        addCondition(conditions, params, "o.payment_status = ?", criteria.paymentStatus);
+        addCondition(conditions, params, "o.order_status = ?", criteria.orderStatus);
+        addCondition(conditions, params, "o.flight_id = ?", criteria.flightId);
+        addCondition(conditions, params, "o.passenger_id = ?", criteria.passengerId);
+        addCondition(conditions, params, "o.booking_time >= ?", criteria.bookedFrom);
+        addCondition(conditions, params, "o.booking_time < ?", criteria.bookedTo);
+
+        // 从上一页最后一条之后继续，走 (booking_time, order_id) 索引，不需要OFFSET
+        if (after != null) {
+            conditions.add("(o.booking_time, o.order_id) < (?, ?)");
+            params.add(after.bookingTime);
+            params.add(after.orderId);
+        }
+
+        return ORDER_SELECT_SQL +
+                (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions)) +
+                " ORDER BY o.booking_time DESC, o.order_id DESC";
+    }
+
+    private static void addCondition(List<String> conditions, List<String> params, String condition, String value) {
+        if (value != null && !value.isEmpty()) {
+            conditions.add(condition);
+            params.add(value);
+        }
+    }
+
+    private static int bind(PreparedStatement stmt, List<String> params) throws SQLException {
+        int paramIndex = 1;
+        for (String param : params) {
+            stmt.setString(paramIndex++, param);
+        }
+        return paramIndex;
+    }
+}
@@ -13,9 +13,6 @@ public class PaymentModule extends JFrame {
     private JButton cancelBtn;
     private JLabel orderInfoLabel;
     private JLabel flightInfoLabel;
-    
-    // 数据库URL
-    private static final String DB_URL = "jdbc:sqlite:airplane_system.db";
 
     public PaymentModule(String orderId, String currentUser) {
         this.orderId = orderId;
@@ -135,7 +132,7 @@ public class PaymentModule extends JFrame {
                     "JOIN flights f ON o.flight_id = f.flight_id " +
                     "WHERE o.order_id = ? AND o.user_id = ?";
         
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = DatabaseConnectionPool.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             
             stmt.setString(1, orderId);
@@ -150,6 +147,12 @@ public class PaymentModule extends JFrame {
                             "订单状态不是待支付，无法进行支付操作！", 
                             "提示", JOptionPane.WARNING_MESSAGE);
                         return false;
+                    }
+                    if (PaymentPipeline.isAwaitingReconciliation(orderId)) {
+                        JOptionPane.showMessageDialog(this,
+                            "该订单已扣款，支付状态正在核对中，请勿重复支付！",
+                            "提示", JOptionPane.WARNING_MESSAGE);
+                        return false;
                     }
                       // 设置订单金额
                     this.orderAmount = rs.getDouble("ticket_price");
@@ -191,26 +194,41 @@ public class PaymentModule extends JFrame {
         String method = (String) paymentMethod.getSelectedItem();
         String methodCode = mapPaymentMethodToCode(method);
 
-        // 显示支付中提示（使用大字体）
-        JOptionPane.showMessageDialog(this, "支付处理中...", "请稍候",
-                JOptionPane.INFORMATION_MESSAGE);
+        // 支付在后台进行，处理期间禁止重复提交
+        confirmBtn.setEnabled(false);
+        confirmBtn.setText("支付处理中...");
 
-        // 模拟调用支付API
-        boolean paymentSuccess = simulatePaymentAPI(method);
+        PaymentPipeline.pay(orderId, orderAmount, methodCode).thenAccept(result ->
+                SwingUtilities.invokeLater(() -> showPaymentResult(result)));
+    }
 
-        if (paymentSuccess) {
-            // 更新数据库中的订单状态
-            if (updateOrderPaymentStatus(orderId, "paid", methodCode)) {
-                JOptionPane.showMessageDialog(this, "支付成功!", "提示",
+    /**
+     * 显示支付结果（在事件线程上执行）
+     */
+    private void showPaymentResult(PaymentPipeline.PaymentResult result) {
+        confirmBtn.setText("确认支付");
+        switch (result.status) {
+            case PAID:
+                JOptionPane.showMessageDialog(this, result.message, "提示",
                         JOptionPane.INFORMATION_MESSAGE);
                 dispose();
-            } else {
-                JOptionPane.showMessageDialog(this, "支付成功但状态更新失败", "警告",
+                break;
+            case CAPTURED:
+                // 已扣款：不再允许重新支付
+                JOptionPane.showMessageDialog(this, result.message, "提示",
                         JOptionPane.WARNING_MESSAGE);
-            }
-        } else {
-            JOptionPane.showMessageDialog(this, "支付失败，请重试", "错误",
-                    JOptionPane.ERROR_MESSAGE);
+                dispose();
+                break;
+            case TIMEOUT:
+            case FAILED:
+                JOptionPane.showMessageDialog(this, result.message, "警告",
+                        JOptionPane.WARNING_MESSAGE);
+                confirmBtn.setEnabled(true);
+                break;
+            default:
+                JOptionPane.showMessageDialog(this, result.message, "错误",
+                        JOptionPane.ERROR_MESSAGE);
+                confirmBtn.setEnabled(true);
         }
     }
     
@@ -226,32 +244,6 @@ public class PaymentModule extends JFrame {
         }
     }
     
-    /**
-     * 更新订单支付状态到数据库
-     */
-    private boolean updateOrderPaymentStatus(String orderId, String paymentStatus, String paymentMethod) {
-        String sql = "UPDATE orders SET payment_status = ?, payment_method = ?, payment_time = CURRENT_TIMESTAMP WHERE order_id = ?";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, paymentStatus);
-            stmt.setString(2, paymentMethod);
-            stmt.setString(3, orderId);
-            return stmt.executeUpdate() > 0;
-        } catch (SQLException e) {
-            e.printStackTrace();
-            System.err.println("更新订单支付状态失败: " + e.getMessage());
-            return false;
-        }
-    }    // 模拟支付API调用
-    private boolean simulatePaymentAPI(String method) {
-        try {
-            Thread.sleep(1500); // 模拟网络延迟
-            return Math.random() > 0.2; // 80%成功率
-        } catch (InterruptedException ex) {
-            return false;
-        }
-    }
-
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
             // 用于测试的构造函数调用
@@ -0,0 +1,318 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 异步支付管道 - 支付网关调用在虚拟线程上执行，不阻塞Swing事件线程
+ * 并发数由信号量限制，同一订单号的重复提交返回同一个支付结果（幂等）
+ * 等待超时只结束调用方的等待：网关调用仍继续，结果到达后照常写入订单；
+ * 在此之前同一订单的再次提交会等待原来的调用，不会发起第二次扣款；
+ * 已扣款但订单未能标记为已支付时记入 payment_reconciliations 待人工核对，该订单不能再次支付
+ */
+public class PaymentPipeline {
+    private static final int MAX_CONCURRENT = Integer.getInteger("airplane.payment.maxConcurrent", 256);
+    private static final long GATEWAY_TIMEOUT_MS = Long.getLong("airplane.payment.timeoutMs", 10000L);
+    private static final int COMPLETED_CACHE_SIZE = 10000;
+
+    private static final String UPDATE_SQL =
+            "UPDATE orders SET payment_status = 'paid', payment_method = ?, payment_time = CURRENT_TIMESTAMP " +
+            "WHERE order_id = ? AND payment_status = 'pending'";
+    private static final String RECONCILE_SQL =
+            "INSERT OR IGNORE INTO payment_reconciliations (order_id, amount, payment_method, reason) " +
+            "VALUES (?, ?, ?, ?)";
+    private static final String OPEN_RECONCILE_SQL =
+            "SELECT 1 FROM payment_reconciliations WHERE order_id = ? AND status = 'open'";
+
+    private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+    private static final Semaphore PERMITS = new Semaphore(MAX_CONCURRENT);
+
+    // 幂等键（订单号）-> 进行中的支付
+    private static final Map<String, CompletableFuture<PaymentResult>> IN_FLIGHT = new ConcurrentHashMap<>();
+    // 调用方已等待超时、网关结果尚未到达的订单
+    private static final Set<String> AWAITING_LATE = ConcurrentHashMap.newKeySet();
+    // 最近支付成功的订单，重复提交时直接返回
+    private static final Map<String, PaymentResult> COMPLETED = Collections.synchronizedMap(
+            new LinkedHashMap<String, PaymentResult>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PaymentResult> eldest) {
+                    return size() > COMPLETED_CACHE_SIZE;
+                }
+            });
+
+    private static volatile PaymentGateway gateway = new SimulatedGateway(1500, 0.8);
+
+    // 支付指标
+    private static final LongAdder SUBMITTED = new LongAdder();
+    private static final LongAdder DEDUPLICATED = new LongAdder();
+    private static final LongAdder PAID = new LongAdder();
+    private static final LongAdder DECLINED = new LongAdder();
+    private static final LongAdder TIMED_OUT = new LongAdder();
+    // 调用方等待超时后才到达的网关结果
+    private static final LongAdder LATE = new LongAdder();
+    // 已扣款但订单未能标记为已支付
+    private static final LongAdder CAPTURED = new LongAdder();
+    private static final LongAdder FAILED = new LongAdder();
+
+    private PaymentPipeline() {
+    }
+
+    /**
+     * 支付网关接口：同步调用第三方支付，在管道的虚拟线程上执行
+     */
+    public interface PaymentGateway {
+        /**
+         * 扣款，成功返回true，被拒绝返回false
+         */
+        boolean charge(String orderId, double amount, String paymentMethod) throws Exception;
+    }
+
+    /**
+     * 本地模拟支付网关
+     */
+    public static class SimulatedGateway implements PaymentGateway {
+        private final long latencyMillis;
+        private final double successRate;
+
+        public SimulatedGateway(long latencyMillis, double successRate) {
+            this.latencyMillis = latencyMillis;
+            this.successRate = successRate;
+        }
+
+        @Override
+        public boolean charge(String orderId, double amount, String paymentMethod) throws InterruptedException {
+            Thread.sleep(latencyMillis); // 模拟网络延迟
+            return ThreadLocalRandom.current().nextDouble() < successRate;
+        }
+    }
+
+    /**
+     * 支付结果状态；CAPTURED 表示已扣款、订单状态待核对，不可再次支付
+     */
+    public enum Status { PAID, CAPTURED, DECLINED, TIMEOUT, FAILED }
+
+    /**
+     * 替换支付网关
+     */
+    public static void setGateway(PaymentGateway paymentGateway) {
+        gateway = paymentGateway;
+    }
+
+    /**
+     * 提交支付，立即返回；同一订单正在支付或已支付成功时返回原有结果
+     * 返回的结果在 airplane.payment.timeoutMs 内没有网关结果时为 TIMEOUT，此时原支付仍在进行
+     */
+    public static CompletableFuture<PaymentResult> pay(String orderId, double amount, String paymentMethod) {
+        PaymentResult completed = COMPLETED.get(orderId);
+        if (completed != null) {
+            DEDUPLICATED.increment();
+            return CompletableFuture.completedFuture(completed);
+        }
+
+        boolean[] created = new boolean[1];
+        CompletableFuture<PaymentResult> settled = IN_FLIGHT.computeIfAbsent(orderId, _ -> {
+            created[0] = true;
+            return start(orderId, amount, paymentMethod);
+        });
+        if (!created[0]) {
+            DEDUPLICATED.increment();
+            return await(orderId, settled);
+        }
+
+        SUBMITTED.increment();
+        // 网关调用真正结束（含写入订单）后才允许同一订单再次发起支付
+        settled.whenComplete((result, _) -> {
+            if (result != null && (result.status == Status.PAID || result.status == Status.CAPTURED)) {
+                COMPLETED.put(orderId, result);
+            }
+            if (AWAITING_LATE.remove(orderId)) {
+                LATE.increment();
+            }
+            IN_FLIGHT.remove(orderId, settled);
+        });
+        return await(orderId, settled);
+    }
+
+    /**
+     * 调用方的等待：超时后返回 TIMEOUT，不影响进行中的支付
+     */
+    private static CompletableFuture<PaymentResult> await(String orderId, CompletableFuture<PaymentResult> settled) {
+        return settled.copy()
+                .orTimeout(GATEWAY_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .exceptionally(ex -> {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    if (cause instanceof TimeoutException) {
+                        AWAITING_LATE.add(orderId);
+                        TIMED_OUT.increment();
+                        return new PaymentResult(orderId, Status.TIMEOUT,
+                                "支付结果确认中，请稍后查询订单状态，无需重复支付");
+                    }
+                    return new PaymentResult(orderId, Status.FAILED, "支付处理失败: " + cause.getMessage());
+                });
+    }
+
+    /**
+     * 调用网关并把结果写入订单；不设超时，结果到达后一定落库
+     */
+    private static CompletableFuture<PaymentResult> start(String orderId, double amount, String paymentMethod) {
+        PaymentGateway currentGateway = gateway;
+        return CompletableFuture
+                .supplyAsync(() -> charge(currentGateway, orderId, amount, paymentMethod), EXECUTOR)
+                .thenCompose(approved -> {
+                    if (!approved) {
+                        DECLINED.increment();
+                        return CompletableFuture.completedFuture(
+                                new PaymentResult(orderId, Status.DECLINED, "支付失败，请重试"));
+                    }
+                    return DatabaseWriter.submit(conn -> {
+                        try (PreparedStatement stmt = conn.prepareStatement(UPDATE_SQL)) {
+                            stmt.setString(1, paymentMethod);
+                            stmt.setString(2, orderId);
+                            return stmt.executeUpdate() > 0;
+                        }
+                    }).handle((updated, ex) -> {
+                        if (ex == null && updated) {
+                            PAID.increment();
+                            return new PaymentResult(orderId, Status.PAID, "支付成功!");
+                        }
+                        // 网关已扣款：不能当作失败让用户重试
+                        String reason = ex == null ? "订单已不是待支付状态"
+                                : "订单状态更新失败: " + (ex.getCause() != null ? ex.getCause() : ex).getMessage();
+                        return captured(orderId, amount, paymentMethod, reason);
+                    });
+                })
+                .exceptionally(ex -> {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    cause.printStackTrace();
+                    System.err.println("支付处理失败: " + cause.getMessage());
+                    FAILED.increment();
+                    return new PaymentResult(orderId, Status.FAILED, "支付处理失败: " + cause.getMessage());
+                });
+    }
+
+    /**
+     * 已扣款但订单未能标记为已支付：记入待核对表，由人工补记订单或退款
+     */
+    private static PaymentResult captured(String orderId, double amount, String paymentMethod, String reason) {
+        CAPTURED.increment();
+        System.err.println("支付已扣款但未写入订单，待核对: " + orderId + " " + reason);
+        DatabaseWriter.submit(conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(RECONCILE_SQL)) {
+                stmt.setString(1, orderId);
+                stmt.setDouble(2, amount);
+                stmt.setString(3, paymentMethod);
+                stmt.setString(4, reason);
+                return stmt.executeUpdate();
+            }
+        }).exceptionally(ex -> {
+            System.err.println("记录待核对支付失败: " + orderId + " " + ex.getMessage());
+            return 0;
+        });
+        return new PaymentResult(orderId, Status.CAPTURED, "已扣款，订单状态正在核对中，请勿重复支付");
+    }
+
+    /**
+     * 订单是否有已扣款、待核对的支付（此时不应再次发起支付）
+     */
+    public static boolean isAwaitingReconciliation(String orderId) {
+        PaymentResult completed = COMPLETED.get(orderId);
+        if (completed != null && completed.status == Status.CAPTURED) {
+            return true;
+        }
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(OPEN_RECONCILE_SQL)) {
+            stmt.setString(1, orderId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("读取待核对支付失败: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean charge(PaymentGateway paymentGateway, String orderId, double amount, String paymentMethod) {
+        try {
+            PERMITS.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待支付通道时被中断", e);
+        }
+        try {
+            return paymentGateway.charge(orderId, amount, paymentMethod);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("支付网关调用失败: " + e.getMessage(), e);
+        } finally {
+            PERMITS.release();
+        }
+    }
+
+    /**
+     * 获取支付指标快照
+     */
+    public static PaymentStats getStats() {
+        PaymentStats stats = new PaymentStats();
+        stats.inFlight = IN_FLIGHT.size();
+        stats.submitted = SUBMITTED.sum();
+        stats.deduplicated = DEDUPLICATED.sum();
+        stats.paid = PAID.sum();
+        stats.declined = DECLINED.sum();
+        stats.timedOut = TIMED_OUT.sum();
+        stats.late = LATE.sum();
+        stats.captured = CAPTURED.sum();
+        stats.failed = FAILED.sum();
+        return stats;
+    }
+
+    /**
+     * 支付结果
+     */
+    public static class PaymentResult {
+        public final String orderId;
+        public final Status status;
+        public final String message;
+
+        public PaymentResult(String orderId, Status status, String message) {
+            this.orderId = orderId;
+            this.status = status;
+            this.message = message;
+        }
+    }
+
+    /**
+     * 支付指标
+     */
+    public static class PaymentStats {
+        public int inFlight;
+        public long submitted;
+        public long deduplicated;
+        public long paid;
+        public long declined;
+        public long timedOut;
+        public long late;
+        public long captured;
+        public long failed;
+
+        @Override
+        public String toString() {
+            return String.format("支付[进行中:%d 提交:%d 重复:%d 成功:%d 拒绝:%d 超时:%d 超时后到达:%d 待核对:%d 失败:%d]",
+                    inFlight, submitted, deduplicated, paid, declined, timedOut, late, captured, failed);
+        }
+    }
+}
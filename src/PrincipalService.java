@@ -0,0 +1,123 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 用户角色服务 - 订单、退票、改签查询统一从这里判断用户角色
+ * 登录时由 authenticateUser 返回的凭据写入缓存，缓存有上限（LRU），
+ * 用户角色变更或删除用户时失效
+ */
+public class PrincipalService {
+    public static final String ROLE_USER = "用户";
+
+    private static final int CACHE_SIZE = Integer.getInteger("airplane.principal.cacheSize", 10000);
+    private static final String ROLE_SQL = "SELECT role FROM users WHERE username = ?";
+
+    // 用户名 -> 角色（访问顺序，超出上限时淘汰最久未使用的用户）
+    private static final Map<String, String> ROLES = new LinkedHashMap<String, String>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    // 每次失效加一（受 ROLES 锁保护）；未命中的查询期间发生过失效时不回填，避免把旧角色写回缓存
+    private static long generation;
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+
+    private PrincipalService() {
+    }
+
+    /**
+     * 登录成功后记录用户角色
+     */
+    public static void register(UserManagementModule.UserCredential credential) {
+        if (credential != null && credential.getRole() != null) {
+            synchronized (ROLES) {
+                ROLES.put(credential.getUserId(), credential.getRole());
+            }
+        }
+    }
+
+    /**
+     * 获取用户角色，缓存未命中时查询数据库；用户不存在时返回null
+     */
+    public static String getRole(String userId) {
+        if (userId == null) {
+            return null;
+        }
+        String role;
+        long loadedAt;
+        synchronized (ROLES) {
+            role = ROLES.get(userId);
+            loadedAt = generation;
+        }
+        if (role != null) {
+            HITS.increment();
+            return role;
+        }
+
+        MISSES.increment();
+        role = loadRole(userId);
+        if (role != null) {
+            synchronized (ROLES) {
+                if (generation == loadedAt) {
+                    ROLES.put(userId, role);
+                }
+            }
+        }
+        return role;
+    }
+
+    /**
+     * 判断是否为普通用户（需要权限限制，只能访问自己的订单）
+     * 只有角色为"用户"的才需要限制，客服和管理员不需要限制；无法确定角色时按普通用户处理
+     */
+    public static boolean isNormalUser(String userId) {
+        String role = getRole(userId);
+        return role == null || ROLE_USER.equals(role);
+    }
+
+    /**
+     * 使用户的缓存角色失效（角色变更或删除用户后调用）
+     */
+    public static void invalidate(String userId) {
+        synchronized (ROLES) {
+            generation++;
+            ROLES.remove(userId);
+        }
+    }
+
+    private static String loadRole(String userId) {
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(ROLE_SQL)) {
+            stmt.setString(1, userId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getString("role");
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("获取用户角色失败: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 缓存命中情况
+     */
+    public static String getStats() {
+        int size;
+        synchronized (ROLES) {
+            size = ROLES.size();
+        }
+        return String.format("角色缓存[用户数:%d/%d 命中:%d 未命中:%d]", size, CACHE_SIZE, HITS.sum(), MISSES.sum());
+    }
+}
@@ -1,13 +1,11 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.LocalDateTime;
 import java.sql.*;
 
 public class RefundModule extends JFrame {
 
-    private static final String DB_URL = "jdbc:sqlite:airplane_system.db";
     private String orderId;
     private String currentUser;
     private JComboBox<String> flightCombo;
@@ -23,6 +21,9 @@ public class RefundModule extends JFrame {
     private String passengerName;
     private String departureTime;
     private double ticketPrice;
+    private String departureAirport;
+    private String arrivalAirport;
+    private CabinClass cabin;
 
     public RefundModule(String orderId, String currentUser) {
         this.orderId = orderId;
@@ -163,25 +164,25 @@ public class RefundModule extends JFrame {
     private boolean loadOrderFromDatabase() {
         // 根据用户角色决定是否需要用户ID限制
         String sql;
-        boolean needUserLimit = isNormalUser(currentUser);
+        boolean needUserLimit = PrincipalService.isNormalUser(currentUser);
         
         if (needUserLimit) {
             // 普通用户只能查看自己的订单
-            sql = "SELECT o.order_id, o.user_id, o.passenger_name, o.ticket_price, o.payment_status, " +
+            sql = "SELECT o.order_id, o.user_id, o.passenger_name, o.ticket_price, o.payment_status, o.cabin_class, " +
                   "f.flight_number, f.departure_airport, f.arrival_airport, f.departure_time " +
                   "FROM orders o " +
                   "JOIN flights f ON o.flight_id = f.flight_id " +
                   "WHERE o.order_id = ? AND o.user_id = ? AND o.payment_status = 'paid'";
         } else {
             // 客服和管理员可以查看任何订单
-            sql = "SELECT o.order_id, o.user_id, o.passenger_name, o.ticket_price, o.payment_status, " +
+            sql = "SELECT o.order_id, o.user_id, o.passenger_name, o.ticket_price, o.payment_status, o.cabin_class, " +
                   "f.flight_number, f.departure_airport, f.arrival_airport, f.departure_time " +
                   "FROM orders o " +
                   "JOIN flights f ON o.flight_id = f.flight_id " +
                   "WHERE o.order_id = ? AND o.payment_status = 'paid'";
         }
         
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = DatabaseConnectionPool.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             
             stmt.setString(1, orderId);
@@ -194,10 +195,12 @@ public class RefundModule extends JFrame {
                     passengerName = rs.getString("passenger_name");
                     ticketPrice = rs.getDouble("ticket_price");
                     flightNumber = rs.getString("flight_number");
-                    String departureAirport = rs.getString("departure_airport");
-                    String arrivalAirport = rs.getString("arrival_airport");
+                    departureAirport = rs.getString("departure_airport");
+                    arrivalAirport = rs.getString("arrival_airport");
                     route = departureAirport + "→" + arrivalAirport;
                     departureTime = rs.getString("departure_time");
+                    CabinClass orderCabin = CabinClass.fromCode(rs.getString("cabin_class"));
+                    cabin = orderCabin != null ? orderCabin : CabinClass.ECONOMY;
                     return true;
                 } else {
                     return false; // 订单不存在或不属于当前用户或状态不是已支付
@@ -235,7 +238,7 @@ public class RefundModule extends JFrame {
 
         if (confirm == JOptionPane.YES_OPTION) {
             // 处理退款
-            boolean success = processRefundInDatabase(orderId, refundAmount, reason);
+            boolean success = processRefundInDatabase(orderId, refundAmount, ticketPrice - refundAmount, reason);
 
             if (success) {
                 JOptionPane.showMessageDialog(this,
@@ -249,33 +252,25 @@ public class RefundModule extends JFrame {
         }
     }    // 检查退票规则
     private RefundResult checkRefundPolicyFromDatabase(String orderId) {
+        return evaluateRefundPolicy(ticketPrice, cabin, departureAirport, arrivalAirport, departureTime,
+                LocalDateTime.now());
+    }
+
+    /**
+     * 按退票规则表（RefundRules）计算可退金额和手续费
+     */
+    static RefundResult evaluateRefundPolicy(double ticketPrice, CabinClass cabin, String departureAirport,
+                                             String arrivalAirport, String departureTime, LocalDateTime now) {
         RefundResult result = new RefundResult();
 
         try {
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-            Date now = new Date();
-            Date departure = sdf.parse(departureTime);
-
-            long diffHours = (departure.getTime() - now.getTime()) / (60 * 60 * 1000);
-
-            if (diffHours > 24) {
-                // 起飞前24小时以上可全额退款
-                result.isRefundable = true;
-                result.amount = ticketPrice;
-                result.fee = 0.00;
-                result.departureTime = departureTime.substring(0, 16);
-                result.message = "起飞前24小时以上可全额退款";
-            } else if (diffHours > 2) {
-                // 起飞前2-24小时收取20%手续费
-                result.isRefundable = true;
-                result.amount = ticketPrice * 0.8;
-                result.fee = ticketPrice * 0.2;
-                result.departureTime = departureTime.substring(0, 16);
-                result.message = "起飞前2-24小时收取20%手续费";
-            } else {
-                result.isRefundable = false;
-                result.message = "起飞前2小时内不可退票";
-            }
+            RefundRules.Decision decision = RefundRules.evaluate(RefundRules.RuleType.REFUND, cabin,
+                    departureAirport, arrivalAirport, departureTime, now);
+            result.isRefundable = decision.allowed;
+            result.amount = decision.refundAmount(ticketPrice);
+            result.fee = decision.fee(ticketPrice);
+            result.departureTime = departureTime.substring(0, 16);
+            result.message = decision.message;
         } catch (Exception e) {
             result.isRefundable = false;
             result.message = "航班信息异常";
@@ -284,16 +279,46 @@ public class RefundModule extends JFrame {
         return result;
     }
 
-    // 在数据库中处理退款
-    private boolean processRefundInDatabase(String orderId, double amount, String reason) {
-        String sql = "UPDATE orders SET payment_status = 'refunded', order_status = 'refunded' WHERE order_id = ?";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setString(1, orderId);
-            int rowsAffected = stmt.executeUpdate();
+    // 在数据库中处理退款：更新订单状态、归还舱位座位并写入退票记录
+    private boolean processRefundInDatabase(String orderId, double amount, double fee, String reason) {
+        // 已退票或已取消的订单不再重复退款、重复归还座位
+        String sql = "UPDATE orders SET payment_status = 'refunded', order_status = 'refunded' " +
+                "WHERE order_id = ? AND order_status NOT IN ('cancelled', 'refunded')";
+        String insertSql = "INSERT INTO refunds (refund_id, order_id, refund_reason, refund_amount, refund_fee, " +
+                "refund_status, processed_by) VALUES (?, ?, ?, ?, ?, 'completed', ?)";
+        String refundId = IdGenerator.nextId(IdGenerator.REFUND_PREFIX);
+        CabinInventory.OrderSeat[] released = new CabinInventory.OrderSeat[1];
+        try {
+            int rowsAffected = DatabaseWriter.executeInTransaction(conn -> {
+                int updated;
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, orderId);
+                    updated = stmt.executeUpdate();
+                }
+                if (updated > 0) {
+                    released[0] = CabinInventory.releaseOrder(conn, orderId);
+                    try (PreparedStatement stmt = conn.prepareStatement(insertSql)) {
+                        stmt.setString(1, refundId);
+                        stmt.setString(2, orderId);
+                        stmt.setString(3, reason);
+                        stmt.setDouble(4, amount);
+                        stmt.setDouble(5, fee);
+                        stmt.setString(6, currentUser);
+                        stmt.executeUpdate();
+                    }
+                }
+                return updated;
+            });
+            if (released[0] != null) {
+                CabinInventory.refresh(released[0].flightId);
+                FareCalendar.adjustSeats(released[0].flightId, 1);
+                FlightRouteIndex.updateSeats(released[0].flightId);
+                if (released[0].seatNumber != null) {
+                    SeatInventory.releaseSeat(released[0].flightId, released[0].seatNumber);
+                }
+            }
             
-            System.out.println("退款处理 - 订单: " + orderId + ", 金额: " + amount + ", 原因: " + reason);
+            System.out.println("退款处理 - 退票单: " + refundId + ", 订单: " + orderId + ", 金额: " + amount + ", 原因: " + reason);
             return rowsAffected > 0;
         } catch (SQLException e) {
             e.printStackTrace();
@@ -301,30 +326,8 @@ public class RefundModule extends JFrame {
         }
     }
 
-    // 判断是否为普通用户（需要权限限制）
-    private boolean isNormalUser(String userId) {
-        // 检查用户角色
-        String sql = "SELECT role FROM users WHERE username = ?";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setString(1, userId);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    String role = rs.getString("role");
-                    // 只有角色为"用户"的才需要限制，客服和管理员不需要限制
-                    return "用户".equals(role);
-                }
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        // 默认当作普通用户处理（安全考虑）
-        return true;
-    }
-
     // 退款结果内部类
-    private class RefundResult {
+    static class RefundResult {
         boolean isRefundable;
         double amount;
         double fee;
@@ -0,0 +1,389 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 退票/改签手续费规则 - 规则表 refund_rules 按 类型 × 航线 × 舱位 定义分档（起飞前至少多少分钟 → 费率/是否允许）
+ * 加载时编译为按门槛升序排列的不可变数组，计算时二分查找所在分档，同一分档的结论对象共用；
+ * 匹配顺序：航线+舱位 > 航线 > 舱位 > 通用（航线须同时指定出发和到达机场）。规则快照超过 airplane.refund.rulesMaxAgeSeconds 后自动重新加载，
+ * 修改规则表后也可调用 reload() 立即生效；重新加载失败时沿用原规则，并在 airplane.refund.rulesRetrySeconds 秒内不再重试
+ */
+public class RefundRules {
+    private static final long MAX_AGE_NANOS =
+            Long.getLong("airplane.refund.rulesMaxAgeSeconds", 60L) * 1_000_000_000L;
+    private static final long RETRY_NANOS =
+            Long.getLong("airplane.refund.rulesRetrySeconds", 30L) * 1_000_000_000L;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String ANY = "*";
+
+    private static final String SELECT_SQL =
+            "SELECT rule_id, rule_type, cabin_class, departure_airport, arrival_airport, min_minutes_before, " +
+            "fee_rate, allowed, description FROM refund_rules WHERE status = 'active' ORDER BY rule_id";
+
+    /**
+     * 内置规则（规则表不可用时使用），与建表脚本中的初始数据一致
+     */
+    private static final Snapshot DEFAULTS = compile(List.of(
+            new Rule(RuleType.REFUND, null, null, null, 1440, 0, true, "起飞前24小时以上可全额退款"),
+            new Rule(RuleType.REFUND, null, null, null, 120, 0.2, true, "起飞前2-24小时收取20%手续费"),
+            new Rule(RuleType.REFUND, null, null, null, 0, 0, false, "起飞前2小时内不可退票"),
+            new Rule(RuleType.CHANGE, null, null, null, 0, 0, true, "起飞前可免费改签")));
+
+    private static volatile Snapshot snapshot;
+    // 最近一次加载失败的时间，0 表示没有失败
+    private static volatile long failedAt;
+
+    private RefundRules() {
+    }
+
+    /**
+     * 规则类型
+     */
+    public enum RuleType {
+        REFUND("refund", "航班已起飞，不可退票"),
+        CHANGE("change", "航班已起飞，不可改签");
+
+        public final String code;
+        // 早于所有分档（通常是已起飞）时的结论
+        final Decision closed;
+
+        RuleType(String code, String closedMessage) {
+            this.code = code;
+            this.closed = new Decision(Long.MIN_VALUE, 0, false, closedMessage);
+        }
+
+        static RuleType fromCode(String code) {
+            for (RuleType type : values()) {
+                if (type.code.equals(code)) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 按订单的舱位、航线和起飞时间计算，起飞时间格式 yyyy-MM-dd HH:mm:ss
+     */
+    public static Decision evaluate(RuleType type, CabinClass cabin, String departureAirport, String arrivalAirport,
+                                    String departureTime, LocalDateTime now) {
+        return schedule(type, cabin, departureAirport, arrivalAirport)
+                .evaluate(minutesBetween(now, parseTime(departureTime)));
+    }
+
+    /**
+     * 取得适用的分档表；同一航班、舱位的大量订单（如批量退票）只需查找一次
+     */
+    public static Schedule schedule(RuleType type, CabinClass cabin, String departureAirport, String arrivalAirport) {
+        return ensureLoaded().find(type, cabin, departureAirport, arrivalAirport);
+    }
+
+    public static LocalDateTime parseTime(String time) {
+        return LocalDateTime.parse(time, TIME_FORMAT);
+    }
+
+    public static String formatTime(LocalDateTime time) {
+        return time.format(TIME_FORMAT);
+    }
+
+    /**
+     * from 到 to 的整分钟数，to 早于 from 时为负数
+     */
+    public static long minutesBetween(LocalDateTime from, LocalDateTime to) {
+        return Duration.between(from, to).toMinutes();
+    }
+
+    /**
+     * 使当前规则失效，下次计算时重新加载
+     */
+    public static void invalidate() {
+        snapshot = null;
+        failedAt = 0;
+    }
+
+    /**
+     * 从规则表重新编译规则，失败时保留原规则（没有原规则时使用内置规则）
+     */
+    public static synchronized boolean reload() {
+        List<Rule> rules = new ArrayList<>();
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SELECT_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                RuleType type = RuleType.fromCode(rs.getString("rule_type"));
+                if (type == null) {
+                    System.err.println("忽略未知类型的退改规则: " + rs.getString("rule_id"));
+                    continue;
+                }
+                rules.add(new Rule(type, CabinClass.fromCode(rs.getString("cabin_class")),
+                        rs.getString("departure_airport"), rs.getString("arrival_airport"),
+                        rs.getLong("min_minutes_before"), rs.getDouble("fee_rate"),
+                        rs.getInt("allowed") != 0, rs.getString("description")));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("加载退改规则失败: " + e.getMessage());
+            if (snapshot == null) {
+                snapshot = DEFAULTS.withLoadTime(System.nanoTime());
+            }
+            failedAt = System.nanoTime();
+            return false;
+        }
+        snapshot = rules.isEmpty() ? DEFAULTS.withLoadTime(System.nanoTime()) : compile(rules);
+        failedAt = 0;
+        return true;
+    }
+
+    /**
+     * 直接装入规则（压测用，不访问数据库）
+     */
+    static synchronized void preload(List<Rule> rules) {
+        snapshot = compile(rules);
+    }
+
+    private static Snapshot ensureLoaded() {
+        Snapshot current = snapshot;
+        if (current == null || isExpired(current)) {
+            synchronized (RefundRules.class) {
+                current = snapshot;
+                if (current == null || isExpired(current)) {
+                    reload();
+                    current = snapshot;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 快照已过期且不在失败退避期内（退避期内继续使用过期快照，不再每次计算都查库）
+     */
+    private static boolean isExpired(Snapshot current) {
+        long failed = failedAt;
+        return System.nanoTime() - current.loadedAt > MAX_AGE_NANOS
+                && (failed == 0 || System.nanoTime() - failed >= RETRY_NANOS);
+    }
+
+    /**
+     * 按 类型/航线/舱位 分组，每组按门槛升序编译为数组
+     */
+    static Snapshot compile(List<Rule> rules) {
+        Map<String, List<Rule>> groups = new HashMap<>();
+        for (Rule rule : rules) {
+            groups.computeIfAbsent(groupKey(rule.type, rule.routeKey(), rule.cabin), k -> new ArrayList<>()).add(rule);
+        }
+        Map<String, Schedule> schedules = new HashMap<>();
+        for (Map.Entry<String, List<Rule>> entry : groups.entrySet()) {
+            List<Rule> group = entry.getValue();
+            group.sort((a, b) -> Long.compare(a.minMinutesBefore, b.minMinutesBefore));
+            List<Decision> tiers = new ArrayList<>();
+            for (Rule rule : group) {
+                if (!tiers.isEmpty() && tiers.get(tiers.size() - 1).minMinutesBefore == rule.minMinutesBefore) {
+                    System.err.println("退改规则门槛重复，忽略: " + entry.getKey() + " " + rule.minMinutesBefore);
+                    continue;
+                }
+                tiers.add(new Decision(rule.minMinutesBefore, Math.max(0, Math.min(1, rule.feeRate)),
+                        rule.allowed, rule.description));
+            }
+            schedules.put(entry.getKey(), new Schedule(group.get(0).type, tiers.toArray(new Decision[0])));
+        }
+        return new Snapshot(schedules, System.nanoTime());
+    }
+
+    private static String groupKey(RuleType type, String routeKey, CabinClass cabin) {
+        return type.code + '|' + routeKey + '|' + (cabin == null ? ANY : cabin.code);
+    }
+
+    private static String routeKey(String departureAirport, String arrivalAirport) {
+        if (departureAirport == null || arrivalAirport == null) {
+            return ANY;
+        }
+        return departureAirport + '-' + arrivalAirport;
+    }
+
+    /**
+     * 编译后的全部规则
+     */
+    static class Snapshot {
+        private final Map<String, Schedule> schedules;
+        // 类型 -> 通用规则（没有任何规则时为只含“已起飞”结论的空表）
+        private final Map<RuleType, Schedule> fallback = new EnumMap<>(RuleType.class);
+        final long loadedAt;
+
+        Snapshot(Map<String, Schedule> schedules, long loadedAt) {
+            this.schedules = schedules;
+            this.loadedAt = loadedAt;
+            for (RuleType type : RuleType.values()) {
+                Schedule general = schedules.get(groupKey(type, ANY, null));
+                fallback.put(type, general != null ? general : new Schedule(type, new Decision[0]));
+            }
+        }
+
+        Snapshot withLoadTime(long loadedAt) {
+            return new Snapshot(schedules, loadedAt);
+        }
+
+        Schedule find(RuleType type, CabinClass cabin, String departureAirport, String arrivalAirport) {
+            String route = routeKey(departureAirport, arrivalAirport);
+            Schedule schedule = null;
+            if (!ANY.equals(route)) {
+                if (cabin != null) {
+                    schedule = schedules.get(groupKey(type, route, cabin));
+                }
+                if (schedule == null) {
+                    schedule = schedules.get(groupKey(type, route, null));
+                }
+            }
+            if (schedule == null && cabin != null) {
+                schedule = schedules.get(groupKey(type, ANY, cabin));
+            }
+            return schedule != null ? schedule : fallback.get(type);
+        }
+    }
+
+    /**
+     * 一组分档：thresholds 升序，evaluate 取门槛不超过起飞前分钟数的最高一档
+     */
+    public static class Schedule {
+        private final RuleType type;
+        private final long[] thresholds;
+        private final Decision[] tiers;
+
+        Schedule(RuleType type, Decision[] tiers) {
+            this.type = type;
+            this.tiers = tiers;
+            this.thresholds = new long[tiers.length];
+            for (int i = 0; i < tiers.length; i++) {
+                thresholds[i] = tiers[i].minMinutesBefore;
+            }
+        }
+
+        public Decision evaluate(long minutesBeforeDeparture) {
+            int low = 0;
+            int high = thresholds.length - 1;
+            int found = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (thresholds[mid] <= minutesBeforeDeparture) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return found < 0 ? type.closed : tiers[found];
+        }
+    }
+
+    /**
+     * 计算结论（不可变，同一分档的所有订单共用）
+     */
+    public static class Decision {
+        public final long minMinutesBefore;
+        public final double feeRate;
+        public final boolean allowed;
+        public final String message;
+
+        Decision(long minMinutesBefore, double feeRate, boolean allowed, String message) {
+            this.minMinutesBefore = minMinutesBefore;
+            this.feeRate = feeRate;
+            this.allowed = allowed;
+            this.message = message;
+        }
+
+        /** 手续费（保留两位小数），不允许时为0 */
+        public double fee(double ticketPrice) {
+            return allowed ? Math.round(ticketPrice * feeRate * 100) / 100.0 : 0;
+        }
+
+        /** 可退金额 = 票价 - 手续费，不允许时为0 */
+        public double refundAmount(double ticketPrice) {
+            return allowed ? Math.round((ticketPrice - fee(ticketPrice)) * 100) / 100.0 : 0;
+        }
+    }
+
+    /**
+     * 规则表中的一行
+     */
+    static class Rule {
+        final RuleType type;
+        final CabinClass cabin;
+        final String departureAirport;
+        final String arrivalAirport;
+        final long minMinutesBefore;
+        final double feeRate;
+        final boolean allowed;
+        final String description;
+
+        Rule(RuleType type, CabinClass cabin, String departureAirport, String arrivalAirport,
+             long minMinutesBefore, double feeRate, boolean allowed, String description) {
+            this.type = type;
+            this.cabin = cabin;
+            this.departureAirport = departureAirport;
+            this.arrivalAirport = arrivalAirport;
+            this.minMinutesBefore = minMinutesBefore;
+            this.feeRate = feeRate;
+            this.allowed = allowed;
+            this.description = description;
+        }
+
+        String routeKey() {
+            return RefundRules.routeKey(departureAirport, arrivalAirport);
+        }
+    }
+
+    /**
+     * 压测：编译一批按航线、舱位区分的规则，统计单次计算耗时
+     */
+    public static void main(String[] args) {
+        int routes = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        String[] airports = {"PEK", "PVG", "SHA", "CAN", "SZX", "CTU", "HGH", "XIY", "KMG", "WUH"};
+        List<Rule> rules = new ArrayList<>(List.of(
+                new Rule(RuleType.REFUND, null, null, null, 1440, 0, true, "起飞前24小时以上可全额退款"),
+                new Rule(RuleType.REFUND, null, null, null, 120, 0.2, true, "起飞前2-24小时收取20%手续费"),
+                new Rule(RuleType.REFUND, null, null, null, 0, 0, false, "起飞前2小时内不可退票")));
+        for (int i = 0; i < routes; i++) {
+            String dep = airports[i % airports.length];
+            String arr = airports[(i / airports.length + 1 + i) % airports.length];
+            CabinClass cabin = CabinClass.values()[i % CabinClass.values().length];
+            for (int tier = 0; tier < 6; tier++) {
+                rules.add(new Rule(RuleType.REFUND, cabin, dep, arr, tier * 720L, 0.05 * (6 - tier), true,
+                        dep + "-" + arr + " 第" + tier + "档"));
+            }
+        }
+        preload(rules);
+
+        LocalDateTime now = LocalDateTime.of(2025, 6, 1, 8, 0);
+        String departure = formatTime(now.plusHours(30));
+        System.out.println(evaluate(RuleType.REFUND, CabinClass.ECONOMY, "XXX", "YYY", departure, now).message);
+
+        double checksum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            String dep = airports[i % airports.length];
+            String arr = airports[(i >>> 3) % airports.length];
+            CabinClass cabin = CabinClass.values()[i % CabinClass.values().length];
+            checksum += schedule(RuleType.REFUND, cabin, dep, arr).evaluate(i % 5000).fee(1000);
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.printf("规则数: %d, 计算 %d 次, 平均 %.1f ns/次 (校验和 %.0f)%n",
+                rules.size(), iterations, (double) nanos / iterations, checksum);
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations / 10; i++) {
+            checksum += evaluate(RuleType.REFUND, CabinClass.BUSINESS, "PEK", "PVG", departure, now).fee(1000);
+        }
+        nanos = System.nanoTime() - start;
+        System.out.printf("含起飞时间解析: 平均 %.1f ns/次%n", (double) nanos / (iterations / 10));
+    }
+}
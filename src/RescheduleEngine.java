@@ -0,0 +1,451 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 改签/升舱引擎 - 在写线程的同一事务中归还原航班舱位、占用目标航班舱位、更新订单并记录差价
+ * 差价按事务外读取的订单快照计算，事务内用快照做条件更新（乐观锁）；
+ * 订单在此期间被改签或退票时放弃本次事务，重新读取订单后重试
+ */
+public class RescheduleEngine {
+    private static final int MAX_ATTEMPTS = Integer.getInteger("airplane.reschedule.maxAttempts", 5);
+
+    private static final String ORDER_SQL =
+            "SELECT o.order_id, o.flight_id, o.cabin_class, o.ticket_price, o.seat_number, o.order_status, " +
+            "f.departure_time, f.departure_airport, f.arrival_airport " +
+            "FROM orders o JOIN flights f ON o.flight_id = f.flight_id WHERE o.order_id = ?";
+    private static final String FLIGHT_BY_ID_SQL =
+            "SELECT f.*, a.aircraft_type, a.total_seats " +
+            "FROM flights f JOIN aircraft a ON f.aircraft_id = a.aircraft_id " +
+            "WHERE f.flight_id = ?";
+    // 订单仍与快照一致时才改签
+    private static final String UPDATE_ORDER_SQL =
+            "UPDATE orders SET flight_id = ?, cabin_class = ?, ticket_price = ?, seat_number = NULL " +
+            "WHERE order_id = ? AND flight_id = ? AND cabin_class IS ? AND ticket_price = ? AND order_status = 'active'";
+    private static final String INSERT_CHANGE_SQL =
+            "INSERT INTO order_changes (change_id, order_id, from_flight_id, to_flight_id, from_cabin, to_cabin, " +
+            "old_price, new_price, fare_difference, change_fee, settlement_status, operator) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // 改签指标
+    private static final LongAdder ATTEMPTS = new LongAdder();
+    private static final LongAdder SUCCEEDED = new LongAdder();
+    private static final LongAdder SOLD_OUT = new LongAdder();
+    private static final LongAdder CONFLICTS = new LongAdder();
+    private static final LongAdder REJECTED = new LongAdder();
+    private static final LongAdder FAILED = new LongAdder();
+
+    private RescheduleEngine() {
+    }
+
+    /**
+     * 改签结果状态
+     */
+    public enum Status { SUCCESS, SOLD_OUT, CONFLICT, REJECTED, FAILED }
+
+    /**
+     * 报价：改签到目标航班/舱位的新票价、差价和余票，订单或航班无效时返回null
+     */
+    public static Quote quote(String orderId, String targetFlightId, CabinClass targetCabin) {
+        try (Connection conn = DatabaseConnectionPool.getConnection()) {
+            OrderSnapshot order = loadOrder(conn, orderId);
+            FlightQueryModule.FlightInfo target = loadFlight(conn, FLIGHT_BY_ID_SQL, targetFlightId);
+            if (order == null || target == null) {
+                return null;
+            }
+            return new Quote(order, target, targetCabin);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("改签报价失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 改签/升舱：目标航班可与原航班相同（仅升舱）
+     * @param operator 操作人，记录到 order_changes
+     */
+    public static RescheduleResult reschedule(String orderId, String targetFlightId, CabinClass targetCabin,
+                                              String operator) {
+        ATTEMPTS.increment();
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            Quote quote;
+            try (Connection conn = DatabaseConnectionPool.getConnection()) {
+                OrderSnapshot order = loadOrder(conn, orderId);
+                FlightQueryModule.FlightInfo target = loadFlight(conn, FLIGHT_BY_ID_SQL, targetFlightId);
+                if (order == null || target == null) {
+                    REJECTED.increment();
+                    return new RescheduleResult(Status.REJECTED, null, 0, attempt, "订单或目标航班不存在");
+                }
+                if (!"active".equals(order.orderStatus)) {
+                    REJECTED.increment();
+                    return new RescheduleResult(Status.REJECTED, null, 0, attempt, "订单状态不允许改签");
+                }
+                if (order.flightId.equals(targetFlightId) && order.cabin == targetCabin) {
+                    REJECTED.increment();
+                    return new RescheduleResult(Status.REJECTED, null, 0, attempt, "目标航班和舱位与原订单相同");
+                }
+                quote = new Quote(order, target, targetCabin);
+                if (!quote.targetBookable) {
+                    REJECTED.increment();
+                    return new RescheduleResult(Status.REJECTED, null, 0, attempt, "目标航班已取消或已起飞");
+                }
+                if (!quote.changeAllowed) {
+                    REJECTED.increment();
+                    return new RescheduleResult(Status.REJECTED, null, 0, attempt, quote.changeRule);
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+                System.err.println("读取改签订单失败: " + e.getMessage());
+                FAILED.increment();
+                return new RescheduleResult(Status.FAILED, null, 0, attempt, "改签失败: " + e.getMessage());
+            }
+
+            Status status = apply(quote, operator);
+            if (status == Status.SUCCESS) {
+                SUCCEEDED.increment();
+                afterCommit(quote);
+                return new RescheduleResult(Status.SUCCESS, quote.changeId, quote.fareDifference, attempt, "改签成功");
+            }
+            if (status == Status.SOLD_OUT) {
+                SOLD_OUT.increment();
+                return new RescheduleResult(Status.SOLD_OUT, null, 0, attempt,
+                        "目标航班" + targetCabin.displayName + "已售罄");
+            }
+            if (status == Status.FAILED) {
+                FAILED.increment();
+                return new RescheduleResult(Status.FAILED, null, 0, attempt, "改签处理失败，请稍后重试");
+            }
+
+            // 订单已被其他操作修改：短暂退避后按最新订单重试
+            CONFLICTS.increment();
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextInt(1, 5 * attempt + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        // 重试用尽：每次冲突已计入 CONFLICTS，这里按失败结束
+        FAILED.increment();
+        return new RescheduleResult(Status.FAILED, null, 0, MAX_ATTEMPTS, "订单正在被其他操作修改，请稍后重试");
+    }
+
+    /**
+     * 在写线程事务中执行改签，售罄或订单已变化时整个事务回滚
+     */
+    private static Status apply(Quote quote, String operator) {
+        OrderSnapshot order = quote.order;
+        try {
+            return DatabaseWriter.executeInTransaction(conn -> {
+                CabinInventory.release(conn, order.flightId, order.cabin);
+                if (!CabinInventory.reserve(conn, quote.targetFlightId, quote.targetCabin)) {
+                    throw new Abort(Status.SOLD_OUT);
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(UPDATE_ORDER_SQL)) {
+                    stmt.setString(1, quote.targetFlightId);
+                    stmt.setString(2, quote.targetCabin.code);
+                    stmt.setDouble(3, quote.newPrice);
+                    stmt.setString(4, order.orderId);
+                    stmt.setString(5, order.flightId);
+                    stmt.setString(6, order.cabinCode);
+                    stmt.setDouble(7, order.ticketPrice);
+                    if (stmt.executeUpdate() == 0) {
+                        throw new Abort(Status.CONFLICT);
+                    }
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(INSERT_CHANGE_SQL)) {
+                    stmt.setString(1, quote.changeId);
+                    stmt.setString(2, order.orderId);
+                    stmt.setString(3, order.flightId);
+                    stmt.setString(4, quote.targetFlightId);
+                    stmt.setString(5, order.cabin.code);
+                    stmt.setString(6, quote.targetCabin.code);
+                    stmt.setDouble(7, order.ticketPrice);
+                    stmt.setDouble(8, quote.newPrice);
+                    stmt.setDouble(9, quote.fareDifference);
+                    stmt.setDouble(10, quote.changeFee);
+                    // 差价和手续费待结算，都为0时无需结算
+                    boolean settled = Math.abs(quote.fareDifference) < 0.005 && quote.changeFee < 0.005;
+                    stmt.setString(11, settled ? "none" : "pending");
+                    stmt.setString(12, operator);
+                    stmt.executeUpdate();
+                }
+                return Status.SUCCESS;
+            });
+        } catch (Abort abort) {
+            return abort.status;
+        } catch (SQLException e) {
+            if (e.getCause() instanceof Abort) {
+                return ((Abort) e.getCause()).status;
+            }
+            e.printStackTrace();
+            System.err.println("改签失败: " + e.getMessage());
+            return Status.FAILED;
+        }
+    }
+
+    /**
+     * 事务提交后同步内存中的余票、低价日历和座位图
+     */
+    private static void afterCommit(Quote quote) {
+        OrderSnapshot order = quote.order;
+        CabinInventory.refresh(order.flightId);
+        if (!order.flightId.equals(quote.targetFlightId)) {
+            CabinInventory.refresh(quote.targetFlightId);
+        }
+        FareCalendar.adjustSeats(order.flightId, 1);
+        FareCalendar.adjustSeats(quote.targetFlightId, -1);
+        FlightRouteIndex.updateSeats(order.flightId);
+        FlightRouteIndex.updateSeats(quote.targetFlightId);
+        if (order.seatNumber != null) {
+            SeatInventory.releaseSeat(order.flightId, order.seatNumber);
+        }
+    }
+
+    private static OrderSnapshot loadOrder(Connection conn, String orderId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(ORDER_SQL)) {
+            stmt.setString(1, orderId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? new OrderSnapshot(rs) : null;
+            }
+        }
+    }
+
+    private static FlightQueryModule.FlightInfo loadFlight(Connection conn, String sql, String key) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, key);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? FlightQueryModule.DatabaseManager.mapFlight(rs) : null;
+            }
+        }
+    }
+
+    /**
+     * 获取改签指标快照
+     */
+    public static RescheduleStats getStats() {
+        RescheduleStats stats = new RescheduleStats();
+        stats.attempts = ATTEMPTS.sum();
+        stats.succeeded = SUCCEEDED.sum();
+        stats.soldOut = SOLD_OUT.sum();
+        stats.conflicts = CONFLICTS.sum();
+        stats.rejected = REJECTED.sum();
+        stats.failed = FAILED.sum();
+        return stats;
+    }
+
+    /**
+     * 事务内放弃改签（触发回滚）
+     */
+    private static class Abort extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final Status status;
+
+        Abort(Status status) {
+            super(status.name(), null, false, false);
+            this.status = status;
+        }
+    }
+
+    /**
+     * 事务外读取的订单快照
+     */
+    private static class OrderSnapshot {
+        final String orderId;
+        final String flightId;
+        final String cabinCode;
+        final CabinClass cabin;
+        final double ticketPrice;
+        final String seatNumber;
+        final String orderStatus;
+        final String departureTime;
+        final String departureAirport;
+        final String arrivalAirport;
+
+        OrderSnapshot(ResultSet rs) throws SQLException {
+            orderId = rs.getString("order_id");
+            flightId = rs.getString("flight_id");
+            cabinCode = rs.getString("cabin_class");
+            CabinClass parsed = CabinClass.fromCode(cabinCode);
+            cabin = parsed != null ? parsed : CabinClass.ECONOMY;
+            ticketPrice = rs.getDouble("ticket_price");
+            seatNumber = rs.getString("seat_number");
+            orderStatus = rs.getString("order_status");
+            departureTime = rs.getString("departure_time");
+            departureAirport = rs.getString("departure_airport");
+            arrivalAirport = rs.getString("arrival_airport");
+        }
+    }
+
+    /**
+     * 改签报价
+     */
+    public static class Quote {
+        final OrderSnapshot order;
+        final String changeId = IdGenerator.nextId(IdGenerator.CHANGE_PREFIX);
+        public final String targetFlightId;
+        public final CabinClass targetCabin;
+        public final double newPrice;
+        /** 差价：正数为需补差价，负数为应退差价 */
+        public final double fareDifference;
+        /** 目标舱位余票，没有计数时为-1 */
+        public final int seatsLeft;
+        /** 按改签规则（RefundRules）对原票价收取的手续费 */
+        public final double changeFee;
+        public final boolean changeAllowed;
+        public final String changeRule;
+        /** 目标航班是否仍可订（未取消、未起飞） */
+        public final boolean targetBookable;
+
+        Quote(OrderSnapshot order, FlightQueryModule.FlightInfo target, CabinClass targetCabin) {
+            this.order = order;
+            this.targetFlightId = target.flightId;
+            this.targetCabin = targetCabin;
+            this.newPrice = Math.round(
+                    FlightQueryModule.DatabaseManager.calculateCabinPrice(target, targetCabin.displayName) * 100) / 100.0;
+            this.fareDifference = Math.round((newPrice - order.ticketPrice) * 100) / 100.0;
+            this.seatsLeft = CabinInventory.seatsLeft(target.flightId, targetCabin);
+            this.targetBookable = FlightChangeNotifier.isBookable(target.status)
+                    && target.departureTime.compareTo(RefundRules.formatTime(LocalDateTime.now())) > 0;
+            RefundRules.Decision rule;
+            try {
+                rule = RefundRules.evaluate(RefundRules.RuleType.CHANGE, order.cabin, order.departureAirport,
+                        order.arrivalAirport, order.departureTime, LocalDateTime.now());
+            } catch (RuntimeException e) {
+                rule = null;
+            }
+            this.changeAllowed = rule != null && rule.allowed;
+            this.changeFee = rule != null ? rule.fee(order.ticketPrice) : 0;
+            this.changeRule = rule != null ? rule.message : "航班信息异常";
+        }
+
+        public boolean isAvailable() {
+            return changeAllowed && targetBookable && newPrice > 0 && seatsLeft != 0;
+        }
+    }
+
+    /**
+     * 改签结果
+     */
+    public static class RescheduleResult {
+        public final Status status;
+        public final String changeId;
+        public final double fareDifference;
+        public final int attempts;
+        public final String message;
+
+        public RescheduleResult(Status status, String changeId, double fareDifference, int attempts, String message) {
+            this.status = status;
+            this.changeId = changeId;
+            this.fareDifference = fareDifference;
+            this.attempts = attempts;
+            this.message = message;
+        }
+
+        public boolean isSuccess() {
+            return status == Status.SUCCESS;
+        }
+    }
+
+    /**
+     * 改签指标
+     */
+    public static class RescheduleStats {
+        public long attempts;
+        public long succeeded;
+        public long soldOut;
+        public long conflicts;
+        public long rejected;
+        public long failed;
+
+        @Override
+        public String toString() {
+            return String.format("改签[请求:%d 成功:%d 售罄:%d 冲突重试:%d 拒绝:%d 失败:%d]",
+                    attempts, succeeded, soldOut, conflicts, rejected, failed);
+        }
+    }
+
+    private static int queryCabinSeats(String flightId, CabinClass cabin) throws SQLException {
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT available_seats FROM flight_cabin_inventory WHERE flight_id = ? AND cabin_class = ?")) {
+            stmt.setString(1, flightId);
+            stmt.setString(2, cabin.code);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        }
+    }
+
+    /**
+     * 热门航班并发升舱压测：java RescheduleEngine <航班ID> [乘客数]
+     * 先为每位乘客订一张经济舱，再同时把所有订单升到商务舱，每个订单同时提交两次以制造冲突
+     * 注意：会向数据库写入测试订单（user_id = loadtest）
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("用法: java RescheduleEngine <航班ID> [乘客数，默认100]");
+            return;
+        }
+        String flightId = args[0];
+        int passengers = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        List<String> orderIds = new ArrayList<>();
+        for (int i = 0; i < passengers; i++) {
+            BookingEngine.BookingResult booked = BookingEngine.book("loadtest", flightId, "升舱乘客" + i, "UPGRADE" + i, 0);
+            if (booked.isSuccess()) {
+                orderIds.add(booked.orderId);
+            }
+        }
+        int economyBefore = queryCabinSeats(flightId, CabinClass.ECONOMY);
+        int businessBefore = queryCabinSeats(flightId, CabinClass.BUSINESS);
+        System.out.println("航班 " + flightId + " 已订经济舱 " + orderIds.size() + " 张，商务舱余票: " + businessBefore);
+
+        CountDownLatch startSignal = new CountDownLatch(1);
+        List<Future<RescheduleResult>> futures = new ArrayList<>();
+        long start;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String orderId : orderIds) {
+                for (int copy = 0; copy < 2; copy++) {
+                    futures.add(executor.submit(() -> {
+                        startSignal.await();
+                        return reschedule(orderId, flightId, CabinClass.BUSINESS, "loadtest");
+                    }));
+                }
+            }
+            start = System.nanoTime();
+            startSignal.countDown();
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        int upgraded = 0;
+        for (Future<RescheduleResult> future : futures) {
+            if (future.get().isSuccess()) {
+                upgraded++;
+            }
+        }
+        int economyAfter = queryCabinSeats(flightId, CabinClass.ECONOMY);
+        int businessAfter = queryCabinSeats(flightId, CabinClass.BUSINESS);
+
+        System.out.println(getStats());
+        System.out.println(DatabaseWriter.getStats());
+        System.out.printf("%d 次升舱请求，耗时 %.3f 秒，%.1f 次/秒%n", futures.size(), seconds, futures.size() / seconds);
+        System.out.println("升舱成功: " + upgraded + "，商务舱余票: " + businessBefore + " -> " + businessAfter
+                + "，经济舱余票: " + economyBefore + " -> " + economyAfter);
+        boolean consistent = upgraded <= orderIds.size() && upgraded <= businessBefore
+                && businessBefore - businessAfter == upgraded && economyAfter - economyBefore == upgraded;
+        System.out.println(consistent ? "✓ 每个订单最多升舱一次，舱位计数与升舱数一致" : "✗ 舱位计数与升舱数不一致！");
+    }
+}
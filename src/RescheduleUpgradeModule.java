@@ -4,7 +4,6 @@ import java.awt.event.ActionEvent;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -12,9 +11,6 @@ import java.util.List;
 import java.util.ArrayList;
 
 public class RescheduleUpgradeModule extends JFrame {
-
-    // 数据库连接常量
-    private static final String DB_URL = "jdbc:sqlite:airplane_system.db";
     
     private String orderId;
     private String currentUser;
@@ -24,7 +20,13 @@ public class RescheduleUpgradeModule extends JFrame {
     private JButton checkBtn;
     private JButton confirmBtn;
     private JLabel resultLabel;
-    private double priceDifference = 0;    public RescheduleUpgradeModule(String orderId, String currentUser) {
+    private double priceDifference = 0;
+    // 原航班下拉框每一项对应的订单号
+    private transient List<String> userOrderIds = new ArrayList<>();
+    // 目标航班下拉框每一项对应的航班ID（同一航班号每天一个航班）
+    private transient List<String> targetFlightIds = new ArrayList<>();
+    // 最近一次可用性检查的报价，确认改签时使用
+    private transient RescheduleEngine.Quote currentQuote;    public RescheduleUpgradeModule(String orderId, String currentUser) {
         this.orderId = orderId;
         this.currentUser = currentUser;
 
@@ -67,8 +69,11 @@ public class RescheduleUpgradeModule extends JFrame {
         mainPanel.add(originalLabel, gbc);
 
         // 从数据库加载用户的订单
-        List<String> userOrders = DatabaseManager.getUserOrderFlights(currentUser);
+        List<String> userOrders = DatabaseManager.getUserOrderFlights(currentUser, userOrderIds);
         originalFlightCombo = new JComboBox<>(userOrders.toArray(new String[0]));
+        if (userOrderIds.contains(orderId)) {
+            originalFlightCombo.setSelectedIndex(userOrderIds.indexOf(orderId));
+        }
         originalFlightCombo.setFont(largerFont);
         gbc.gridx = 1;
         gbc.gridy = 1;
@@ -81,7 +86,7 @@ public class RescheduleUpgradeModule extends JFrame {
         mainPanel.add(flightLabel, gbc);
 
         // 从数据库加载可用航班
-        List<String> availableFlights = DatabaseManager.getAvailableFlights();
+        List<String> availableFlights = DatabaseManager.getAvailableFlights(targetFlightIds);
         targetFlightCombo = new JComboBox<>(availableFlights.toArray(new String[0]));
         targetFlightCombo.setFont(largerFont);
         gbc.gridx = 1;
@@ -161,63 +166,58 @@ public class RescheduleUpgradeModule extends JFrame {
             return;
         }
 
-        // 从航班字符串中提取航班号
-        String originalFlightNumber = extractFlightNumber(originalFlight);
-        String targetFlightNumber = extractFlightNumber(targetFlight);
-
         // 检查可用性和计算差价
-        AvailabilityResult result = checkAvailabilityFromDatabase(originalFlightNumber, targetFlightNumber, targetClass);
+        String selectedOrderId = userOrderIds.get(originalFlightCombo.getSelectedIndex());
+        String targetFlightId = targetFlightIds.get(targetFlightCombo.getSelectedIndex());
+        AvailabilityResult result = checkAvailabilityFromDatabase(selectedOrderId, targetFlightId, targetClass);
 
         if (result.isAvailable) {
             priceDifference = result.priceDifference;
             String message = String.format(
-                    "<html><center>原航班: %s<br>目标航班: %s<br>舱位: %s<br>%s: <b>¥%.2f</b><br>余票: %d张</center></html>",
+                    "<html><center>原航班: %s<br>目标航班: %s<br>舱位: %s<br>%s: <b>¥%.2f</b><br>" +
+                            "(含改签手续费 ¥%.2f)<br>余票: %d张</center></html>",
                     originalFlight,
                     targetFlight,
                     targetClass,
                     result.priceDifference >= 0 ? "需补差价" : "可退款",
                     Math.abs(result.priceDifference),
+                    result.changeFee,
                     result.remainingSeats);
 
             resultLabel.setText(message);
             resultLabel.setForeground(result.priceDifference >= 0 ?
                     new Color(220, 0, 0) : new Color(0, 100, 0));
             confirmBtn.setEnabled(true);
-            confirmBtn.setText(result.priceDifference >= 0 ? "支付并改签" : "确认改签");
         } else {
-            resultLabel.setText("<html><center><b>所选航班/舱位无余量</b></center></html>");
+            resultLabel.setText("<html><center><b>" + result.message + "</b></center></html>");
             resultLabel.setForeground(Color.RED);
             confirmBtn.setEnabled(false);
         }
     }
 
     /**
-     * 从航班信息字符串中提取航班号
+     * 从数据库检查可用性：目标舱位余票，以及新票价与订单实付票价的差价
      */
-    private String extractFlightNumber(String flightInfo) {
-        if (flightInfo != null && !flightInfo.isEmpty()) {
-            return flightInfo.split(" ")[0]; // 获取第一个空格前的航班号
-        }
-        return "";
-    }
-
-    /**
-     * 从数据库检查可用性
-     */
-    private AvailabilityResult checkAvailabilityFromDatabase(String originalFlightNumber, String targetFlightNumber, String targetClass) {
+    private AvailabilityResult checkAvailabilityFromDatabase(String selectedOrderId, String targetFlightId, String targetClass) {
         AvailabilityResult result = new AvailabilityResult();
         
-        // 获取原航班价格
-        double originalPrice = DatabaseManager.getFlightBasePrice(originalFlightNumber);
-        
-        // 检查目标航班可用性和价格
-        AvailabilityInfo targetInfo = DatabaseManager.checkFlightAvailability(targetFlightNumber, targetClass);
+        // 改签报价（目标航班舱位价格、余票）
+        currentQuote = RescheduleEngine.quote(selectedOrderId, targetFlightId, CabinClass.fromDisplayName(targetClass));
         
-        if (targetInfo != null && targetInfo.isAvailable) {
+        if (currentQuote != null && currentQuote.isAvailable()) {
             result.isAvailable = true;
-            result.remainingSeats = targetInfo.remainingSeats;
-            result.priceDifference = targetInfo.finalPrice - originalPrice;
+            result.remainingSeats = Math.max(0, currentQuote.seatsLeft);
+            result.changeFee = currentQuote.changeFee;
+            result.priceDifference = currentQuote.fareDifference + currentQuote.changeFee;
         } else {
+            if (currentQuote != null && !currentQuote.changeAllowed) {
+                result.message = currentQuote.changeRule;
+            } else if (currentQuote != null && !currentQuote.targetBookable) {
+                result.message = "目标航班已取消或已起飞";
+            } else {
+                result.message = "所选航班/舱位无余量";
+            }
+            currentQuote = null;
             result.isAvailable = false;
             result.remainingSeats = 0;
             result.priceDifference = 0;
@@ -232,19 +232,14 @@ public class RescheduleUpgradeModule extends JFrame {
         String targetClass = (String) classCombo.getSelectedItem();
 
         if (priceDifference > 0) {
-            // 需要支付差价
+            // 差价不在此收取，改签后按改签记录结算
             int confirm = JOptionPane.showConfirmDialog(this,
-                    String.format("<html><center>需支付差价: ¥%.2f<br>确认支付并改签?</center></html>", priceDifference),
-                    "确认支付", JOptionPane.YES_NO_OPTION);
+                    String.format("<html><center>需补差价: ¥%.2f（改签后结算）<br>确认改签?</center></html>", priceDifference),
+                    "确认改签", JOptionPane.YES_NO_OPTION);
 
             if (confirm == JOptionPane.YES_OPTION) {
-                boolean paymentSuccess = simulatePayment(priceDifference);
-                if (paymentSuccess) {
-                    completeReschedule(originalFlight, targetFlight, targetClass);
-                } else {
-                    JOptionPane.showMessageDialog(this,
-                            "支付失败，请重试", "错误", JOptionPane.ERROR_MESSAGE);
-                }
+                // 差价随改签记录写入 order_changes，待结算
+                completeReschedule(originalFlight, targetFlight, targetClass);
             }
         } else {
             // 无需支付或退款
@@ -253,44 +248,40 @@ public class RescheduleUpgradeModule extends JFrame {
     }
 
     private void completeReschedule(String originalFlight, String targetFlight, String targetClass) {
-        // 模拟改签操作
-        boolean success = simulateReschedule(originalFlight, targetFlight, targetClass);
+        if (currentQuote == null) {
+            JOptionPane.showMessageDialog(this, "请先检查可用性", "提示", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        String selectedOrderId = userOrderIds.get(originalFlightCombo.getSelectedIndex());
+        RescheduleEngine.RescheduleResult result = RescheduleEngine.reschedule(selectedOrderId,
+                currentQuote.targetFlightId, currentQuote.targetCabin, currentUser);
 
-        if (success) {
+        if (result.isSuccess()) {
+            priceDifference = result.fareDifference + currentQuote.changeFee;
             // 生成改签确认单
-            String confirmation = generateConfirmation(originalFlight, targetFlight, targetClass);
+            String confirmation = generateConfirmation(result.changeId, originalFlight, targetFlight, targetClass);
             JOptionPane.showMessageDialog(this,
                     "<html><center>改签成功!<br><br>" + confirmation + "</center></html>",
                     "改签完成", JOptionPane.INFORMATION_MESSAGE);
             dispose();
         } else {
             JOptionPane.showMessageDialog(this,
-                    "改签处理失败，请稍后重试", "错误", JOptionPane.ERROR_MESSAGE);
+                    result.message, "错误", JOptionPane.ERROR_MESSAGE);
         }
-    }    // 模拟支付
-    private boolean simulatePayment(double amount) {
-        System.out.println("模拟支付: ¥" + amount);
-        return true; // 模拟总是成功
-    }
-
-    // 模拟改签操作
-    private boolean simulateReschedule(String originalFlight, String targetFlight, String targetClass) {
-        System.out.println("改签操作 - 原航班: " + originalFlight +
-                ", 新航班: " + targetFlight +
-                ", 舱位: " + targetClass);
-        return true; // 模拟总是成功
     }
 
     // 生成改签确认单
-    private String generateConfirmation(String originalFlight, String targetFlight, String targetClass) {
+    private String generateConfirmation(String changeId, String originalFlight, String targetFlight, String targetClass) {
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm");
         return String.format(
                 "改签确认单<br>" +
+                        "改签单号: %s<br>" +
                         "原航班: %s<br>" +
                         "新航班: %s<br>" +
                         "舱位: %s<br>" +
                         "处理时间: %s<br>" +
-                        "差价: ¥%.2f",
+                        "差价(含手续费): ¥%.2f",
+                changeId,
                 originalFlight,
                 targetFlight,
                 targetClass,
@@ -301,6 +292,8 @@ public class RescheduleUpgradeModule extends JFrame {
         boolean isAvailable;
         int remainingSeats;
         double priceDifference;
+        double changeFee;
+        String message;
     }
 
     /**
@@ -320,16 +313,23 @@ public class RescheduleUpgradeModule extends JFrame {
          * 获取数据库连接
          */
         public static Connection getConnection() throws SQLException {
-            return DriverManager.getConnection(DB_URL);
+            return DatabaseConnectionPool.getConnection();
         }        /**
          * 获取用户的订单航班列表
          */
         public static List<String> getUserOrderFlights(String userId) {
+            return getUserOrderFlights(userId, new ArrayList<>());
+        }
+
+        /**
+         * 获取用户的订单航班列表，orderIds 按相同顺序填入对应的订单号
+         */
+        public static List<String> getUserOrderFlights(String userId, List<String> orderIds) {
             List<String> flights = new ArrayList<>();
             
             // 根据用户角色决定查询范围
             String sql;
-            boolean isNormalUser = isNormalUser(userId);
+            boolean isNormalUser = PrincipalService.isNormalUser(userId);
             
             if (isNormalUser) {
                 // 普通用户只能查看自己的订单
@@ -381,6 +381,7 @@ public class RescheduleUpgradeModule extends JFrame {
                                 rs.getString("user_id"));
                         }
                         flights.add(flightInfo);
+                        orderIds.add(rs.getString("order_id"));
                     }
                 }
             } catch (SQLException e) {
@@ -392,17 +393,17 @@ public class RescheduleUpgradeModule extends JFrame {
         }
 
         /**
-         * 获取可用的目标航班列表
+         * 获取可用的目标航班列表，flightIds 按相同顺序填入对应的航班ID
          */
-        public static List<String> getAvailableFlights() {
+        public static List<String> getAvailableFlights(List<String> flightIds) {
             List<String> flights = new ArrayList<>();
-            String sql = "SELECT f.flight_number, " +
+            String sql = "SELECT f.flight_id, f.flight_number, " +
                         "ap1.city || '-' || ap2.city as route, " +
-                        "DATE(f.departure_time) as dep_date " +
+                        "SUBSTR(f.departure_time, 1, 16) as dep_time " +
                         "FROM flights f " +
                         "JOIN airports ap1 ON f.departure_airport = ap1.airport_code " +
                         "JOIN airports ap2 ON f.arrival_airport = ap2.airport_code " +
-                        "WHERE f.status = 'scheduled' " +
+                        "WHERE f.status IN ('scheduled', 'delayed') " +
                         "AND f.available_seats > 0 " +
                         "AND datetime(f.departure_time) > datetime('now') " +
                         "ORDER BY f.departure_time";
@@ -415,8 +416,9 @@ public class RescheduleUpgradeModule extends JFrame {
                         String flightInfo = String.format("%s %s %s",
                             rs.getString("flight_number"),
                             rs.getString("route"),
-                            rs.getString("dep_date"));
+                            rs.getString("dep_time"));
                         flights.add(flightInfo);
+                        flightIds.add(rs.getString("flight_id"));
                     }
                 }
             } catch (SQLException e) {
@@ -426,115 +428,9 @@ public class RescheduleUpgradeModule extends JFrame {
 
             return flights;
         }
-
-        /**
-         * 获取航班的基础价格
-         */
-        public static double getFlightBasePrice(String flightNumber) {
-            String sql = "SELECT base_price FROM flights WHERE flight_number = ?";
-            
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, flightNumber);
-                
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        return rs.getDouble("base_price");
-                    }
-                }
-            } catch (SQLException e) {
-                e.printStackTrace();
-                System.err.println("获取航班价格失败: " + e.getMessage());
-            }
-            
-            return 0.0;
-        }
-
-        /**
-         * 检查航班可用性
-         */
-        public static AvailabilityInfo checkFlightAvailability(String flightNumber, String seatClass) {
-            String sql = "SELECT f.available_seats, f.base_price, a.first_class_seats, " +
-                        "a.business_class_seats, a.economy_class_seats " +
-                        "FROM flights f " +
-                        "JOIN aircraft a ON f.aircraft_id = a.aircraft_id " +
-                        "WHERE f.flight_number = ? AND f.status = 'scheduled'";
-
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, flightNumber);
-                
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        AvailabilityInfo info = new AvailabilityInfo();
-                        info.isAvailable = rs.getInt("available_seats") > 0;
-                        info.basePrice = rs.getDouble("base_price");
-                        
-                        // 根据舱位类型计算价格
-                        switch (seatClass) {
-                            case "头等舱":
-                                info.finalPrice = info.basePrice * 3.5; // 头等舱倍数
-                                info.remainingSeats = rs.getInt("first_class_seats");
-                                break;
-                            case "商务舱":
-                                info.finalPrice = info.basePrice * 2.5; // 商务舱倍数
-                                info.remainingSeats = rs.getInt("business_class_seats");
-                                break;
-                            default: // 经济舱
-                                info.finalPrice = info.basePrice;
-                                info.remainingSeats = rs.getInt("economy_class_seats");
-                                break;
-                        }
-                        
-                        // 模拟剩余座位（实际应该查询orders表）
-                        info.remainingSeats = Math.max(1, (int)(Math.random() * info.remainingSeats));
-                        
-                        return info;
-                    }
-                }
-            } catch (SQLException e) {
-                e.printStackTrace();
-                System.err.println("检查航班可用性失败: " + e.getMessage());
-            }
-            
-            return null;
-        }
-
-        /**
-         * 判断是否为普通用户（需要权限限制）
-         */
-        public static boolean isNormalUser(String userId) {
-            // 检查用户角色
-            String sql = "SELECT role FROM users WHERE username = ?";
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-                
-                stmt.setString(1, userId);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        String role = rs.getString("role");
-                        // 只有角色为"用户"的才需要限制，客服和管理员不需要限制
-                        return "用户".equals(role);
-                    }
-                }
-            } catch (SQLException e) {
-                e.printStackTrace();
-                System.err.println("获取用户角色失败: " + e.getMessage());
-            }
-            // 默认当作普通用户处理（安全考虑）
-            return true;
-        }
     }
 
-    /**
-     * 航班可用性信息类
-     */
-    public static class AvailabilityInfo {
-        public boolean isAvailable;
-        public double basePrice;
-        public double finalPrice;
-        public int remainingSeats;
-    }    public static void main(String[] args) {
+    public static void main(String[] args) {
         // 测试不同用户角色的权限控制
         System.out.println("测试改期/升舱模块的权限控制:");
         System.out.println("1. user1 (用户) - 只能查看自己的订单");
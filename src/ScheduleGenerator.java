@@ -0,0 +1,1020 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 周期航班计划 - schedule_patterns 描述按星期重复的航班（如 MU5112 PEK-SHA 08:00 周一至周六，11-01 至 03-31），
+ * 后台任务只把今天起 airplane.schedule.horizonDays 天内的日期生成到 flights（滚动窗口），
+ * 每个计划记录已生成到的日期（materialized_until），下次只生成之后的日期；
+ * 多个计划由线程池并行展开和校验，写入仍经单一写线程，每个计划一个事务。
+ * 修改计划时只对比窗口内未起飞的航班：新增日期插入、取消的日期删除（有订单的走批量退票）、
+ * 时刻/票价等变化的日期就地更新（时刻变化通知已订票旅客），其余日期不动
+ */
+public class ScheduleGenerator {
+    private static final int HORIZON_DAYS = Integer.getInteger("airplane.schedule.horizonDays", 60);
+    private static final int WORKERS = Integer.getInteger("airplane.schedule.workers",
+            Math.max(2, Runtime.getRuntime().availableProcessors()));
+    private static final long INTERVAL_MINUTES = Long.getLong("airplane.schedule.intervalMinutes", 60L);
+    private static final DateTimeFormatter CLOCK_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
+
+    private static final String PATTERN_COLUMNS =
+            "pattern_id, flight_number, aircraft_id, departure_airport, arrival_airport, departure_time, " +
+            "duration_minutes, base_price, days_of_week, start_date, end_date, gate, terminal, status, version, " +
+            "materialized_until";
+    private static final String SELECT_PATTERN_SQL =
+            "SELECT " + PATTERN_COLUMNS + " FROM schedule_patterns WHERE pattern_id = ?";
+    // 窗口内还有未生成日期的计划
+    private static final String DUE_PATTERNS_SQL =
+            "SELECT " + PATTERN_COLUMNS + " FROM schedule_patterns WHERE status = 'active' " +
+            "AND end_date >= ? AND (materialized_until IS NULL OR (materialized_until < end_date AND materialized_until < ?))";
+    private static final String INSERT_PATTERN_SQL =
+            "INSERT INTO schedule_patterns (" + PATTERN_COLUMNS + ", updated_time) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 'active', 1, NULL, CURRENT_TIMESTAMP)";
+    private static final String UPDATE_PATTERN_SQL =
+            "UPDATE schedule_patterns SET flight_number = ?, aircraft_id = ?, departure_airport = ?, " +
+            "arrival_airport = ?, departure_time = ?, duration_minutes = ?, base_price = ?, days_of_week = ?, " +
+            "start_date = ?, end_date = ?, gate = ?, terminal = ?, version = version + 1, " +
+            "updated_time = CURRENT_TIMESTAMP WHERE pattern_id = ? AND version = ?";
+    // 检查点：计划未被修改、也未被其他线程推进时才生成
+    private static final String ADVANCE_SQL =
+            "UPDATE schedule_patterns SET materialized_until = ? WHERE pattern_id = ? AND version = ? " +
+            "AND materialized_until IS ?";
+    private static final String TAKEN_SQL =
+            "SELECT departure_time FROM flights WHERE flight_number = ? AND departure_time BETWEEN ? AND ?";
+    private static final String INSERT_FLIGHT_SQL =
+            "INSERT INTO flights (flight_id, flight_number, aircraft_id, departure_airport, arrival_airport, " +
+            "departure_time, arrival_time, base_price, available_seats, status, gate, terminal, pattern_id) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, 'scheduled', ?, ?, ?)";
+    private static final String PATTERN_FLIGHTS_SQL =
+            "SELECT flight_id, flight_number, aircraft_id, departure_airport, arrival_airport, departure_time, " +
+            "arrival_time, base_price, gate, terminal, status FROM flights WHERE pattern_id = ? AND departure_time > ? ORDER BY departure_time";
+    private static final String ACTIVE_ORDERS_SQL =
+            "SELECT COUNT(*) FROM orders WHERE flight_id = ? AND order_status NOT IN ('cancelled', 'refunded')";
+    private static final String ANY_ORDERS_SQL = "SELECT COUNT(*) FROM orders WHERE flight_id = ?";
+    private static final String CANCEL_FLIGHT_SQL =
+            "UPDATE flights SET status = 'cancelled', updated_at = CURRENT_TIMESTAMP WHERE flight_id = ?";
+    private static final String DELETE_INVENTORY_SQL = "DELETE FROM flight_cabin_inventory WHERE flight_id = ?";
+    private static final String DELETE_SEATS_SQL = "DELETE FROM seats WHERE flight_id = ?";
+    private static final String DELETE_FLIGHT_SQL = "DELETE FROM flights WHERE flight_id = ?";
+    private static final String UPDATE_FLIGHT_SQL =
+            "UPDATE flights SET flight_number = ?, departure_time = ?, arrival_time = ?, base_price = ?, gate = ?, " +
+            "terminal = ?, updated_at = CURRENT_TIMESTAMP WHERE flight_id = ?";
+    private static final String UPDATE_ROUTE_SQL =
+            "UPDATE flights SET departure_airport = ?, arrival_airport = ?, updated_at = CURRENT_TIMESTAMP " +
+            "WHERE flight_id = ?";
+    private static final String UPDATE_AIRCRAFT_SQL =
+            "UPDATE flights SET aircraft_id = ?, available_seats = ? WHERE flight_id = ?";
+
+    private static final LongAdder RUNS = new LongAdder();
+    private static final LongAdder GENERATED = new LongAdder();
+    private static final LongAdder UPDATED = new LongAdder();
+    private static final LongAdder REMOVED = new LongAdder();
+    private static final LongAdder CONFLICTS = new LongAdder();
+    private static final LongAdder FAILED = new LongAdder();
+    private static final LongAdder RUN_NANOS = new LongAdder();
+
+    private static ScheduledExecutorService scheduler;
+
+    private ScheduleGenerator() {
+    }
+
+    public enum Status {
+        SUCCESS,
+        INVALID,
+        NOT_FOUND,
+        CONFLICT,
+        FAILED
+    }
+
+    /**
+     * 新建周期计划并立即生成窗口内的航班
+     */
+    public static PatternResult createPattern(Pattern pattern) {
+        long start = System.nanoTime();
+        String error = validate(pattern);
+        if (error != null) {
+            return new PatternResult(Status.INVALID, error, pattern.patternId);
+        }
+        pattern.patternId = IdGenerator.nextId(IdGenerator.PATTERN_PREFIX);
+        pattern.version = 1;
+        pattern.materializedUntil = null;
+        try {
+            DatabaseWriter.execute(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(INSERT_PATTERN_SQL)) {
+                    stmt.setString(1, pattern.patternId);
+                    bindPattern(stmt, 2, pattern);
+                    return stmt.executeUpdate();
+                }
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("保存周期计划失败: " + e.getMessage());
+            return new PatternResult(Status.FAILED, "保存周期计划失败: " + e.getMessage(), pattern.patternId);
+        }
+        PatternResult result = new PatternResult(Status.SUCCESS, "周期计划已创建", pattern.patternId);
+        Batch batch = materialize(pattern, LocalDate.now());
+        result.inserted = batch.inserted;
+        result.skipped = batch.skipped;
+        if (batch.inserted > 0) {
+            afterChange(batch.routes);
+        }
+        startHorizonJob();
+        result.elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        return result;
+    }
+
+    /**
+     * 修改周期计划：只调整窗口内受影响日期的航班，随后补齐窗口
+     * updated.version 为读取计划时的版本（0 表示不校验），计划在此之后已被修改时返回 CONFLICT
+     */
+    public static PatternResult updatePattern(Pattern updated) {
+        long start = System.nanoTime();
+        String error = validate(updated);
+        if (error != null) {
+            return new PatternResult(Status.INVALID, error, updated.patternId);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<String> toCancel = new ArrayList<>();
+        List<FlightChangeNotifier.FlightChange> retimed = new ArrayList<>();
+        Set<String> routes = new HashSet<>();
+        PatternResult result;
+        try {
+            result = DatabaseWriter.executeInTransaction(conn -> {
+                Pattern current = loadPattern(conn, updated.patternId);
+                if (current == null) {
+                    return new PatternResult(Status.NOT_FOUND, "周期计划不存在: " + updated.patternId, updated.patternId);
+                }
+                if (updated.version > 0 && updated.version != current.version) {
+                    return new PatternResult(Status.CONFLICT, "周期计划已被修改，请重新载入", updated.patternId);
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(UPDATE_PATTERN_SQL)) {
+                    bindPattern(stmt, 1, updated);
+                    stmt.setString(13, updated.patternId);
+                    stmt.setInt(14, current.version);
+                    if (stmt.executeUpdate() == 0) {
+                        return new PatternResult(Status.CONFLICT, "周期计划已被修改，请重试", updated.patternId);
+                    }
+                }
+                updated.version = current.version + 1;
+                updated.materializedUntil = current.materializedUntil;
+                updated.status = current.status;
+                PatternResult diff = new PatternResult(Status.SUCCESS, "周期计划已修改", updated.patternId);
+                if (current.materializedUntil != null) {
+                    reconcile(conn, current, updated, now, diff, toCancel, retimed);
+                }
+                routes.add(current.departureAirport + "-" + current.arrivalAirport);
+                routes.add(updated.departureAirport + "-" + updated.arrivalAirport);
+                return diff;
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("修改周期计划失败: " + e.getMessage());
+            return new PatternResult(Status.FAILED, "修改周期计划失败: " + e.getMessage(), updated.patternId);
+        }
+        if (!result.isSuccess()) {
+            return result;
+        }
+        // 有订单的日期按航班取消处理（退款并通知旅客）
+        for (String flightId : toCancel) {
+            BulkRefundProcessor.cancelFlight(flightId, "周期计划调整", "schedule", null);
+        }
+        if (!retimed.isEmpty()) {
+            NotificationDispatcher.wakeUp();
+        }
+        // 新的结束日期或执行日可能在窗口末端带来尚未生成的日期
+        Batch batch = materialize(updated, LocalDate.now());
+        result.inserted += batch.inserted;
+        result.skipped += batch.skipped;
+        routes.addAll(batch.routes);
+        afterChange(routes);
+        result.elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        return result;
+    }
+
+    /**
+     * 对比已生成且未起飞的航班与新计划（窗口为今天到 materialized_until）
+     * 只应用原计划与新计划之间有变化的字段；航班上与原计划不一致的字段视为人工调整（如延误），保持不变
+     */
+    private static void reconcile(Connection conn, Pattern current, Pattern updated, LocalDateTime now,
+                                  PatternResult result, List<String> toCancel,
+                                  List<FlightChangeNotifier.FlightChange> retimed) throws SQLException {
+        Map<LocalDate, ExistingFlight> existing = new LinkedHashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(PATTERN_FLIGHTS_SQL)) {
+            stmt.setString(1, current.patternId);
+            stmt.setString(2, RefundRules.formatTime(now));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ExistingFlight flight = new ExistingFlight(rs);
+                    existing.put(flight.scheduledDate(current), flight);
+                }
+            }
+        }
+
+        LocalDate windowEnd = current.materializedUntil;
+        TreeSet<LocalDate> dates = new TreeSet<>(existing.keySet());
+        for (LocalDate date = now.toLocalDate(); !date.isAfter(windowEnd); date = date.plusDays(1)) {
+            if (updated.runsOn(date) && updated.departureOn(date).isAfter(now)) {
+                dates.add(date);
+            }
+        }
+
+        AircraftCabinCache.CabinConfiguration aircraft = AircraftCabinCache.get(updated.aircraftId);
+        List<Planned> inserts = new ArrayList<>();
+        Map<String, AircraftCabinCache.CabinConfiguration> reseeded = new LinkedHashMap<>();
+        for (LocalDate date : dates) {
+            ExistingFlight flight = existing.get(date);
+            if (flight == null) {
+                inserts.add(new Planned(updated, date, aircraft));
+                continue;
+            }
+            if (!"scheduled".equals(flight.status) && !"delayed".equals(flight.status)) {
+                // 已登机、起飞或取消的航班不再调整
+                result.kept++;
+                continue;
+            }
+            boolean booked = countActiveOrders(conn, flight.flightId) > 0;
+            if (date.isAfter(windowEnd) || !updated.runsOn(date)) {
+                if (booked) {
+                    toCancel.add(flight.flightId);
+                    result.cancelled++;
+                } else {
+                    deleteFlight(conn, flight.flightId);
+                    result.removed++;
+                }
+                continue;
+            }
+            LocalDateTime oldDeparture = current.departureOn(date);
+            String plannedDeparture = RefundRules.formatTime(oldDeparture);
+            String plannedArrival = RefundRules.formatTime(oldDeparture.plusMinutes(current.durationMinutes));
+            String departure = RefundRules.formatTime(updated.departureOn(date));
+            String arrival = RefundRules.formatTime(updated.departureOn(date).plusMinutes(updated.durationMinutes));
+            boolean timeEdited = !departure.equals(plannedDeparture) || !arrival.equals(plannedArrival);
+            boolean numberEdited = !updated.flightNumber.equals(current.flightNumber);
+            boolean priceEdited = !samePrice(updated.basePrice, current.basePrice);
+            boolean gateEdited = !same(updated.gate, current.gate);
+            boolean terminalEdited = !same(updated.terminal, current.terminal);
+            boolean aircraftEdited = !updated.aircraftId.equals(current.aircraftId);
+            boolean routeEdited = !updated.departureAirport.equals(current.departureAirport)
+                    || !updated.arrivalAirport.equals(current.arrivalAirport);
+            // 修改的时刻已过时不再挪动航班
+            boolean timeChanged = timeEdited && plannedDeparture.equals(flight.departureTime)
+                    && plannedArrival.equals(flight.arrivalTime) && updated.departureOn(date).isAfter(now);
+            boolean numberChanged = numberEdited && current.flightNumber.equals(flight.flightNumber);
+            boolean priceChanged = priceEdited && samePrice(current.basePrice, flight.basePrice);
+            boolean gateChanged = gateEdited && same(current.gate, flight.gate);
+            boolean terminalChanged = terminalEdited && same(current.terminal, flight.terminal);
+            boolean aircraftChanged = aircraftEdited && current.aircraftId.equals(flight.aircraftId);
+            // 已有订单的航班保留原航线，旅客买的是原出发地和目的地
+            boolean routeChanged = routeEdited && !booked && current.departureAirport.equals(flight.departureAirport)
+                    && current.arrivalAirport.equals(flight.arrivalAirport);
+            if (timeEdited != timeChanged || numberEdited != numberChanged || priceEdited != priceChanged
+                    || gateEdited != gateChanged || terminalEdited != terminalChanged
+                    || aircraftEdited != aircraftChanged || routeEdited != routeChanged) {
+                result.kept++;
+            }
+            boolean changed = timeChanged || numberChanged || priceChanged || gateChanged || terminalChanged;
+            if (routeChanged) {
+                try (PreparedStatement stmt = conn.prepareStatement(UPDATE_ROUTE_SQL)) {
+                    stmt.setString(1, updated.departureAirport);
+                    stmt.setString(2, updated.arrivalAirport);
+                    stmt.setString(3, flight.flightId);
+                    stmt.executeUpdate();
+                }
+                if (!changed) {
+                    result.updated++;
+                }
+            }
+            if (changed) {
+                FlightChangeNotifier.FlightChange change = timeChanged && booked
+                        ? FlightChangeNotifier.loadFlight(conn, flight.flightId) : null;
+                try (PreparedStatement stmt = conn.prepareStatement(UPDATE_FLIGHT_SQL)) {
+                    stmt.setString(1, numberChanged ? updated.flightNumber : flight.flightNumber);
+                    stmt.setString(2, timeChanged ? departure : flight.departureTime);
+                    stmt.setString(3, timeChanged ? arrival : flight.arrivalTime);
+                    stmt.setDouble(4, priceChanged ? updated.basePrice : flight.basePrice);
+                    stmt.setString(5, gateChanged ? updated.gate : flight.gate);
+                    stmt.setString(6, terminalChanged ? updated.terminal : flight.terminal);
+                    stmt.setString(7, flight.flightId);
+                    stmt.executeUpdate();
+                }
+                if (change != null) {
+                    change.newDepartureTime = departure;
+                    change.newArrivalTime = arrival;
+                    FlightChangeNotifier.fanOut(conn, change);
+                    retimed.add(change);
+                }
+                result.updated++;
+            }
+            if (aircraftChanged) {
+                if (booked) {
+                    // 已有订单的航班保留原机型，避免已售座位超出新机型舱位
+                    result.kept++;
+                } else if (aircraft != null) {
+                    try (PreparedStatement stmt = conn.prepareStatement(UPDATE_AIRCRAFT_SQL)) {
+                        stmt.setString(1, aircraft.aircraftId);
+                        stmt.setInt(2, aircraft.cabinSeats());
+                        stmt.setString(3, flight.flightId);
+                        stmt.executeUpdate();
+                    }
+                    try (PreparedStatement stmt = conn.prepareStatement(DELETE_INVENTORY_SQL)) {
+                        stmt.setString(1, flight.flightId);
+                        stmt.executeUpdate();
+                    }
+                    reseeded.put(flight.flightId, aircraft);
+                    if (!changed && !routeChanged) {
+                        result.updated++;
+                    }
+                }
+            }
+        }
+        CabinInventory.initializeAll(conn, reseeded);
+        int inserted = insertFlights(conn, updated, inserts);
+        result.inserted += inserted;
+        result.skipped += inserts.size() - inserted;
+        REMOVED.add(result.removed + result.cancelled);
+        UPDATED.add(result.updated);
+    }
+
+    /**
+     * 生成计划在 [max(开始日期, 今天, 已生成日期+1), min(结束日期, 今天+窗口天数)] 内的航班并推进检查点
+     * 计划已不合格（如飞机停用）时不生成也不推进检查点，修复后下次运行补齐
+     */
+    static Batch materialize(Pattern pattern, LocalDate today) {
+        Batch batch = new Batch(pattern.patternId);
+        LocalDate from = pattern.startDate.isAfter(today) ? pattern.startDate : today;
+        if (pattern.materializedUntil != null && !pattern.materializedUntil.isBefore(from)) {
+            from = pattern.materializedUntil.plusDays(1);
+        }
+        LocalDate horizon = today.plusDays(HORIZON_DAYS);
+        LocalDate to = pattern.endDate.isBefore(horizon) ? pattern.endDate : horizon;
+        if (from.isAfter(to)) {
+            return batch;
+        }
+        String error = validate(pattern);
+        if (error != null) {
+            System.err.println("周期计划不合格，暂不生成: " + pattern.patternId + " " + error);
+            FAILED.increment();
+            batch.failed = true;
+            return batch;
+        }
+        // 展开和校验在调用线程完成，写线程只做插入
+        AircraftCabinCache.CabinConfiguration aircraft = AircraftCabinCache.get(pattern.aircraftId);
+        LocalDateTime now = LocalDateTime.now();
+        List<Planned> planned = new ArrayList<>();
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            if (pattern.runsOn(date) && pattern.departureOn(date).isAfter(now)) {
+                planned.add(new Planned(pattern, date, aircraft));
+            }
+        }
+        LocalDate until = to;
+        try {
+            Integer inserted = DatabaseWriter.executeInTransaction(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(ADVANCE_SQL)) {
+                    stmt.setString(1, until.toString());
+                    stmt.setString(2, pattern.patternId);
+                    stmt.setInt(3, pattern.version);
+                    stmt.setString(4, pattern.materializedUntil == null ? null : pattern.materializedUntil.toString());
+                    if (stmt.executeUpdate() == 0) {
+                        return null;
+                    }
+                }
+                return insertFlights(conn, pattern, planned);
+            });
+            if (inserted == null) {
+                CONFLICTS.increment();
+                batch.conflict = true;
+                return batch;
+            }
+            batch.inserted = inserted;
+            batch.skipped = planned.size() - inserted;
+            pattern.materializedUntil = until;
+            if (inserted > 0) {
+                batch.routes.add(pattern.departureAirport + "-" + pattern.arrivalAirport);
+            }
+            GENERATED.add(inserted);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("生成周期航班失败: " + pattern.patternId + " " + e.getMessage());
+            FAILED.increment();
+            batch.failed = true;
+        }
+        return batch;
+    }
+
+    /**
+     * 批量插入计划中的航班，跳过同航班号同起飞时间已存在的航班和机型不存在的航班，返回插入数
+     */
+    private static int insertFlights(Connection conn, Pattern pattern, List<Planned> planned) throws SQLException {
+        if (planned.isEmpty()) {
+            return 0;
+        }
+        Set<String> taken = new HashSet<>();
+        try (PreparedStatement stmt = conn.prepareStatement(TAKEN_SQL)) {
+            stmt.setString(1, pattern.flightNumber);
+            stmt.setString(2, planned.get(0).departureTime);
+            stmt.setString(3, planned.get(planned.size() - 1).departureTime);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    taken.add(rs.getString(1));
+                }
+            }
+        }
+        Map<String, AircraftCabinCache.CabinConfiguration> inventory = new LinkedHashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_FLIGHT_SQL)) {
+            for (Planned flight : planned) {
+                if (flight.aircraft == null || !taken.add(flight.departureTime)) {
+                    continue;
+                }
+                stmt.setString(1, flight.flightId);
+                stmt.setString(2, pattern.flightNumber);
+                stmt.setString(3, pattern.aircraftId);
+                stmt.setString(4, pattern.departureAirport);
+                stmt.setString(5, pattern.arrivalAirport);
+                stmt.setString(6, flight.departureTime);
+                stmt.setString(7, flight.arrivalTime);
+                stmt.setDouble(8, pattern.basePrice);
+                stmt.setInt(9, flight.aircraft.cabinSeats());
+                stmt.setString(10, pattern.gate);
+                stmt.setString(11, pattern.terminal);
+                stmt.setString(12, pattern.patternId);
+                stmt.addBatch();
+                inventory.put(flight.flightId, flight.aircraft);
+            }
+            stmt.executeBatch();
+        }
+        CabinInventory.initializeAll(conn, inventory);
+        return inventory.size();
+    }
+
+    /**
+     * 滚动窗口：并行为所有窗口内还有未生成日期的计划生成航班，最后统一刷新缓存
+     */
+    public static HorizonResult runHorizon() {
+        long start = System.nanoTime();
+        LocalDate today = LocalDate.now();
+        HorizonResult result = new HorizonResult();
+        List<Pattern> due = new ArrayList<>();
+        try (Connection conn = DatabaseConnectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(DUE_PATTERNS_SQL)) {
+            stmt.setString(1, today.toString());
+            stmt.setString(2, today.plusDays(HORIZON_DAYS).toString());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    due.add(new Pattern(rs));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("读取周期计划失败: " + e.getMessage());
+            result.failed = 1;
+            return result;
+        }
+        result.patterns = due.size();
+
+        Set<String> routes = new HashSet<>();
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(WORKERS, Math.max(1, due.size())), runnable -> {
+            Thread thread = new Thread(runnable, "schedule-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Batch>> futures = new ArrayList<>();
+            for (Pattern pattern : due) {
+                futures.add(pool.submit(() -> materialize(pattern, today)));
+            }
+            for (Future<Batch> future : futures) {
+                try {
+                    Batch batch = future.get();
+                    result.inserted += batch.inserted;
+                    result.skipped += batch.skipped;
+                    result.conflicts += batch.conflict ? 1 : 0;
+                    result.failed += batch.failed ? 1 : 0;
+                    routes.addAll(batch.routes);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    result.failed++;
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        if (result.inserted > 0) {
+            afterChange(routes);
+        }
+        RUNS.increment();
+        RUN_NANOS.add(System.nanoTime() - start);
+        result.elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        return result;
+    }
+
+    /**
+     * 启动后台任务，每 airplane.schedule.intervalMinutes 分钟推进一次窗口；运行结果计入 getStats()，失败时输出到 stderr
+     */
+    public static synchronized void startHorizonJob() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "schedule-horizon");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                HorizonResult result = runHorizon();
+                if (result.failed > 0) {
+                    System.err.println(result);
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }, 0, INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    public static synchronized void stopHorizonJob() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * 读取周期计划，不存在时返回null
+     */
+    public static Pattern getPattern(String patternId) {
+        try (Connection conn = DatabaseConnectionPool.getConnection()) {
+            return loadPattern(conn, patternId);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("读取周期计划失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static Pattern loadPattern(Connection conn, String patternId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_PATTERN_SQL)) {
+            stmt.setString(1, patternId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? new Pattern(rs) : null;
+            }
+        }
+    }
+
+    /**
+     * 按 flight_number ... terminal 的顺序从 index 开始绑定计划字段（共12个）
+     */
+    private static void bindPattern(PreparedStatement stmt, int index, Pattern pattern) throws SQLException {
+        stmt.setString(index, pattern.flightNumber);
+        stmt.setString(index + 1, pattern.aircraftId);
+        stmt.setString(index + 2, pattern.departureAirport);
+        stmt.setString(index + 3, pattern.arrivalAirport);
+        stmt.setString(index + 4, pattern.departureTime.format(CLOCK_FORMAT));
+        stmt.setInt(index + 5, pattern.durationMinutes);
+        stmt.setDouble(index + 6, pattern.basePrice);
+        stmt.setString(index + 7, pattern.daysOfWeek);
+        stmt.setString(index + 8, pattern.startDate.toString());
+        stmt.setString(index + 9, pattern.endDate.toString());
+        stmt.setString(index + 10, pattern.gate);
+        stmt.setString(index + 11, pattern.terminal);
+    }
+
+    private static int countActiveOrders(Connection conn, String flightId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(ACTIVE_ORDERS_SQL)) {
+            stmt.setString(1, flightId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * 删除没有任何订单的航班；有已取消或已退款订单的航班只标记取消，保留订单和退款记录的关联
+     */
+    private static void deleteFlight(Connection conn, String flightId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(ANY_ORDERS_SQL)) {
+            stmt.setString(1, flightId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next() && rs.getInt(1) > 0) {
+                    try (PreparedStatement cancel = conn.prepareStatement(CANCEL_FLIGHT_SQL)) {
+                        cancel.setString(1, flightId);
+                        cancel.executeUpdate();
+                    }
+                    return;
+                }
+            }
+        }
+        for (String sql : new String[]{DELETE_INVENTORY_SQL, DELETE_SEATS_SQL, DELETE_FLIGHT_SQL}) {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, flightId);
+                stmt.executeUpdate();
+            }
+        }
+    }
+
+    private static boolean same(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static boolean samePrice(double a, double b) {
+        return Math.abs(a - b) <= 0.005;
+    }
+
+    /**
+     * 航班增删改后刷新依赖航班表的缓存
+     */
+    private static void afterChange(Set<String> routes) {
+        CabinInventory.reload();
+        ConnectionSearch.invalidate();
+        FareCalendar.invalidate();
+        AirportDirectory.invalidate();
+        if (FlightRouteIndex.isEnabled()) {
+            for (String route : routes) {
+                int dash = route.indexOf('-');
+                FlightRouteIndex.refreshRoute(route.substring(0, dash), route.substring(dash + 1));
+            }
+        }
+    }
+
+    /**
+     * 校验计划字段，合格时返回null
+     */
+    static String validate(Pattern pattern) {
+        if (pattern.flightNumber == null || pattern.flightNumber.isEmpty()) {
+            return "航班号不能为空";
+        }
+        if (AirportDirectory.getByCode(pattern.departureAirport) == null) {
+            return "出发机场不存在: " + pattern.departureAirport;
+        }
+        if (AirportDirectory.getByCode(pattern.arrivalAirport) == null) {
+            return "到达机场不存在: " + pattern.arrivalAirport;
+        }
+        if (pattern.departureAirport.equals(pattern.arrivalAirport)) {
+            return "出发和到达机场相同";
+        }
+        AircraftCabinCache.CabinConfiguration aircraft = AircraftCabinCache.get(pattern.aircraftId);
+        if (aircraft == null || !"active".equals(aircraft.status)) {
+            return "飞机不存在或不可用: " + pattern.aircraftId;
+        }
+        if (pattern.departureTime == null || pattern.durationMinutes <= 0) {
+            return "起飞时刻和飞行时长必须填写";
+        }
+        if (pattern.basePrice <= 0) {
+            return "票价必须大于0";
+        }
+        if (pattern.daysOfWeek == null || !pattern.daysOfWeek.matches("[1-7]{1,7}")) {
+            return "执行日应为1-7的数字组合，如 1234567";
+        }
+        if (pattern.startDate == null || pattern.endDate == null || pattern.endDate.isBefore(pattern.startDate)) {
+            return "结束日期不能早于开始日期";
+        }
+        return null;
+    }
+
+    public static ScheduleStats getStats() {
+        ScheduleStats stats = new ScheduleStats();
+        stats.runs = RUNS.sum();
+        stats.generated = GENERATED.sum();
+        stats.updated = UPDATED.sum();
+        stats.removed = REMOVED.sum();
+        stats.conflicts = CONFLICTS.sum();
+        stats.failed = FAILED.sum();
+        stats.avgRunMillis = stats.runs == 0 ? 0 : RUN_NANOS.sum() / 1_000_000.0 / stats.runs;
+        return stats;
+    }
+
+    /**
+     * 周期计划
+     */
+    public static class Pattern {
+        public String patternId;
+        public String flightNumber;
+        public String aircraftId;
+        public String departureAirport;
+        public String arrivalAirport;
+        public LocalTime departureTime;
+        public int durationMinutes;
+        public double basePrice;
+        /** 执行日，1=周一 ... 7=周日，如 "123456" 表示周日不飞 */
+        public String daysOfWeek = "1234567";
+        public LocalDate startDate;
+        public LocalDate endDate;
+        public String gate;
+        public String terminal;
+        public String status = "active";
+        public int version;
+        public LocalDate materializedUntil;
+        // 执行日按 DayOfWeek 序号展开，避免逐日字符串查找
+        private boolean[] runsOnDay;
+
+        public Pattern() {
+        }
+
+        Pattern(ResultSet rs) throws SQLException {
+            patternId = rs.getString("pattern_id");
+            flightNumber = rs.getString("flight_number");
+            aircraftId = rs.getString("aircraft_id");
+            departureAirport = rs.getString("departure_airport");
+            arrivalAirport = rs.getString("arrival_airport");
+            departureTime = LocalTime.parse(rs.getString("departure_time"), CLOCK_FORMAT);
+            durationMinutes = rs.getInt("duration_minutes");
+            basePrice = rs.getDouble("base_price");
+            daysOfWeek = rs.getString("days_of_week");
+            startDate = LocalDate.parse(rs.getString("start_date"));
+            endDate = LocalDate.parse(rs.getString("end_date"));
+            gate = rs.getString("gate");
+            terminal = rs.getString("terminal");
+            status = rs.getString("status");
+            version = rs.getInt("version");
+            String until = rs.getString("materialized_until");
+            materializedUntil = until == null ? null : LocalDate.parse(until);
+        }
+
+        public boolean runsOn(LocalDate date) {
+            if (date.isBefore(startDate) || date.isAfter(endDate)) {
+                return false;
+            }
+            if (runsOnDay == null) {
+                boolean[] days = new boolean[8];
+                for (char c : daysOfWeek.toCharArray()) {
+                    days[c - '0'] = true;
+                }
+                runsOnDay = days;
+            }
+            return runsOnDay[date.getDayOfWeek().getValue()];
+        }
+
+        public LocalDateTime departureOn(LocalDate date) {
+            return date.atTime(departureTime);
+        }
+
+        /**
+         * 解析执行日：daily/每天，或 "x7" 表示周日除外，其余按数字组合
+         */
+        public static String parseDays(String text) {
+            String days = text.trim().toLowerCase();
+            if (days.equals("daily") || days.equals("每天")) {
+                return "1234567";
+            }
+            if (days.startsWith("x")) {
+                StringBuilder result = new StringBuilder();
+                for (DayOfWeek day : DayOfWeek.values()) {
+                    if (days.indexOf((char) ('0' + day.getValue())) < 0) {
+                        result.append(day.getValue());
+                    }
+                }
+                return result.toString();
+            }
+            return days;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %s-%s %s %d分钟 执行日%s %s~%s 已生成至%s",
+                    patternId, flightNumber, departureAirport, arrivalAirport, departureTime.format(CLOCK_FORMAT),
+                    durationMinutes, daysOfWeek, startDate, endDate, materializedUntil);
+        }
+    }
+
+    /**
+     * 计划展开后待插入的一个航班
+     */
+    private static class Planned {
+        final String flightId;
+        final String departureTime;
+        final String arrivalTime;
+        final AircraftCabinCache.CabinConfiguration aircraft;
+
+        Planned(Pattern pattern, LocalDate date, AircraftCabinCache.CabinConfiguration aircraft) {
+            LocalDateTime departure = pattern.departureOn(date);
+            this.flightId = IdGenerator.nextId(IdGenerator.FLIGHT_PREFIX);
+            this.departureTime = RefundRules.formatTime(departure);
+            this.arrivalTime = RefundRules.formatTime(departure.plusMinutes(pattern.durationMinutes));
+            this.aircraft = aircraft;
+        }
+    }
+
+    /**
+     * 计划已生成、尚未起飞的航班
+     */
+    private static class ExistingFlight {
+        final String flightId;
+        final String flightNumber;
+        final String aircraftId;
+        final String departureAirport;
+        final String arrivalAirport;
+        final String departureTime;
+        final String arrivalTime;
+        final LocalDateTime departure;
+        final double basePrice;
+        final String gate;
+        final String terminal;
+        final String status;
+
+        ExistingFlight(ResultSet rs) throws SQLException {
+            flightId = rs.getString("flight_id");
+            flightNumber = rs.getString("flight_number");
+            aircraftId = rs.getString("aircraft_id");
+            departureAirport = rs.getString("departure_airport");
+            arrivalAirport = rs.getString("arrival_airport");
+            departureTime = rs.getString("departure_time");
+            arrivalTime = rs.getString("arrival_time");
+            departure = RefundRules.parseTime(departureTime);
+            basePrice = rs.getDouble("base_price");
+            gate = rs.getString("gate");
+            terminal = rs.getString("terminal");
+            status = rs.getString("status");
+        }
+
+        /**
+         * 航班所属的执行日：早于原计划当天时刻的航班是前一天的航班延误过了零点
+         */
+        LocalDate scheduledDate(Pattern pattern) {
+            LocalDate date = departure.toLocalDate();
+            LocalDate previous = date.minusDays(1);
+            if (departure.isBefore(pattern.departureOn(date)) && pattern.runsOn(previous)) {
+                return previous;
+            }
+            return date;
+        }
+    }
+
+    /**
+     * 单个计划一次生成的结果
+     */
+    static class Batch {
+        final String patternId;
+        int inserted;
+        int skipped;
+        boolean conflict;
+        boolean failed;
+        final Set<String> routes = new HashSet<>();
+
+        Batch(String patternId) {
+            this.patternId = patternId;
+        }
+    }
+
+    public static class PatternResult {
+        public final Status status;
+        public final String message;
+        public final String patternId;
+        public int inserted;
+        public int updated;
+        public int removed;
+        public int cancelled;
+        public int kept;
+        public int skipped;
+        public long elapsedMillis;
+
+        public PatternResult(Status status, String message, String patternId) {
+            this.status = status;
+            this.message = message;
+            this.patternId = patternId;
+        }
+
+        public boolean isSuccess() {
+            return status == Status.SUCCESS;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s %s [新增:%d 更新:%d 删除:%d 取消:%d 保留:%d 跳过:%d 耗时:%dms]",
+                    status, message, patternId, inserted, updated, removed, cancelled, kept, skipped, elapsedMillis);
+        }
+    }
+
+    public static class HorizonResult {
+        public int patterns;
+        public int inserted;
+        public int skipped;
+        public int conflicts;
+        public int failed;
+        public long elapsedMillis;
+
+        @Override
+        public String toString() {
+            return String.format("周期航班生成[计划:%d 新增航班:%d 跳过:%d 冲突:%d 失败:%d 耗时:%dms]",
+                    patterns, inserted, skipped, conflicts, failed, elapsedMillis);
+        }
+    }
+
+    public static class ScheduleStats {
+        public long runs;
+        public long generated;
+        public long updated;
+        public long removed;
+        public long conflicts;
+        public long failed;
+        public double avgRunMillis;
+
+        @Override
+        public String toString() {
+            return String.format("周期计划[运行:%d 生成:%d 更新:%d 删除/取消:%d 冲突:%d 失败:%d 平均每次:%.1fms]",
+                    runs, generated, updated, removed, conflicts, failed, avgRunMillis);
+        }
+    }
+
+    /**
+     * 用法: java ScheduleGenerator --run                     推进所有计划的滚动窗口
+     *       java ScheduleGenerator --expand <执行日> <开始> <结束>  只展开日期，不访问数据库
+     *       java ScheduleGenerator --show <计划ID>             查看计划
+     *       java ScheduleGenerator --update <计划ID> <航班号> ... <结束>  按新的计划字段修改计划
+     *       java ScheduleGenerator <航班号> <飞机ID> <出发-到达> <HH:mm> <时长分钟> <票价> <执行日> <开始> <结束>
+     */
+    public static void main(String[] args) {
+        if (args.length == 4 && "--expand".equals(args[0])) {
+            Pattern pattern = new Pattern();
+            pattern.daysOfWeek = Pattern.parseDays(args[1]);
+            pattern.startDate = LocalDate.parse(args[2]);
+            pattern.endDate = LocalDate.parse(args[3]);
+            int count = 0;
+            Map<DayOfWeek, Integer> byDay = new HashMap<>();
+            for (LocalDate date = pattern.startDate; !date.isAfter(pattern.endDate); date = date.plusDays(1)) {
+                if (pattern.runsOn(date)) {
+                    count++;
+                    byDay.merge(date.getDayOfWeek(), 1, Integer::sum);
+                }
+            }
+            System.out.println("执行日 " + pattern.daysOfWeek + "，共 " + count + " 天: " + byDay);
+            return;
+        }
+        if (args.length == 1 && "--run".equals(args[0])) {
+            System.out.println(runHorizon());
+            System.out.println(getStats());
+            return;
+        }
+        if (args.length == 2 && "--show".equals(args[0])) {
+            Pattern pattern = getPattern(args[1]);
+            System.out.println(pattern == null ? "周期计划不存在: " + args[1] : pattern);
+            return;
+        }
+        boolean update = args.length == 11 && "--update".equals(args[0]);
+        if (!update && args.length < 9) {
+            System.out.println("用法: ScheduleGenerator --run | --expand <执行日> <开始> <结束> | --show <计划ID> | "
+                    + "[--update <计划ID>] <航班号> <飞机ID> <出发-到达> <HH:mm> <时长分钟> <票价> <执行日> <开始> <结束>");
+            return;
+        }
+        Pattern pattern;
+        try {
+            pattern = parsePattern(args, update ? 2 : 0);
+        } catch (RuntimeException e) {
+            System.out.println("参数格式错误: " + e.getMessage());
+            return;
+        }
+        if (update) {
+            Pattern current = getPattern(args[1]);
+            if (current == null) {
+                System.out.println("周期计划不存在: " + args[1]);
+                return;
+            }
+            System.out.println("原计划: " + current);
+            pattern.patternId = current.patternId;
+            pattern.version = current.version;
+            System.out.println(updatePattern(pattern));
+        } else {
+            System.out.println(createPattern(pattern));
+        }
+        System.out.println(getStats());
+    }
+
+    /**
+     * 从命令行参数的 offset 处读取计划字段（航班号 ... 结束日期，共9个）
+     */
+    private static Pattern parsePattern(String[] args, int offset) {
+        Pattern pattern = new Pattern();
+        pattern.flightNumber = args[offset];
+        pattern.aircraftId = args[offset + 1];
+        String route = args[offset + 2];
+        pattern.departureAirport = route.substring(0, route.indexOf('-'));
+        pattern.arrivalAirport = route.substring(route.indexOf('-') + 1);
+        pattern.departureTime = LocalTime.parse(args[offset + 3], CLOCK_FORMAT);
+        pattern.durationMinutes = Integer.parseInt(args[offset + 4]);
+        pattern.basePrice = Double.parseDouble(args[offset + 5]);
+        pattern.daysOfWeek = Pattern.parseDays(args[offset + 6]);
+        pattern.startDate = LocalDate.parse(args[offset + 7]);
+        pattern.endDate = LocalDate.parse(args[offset + 8]);
+        return pattern;
+    }
+}
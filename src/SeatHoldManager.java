@@ -0,0 +1,266 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 座位锁定管理 - 用户点选座位后在内存中锁定一段时间，确认前其他用户无法选择该座位
+ * 锁定/确认/释放只操作 SeatInventory 的座位位图，不访问数据库；
+ * 后台清理线程通过 DelayQueue 批量释放过期的锁定
+ */
+public class SeatHoldManager {
+    private static final long HOLD_TTL_MS = Long.getLong("airplane.seat.holdTtlSeconds", 600L) * 1000;
+
+    // 航班|座位号 -> 锁定
+    private static final Map<String, Hold> HOLDS = new ConcurrentHashMap<>();
+    // 航班|持有人 -> 锁定（每个订单在一个航班上只锁定一个座位）
+    private static final Map<String, Hold> BY_HOLDER = new ConcurrentHashMap<>();
+    // 已确认或已释放的锁定仍留在队列中，到期后由清理线程丢弃
+    private static final DelayQueue<Hold> EXPIRY_QUEUE = new DelayQueue<>();
+
+    // 锁定指标
+    private static final LongAdder HELD = new LongAdder();
+    private static final LongAdder REJECTED = new LongAdder();
+    private static final LongAdder CONFIRMED = new LongAdder();
+    private static final LongAdder RELEASED = new LongAdder();
+    private static final LongAdder EXPIRED = new LongAdder();
+
+    static {
+        Thread sweeper = new Thread(SeatHoldManager::sweepLoop, "seat-hold-sweeper");
+        sweeper.setDaemon(true);
+        sweeper.start();
+    }
+
+    private SeatHoldManager() {
+    }
+
+    /**
+     * 锁定座位，座位已被占用或被他人锁定时返回null
+     * 同一持有人再次锁定同一座位时续期（包括已到期但尚未清理的锁定），锁定其他座位时自动释放原锁定
+     */
+    public static Hold hold(String flightId, String seatNumber, String holderId) {
+        String seatKey = seatKey(flightId, seatNumber);
+        Hold existing = HOLDS.get(seatKey);
+        if (existing != null) {
+            if (existing.holderId.equals(holderId)) {
+                // 座位仍由本人占用，换成新的到期时间；原锁定到期时清理线程移除失败，不会释放座位
+                Hold renewed = new Hold(flightId, seatNumber, holderId, System.nanoTime() + HOLD_TTL_MS * 1_000_000);
+                if (HOLDS.replace(seatKey, existing, renewed)) {
+                    BY_HOLDER.replace(holderKey(flightId, holderId), existing, renewed);
+                    EXPIRY_QUEUE.add(renewed);
+                    return renewed;
+                }
+            } else if (existing.isExpired() && releaseHold(existing)) {
+                // 他人的锁定已到期但清理线程尚未处理，先释放再锁定
+                EXPIRED.increment();
+            }
+        }
+
+        if (!SeatInventory.claimSeat(flightId, seatNumber)) {
+            REJECTED.increment();
+            return null;
+        }
+
+        Hold hold = new Hold(flightId, seatNumber, holderId, System.nanoTime() + HOLD_TTL_MS * 1_000_000);
+        HOLDS.put(seatKey, hold);
+        Hold previous = BY_HOLDER.put(holderKey(flightId, holderId), hold);
+        if (previous != null) {
+            releaseHold(previous);
+            RELEASED.increment();
+        }
+        EXPIRY_QUEUE.add(hold);
+        HELD.increment();
+        return hold;
+    }
+
+    /**
+     * 确认锁定：锁定有效时移除锁定并保留座位占用，由调用方写入数据库
+     */
+    public static boolean confirm(String flightId, String seatNumber, String holderId) {
+        String seatKey = seatKey(flightId, seatNumber);
+        Hold hold = HOLDS.get(seatKey);
+        if (hold == null || !hold.holderId.equals(holderId)) {
+            return false;
+        }
+        if (hold.isExpired()) {
+            if (releaseHold(hold)) {
+                EXPIRED.increment();
+            }
+            return false;
+        }
+        if (HOLDS.remove(seatKey, hold)) {
+            BY_HOLDER.remove(holderKey(flightId, holderId), hold);
+            CONFIRMED.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 释放持有人在航班上的锁定（关闭选座窗口时调用）
+     */
+    public static void releaseHolder(String flightId, String holderId) {
+        Hold hold = BY_HOLDER.get(holderKey(flightId, holderId));
+        if (hold != null && releaseHold(hold)) {
+            RELEASED.increment();
+        }
+    }
+
+    /**
+     * 移除锁定并释放座位；锁定已被确认、释放或清理时返回false
+     */
+    private static boolean releaseHold(Hold hold) {
+        if (!HOLDS.remove(seatKey(hold.flightId, hold.seatNumber), hold)) {
+            return false;
+        }
+        BY_HOLDER.remove(holderKey(hold.flightId, hold.holderId), hold);
+        SeatInventory.releaseSeat(hold.flightId, hold.seatNumber);
+        return true;
+    }
+
+    /**
+     * 清理线程：等待最早到期的锁定，然后一次性取出所有已到期的锁定批量释放
+     */
+    private static void sweepLoop() {
+        List<Hold> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(EXPIRY_QUEUE.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            EXPIRY_QUEUE.drainTo(batch);
+            for (Hold hold : batch) {
+                if (releaseHold(hold)) {
+                    EXPIRED.increment();
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private static String seatKey(String flightId, String seatNumber) {
+        return flightId + "|" + seatNumber;
+    }
+
+    private static String holderKey(String flightId, String holderId) {
+        return flightId + "|" + holderId;
+    }
+
+    /**
+     * 获取锁定指标快照
+     */
+    public static HoldStats getStats() {
+        HoldStats stats = new HoldStats();
+        stats.active = HOLDS.size();
+        stats.held = HELD.sum();
+        stats.rejected = REJECTED.sum();
+        stats.confirmed = CONFIRMED.sum();
+        stats.released = RELEASED.sum();
+        stats.expired = EXPIRED.sum();
+        return stats;
+    }
+
+    /**
+     * 座位锁定
+     */
+    public static class Hold implements Delayed {
+        public final String flightId;
+        public final String seatNumber;
+        public final String holderId;
+        final long expiresAtNanos;
+
+        Hold(String flightId, String seatNumber, String holderId, long expiresAtNanos) {
+            this.flightId = flightId;
+            this.seatNumber = seatNumber;
+            this.holderId = holderId;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        public boolean isExpired() {
+            return System.nanoTime() - expiresAtNanos >= 0;
+        }
+
+        /**
+         * 剩余锁定秒数
+         */
+        public long remainingSeconds() {
+            return Math.max(0, getDelay(TimeUnit.SECONDS));
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(expiresAtNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(expiresAtNanos, ((Hold) other).expiresAtNanos);
+        }
+    }
+
+    /**
+     * 锁定指标
+     */
+    public static class HoldStats {
+        public int active;
+        public long held;
+        public long rejected;
+        public long confirmed;
+        public long released;
+        public long expired;
+
+        @Override
+        public String toString() {
+            return String.format("座位锁定[当前:%d 锁定:%d 冲突:%d 确认:%d 释放:%d 过期:%d]",
+                    active, held, rejected, confirmed, released, expired);
+        }
+    }
+
+    /**
+     * 抢座压测：多个线程同时抢同一批航班的座位，检查没有座位被重复锁定
+     * java -Dairplane.seat.holdTtlSeconds=1 SeatHoldManager [线程数] [航班数]
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int flights = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        SeatInventory.SeatLayout layout = SeatInventory.layoutFor(null);
+        for (int f = 0; f < flights; f++) {
+            SeatInventory.preload("DEMO" + f, new SeatInventory.FlightSeats(layout));
+        }
+
+        LongAdder won = new LongAdder();
+        CountDownLatch done = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            String holder = "ORD-T" + t;
+            new Thread(() -> {
+                for (int f = 0; f < flights; f++) {
+                    for (int ordinal = 0; ordinal < layout.seatCount(); ordinal++) {
+                        if (hold("DEMO" + f, layout.labelOf(ordinal), holder + "-" + ordinal) != null) {
+                            won.increment();
+                        }
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        long attempts = (long) threads * flights * layout.seatCount();
+        System.out.printf("%d 次锁定请求，耗时 %.3f 秒，%.0f 次/秒%n", attempts, seconds, attempts / seconds);
+        long seats = (long) flights * layout.seatCount();
+        System.out.println(won.sum() == seats ? "✓ 每个座位只被锁定一次" : "✗ 锁定数 " + won.sum() + " ≠ 座位数 " + seats);
+
+        Thread.sleep(HOLD_TTL_MS + 500);
+        System.out.println(getStats());
+        System.out.println(HOLDS.isEmpty() ? "✓ 过期锁定已全部释放" : "✗ 仍有 " + HOLDS.size() + " 个锁定未释放");
+    }
+}
@@ -0,0 +1,354 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 座位库存引擎 - 每个航班的座位占用情况保存为按座位序号索引的位图
+ * 座位布局根据aircraft表的舱位座位数生成（头等舱每排6座，商务/经济舱每排8座），
+ * 查询/占用/释放座位均为O(1)，占用和释放通过CAS完成，两个用户不会选中同一座位
+ */
+public class SeatInventory {
+    // 座位图列模板：每排12列，两侧为窗户，中间两条过道
+    private static final String[] SIX_ABREAST_ROW =
+            {"WINDOW", null, null, "AISLE", null, null, "EMPTY", "EMPTY", "AISLE", null, null, "WINDOW"};
+    private static final String[] EIGHT_ABREAST_ROW =
+            {"WINDOW", null, null, "AISLE", null, null, null, null, "AISLE", null, null, "WINDOW"};
+    private static final int COLUMNS = 12;
+
+    // 未找到机型配置时使用的默认布局（与原固定座位图一致）
+    private static final int DEFAULT_FIRST_SEATS = 12;
+    private static final int DEFAULT_BUSINESS_SEATS = 24;
+    private static final int DEFAULT_ECONOMY_SEATS = 40;
+
+    private static final String FLIGHT_SQL = "SELECT aircraft_id FROM flights WHERE flight_id = ?";
+    private static final String OCCUPIED_SQL =
+            "SELECT seat_number FROM orders WHERE flight_id = ? AND seat_number IS NOT NULL AND seat_number != '' " +
+            "AND order_status NOT IN ('cancelled', 'refunded')";
+
+    // 相同舱位配置的飞机共用一个布局
+    private static final Map<String, SeatLayout> LAYOUTS = new ConcurrentHashMap<>();
+    private static final Map<String, FlightSeats> FLIGHTS = new ConcurrentHashMap<>();
+
+    private SeatInventory() {
+    }
+
+    /**
+     * 获取航班座位库存，首次访问时从数据库加载
+     */
+    public static FlightSeats getFlight(String flightId) {
+        FlightSeats seats = FLIGHTS.get(flightId);
+        if (seats == null) {
+            seats = loadFlight(flightId);
+            FlightSeats existing = FLIGHTS.putIfAbsent(flightId, seats);
+            if (existing != null) {
+                seats = existing;
+            }
+        }
+        return seats;
+    }
+
+    /**
+     * 占用座位，座位不存在或已被占用时返回false
+     */
+    public static boolean claimSeat(String flightId, String seatNumber) {
+        FlightSeats seats = getFlight(flightId);
+        int ordinal = seats.layout.ordinalOf(seatNumber);
+        return ordinal >= 0 && seats.claim(ordinal);
+    }
+
+    /**
+     * 释放座位
+     */
+    public static void releaseSeat(String flightId, String seatNumber) {
+        FlightSeats seats = FLIGHTS.get(flightId);
+        if (seats != null) {
+            int ordinal = seats.layout.ordinalOf(seatNumber);
+            if (ordinal >= 0) {
+                seats.release(ordinal);
+            }
+        }
+    }
+
+    /**
+     * 座位是否已被占用
+     */
+    public static boolean isSeatOccupied(String flightId, String seatNumber) {
+        FlightSeats seats = getFlight(flightId);
+        int ordinal = seats.layout.ordinalOf(seatNumber);
+        return ordinal >= 0 && seats.isOccupied(ordinal);
+    }
+
+    /**
+     * 生成座位图，已占用的座位标记为 "X" + 座位号
+     */
+    public static String[][] buildSeatMap(String flightId) {
+        FlightSeats seats = getFlight(flightId);
+        SeatLayout layout = seats.layout;
+        String[][] seatMap = new String[layout.grid.length][];
+        for (int i = 0; i < layout.grid.length; i++) {
+            seatMap[i] = layout.grid[i].clone();
+        }
+        for (int ordinal = 0; ordinal < layout.seatCount(); ordinal++) {
+            if (seats.isOccupied(ordinal)) {
+                seatMap[layout.rows[ordinal]][layout.columns[ordinal]] = "X" + layout.labels[ordinal];
+            }
+        }
+        return seatMap;
+    }
+
+    /**
+     * 直接放入航班库存（压测演示用）
+     */
+    static void preload(String flightId, FlightSeats seats) {
+        FLIGHTS.put(flightId, seats);
+    }
+
+    private static FlightSeats loadFlight(String flightId) {
+        String aircraftId = null;
+        List<String> occupied = new ArrayList<>();
+        try (Connection conn = DatabaseConnectionPool.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(FLIGHT_SQL)) {
+                stmt.setString(1, flightId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        aircraftId = rs.getString("aircraft_id");
+                    }
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(OCCUPIED_SQL)) {
+                stmt.setString(1, flightId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        occupied.add(rs.getString("seat_number"));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.err.println("加载座位库存失败: " + e.getMessage());
+        }
+
+        FlightSeats seats = new FlightSeats(layoutFor(AircraftCabinCache.get(aircraftId)));
+        for (String seatNumber : occupied) {
+            int ordinal = seats.layout.ordinalOf(seatNumber);
+            if (ordinal >= 0) {
+                seats.claim(ordinal);
+            }
+        }
+        return seats;
+    }
+
+    /**
+     * 获取机型对应的座位布局
+     */
+    public static SeatLayout layoutFor(AircraftCabinCache.CabinConfiguration config) {
+        int first = config == null ? DEFAULT_FIRST_SEATS : config.firstClassSeats;
+        int business = config == null ? DEFAULT_BUSINESS_SEATS : config.businessClassSeats;
+        int economy = config == null ? DEFAULT_ECONOMY_SEATS : config.economyClassSeats;
+        return LAYOUTS.computeIfAbsent(first + "/" + business + "/" + economy,
+                _ -> new SeatLayout(new int[]{first, business, economy}));
+    }
+
+    /**
+     * 座位布局：座位序号 <-> 座位号，以及座位在座位图中的位置
+     */
+    public static class SeatLayout {
+        final String[] labels;
+        final CabinClass[] cabins;
+        final int[] rows;
+        final int[] columns;
+        final String[][] grid;
+        private final Map<String, Integer> ordinals = new HashMap<>();
+
+        SeatLayout(int[] cabinSeats) {
+            int total = Arrays.stream(cabinSeats).sum();
+            labels = new String[total];
+            cabins = new CabinClass[total];
+            rows = new int[total];
+            columns = new int[total];
+
+            List<String[]> gridRows = new ArrayList<>();
+            int ordinal = 0;
+            int rowNumber = 1;
+            CabinClass previous = null;
+            CabinClass[] cabinOrder = CabinClass.values();
+            for (int c = 0; c < cabinOrder.length; c++) {
+                CabinClass cabin = cabinOrder[c];
+                int count = cabinSeats[c];
+                if (count <= 0) {
+                    continue;
+                }
+                if (previous != null) {
+                    // 头等舱之后为隔断，其余舱位之间为安全出口
+                    boolean divider = previous == CabinClass.FIRST;
+                    gridRows.add(markerRow(divider ? "DIVIDER" : "EXIT", !divider));
+                }
+                previous = cabin;
+                gridRows.add(markerRow(cabin.headerToken, true));
+
+                String[] template = cabin.seatsAbreast == 6 ? SIX_ABREAST_ROW : EIGHT_ABREAST_ROW;
+                int placed = 0;
+                while (placed < count) {
+                    String[] row = new String[COLUMNS];
+                    char letter = 'A';
+                    for (int col = 0; col < COLUMNS; col++) {
+                        if (template[col] != null) {
+                            row[col] = template[col];
+                        } else if (placed < count) {
+                            String label = cabin.seatPrefix + rowNumber + letter;
+                            row[col] = label;
+                            labels[ordinal] = label;
+                            cabins[ordinal] = cabin;
+                            rows[ordinal] = gridRows.size();
+                            columns[ordinal] = col;
+                            ordinals.put(label, ordinal);
+                            ordinal++;
+                            placed++;
+                            letter++;
+                        } else {
+                            row[col] = "EMPTY";
+                        }
+                    }
+                    gridRows.add(row);
+                    rowNumber++;
+                }
+            }
+            if (total > 0) {
+                gridRows.add(markerRow("EXIT", true));
+                gridRows.add(markerRow("TOILET", true));
+            }
+            grid = gridRows.toArray(new String[0][]);
+        }
+
+        private static String[] markerRow(String token, boolean sidesOnly) {
+            String[] row = new String[COLUMNS];
+            Arrays.fill(row, "EMPTY");
+            if (sidesOnly) {
+                row[1] = token;
+                row[COLUMNS - 2] = token;
+            } else {
+                Arrays.fill(row, 1, COLUMNS - 1, token);
+            }
+            return row;
+        }
+
+        /**
+         * 座位号对应的序号，不存在时返回-1
+         */
+        public int ordinalOf(String seatNumber) {
+            Integer ordinal = seatNumber == null ? null : ordinals.get(seatNumber);
+            return ordinal == null ? -1 : ordinal;
+        }
+
+        public String labelOf(int ordinal) {
+            return labels[ordinal];
+        }
+
+        public CabinClass cabinOf(int ordinal) {
+            return cabins[ordinal];
+        }
+
+        public int seatCount() {
+            return labels.length;
+        }
+    }
+
+    /**
+     * 单个航班的座位占用位图
+     */
+    public static class FlightSeats {
+        final SeatLayout layout;
+        private final AtomicLongArray bits;
+
+        FlightSeats(SeatLayout layout) {
+            this.layout = layout;
+            this.bits = new AtomicLongArray((layout.seatCount() + 63) >>> 6);
+        }
+
+        public SeatLayout getLayout() {
+            return layout;
+        }
+
+        public boolean isOccupied(int ordinal) {
+            return (bits.get(ordinal >>> 6) & (1L << ordinal)) != 0;
+        }
+
+        /**
+         * CAS占用座位，已被占用时返回false
+         */
+        public boolean claim(int ordinal) {
+            int index = ordinal >>> 6;
+            long mask = 1L << ordinal;
+            while (true) {
+                long word = bits.get(index);
+                if ((word & mask) != 0) {
+                    return false;
+                }
+                if (bits.compareAndSet(index, word, word | mask)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * CAS释放座位
+         */
+        public void release(int ordinal) {
+            int index = ordinal >>> 6;
+            long mask = 1L << ordinal;
+            while (true) {
+                long word = bits.get(index);
+                if ((word & mask) == 0 || bits.compareAndSet(index, word, word & ~mask)) {
+                    return;
+                }
+            }
+        }
+
+        public int occupiedCount() {
+            int count = 0;
+            for (int i = 0; i < bits.length(); i++) {
+                count += Long.bitCount(bits.get(i));
+            }
+            return count;
+        }
+
+        /**
+         * 位图占用的字节数
+         */
+        public int bitmapBytes() {
+            return bits.length() * Long.BYTES;
+        }
+    }
+
+    /**
+     * 座位库存性能演示：350座宽体机（头等舱12、商务舱48、经济舱290）
+     */
+    public static void main(String[] args) {
+        SeatLayout layout = new SeatLayout(new int[]{12, 48, 290});
+        FlightSeats seats = new FlightSeats(layout);
+        System.out.println("座位数: " + layout.seatCount() + "，位图大小: " + seats.bitmapBytes() + " 字节");
+
+        long start = System.nanoTime();
+        for (int ordinal = 0; ordinal < layout.seatCount(); ordinal += 3) {
+            seats.claim(ordinal);
+        }
+        System.out.printf("占用 %d 个座位耗时: %.1fμs%n", seats.occupiedCount(), (System.nanoTime() - start) / 1000.0);
+        System.out.println("重复占用 " + layout.labelOf(0) + ": " + (seats.claim(0) ? "成功" : "失败（已占用）"));
+
+        String flightId = "DEMO";
+        preload(flightId, seats);
+        buildSeatMap(flightId);
+        start = System.nanoTime();
+        String[][] seatMap = buildSeatMap(flightId);
+        System.out.printf("生成 %d 行座位图耗时: %.1fμs%n", seatMap.length, (System.nanoTime() - start) / 1000.0);
+        FLIGHTS.remove(flightId);
+    }
+}
@@ -7,7 +7,6 @@ import java.sql.*;
 
 public class SeatSelectionModule extends JFrame {
 
-    private static final String DB_URL = "jdbc:sqlite:airplane_system.db";
     private String orderId;
     private String currentUser;
     private JComboBox<String> seatPreference;
@@ -22,6 +21,7 @@ public class SeatSelectionModule extends JFrame {
     private String flightId;
     private String departureAirport;
     private String arrivalAirport;
+    private String currentSeat;
 
     public SeatSelectionModule(String orderId, String currentUser) {
         this.orderId = orderId;
@@ -115,7 +115,14 @@ public class SeatSelectionModule extends JFrame {
         // 事件处理
         searchBtn.addActionListener(this::loadSeatMap);
         confirmBtn.addActionListener(this::confirmSelection);
-        cancelBtn.addActionListener(_ -> dispose());        setLocationRelativeTo(null);
+        cancelBtn.addActionListener(_ -> dispose());
+        // 关闭窗口时释放未确认的座位锁定
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosed(java.awt.event.WindowEvent event) {
+                SeatHoldManager.releaseHolder(flightId, orderId);
+            }
+        });        setLocationRelativeTo(null);
         setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
     }
     
@@ -129,7 +136,7 @@ public class SeatSelectionModule extends JFrame {
                     "JOIN flights f ON o.flight_id = f.flight_id " +
                     "WHERE o.order_id = ? AND o.user_id = ? AND o.payment_status = 'paid'";
         
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = DatabaseConnectionPool.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             
             stmt.setString(1, orderId);
@@ -143,7 +150,7 @@ public class SeatSelectionModule extends JFrame {
                     arrivalAirport = rs.getString("arrival_airport");
                     
                     // 检查是否已经选座
-                    String currentSeat = rs.getString("seat_number");
+                    currentSeat = rs.getString("seat_number");
                     if (currentSeat != null && !currentSeat.trim().isEmpty()) {
                         int choice = JOptionPane.showConfirmDialog(this, 
                             "您已选择座位: " + currentSeat + "\n是否要重新选座？", 
@@ -166,7 +173,8 @@ public class SeatSelectionModule extends JFrame {
     }    private void loadSeatMap(ActionEvent e) {
         String preference = (String) seatPreference.getSelectedItem();
 
-        // 清空现有座位图
+        // 释放之前锁定的座位，清空现有座位图
+        SeatHoldManager.releaseHolder(flightId, orderId);
         seatMapPanel.removeAll();
         seatButtons.clear();
         selectedSeat = null;
@@ -279,6 +287,17 @@ public class SeatSelectionModule extends JFrame {
         seatMapPanel.revalidate();
         seatMapPanel.repaint();
     }    private void selectSeat(JButton seatBtn) {
+        // 锁定座位，锁定期间其他乘客无法选择
+        SeatHoldManager.Hold hold = SeatHoldManager.hold(flightId, seatBtn.getText(), orderId);
+        if (hold == null) {
+            JOptionPane.showMessageDialog(this, "座位 " + seatBtn.getText() + " 已被其他乘客锁定，请选择其他座位",
+                    "提示", JOptionPane.WARNING_MESSAGE);
+            seatBtn.setBackground(Color.RED);
+            seatBtn.setForeground(Color.WHITE);
+            seatBtn.setEnabled(false);
+            return;
+        }
+        
         // 重置所有座位按钮颜色到原始状态
         seatButtons.values().forEach(btn -> {
             if (btn.isEnabled() && !btn.getText().matches("安全出口|过道|洗手间|窗户|头等舱|商务舱|经济舱|═══")) {
@@ -310,7 +329,8 @@ public class SeatSelectionModule extends JFrame {
         } else if (selectedSeat.startsWith("E")) {
             seatClass = "经济舱";
         }
-        seatBtn.setToolTipText("已选择: " + seatClass + " " + selectedSeat);
+        seatBtn.setToolTipText("已选择: " + seatClass + " " + selectedSeat +
+                "（锁定" + hold.remainingSeconds() / 60 + "分钟，请尽快确认）");
     }private void confirmSelection(ActionEvent e) {
         if (selectedSeat != null) {
             // 更新数据库中的座位信息
@@ -329,57 +349,12 @@ public class SeatSelectionModule extends JFrame {
             }
         }
     }    /**
-     * 从数据库获取座位图，包含已占用的座位信息
+     * 从座位库存获取座位图，包含已占用的座位信息
+     * 布局按该航班机型的舱位座位数生成：F = 头等舱, B = 商务舱, E = 经济舱
      */
     private String[][] getSeatMapFromDatabase(String flightId, String preference) {
-        // 基础座位图布局 - 包含不同舱位等级
-        // F = 头等舱 (First Class), B = 商务舱 (Business Class), E = 经济舱 (Economy Class)
-        String[][] seatMap = {
-                {"EMPTY","FIRST_CLASS", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "FIRST_CLASS", "EMPTY"},
-                {"WINDOW","F1A",  "F1B", "AISLE", "F1C", "F1D", "EMPTY", "EMPTY", "AISLE",  "F1E", "F1F", "WINDOW"},
-                {"WINDOW","F2A",  "F2B", "AISLE", "F2C", "F2D", "EMPTY", "EMPTY", "AISLE",  "F2E", "F2F", "WINDOW"},
-                {"EMPTY","DIVIDER", "DIVIDER", "DIVIDER", "DIVIDER", "DIVIDER", "DIVIDER", "DIVIDER", "DIVIDER", "DIVIDER", "DIVIDER", "EMPTY"},
-                {"EMPTY","BUSINESS_CLASS", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "BUSINESS_CLASS", "EMPTY"},
-                {"WINDOW","B3A",  "B3B", "AISLE", "B3C", "B3D", "B3E", "B3F","AISLE",  "B3G", "B3H", "WINDOW"},
-                {"WINDOW","B4A",  "B4B", "AISLE", "B4C", "B4D", "B4E", "B4F","AISLE",  "B4G", "B4H", "WINDOW"},
-                {"WINDOW","B5A",  "B5B", "AISLE", "B5C", "B5D", "B5E", "B5F","AISLE",  "B5G", "B5H", "WINDOW"},
-                {"EMPTY","EXIT",  "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EXIT", "EMPTY"},
-                {"EMPTY","ECONOMY_CLASS", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "ECONOMY_CLASS", "EMPTY"},
-                {"WINDOW","E6A",  "E6B", "AISLE", "E6C", "E6D", "E6E", "E6F","AISLE",  "E6G", "E6H", "WINDOW"},
-                {"WINDOW","E7A",  "E7B", "AISLE", "E7C", "E7D", "E7E", "E7F","AISLE",  "E7G", "E7H", "WINDOW"},
-                {"WINDOW","E8A",  "E8B", "AISLE", "E8C", "E8D", "E8E", "E8F","AISLE",  "E8G", "E8H", "WINDOW"},
-                {"WINDOW","E9A",  "E9B", "AISLE", "E9C", "E9D", "E9E", "E9F","AISLE",  "E9G", "E9H", "WINDOW"},
-                {"WINDOW","E10A", "E10B", "AISLE", "E10C", "E10D", "E10E", "E10F","AISLE", "E10G", "E10H", "WINDOW"},
-                {"EMPTY","EXIT",  "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EXIT", "EMPTY"},
-                {"EMPTY","TOILET",  "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "EMPTY", "TOILET", "EMPTY"}
-        };        // 从数据库获取已占用的座位
-        String sql = "SELECT seat_number FROM orders WHERE flight_id = ? AND seat_number IS NOT NULL AND seat_number != ''";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setString(1, flightId);
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    String occupiedSeat = rs.getString("seat_number");
-                    
-                    // 将已占用的座位标记为 X + 座位号
-                    for (int i = 0; i < seatMap.length; i++) {
-                        for (int j = 0; j < seatMap[i].length; j++) {
-                            if (seatMap[i][j].equals(occupiedSeat)) {
-                                seatMap[i][j] = "X" + occupiedSeat;
-                                break;
-                            }
-                        }
-                    }
-                }
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        return seatMap;
-    }    /**
+        return SeatInventory.buildSeatMap(flightId);
+    }        /**
      * 添加图例项到面板
      */
     private void addLegendItem(JPanel panel, String text, Color color) {
@@ -398,22 +373,44 @@ public class SeatSelectionModule extends JFrame {
 
     /**
      * 更新数据库中的座位信息
+     * 先确认座位锁定（锁定已过期时失败），数据库更新时再次确认座位未被其他有效订单占用
      */
     private boolean updateSeatInDatabase(String orderId, String seatNumber) {
-        String sql = "UPDATE orders SET seat_number = ? WHERE order_id = ?";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setString(1, seatNumber);
-            stmt.setString(2, orderId);
-            
-            int rowsAffected = stmt.executeUpdate();
-            System.out.println("更新订单 " + orderId + " 座位为: " + seatNumber);
-            return rowsAffected > 0;
+        if (!SeatHoldManager.confirm(flightId, seatNumber, orderId)) {
+            System.out.println("座位 " + seatNumber + " 锁定已失效");
+            return false;
+        }
+        
+        String sql = "UPDATE orders SET seat_number = ? WHERE order_id = ? AND NOT EXISTS (" +
+                    "SELECT 1 FROM orders WHERE flight_id = ? AND seat_number = ? " +
+                    "AND order_status NOT IN ('cancelled', 'refunded'))";
+        try {
+            int rowsAffected = DatabaseWriter.execute(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, seatNumber);
+                    stmt.setString(2, orderId);
+                    stmt.setString(3, flightId);
+                    stmt.setString(4, seatNumber);
+                    return stmt.executeUpdate();
+                }
+            });
+            if (rowsAffected > 0) {
+                // 重新选座时释放原座位
+                if (currentSeat != null && !currentSeat.equals(seatNumber)) {
+                    SeatInventory.releaseSeat(flightId, currentSeat);
+                }
+                currentSeat = seatNumber;
+                System.out.println("更新订单 " + orderId + " 座位为: " + seatNumber);
+                return true;
+            }
+            // 座位已被其他订单占用：确认锁定后位图中该座位仍为已占用，即标记为已售；
+            // 不重新加载整个航班的位图，否则其他用户仍有效的锁定会被清掉
+            return false;
         } catch (SQLException e) {
             e.printStackTrace();
-            return false;
         }
+        SeatInventory.releaseSeat(flightId, seatNumber);
+        return false;
     }    // 生成电子登机牌
     private void generateBoardingPass(String orderId, String seat) {
         System.out.println("生成电子登机牌 - 订单: " + orderId + ", 座位: " + seat + ", 航班: " + flightNumber);
@@ -2,7 +2,6 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -37,52 +36,39 @@ public class UserManagementModule extends JFrame {
     private JTextArea deleteResultArea;
 
     /**
-     * 验证用户身份并返回凭据
+     * 验证用户身份并返回凭据（由 AuthService 校验密码哈希）
      * @param username 用户名
      * @param password 密码
      * @return 验证成功返回用户凭据，失败返回null
      */
     public UserCredential authenticateUser(String username, String password) {
-        // 从数据库获取用户信息（包括密码）
-        String sql = "SELECT * FROM users WHERE username = ?";
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, username);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    String storedPassword = rs.getString("password");
-                    String userStatus = rs.getString("status");
-                    String userRole = rs.getString("role");
-                    
-                    // 验证密码（明文比较）和用户状态
-                    if (password.equals(storedPassword) && "active".equals(userStatus)) {
-                        return new UserCredential(username, userRole);
-                    }
-                }
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        
-        return null; // 用户不存在、密码错误或用户已冻结
+        AuthService.AuthResult result = AuthService.authenticate(username, password);
+        return result.isSuccess() ? result.credential : null; // 用户不存在、密码错误或用户已冻结
     }
     
     /**
-     * 用户身份凭据类 - 简化版本，只包含用户ID和角色
+     * 用户身份凭据类 - 用户ID、角色和登录时发放的会话令牌
      */
     public static class UserCredential {
         private final String userId;
         private final String role;
+        private final String sessionToken;
         private final long timestamp;
         
         public UserCredential(String userId, String role) {
+            this(userId, role, null);
+        }
+        
+        public UserCredential(String userId, String role, String sessionToken) {
             this.userId = userId;
             this.role = role;
+            this.sessionToken = sessionToken;
             this.timestamp = System.currentTimeMillis();
         }
         
         public String getUserId() { return userId; }
         public String getRole() { return role; }
+        public String getSessionToken() { return sessionToken; }
         public long getTimestamp() { return timestamp; }
     }
 
@@ -135,7 +121,6 @@ public class UserManagementModule extends JFrame {
     }
 
     public static class DatabaseManager {
-        private static final String DB_URL = "jdbc:sqlite:airplane_system.db";
         
         static {
             try {
@@ -151,7 +136,7 @@ public class UserManagementModule extends JFrame {
          * 获取数据库连接
          */
         public static Connection getConnection() throws SQLException {
-            return DriverManager.getConnection(DB_URL);
+            return DatabaseConnectionPool.getConnection();
         }
         
         /**
@@ -207,11 +192,17 @@ public class UserManagementModule extends JFrame {
          */
         public static boolean updateUserRole(String username, String role) {
             String sql = "UPDATE users SET role = ? WHERE username = ?";
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, role);
-                stmt.setString(2, username);
-                return stmt.executeUpdate() > 0;
+            try {
+                boolean updated = DatabaseWriter.execute(conn -> {
+                    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        stmt.setString(1, role);
+                        stmt.setString(2, username);
+                        return stmt.executeUpdate() > 0;
+                    }
+                });
+                PrincipalService.invalidate(username);
+                AuthService.invalidateUser(username);
+                return updated;
             } catch (SQLException e) {
                 e.printStackTrace();
                 return false;
@@ -223,11 +214,16 @@ public class UserManagementModule extends JFrame {
          */
         public static boolean updateUserStatus(String username, String status) {
             String sql = "UPDATE users SET status = ? WHERE username = ?";
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, status);
-                stmt.setString(2, username);
-                return stmt.executeUpdate() > 0;
+            try {
+                boolean updated = DatabaseWriter.execute(conn -> {
+                    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        stmt.setString(1, status);
+                        stmt.setString(2, username);
+                        return stmt.executeUpdate() > 0;
+                    }
+                });
+                AuthService.invalidateUser(username);
+                return updated;
             } catch (SQLException e) {
                 e.printStackTrace();
                 return false;
@@ -235,15 +231,21 @@ public class UserManagementModule extends JFrame {
         }
         
         /**
-         * 重置用户密码
+         * 重置用户密码（保存哈希）
          */
         public static boolean resetUserPassword(String username, String newPassword) {
             String sql = "UPDATE users SET password = ? WHERE username = ?";
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, newPassword);
-                stmt.setString(2, username);
-                return stmt.executeUpdate() > 0;
+            String hashed = AuthService.hashPassword(newPassword);
+            try {
+                boolean updated = DatabaseWriter.execute(conn -> {
+                    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        stmt.setString(1, hashed);
+                        stmt.setString(2, username);
+                        return stmt.executeUpdate() > 0;
+                    }
+                });
+                AuthService.invalidateUser(username);
+                return updated;
             } catch (SQLException e) {
                 e.printStackTrace();
                 return false;
@@ -251,17 +253,21 @@ public class UserManagementModule extends JFrame {
         }
         
         /**
-         * 创建新用户
+         * 创建新用户（保存密码哈希）
          */
         public static boolean createUser(String username, String password, String phone, String role) {
             String sql = "INSERT INTO users (username, password, phone, role, status) VALUES (?, ?, ?, ?, 'active')";
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, username);
-                stmt.setString(2, password);
-                stmt.setString(3, phone);
-                stmt.setString(4, role);
-                return stmt.executeUpdate() > 0;
+            String hashed = AuthService.hashPassword(password);
+            try {
+                return DatabaseWriter.execute(conn -> {
+                    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        stmt.setString(1, username);
+                        stmt.setString(2, hashed);
+                        stmt.setString(3, phone);
+                        stmt.setString(4, role);
+                        return stmt.executeUpdate() > 0;
+                    }
+                });
             } catch (SQLException e) {
                 e.printStackTrace();
                 return false;
@@ -273,10 +279,16 @@ public class UserManagementModule extends JFrame {
          */
         public static boolean deleteUser(String username) {
             String sql = "DELETE FROM users WHERE username = ?";
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, username);
-                return stmt.executeUpdate() > 0;
+            try {
+                boolean deleted = DatabaseWriter.execute(conn -> {
+                    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        stmt.setString(1, username);
+                        return stmt.executeUpdate() > 0;
+                    }
+                });
+                PrincipalService.invalidate(username);
+                AuthService.invalidateUser(username);
+                return deleted;
             } catch (SQLException e) {
                 e.printStackTrace();
                 return false;
@@ -303,26 +315,31 @@ public class UserManagementModule extends JFrame {
                 "status TEXT NOT NULL" +
                 ")";
             
-            try (Connection conn = getConnection();
-                 Statement stmt = conn.createStatement()) {
-                stmt.execute(createTableSQL);
-                
-                // 检查是否已有数据
-                try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM users")) {
-                    rs.next();
-                    if (rs.getInt(1) == 0) {
+            try {
+                DatabaseWriter.executeInTransaction(conn -> {
+                    try (Statement stmt = conn.createStatement()) {
+                        stmt.execute(createTableSQL);
+
+                        // 检查是否已有数据
+                        try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM users")) {
+                            rs.next();
+                            if (rs.getInt(1) > 0) {
+                                return null;
+                            }
+                        }
                         String[] insertSQL = {
                             "INSERT INTO users VALUES ('admin', 'admin123', '13800001111', '管理员', 'active')",
                             "INSERT INTO users VALUES ('user1', 'user123', '13800002222', '用户', 'active')",
                             "INSERT INTO users VALUES ('user2', 'user456', '13800003333', '客服', 'inactive')"
                         };
-                        
+
                         for (String sql : insertSQL) {
                             stmt.execute(sql);
                         }
                         System.out.println("用户数据已初始化");
                     }
-                }
+                    return null;
+                });
             } catch (SQLException e) {
                 System.err.println("初始化数据库错误: " + e.getMessage());
                 e.printStackTrace();